@@ -0,0 +1,88 @@
+package Benchmark;
+
+import Cryptage.AES;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+
+/**
+ * Benchmark de débit : AES-ECB (format historique) contre AES-GCM (mode authentifié).
+ * Mesure un aller-retour chiffrement + déchiffrement par message, avec les API
+ * ByteBuffer de AES (Cipher réutilisé par thread, sans allocation du résultat).
+ *
+ * Les deux modes profitent des instructions AES-NI ; GCM utilise en plus
+ * l'accélération de GHASH (multiplication sans retenue, CLMUL) par la JVM.
+ *
+ * Usage : java Benchmark.BenchmarkAES [secondes par mesure]
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class BenchmarkAES {
+
+    private static final int[] TAILLES = {100, 1024, 4 * 1024, 16 * 1024, 64 * 1024};
+
+    public static void main(String[] args) throws Exception {
+        double secondes = args.length >= 1 ? Double.parseDouble(args[0]) : 2.0;
+        SecretKey cle = AES.genererCle(128);
+
+        System.out.println("Benchmark AES-ECB / AES-GCM (chiffrement + déchiffrement)");
+        System.out.println("JVM : " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        System.out.println();
+        System.out.printf("%10s %14s %14s %10s%n", "Taille", "ECB (Mo/s)", "GCM (Mo/s)", "GCM/ECB");
+
+        for (int taille : TAILLES) {
+            // Préchauffage (compilation JIT des chemins intrinsèques)
+            mesurer(false, taille, cle, 0.5);
+            mesurer(true, taille, cle, 0.5);
+
+            double ecb = mesurer(false, taille, cle, secondes);
+            double gcm = mesurer(true, taille, cle, secondes);
+            System.out.printf("%10s %14.1f %14.1f %10.2f%n", libelle(taille), ecb, gcm, gcm / ecb);
+        }
+    }
+
+    /**
+     * Mesure le débit d'un mode pour une taille de message.
+     *
+     * @return Débit en Mo/s de données claires traitées (aller-retour)
+     */
+    private static double mesurer(boolean gcm, int taille, SecretKey cle, double secondes) throws Exception {
+        ByteBuffer clair = ByteBuffer.allocate(taille);
+        ByteBuffer chiffre = ByteBuffer.allocate(AES.tailleChiffre(taille) + AES.TAILLE_TAG);
+        ByteBuffer retour = ByteBuffer.allocate(taille + AES.TAILLE_BLOC);
+        byte[] nonce = new byte[AES.TAILLE_NONCE];
+        byte[] aad = "Général\nAlice".getBytes();
+        ByteBuffer compteur = ByteBuffer.wrap(nonce);
+
+        long fin = System.nanoTime() + (long) (secondes * 1e9);
+        long debut = System.nanoTime();
+        long messages = 0;
+        long sequence = 0;
+        while (System.nanoTime() < fin) {
+            for (int i = 0; i < 64; i++) {
+                clair.clear();
+                chiffre.clear();
+                retour.clear();
+                if (gcm) {
+                    // Nonce unique par message, comme CanalAES
+                    compteur.putLong(4, sequence++);
+                    AES.crypteGCM(clair, chiffre, nonce, aad, cle);
+                    chiffre.flip();
+                    AES.decrypteGCM(chiffre, retour, nonce, aad, cle);
+                } else {
+                    AES.crypte(clair, chiffre, cle);
+                    chiffre.flip();
+                    AES.decrypte(chiffre, retour, cle);
+                }
+            }
+            messages += 64;
+        }
+        double duree = (System.nanoTime() - debut) / 1e9;
+        return messages * (double) taille / duree / (1024 * 1024);
+    }
+
+    private static String libelle(int taille) {
+        return taille >= 1024 ? (taille / 1024) + " Ko" : taille + " o";
+    }
+}
@@ -0,0 +1,150 @@
+package Benchmark;
+
+import Server.Commande;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Microbenchmark du décodage des messages clients : ancienne chaîne de
+ * startsWith/substring (commandes, puis extraction du pseudo, puis salon du
+ * broadcast) contre le décodeur en une passe (Commande).
+ *
+ * Mélange représentatif : 90% de messages de salon, 10% de commandes.
+ * Mesure le coût par message en nanosecondes et en octets alloués.
+ *
+ * Usage : java Benchmark.BenchmarkCommandes [secondes par mesure]
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class BenchmarkCommandes {
+
+    private static final String[] MESSAGES = new String[20];
+
+    static {
+        String contenu = "gcm:q83vEjRWeJCrze8SNFZ4kKvN7xI0VniQq83vEjRWeJCrze8SNFZ4kA==";
+        for (int i = 0; i < 18; i++) {
+            MESSAGES[i] = "[Général]alice: " + contenu;
+        }
+        MESSAGES[18] = "CHANGE_ROOM:Jeux";
+        MESSAGES[19] = "PRIVATE_MSG:bob:" + contenu;
+    }
+
+    // Reçoit les résultats pour que le JIT ne supprime pas le décodage
+    static volatile long puits;
+
+    public static void main(String[] args) {
+        double secondes = args.length >= 1 ? Double.parseDouble(args[0]) : 2.0;
+
+        System.out.println("Benchmark décodage des commandes (" + MESSAGES.length + " messages, 90% de salon)");
+        System.out.println();
+
+        // Préchauffage
+        mesurer(false, 1.0);
+        mesurer(true, 1.0);
+
+        double[] ancien = mesurer(false, secondes);
+        double[] nouveau = mesurer(true, secondes);
+        System.out.printf("%-28s %12s %14s%n", "", "ns/message", "octets/message");
+        System.out.printf("%-28s %12.1f %14.1f%n", "Ancien (startsWith/substring)", ancien[0], ancien[1]);
+        System.out.printf("%-28s %12.1f %14.1f%n", "Commande (une passe)", nouveau[0], nouveau[1]);
+        System.out.printf("Gain : %.2fx%n", ancien[0] / nouveau[0]);
+    }
+
+    /**
+     * @return {nanosecondes par message, octets alloués par message}
+     */
+    private static double[] mesurer(boolean unePasse, double secondes) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+        Commande commande = new Commande();
+        String[] etat = {"alice", "Général"};
+        long somme = 0;
+        long messages = 0;
+
+        long octetsDebut = mx.getThreadAllocatedBytes(thread);
+        long debut = System.nanoTime();
+        long fin = debut + (long) (secondes * 1e9);
+        while (System.nanoTime() < fin) {
+            for (String message : MESSAGES) {
+                somme += unePasse ? decoder(commande, message, etat) : ancienDecodage(message, etat);
+            }
+            messages += MESSAGES.length;
+        }
+        long duree = System.nanoTime() - debut;
+        long octets = mx.getThreadAllocatedBytes(thread) - octetsDebut;
+        puits = somme;
+        return new double[]{(double) duree / messages, (double) octets / messages};
+    }
+
+    /**
+     * Décodage en une passe, comme gestionnaireClientGUI.traiterMessage.
+     */
+    private static int decoder(Commande c, String message, String[] etat) {
+        c.decoder(message);
+        switch (c.getCode()) {
+            case Commande.MESSAGE_SALON: {
+                String salon = c.argumentOu(0, etat[1]);
+                if (c.aArgument(1) && !c.argumentEgal(1, etat[0])) {
+                    etat[0] = c.argument(1);
+                }
+                return salon.length();
+            }
+            case Commande.CHANGE_ROOM:
+                return c.argument(0).length();
+            case Commande.PRIVATE_MSG:
+                return c.argument(0).length() + c.argument(1).length();
+            default:
+                return c.getCode();
+        }
+    }
+
+    /**
+     * Ancien décodage, recopié de handleSpecialCommands et broadcast avant le décodeur.
+     */
+    private static int ancienDecodage(String message, String[] etat) {
+        if (message.startsWith("SET_USERNAME:")) {
+            return message.substring(13).trim().length();
+        }
+        if (message.startsWith("SYNC_ROOMS:")) {
+            return message.substring(11).split(":", 2).length;
+        }
+        if (message.startsWith("CHANGE_ROOM:")) {
+            return message.substring(12).trim().length();
+        }
+        if (message.startsWith("CREATE_ROOM:")) {
+            return message.substring(12).trim().length();
+        }
+        if (message.startsWith("PRIVATE_MSG:")) {
+            String[] parts = message.substring(12).split(":", 2);
+            return parts[0].trim().length() + parts[1].trim().length();
+        }
+
+        // Extraction du pseudo et du salon
+        if (message.startsWith("[") && message.contains("]") && message.contains(":")) {
+            int salonEnd = message.indexOf("]");
+            if (salonEnd > 0 && salonEnd < message.length() - 1) {
+                String salon = message.substring(1, salonEnd);
+                String rest = message.substring(salonEnd + 1);
+                int usernameEnd = rest.indexOf(":");
+                if (usernameEnd > 0 && usernameEnd < rest.length() - 1) {
+                    String extractedUsername = rest.substring(0, usernameEnd).trim();
+                    if (!extractedUsername.isEmpty() && !extractedUsername.equals(etat[0])) {
+                        etat[0] = extractedUsername;
+                    }
+                    etat[1] = salon;
+                }
+            }
+        }
+
+        // Salon de destination (broadcast)
+        String salonMessage = etat[1];
+        if (message.startsWith("[") && message.contains("]")) {
+            int salonEnd = message.indexOf("]");
+            if (salonEnd > 0) {
+                salonMessage = message.substring(1, salonEnd);
+            }
+        }
+        return salonMessage.length();
+    }
+}
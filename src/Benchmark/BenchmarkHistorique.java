@@ -0,0 +1,158 @@
+package Benchmark;
+
+import Cryptage.AES;
+import Cryptage.CanalAES;
+import Server.ArchiveSalons;
+import Server.MessagesRecents;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark de la commande HISTORY sur un gros salon archivé, exécuté par Harnais :
+ * - remplir un onglet : les 500 derniers messages, chiffrés pour un client comme
+ *   le fait le serveur (depuis les pages projetées, sans String intermédiaire)
+ * - la même page en passant par un tableau et une String par message
+ * - la même page servie par les messages récents en mémoire (MessagesRecents)
+ * - une page de 500 messages à une position aléatoire de l'historique
+ * - la recherche seule d'un message à une position aléatoire (index clairsemé)
+ *
+ * L'archive est remplie une fois (par défaut 10 millions de messages, environ 2 Go),
+ * puis rouverte comme après un redémarrage du serveur : l'index d'un segment scellé
+ * est construit à sa première lecture, pendant le préchauffage.
+ *
+ * Options, en plus de celles de Harnais :
+ * --messages=N       Messages dans le salon (par défaut : 10000000)
+ * --repertoire=REP   Archive à réutiliser d'une exécution à l'autre (sinon, un
+ *                    répertoire temporaire supprimé à la fin)
+ *
+ * Usage : java Benchmark.BenchmarkHistorique [options]
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class BenchmarkHistorique {
+
+    private static final String SALON = "Général";
+    private static final int PAGE = 500;
+    private static final int SEGMENT = 64 * 1024 * 1024;
+    private static final String MESSAGE = "[" + SALON + "]alice: " + CanalAES.PREFIXE_GCM
+            + Base64.getEncoder().encodeToString(new byte[100 + AES.TAILLE_NONCE + AES.TAILLE_TAG]);
+
+    public static void main(String[] args) throws Exception {
+        long messages = 10_000_000;
+        String chemin = null;
+        for (String arg : args) {
+            if (arg.startsWith("--messages=")) {
+                messages = Long.parseLong(arg.substring(11));
+            } else if (arg.startsWith("--repertoire=")) {
+                chemin = arg.substring(13);
+            }
+        }
+        Path repertoire = chemin != null ? Path.of(chemin) : Files.createTempDirectory("historique-benchmark");
+        int code;
+        try {
+            long total = remplir(repertoire, messages);
+            code = mesurer(new Harnais(args), repertoire, total);
+        } finally {
+            if (chemin == null) {
+                supprimer(repertoire);
+            }
+        }
+        System.exit(code);
+    }
+
+    /**
+     * Complète l'archive jusqu'à messages messages (rien à faire si elle est déjà remplie).
+     *
+     * @return Nombre de messages du salon
+     */
+    private static long remplir(Path repertoire, long messages) throws Exception {
+        long debut;
+        try (ArchiveSalons archive = new ArchiveSalons(repertoire, SEGMENT, 0, 0, 1000)) {
+            long presents = archive.lire(SALON, Long.MAX_VALUE, 1, (s, h, m) -> { }) + 1;
+            if (presents >= messages) {
+                return presents;
+            }
+            System.out.println("Remplissage de l'archive : " + (messages - presents) + " messages...");
+            debut = System.nanoTime();
+            for (long i = presents; i < messages; i++) {
+                // File de l'archive pleine : laisser le thread d'archive la vider
+                while (!archive.ajouter(SALON, MESSAGE)) {
+                    Thread.sleep(1);
+                }
+            }
+        }
+        // Fermée : le thread d'archive a tout écrit, la durée compte l'écriture
+        System.out.printf("Archive remplie en %.1f s%n%n", (System.nanoTime() - debut) / 1e9);
+        return messages;
+    }
+
+    /**
+     * @return Code de sortie de Harnais (1 si une régression est détectée)
+     */
+    private static int mesurer(Harnais harnais, Path repertoire, long total) throws Exception {
+        CanalAES canal = CanalAES.gcm(AES.genererCle(128), CanalAES.SENS_SERVEUR);
+        long[] octets = {0};
+        // Comme gestionnaireClientGUI.envoyerArchive : en-tête, puis message lu en place
+        ArchiveSalons.Lecteur enPlace = (sequence, horodatage, message) -> {
+            ByteBuffer entete = ByteBuffer.wrap(("HISTORY_MSG:" + sequence + ":" + horodatage + ":")
+                    .getBytes(StandardCharsets.UTF_8));
+            octets[0] += canal.chiffrer(entete, message).length;
+        };
+        ArchiveSalons.Lecteur parCopie = (sequence, horodatage, message) -> {
+            byte[] copie = new byte[message.remaining()];
+            message.get(copie);
+            String texte = "HISTORY_MSG:" + sequence + ":" + horodatage + ":"
+                    + new String(copie, StandardCharsets.UTF_8);
+            octets[0] += canal.chiffrer(texte).length;
+        };
+        // Anneau du salon rempli avec les mêmes messages que l'archive
+        MessagesRecents recents = new MessagesRecents(PAGE);
+        byte[] message = MESSAGE.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < PAGE; i++) {
+            recents.publier(System.currentTimeMillis(), message);
+        }
+        long[] dernier = {0};
+        ArchiveSalons.Lecteur sequence = (s, h, m) -> dernier[0] = s;
+        SplittableRandom hasard = new SplittableRandom(42);
+
+        try (ArchiveSalons archive = new ArchiveSalons(repertoire, SEGMENT, 0, 0, 1000)) {
+            harnais.mesurer("historique.remplir", "messages", total, () -> {
+                archive.lire(SALON, Long.MAX_VALUE, PAGE, enPlace);
+                return octets[0];
+            });
+            harnais.mesurer("historique.remplir-copie", "messages", total, () -> {
+                archive.lire(SALON, Long.MAX_VALUE, PAGE, parCopie);
+                return octets[0];
+            });
+            harnais.mesurer("historique.remplir-memoire", "messages", total, () -> {
+                recents.lire(Long.MAX_VALUE, PAGE, false, enPlace);
+                return octets[0];
+            });
+            harnais.mesurer("historique.page-aleatoire", "messages", total, () -> {
+                archive.lire(SALON, PAGE + hasard.nextLong(total - PAGE), PAGE, enPlace);
+                return octets[0];
+            });
+            harnais.mesurer("historique.recherche", "messages", total, () -> {
+                archive.lire(SALON, 1 + hasard.nextLong(total), 1, sequence);
+                return dernier[0];
+            });
+        }
+        return harnais.terminer();
+    }
+
+    private static void supprimer(Path repertoire) throws Exception {
+        try (Stream<Path> fichiers = Files.walk(repertoire)) {
+            for (Path f : fichiers.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(f);
+            }
+        }
+    }
+}
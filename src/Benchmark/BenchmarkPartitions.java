@@ -0,0 +1,130 @@
+package Benchmark;
+
+import Server.RepartiteurSalons;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Benchmark des partitions de diffusion : diffusion par le thread de l'expéditeur
+ * contre RepartiteurSalons, de 1 à N coeurs.
+ *
+ * SALONS salons de MEMBRES membres ; chaque producteur envoie des messages dans
+ * des salons tirés au hasard. Une diffusion ajoute la taille du message au
+ * compteur de chaque membre (comme le dépôt dans sa file de sortie). Par
+ * l'expéditeur, plusieurs coeurs écrivent dans les mêmes membres et se disputent
+ * leurs lignes de cache ; avec les partitions, un salon n'est touché que par le
+ * coeur de sa partition. Le débit (remises par seconde, file vidée) doit croître
+ * avec le nombre de partitions tant qu'il reste des coeurs libres.
+ *
+ * Usage : java Benchmark.BenchmarkPartitions [coeurs max] [secondes par mesure]
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class BenchmarkPartitions {
+
+    private static final int SALONS = 64;
+    private static final int MEMBRES = 100;
+    private static final String MESSAGE = "[salon]pseudo: contenu chiffré du message, en Base64 ou presque";
+
+    /**
+     * Un membre : ce que sa file de sortie a reçu.
+     */
+    private static final class Membre {
+        final AtomicLong octets = new AtomicLong();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int coeurs = Runtime.getRuntime().availableProcessors();
+        int max = args.length >= 1 ? Integer.parseInt(args[0]) : Math.max(4, coeurs);
+        double secondes = args.length >= 2 ? Double.parseDouble(args[1]) : 2.0;
+
+        System.out.println("Benchmark partitions : " + coeurs + " coeur(s), " + SALONS + " salons de "
+                + MEMBRES + " membres");
+        System.out.println();
+        System.out.printf("%8s %22s %22s %8s%n", "Coeurs", "Expéditeur (remises/s)", "Partitions (remises/s)", "Gain");
+
+        for (int n = 1; n <= max; n *= 2) {
+            // Préchauffage
+            mesurer(n, false, 0.5);
+            mesurer(n, true, 0.5);
+
+            double expediteur = mesurer(n, false, secondes);
+            double partitions = mesurer(n, true, secondes);
+            System.out.printf("%8d %22.0f %22.0f %7.2fx%n", n, expediteur, partitions, partitions / expediteur);
+        }
+    }
+
+    private static void diffuser(Membre[] salon) {
+        for (Membre m : salon) {
+            m.octets.addAndGet(MESSAGE.length());
+        }
+    }
+
+    /**
+     * @param n Producteurs, et partitions si partitionne
+     * @param partitionne true pour passer par RepartiteurSalons
+     * @return Remises par seconde, jusqu'à la dernière diffusion terminée
+     */
+    private static double mesurer(int n, boolean partitionne, double secondes) throws InterruptedException {
+        Membre[][] salons = new Membre[SALONS][MEMBRES];
+        String[] noms = new String[SALONS];
+        for (int s = 0; s < SALONS; s++) {
+            noms[s] = "salon-" + s;
+            for (int i = 0; i < MEMBRES; i++) {
+                salons[s][i] = new Membre();
+            }
+        }
+        RepartiteurSalons repartiteur = partitionne ? new RepartiteurSalons(n) : null;
+        CountDownLatch depart = new CountDownLatch(1);
+        Thread[] producteurs = new Thread[n];
+        long fin = System.nanoTime() + (long) (secondes * 1e9);
+
+        for (int t = 0; t < n; t++) {
+            producteurs[t] = new Thread(() -> {
+                try {
+                    depart.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadLocalRandom aleatoire = ThreadLocalRandom.current();
+                while (System.nanoTime() < fin) {
+                    for (int i = 0; i < 100; i++) {
+                        int s = aleatoire.nextInt(SALONS);
+                        Membre[] salon = salons[s];
+                        if (repartiteur != null) {
+                            repartiteur.soumettre(noms[s], () -> diffuser(salon));
+                        } else {
+                            diffuser(salon);
+                        }
+                    }
+                }
+            });
+            producteurs[t].start();
+        }
+
+        long debut = System.nanoTime();
+        depart.countDown();
+        for (Thread t : producteurs) {
+            t.join();
+        }
+        if (repartiteur != null) {
+            while (repartiteur.getEnAttente() > 0) {
+                LockSupport.parkNanos(100_000);
+            }
+            repartiteur.close();
+        }
+        double duree = (System.nanoTime() - debut) / 1e9;
+
+        long remises = 0;
+        for (Membre[] salon : salons) {
+            for (Membre m : salon) {
+                remises += m.octets.get() / MESSAGE.length();
+            }
+        }
+        return remises / duree;
+    }
+}
@@ -0,0 +1,191 @@
+package Benchmark;
+
+import Server.RegistreSalons;
+import Server.Salon;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Benchmark de contention multi-salons : verrou global contre RegistreSalons.
+ *
+ * Chaque thread travaille dans son propre salon de MEMBRES membres :
+ * 95% de broadcasts (parcours des membres) et 5% de départs/retours d'un membre.
+ * Avec le verrou global, tous les salons se partagent un seul verrou ; avec le
+ * registre, deux salons ne partagent rien. Le débit doit croître avec le nombre
+ * de threads tant qu'il reste des coeurs libres.
+ *
+ * Usage : java Benchmark.BenchmarkSalons [threads max] [secondes par mesure]
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class BenchmarkSalons {
+
+    private static final int MEMBRES = 50;
+
+    // Reçoit les sommes de contrôle pour que le JIT ne supprime pas les parcours
+    static volatile long puits;
+
+    public static void main(String[] args) throws Exception {
+        int coeurs = Runtime.getRuntime().availableProcessors();
+        int threadsMax = args.length >= 1 ? Integer.parseInt(args[0]) : Math.max(4, coeurs);
+        double secondes = args.length >= 2 ? Double.parseDouble(args[1]) : 2.0;
+
+        System.out.println("Benchmark salons : " + coeurs + " coeur(s), " + MEMBRES + " membres par salon");
+        System.out.println();
+        System.out.printf("%8s %20s %20s %8s%n", "Threads", "Verrou global (op/s)", "Registre (op/s)", "Gain");
+
+        for (int threads = 1; threads <= threadsMax; threads *= 2) {
+            // Préchauffage
+            mesurer(new VerrouGlobal(), threads, 0.5);
+            mesurer(new Registre(), threads, 0.5);
+
+            double global = mesurer(new VerrouGlobal(), threads, secondes);
+            double registre = mesurer(new Registre(), threads, secondes);
+            System.out.printf("%8d %20.0f %20.0f %7.2fx%n", threads, global, registre, registre / global);
+        }
+    }
+
+    /**
+     * Opérations d'un modèle de salons.
+     */
+    private interface Modele {
+        void rejoindre(String salon, Object membre);
+
+        void quitter(String salon, Object membre);
+
+        /**
+         * @return Somme de contrôle des membres parcourus (empêche le JIT d'éliminer le parcours)
+         */
+        long diffuser(String salon);
+    }
+
+    /**
+     * Ancien modèle : Map synchronisée et un verrou pour tout le serveur.
+     */
+    private static final class VerrouGlobal implements Modele {
+        private final Map<String, Set<Object>> salons = Collections.synchronizedMap(new HashMap<>());
+        private final ReentrantLock verrou = new ReentrantLock();
+
+        @Override
+        public void rejoindre(String salon, Object membre) {
+            verrou.lock();
+            try {
+                salons.computeIfAbsent(salon, s -> Collections.synchronizedSet(new HashSet<>())).add(membre);
+            } finally {
+                verrou.unlock();
+            }
+        }
+
+        @Override
+        public void quitter(String salon, Object membre) {
+            verrou.lock();
+            try {
+                salons.get(salon).remove(membre);
+            } finally {
+                verrou.unlock();
+            }
+        }
+
+        @Override
+        public long diffuser(String salon) {
+            verrou.lock();
+            try {
+                long somme = 0;
+                for (Object m : salons.get(salon)) {
+                    somme += System.identityHashCode(m);
+                }
+                return somme;
+            } finally {
+                verrou.unlock();
+            }
+        }
+    }
+
+    /**
+     * Nouveau modèle : RegistreSalons (verrou par salon, instantanés sans verrou).
+     */
+    private static final class Registre implements Modele {
+        private final RegistreSalons<Object> salons = new RegistreSalons<>();
+
+        @Override
+        public void rejoindre(String salon, Object membre) {
+            salons.obtenir(salon).ajouter(membre);
+        }
+
+        @Override
+        public void quitter(String salon, Object membre) {
+            salons.get(salon).retirer(membre);
+        }
+
+        @Override
+        public long diffuser(String salon) {
+            Salon<Object> s = salons.get(salon);
+            long somme = 0;
+            for (Object m : s.membres()) {
+                somme += System.identityHashCode(m);
+            }
+            return somme;
+        }
+    }
+
+    /**
+     * @return Débit total en opérations par seconde
+     */
+    private static double mesurer(Modele modele, int threads, double secondes) throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        LongAdder controle = new LongAdder();
+        CountDownLatch depart = new CountDownLatch(1);
+        Thread[] travailleurs = new Thread[threads];
+        long fin = System.nanoTime() + (long) (secondes * 1e9);
+
+        for (int t = 0; t < threads; t++) {
+            String salon = "salon-" + t;
+            Object[] membres = new Object[MEMBRES];
+            for (int i = 0; i < MEMBRES; i++) {
+                membres[i] = new Object();
+                modele.rejoindre(salon, membres[i]);
+            }
+            travailleurs[t] = new Thread(() -> {
+                try {
+                    depart.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long n = 0;
+                long somme = 0;
+                while (System.nanoTime() < fin) {
+                    for (int i = 0; i < 100; i++) {
+                        if (i % 20 == 0) {
+                            Object membre = membres[(int) (n % MEMBRES)];
+                            modele.quitter(salon, membre);
+                            modele.rejoindre(salon, membre);
+                        } else {
+                            somme += modele.diffuser(salon);
+                        }
+                    }
+                    n += 100;
+                }
+                operations.add(n);
+                controle.add(somme);
+            });
+            travailleurs[t].start();
+        }
+
+        long debut = System.nanoTime();
+        depart.countDown();
+        for (Thread t : travailleurs) {
+            t.join();
+        }
+        double duree = (System.nanoTime() - debut) / 1e9;
+        puits = controle.sum();
+        return operations.sum() / duree;
+    }
+}
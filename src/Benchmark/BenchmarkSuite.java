@@ -0,0 +1,196 @@
+package Benchmark;
+
+import Cryptage.AES;
+import Cryptage.CanalAES;
+import Protocole.FluxBinaire;
+import Protocole.ProtocoleBinaire;
+import Server.ArchiveSalons;
+import Server.Commande;
+import Server.RegistreSalons;
+import Server.Salon;
+
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Suite de microbenchmarks du chemin d'un message, exécutée par Harnais :
+ * - chiffrement et déchiffrement AES (ECB historique et GCM) selon la taille
+ * - surcoût de Base64 (contenus de salon, anciens clients)
+ * - cadrage d'une trame : ObjectOutputStream contre protocole binaire
+ * - décodage des commandes clients (Commande)
+ * - diffusion d'un message à 10, 100 et 1000 destinataires en mémoire
+ * - dépôt d'un message dans la file de l'archive des salons
+ *
+ * Usage : java Benchmark.BenchmarkSuite [options de Harnais]
+ * Exemple : java Benchmark.BenchmarkSuite --json=v2.json --comparer=v1.json
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class BenchmarkSuite {
+
+    private static final int[] TAILLES = {64, 1024, 16 * 1024};
+    private static final int[] DESTINATAIRES = {10, 100, 1000};
+
+    public static void main(String[] args) throws Exception {
+        Harnais harnais = new Harnais(args);
+        SecretKey cle = AES.genererCle(128);
+
+        for (int taille : TAILLES) {
+            String message = texte(taille);
+            byte[] clair = new byte[taille];
+
+            harnais.mesurer("aes.ecb.chiffrer", "taille", taille,
+                    () -> AES.crypteAESOctets(message, cle).length);
+            byte[] ecb = AES.crypteAESOctets(message, cle);
+            harnais.mesurer("aes.ecb.dechiffrer", "taille", taille,
+                    () -> AES.decrypteAES(ByteBuffer.wrap(ecb), cle).length());
+
+            CanalAES canal = CanalAES.gcm(cle, CanalAES.SENS_SERVEUR);
+            harnais.mesurer("aes.gcm.chiffrer", "taille", taille,
+                    () -> canal.chiffrer(message).length);
+            // Déchiffrement sans la fenêtre anti-rejeu de CanalAES (le même message est rejoué)
+            byte[] nonce = new byte[AES.TAILLE_NONCE];
+            // Un nonce par taille : la même clé ne chiffre jamais deux fois avec le même
+            ByteBuffer.wrap(nonce).putInt(taille);
+            byte[] aad = new byte[0];
+            byte[] gcm = new byte[taille + AES.TAILLE_TAG];
+            AES.crypteGCM(ByteBuffer.wrap(clair), ByteBuffer.wrap(gcm), nonce, aad, cle);
+            ByteBuffer retour = ByteBuffer.allocate(taille);
+            harnais.mesurer("aes.gcm.dechiffrer", "taille", taille, () -> {
+                retour.clear();
+                return AES.decrypteGCM(ByteBuffer.wrap(gcm), retour, nonce, aad, cle);
+            });
+
+            String base64 = Base64.getEncoder().encodeToString(ecb);
+            harnais.mesurer("base64.encoder", "taille", taille,
+                    () -> Base64.getEncoder().encodeToString(ecb).length());
+            harnais.mesurer("base64.decoder", "taille", taille,
+                    () -> Base64.getDecoder().decode(base64).length);
+
+            // Cadrage seul : les trames partent dans un flux nul
+            ObjectOutputStream objets = new ObjectOutputStream(OutputStream.nullOutputStream());
+            int[] trames = {0};
+            harnais.mesurer("cadrage.flux-objet", "taille", taille, () -> {
+                // writeUnshared : chaque message est une nouvelle String, jamais une référence
+                objets.writeUnshared(base64);
+                objets.flush();
+                // Comme le serveur : TC_RESET régulier pour borner la table de poignées
+                if (++trames[0] % 64 == 0) {
+                    objets.reset();
+                }
+                return trames[0];
+            });
+            FluxBinaire binaire = fluxBinaire();
+            harnais.mesurer("cadrage.binaire", "taille", taille, () -> {
+                binaire.ajouter(ProtocoleBinaire.TYPE_MESSAGE, ecb);
+                binaire.pousser();
+                return ecb.length;
+            });
+        }
+
+        Commande commande = new Commande();
+        String[] commandes = {
+                "[Général]alice: gcm:q83vEjRWeJCrze8SNFZ4kKvN7xI0VniQq83vEjRWeJCrze8SNFZ4kA==",
+                "CHANGE_ROOM:Jeux",
+                "PRIVATE_MSG:bob:q83vEjRWeJCrze8SNFZ4kKvN7xI0VniQ",
+                "SET_USERNAME:carole",
+                "bonjour tout le monde"
+        };
+        int[] suivante = {0};
+        harnais.mesurer("commande.decoder", () -> {
+            commande.decoder(commandes[suivante[0]++ % commandes.length]);
+            return commande.getCode();
+        });
+
+        String messageSalon = "[Général]alice: " + CanalAES.PREFIXE_GCM
+                + Base64.getEncoder().encodeToString(new byte[100 + AES.TAILLE_NONCE + AES.TAILLE_TAG]);
+        for (int n : DESTINATAIRES) {
+            RegistreSalons<Destinataire> salons = new RegistreSalons<>();
+            Salon<Destinataire> salon = salons.obtenir("Général");
+            for (int i = 0; i < n; i++) {
+                salon.ajouter(new Destinataire(AES.genererCle(128)));
+            }
+            Destinataire expediteur = salon.membres().get(0);
+            harnais.mesurer("diffusion", "destinataires", n, () -> diffuser(salon, expediteur, messageSalon));
+        }
+
+        // Archive dans un répertoire temporaire : segments de 64 Mo, écriture groupée toutes les 200 ms
+        Path repertoire = Files.createTempDirectory("archive-benchmark");
+        try (ArchiveSalons archive = new ArchiveSalons(repertoire, 64 * 1024 * 1024, 0, 0, 200)) {
+            harnais.mesurer("archive.ajouter", () -> archive.ajouter("Général", messageSalon) ? 1 : 0);
+        } finally {
+            try (Stream<Path> fichiers = Files.walk(repertoire)) {
+                for (Path f : fichiers.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(f);
+                }
+            }
+        }
+
+        System.exit(harnais.terminer());
+    }
+
+    /**
+     * Destinataire en mémoire : son canal personnel et une file de sortie bornée,
+     * comme un client du serveur mais sans réseau.
+     */
+    private static final class Destinataire {
+        final CanalAES canal;
+        final ArrayDeque<byte[]> file = new ArrayDeque<>();
+
+        Destinataire(SecretKey cle) {
+            this.canal = CanalAES.gcm(cle, CanalAES.SENS_SERVEUR);
+        }
+
+        void recevoir(byte[] trame) {
+            if (file.size() >= 1024) {
+                file.pollFirst();
+            }
+            file.addLast(trame);
+        }
+    }
+
+    /**
+     * Même travail que gestionnaireClientGUI.broadcast : instantané des membres,
+     * chiffrement avec la clé de chaque destinataire, dépôt dans sa file.
+     */
+    private static long diffuser(Salon<Destinataire> salon, Destinataire expediteur, String message)
+            throws Exception {
+        long octets = 0;
+        for (Destinataire d : salon.membres()) {
+            if (d != expediteur) {
+                byte[] trame = d.canal.chiffrer(message);
+                d.recevoir(trame);
+                octets += trame.length;
+            }
+        }
+        return octets;
+    }
+
+    /**
+     * @return Un flux binaire côté serveur, négocié, qui écrit dans un flux nul
+     */
+    private static FluxBinaire fluxBinaire() throws Exception {
+        ByteBuffer offre = ProtocoleBinaire.encoderNegociation(ProtocoleBinaire.VERSION, ProtocoleBinaire.CAPACITES);
+        return FluxBinaire.accepter(new ByteArrayInputStream(offre.array(), 0, offre.remaining()),
+                OutputStream.nullOutputStream());
+    }
+
+    private static String texte(int taille) {
+        StringBuilder sb = new StringBuilder(taille);
+        while (sb.length() < taille) {
+            sb.append("Bonjour à tous ! ");
+        }
+        sb.setLength(taille);
+        return sb.toString();
+    }
+}
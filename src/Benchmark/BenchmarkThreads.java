@@ -0,0 +1,146 @@
+package Benchmark;
+
+import Server.ServerGUI;
+import Server.gestionnaireClientGUI;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Benchmark de capacité : threads plateforme contre threads virtuels.
+ * Ouvre N connexions inactives sur un serveur local (gestionnaireClientGUI)
+ * et mesure la mémoire et le nombre de threads par connexion.
+ *
+ * Chaque mode tourne dans sa propre JVM pour ne pas mélanger les mesures.
+ *
+ * Usage : java Benchmark.BenchmarkThreads [connexions]
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class BenchmarkThreads {
+
+    private static final byte[] ENTETE_FLUX_OBJET = {(byte) 0xAC, (byte) 0xED, 0x00, 0x05};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2) {
+            mesurer(args[0], Integer.parseInt(args[1]));
+            return;
+        }
+
+        int connexions = args.length == 1 ? Integer.parseInt(args[0]) : 2000;
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+
+        System.out.println("Benchmark threads plateforme / virtuels : " + connexions + " connexions");
+        System.out.println();
+        for (String mode : new String[]{"threads", "virtuels"}) {
+            Process p = new ProcessBuilder(java, "-cp", classpath, BenchmarkThreads.class.getName(),
+                    mode, String.valueOf(connexions))
+                    .inheritIO()
+                    .start();
+            p.waitFor();
+        }
+    }
+
+    /**
+     * Mesure un mode dans la JVM courante.
+     *
+     * @param mode "threads" ou "virtuels"
+     * @param connexions Nombre de connexions à ouvrir
+     */
+    private static void mesurer(String mode, int connexions) throws Exception {
+        PrintStream console = System.out;
+        // Les logs du serveur fausseraient la mesure
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+
+        ServerSocket serveur = new ServerSocket(0, 4096, InetAddress.getLoopbackAddress());
+        ExecutorService executeur = ServerGUI.creerExecuteur(mode.equals("virtuels"));
+        Thread accepteur = new Thread(() -> {
+            try {
+                ServerGUI.accepterClients(serveur, executeur);
+            } catch (IOException ignored) {
+            }
+        });
+        accepteur.setDaemon(true);
+        accepteur.start();
+
+        // Laisser la JVM se stabiliser avant la mesure de référence
+        Thread.sleep(500);
+        long tasAvant = tasUtilise();
+        long rssAvant = rss();
+        int threadsAvant = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        List<Socket> sockets = new ArrayList<>();
+        long debut = System.nanoTime();
+        try {
+            for (int i = 0; i < connexions; i++) {
+                Socket s = new Socket(InetAddress.getLoopbackAddress(), serveur.getLocalPort());
+                s.getOutputStream().write(ENTETE_FLUX_OBJET);
+                s.getOutputStream().flush();
+                sockets.add(s);
+            }
+        } catch (IOException | OutOfMemoryError e) {
+            console.println("[" + mode + "] arrêt à " + sockets.size() + " connexions : " + e);
+        }
+
+        // Attendre que tous les gestionnaires soient bloqués dans readObject
+        long limite = System.currentTimeMillis() + 30_000;
+        while (gestionnaireClientGUI.getNombreClients() < sockets.size() && System.currentTimeMillis() < limite) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(1000);
+        double dureeMs = (System.nanoTime() - debut) / 1e6;
+
+        long tasApres = tasUtilise();
+        long rssApres = rss();
+        int threadsApres = ManagementFactory.getThreadMXBean().getThreadCount();
+        int n = Math.max(1, sockets.size());
+
+        console.printf("[%-8s] connexions=%d  durée=%.0f ms  threads=%d  tas/connexion=%.1f Ko  rss/connexion=%.1f Ko%n",
+                mode, sockets.size(), dureeMs, threadsApres - threadsAvant,
+                (tasApres - tasAvant) / 1024.0 / n,
+                rssAvant < 0 ? Double.NaN : (rssApres - rssAvant) / 1024.0 / n);
+
+        for (Socket s : sockets) {
+            s.close();
+        }
+        serveur.close();
+        System.exit(0);
+    }
+
+    private static long tasUtilise() throws InterruptedException {
+        System.gc();
+        Thread.sleep(200);
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Mémoire résidente du processus (Linux uniquement), -1 sinon.
+     */
+    private static long rss() {
+        File status = new File("/proc/self/status");
+        if (!status.exists()) return -1;
+        try {
+            for (String ligne : Files.readAllLines(status.toPath())) {
+                if (ligne.startsWith("VmRSS:")) {
+                    return Long.parseLong(ligne.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException ignored) {
+        }
+        return -1;
+    }
+}
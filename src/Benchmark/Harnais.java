@@ -0,0 +1,354 @@
+package Benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Petit harnais de microbenchmarks, sur le modèle de JMH (mode "avgt").
+ *
+ * Chaque benchmark passe par des itérations de préchauffage (compilation JIT)
+ * puis des itérations de mesure d'une durée fixe. Le score est la moyenne des
+ * ns/op des itérations, avec son erreur à 99,9 % (loi de Student) ; les octets
+ * alloués par opération sont relevés avec ThreadMXBean (comme le profileur gc de JMH).
+ *
+ * Les résultats s'exportent en JSON (mêmes champs que "jmh -rf json", lisible par
+ * les outils JMH) et en CSV, et peuvent être comparés à un export précédent pour
+ * repérer les régressions d'une version à l'autre.
+ *
+ * Options :
+ * --prechauffage=N   Itérations de préchauffage (par défaut : 3)
+ * --iterations=N     Itérations de mesure (par défaut : 5)
+ * --duree-ms=MS      Durée d'une itération (par défaut : 500)
+ * --filtre=REGEX     Ne lance que les benchmarks dont le nom correspond
+ * --json=FICHIER     Écrit les résultats en JSON
+ * --csv=FICHIER      Écrit les résultats en CSV
+ * --comparer=FICHIER Compare au JSON d'une version précédente
+ * --seuil=PCT        Ralentissement toléré par la comparaison (par défaut : 10)
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public final class Harnais {
+
+    /**
+     * Une opération mesurée. Elle renvoie une valeur qui dépend de son travail,
+     * consommée par le harnais pour que le JIT ne puisse pas le supprimer.
+     */
+    public interface Operation {
+        long executer() throws Exception;
+    }
+
+    /**
+     * Quantiles 0,9995 de la loi de Student pour 1 à 10 degrés de liberté.
+     */
+    private static final double[] STUDENT = {636.62, 31.60, 12.92, 8.61, 6.87, 5.96, 5.41, 5.04, 4.78, 4.59};
+
+    // Durée visée d'un lot d'opérations entre deux lectures de l'horloge
+    private static final long DUREE_LOT_NS = 100_000;
+
+    // Reçoit les valeurs des opérations
+    static volatile long puits;
+
+    private final int prechauffages;
+    private final int iterations;
+    private final long dureeNs;
+    private final Pattern filtre;
+    private final String json;
+    private final String csv;
+    private final String reference;
+    private final double seuil;
+    private final List<Resultat> resultats = new ArrayList<>();
+    private final com.sun.management.ThreadMXBean mx =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Résultat d'un benchmark.
+     */
+    private static final class Resultat {
+        final String nom;
+        final String parametre;
+        final String valeur;
+        final double[] nsParOp;
+        final double[] octetsParOp;
+
+        Resultat(String nom, String parametre, String valeur, double[] nsParOp, double[] octetsParOp) {
+            this.nom = nom;
+            this.parametre = parametre;
+            this.valeur = valeur;
+            this.nsParOp = nsParOp;
+            this.octetsParOp = octetsParOp;
+        }
+
+        String cle() {
+            return parametre == null ? nom : nom + "{" + parametre + "=" + valeur + "}";
+        }
+    }
+
+    /**
+     * @param args Options de la ligne de commande (voir la description de la classe)
+     */
+    public Harnais(String[] args) {
+        int p = 3;
+        int n = 5;
+        long ms = 500;
+        String f = null;
+        String j = null;
+        String c = null;
+        String r = null;
+        double s = 10;
+        for (String arg : args) {
+            if (arg.startsWith("--prechauffage=")) {
+                p = Integer.parseInt(arg.substring(15));
+            } else if (arg.startsWith("--iterations=")) {
+                n = Math.max(1, Integer.parseInt(arg.substring(13)));
+            } else if (arg.startsWith("--duree-ms=")) {
+                ms = Long.parseLong(arg.substring(11));
+            } else if (arg.startsWith("--filtre=")) {
+                f = arg.substring(9);
+            } else if (arg.startsWith("--json=")) {
+                j = arg.substring(7);
+            } else if (arg.startsWith("--csv=")) {
+                c = arg.substring(6);
+            } else if (arg.startsWith("--comparer=")) {
+                r = arg.substring(11);
+            } else if (arg.startsWith("--seuil=")) {
+                s = Double.parseDouble(arg.substring(8));
+            }
+        }
+        this.prechauffages = p;
+        this.iterations = n;
+        this.dureeNs = ms * 1_000_000;
+        this.filtre = f == null ? null : Pattern.compile(f);
+        this.json = j;
+        this.csv = c;
+        this.reference = r;
+        this.seuil = s;
+
+        System.out.println("JVM : " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version")
+                + " | préchauffage " + p + " x " + ms + " ms, mesure " + n + " x " + ms + " ms");
+        System.out.println();
+        System.out.printf("%-32s %-16s %14s %12s %12s%n", "Benchmark", "Paramètre", "ns/op", "± (99,9%)", "octets/op");
+    }
+
+    /**
+     * Mesure un benchmark sans paramètre.
+     *
+     * @param nom Nom du benchmark
+     * @param operation L'opération à mesurer
+     * @throws Exception Si l'opération échoue
+     */
+    public void mesurer(String nom, Operation operation) throws Exception {
+        mesurer(nom, null, null, operation);
+    }
+
+    /**
+     * Mesure un benchmark pour une valeur de paramètre.
+     *
+     * @param nom Nom du benchmark
+     * @param parametre Nom du paramètre (ou null)
+     * @param valeur Valeur du paramètre
+     * @param operation L'opération à mesurer
+     * @throws Exception Si l'opération échoue
+     */
+    public void mesurer(String nom, String parametre, Object valeur, Operation operation) throws Exception {
+        if (filtre != null && !filtre.matcher(nom).find()) {
+            return;
+        }
+        long lot = 1;
+        double[] mesure = new double[2];
+        for (int i = 0; i < prechauffages; i++) {
+            iteration(operation, lot, mesure);
+            lot = tailleLot(mesure[0]);
+        }
+        double[] ns = new double[iterations];
+        double[] octets = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            iteration(operation, lot, mesure);
+            ns[i] = mesure[0];
+            octets[i] = mesure[1];
+            lot = tailleLot(mesure[0]);
+        }
+        Resultat r = new Resultat(nom, parametre, valeur == null ? null : String.valueOf(valeur), ns, octets);
+        resultats.add(r);
+        System.out.printf(Locale.ROOT, "%-32s %-16s %14.1f %12.1f %12.1f%n", nom,
+                parametre == null ? "" : parametre + "=" + valeur, moyenne(ns), erreur(ns), moyenne(octets));
+    }
+
+    /**
+     * Une itération : des lots d'opérations jusqu'à la fin de la durée.
+     *
+     * @param mesure Reçoit {ns/op, octets/op}
+     */
+    private void iteration(Operation operation, long lot, double[] mesure) throws Exception {
+        long thread = Thread.currentThread().threadId();
+        long somme = 0;
+        long operations = 0;
+        long octetsDebut = mx.getThreadAllocatedBytes(thread);
+        long debut = System.nanoTime();
+        long fin = debut + dureeNs;
+        long maintenant;
+        do {
+            for (long i = 0; i < lot; i++) {
+                somme += operation.executer();
+            }
+            operations += lot;
+            maintenant = System.nanoTime();
+        } while (maintenant < fin);
+        long octets = mx.getThreadAllocatedBytes(thread) - octetsDebut;
+        puits = somme;
+        mesure[0] = (double) (maintenant - debut) / operations;
+        mesure[1] = (double) octets / operations;
+    }
+
+    private static long tailleLot(double nsParOp) {
+        return Math.max(1, Math.min(1 << 20, (long) (DUREE_LOT_NS / Math.max(1, nsParOp))));
+    }
+
+    private static double moyenne(double[] valeurs) {
+        double somme = 0;
+        for (double v : valeurs) {
+            somme += v;
+        }
+        return somme / valeurs.length;
+    }
+
+    /**
+     * @return Demi-largeur de l'intervalle de confiance à 99,9 % de la moyenne
+     */
+    private static double erreur(double[] valeurs) {
+        int n = valeurs.length;
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double m = moyenne(valeurs);
+        double carres = 0;
+        for (double v : valeurs) {
+            carres += (v - m) * (v - m);
+        }
+        double ecartType = Math.sqrt(carres / (n - 1));
+        double t = n - 1 <= STUDENT.length ? STUDENT[n - 2] : 3.291;
+        return t * ecartType / Math.sqrt(n);
+    }
+
+    /**
+     * Écrit les exports demandés et compare à la version de référence.
+     *
+     * @return 0, ou 1 si la comparaison a trouvé une régression
+     * @throws IOException Si un fichier ne peut être lu ou écrit
+     */
+    public int terminer() throws IOException {
+        if (json != null) {
+            Files.writeString(Path.of(json), enJson(), StandardCharsets.UTF_8);
+            System.out.println("\nRésultats JSON : " + json);
+        }
+        if (csv != null) {
+            Files.writeString(Path.of(csv), enCsv(), StandardCharsets.UTF_8);
+            System.out.println("Résultats CSV : " + csv);
+        }
+        return reference == null ? 0 : comparer(Files.readString(Path.of(reference), StandardCharsets.UTF_8));
+    }
+
+    private String enJson() {
+        StringBuilder sb = new StringBuilder("[\n");
+        for (int i = 0; i < resultats.size(); i++) {
+            Resultat r = resultats.get(i);
+            sb.append("    {\n");
+            sb.append("        \"benchmark\" : \"").append(r.nom).append("\",\n");
+            sb.append("        \"mode\" : \"avgt\",\n");
+            sb.append("        \"threads\" : 1,\n");
+            sb.append("        \"jdkVersion\" : \"").append(System.getProperty("java.version")).append("\",\n");
+            sb.append("        \"vmName\" : \"").append(System.getProperty("java.vm.name")).append("\",\n");
+            sb.append("        \"warmupIterations\" : ").append(prechauffages).append(",\n");
+            sb.append("        \"measurementIterations\" : ").append(iterations).append(",\n");
+            sb.append("        \"measurementTime\" : \"").append(dureeNs / 1_000_000).append(" ms\",\n");
+            sb.append("        \"params\" : {");
+            if (r.parametre != null) {
+                sb.append(" \"").append(r.parametre).append("\" : \"").append(r.valeur).append("\" ");
+            }
+            sb.append("},\n");
+            sb.append("        \"primaryMetric\" : ");
+            metriqueJson(sb, r.nsParOp, "ns/op");
+            sb.append(",\n        \"secondaryMetrics\" : {\n            \"gc.alloc.rate.norm\" : ");
+            metriqueJson(sb, r.octetsParOp, "B/op");
+            sb.append("\n        }\n    }").append(i + 1 < resultats.size() ? ",\n" : "\n");
+        }
+        return sb.append("]\n").toString();
+    }
+
+    private static void metriqueJson(StringBuilder sb, double[] valeurs, String unite) {
+        double e = erreur(valeurs);
+        sb.append("{ \"score\" : ").append(nombre(moyenne(valeurs)))
+                .append(", \"scoreError\" : ").append(Double.isNaN(e) ? "\"NaN\"" : nombre(e))
+                .append(", \"scoreUnit\" : \"").append(unite).append("\", \"rawData\" : [ [ ");
+        for (int i = 0; i < valeurs.length; i++) {
+            sb.append(i > 0 ? ", " : "").append(nombre(valeurs[i]));
+        }
+        sb.append(" ] ] }");
+    }
+
+    private String enCsv() {
+        StringBuilder sb = new StringBuilder("benchmark,parametre,valeur,iterations,ns_par_op,erreur_99_9,octets_par_op\n");
+        for (Resultat r : resultats) {
+            sb.append(r.nom).append(',')
+                    .append(r.parametre == null ? "" : r.parametre).append(',')
+                    .append(r.valeur == null ? "" : r.valeur).append(',')
+                    .append(iterations).append(',')
+                    .append(nombre(moyenne(r.nsParOp))).append(',')
+                    .append(nombre(erreur(r.nsParOp))).append(',')
+                    .append(nombre(moyenne(r.octetsParOp))).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String nombre(double v) {
+        return String.format(Locale.ROOT, "%.3f", v);
+    }
+
+    /**
+     * Compare les scores à ceux d'un export JSON précédent (même benchmark, même paramètre).
+     *
+     * @param ancien Contenu du JSON de référence
+     * @return 1 si un benchmark a ralenti de plus du seuil, 0 sinon
+     */
+    private int comparer(String ancien) {
+        Pattern entree = Pattern.compile("\"benchmark\" : \"([^\"]*)\".*?\"params\" : \\{([^}]*)}"
+                + ".*?\"primaryMetric\" : \\{ \"score\" : ([0-9.eE+-]+)", Pattern.DOTALL);
+        Pattern param = Pattern.compile("\"([^\"]*)\" : \"([^\"]*)\"");
+        Map<String, Double> scores = new LinkedHashMap<>();
+        Matcher m = entree.matcher(ancien);
+        while (m.find()) {
+            Matcher p = param.matcher(m.group(2));
+            String cle = p.find() ? m.group(1) + "{" + p.group(1) + "=" + p.group(2) + "}" : m.group(1);
+            scores.put(cle, Double.parseDouble(m.group(3)));
+        }
+
+        System.out.println("\nComparaison avec " + reference + " (seuil " + seuil + " %) :");
+        int regressions = 0;
+        for (Resultat r : resultats) {
+            Double avant = scores.get(r.cle());
+            if (avant == null) {
+                continue;
+            }
+            double apres = moyenne(r.nsParOp);
+            double ecart = (apres - avant) / avant * 100;
+            boolean regression = ecart > seuil;
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf(Locale.ROOT, "%-48s %12.1f -> %12.1f ns/op  %+7.1f %%%s%n",
+                    r.cle(), avant, apres, ecart, regression ? "  RÉGRESSION" : "");
+        }
+        System.out.println(regressions == 0 ? "Aucune régression." : regressions + " régression(s).");
+        return regressions == 0 ? 0 : 1;
+    }
+}
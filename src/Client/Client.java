@@ -1,12 +1,15 @@
 package Client;
 
-import Cryptage.AES;
+import Cryptage.CanalAES;
+import Protocole.FluxBinaire;
+import Protocole.ProtocoleBinaire;
 
 import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.Base64;
 import java.util.Scanner;
 
@@ -44,17 +47,18 @@ public class Client {
         try (Socket serveur = new Socket(SERVEUR_ADRESSE, PORT)) {
             System.out.println("Connecté au serveur !");
 
-            ObjectOutputStream out = new ObjectOutputStream(serveur.getOutputStream());
-            out.flush();
-            ObjectInputStream in = new ObjectInputStream(serveur.getInputStream());
+            // Negociation du protocole binaire
+            FluxBinaire flux = FluxBinaire.connecter(serveur);
 
             // Reception de la cle AES du serveur
-            Object kobj = in.readObject();
-            byte[] keyBytes = (byte[]) kobj;
+            byte[] keyBytes = flux.lire(ProtocoleBinaire.TYPE_CLE);
 
             SecretKey cleAESClient = new SecretKeySpec(keyBytes, "AES");
+            CanalAES canal = CanalAES.pour(cleAESClient, flux.supporte(ProtocoleBinaire.CAPACITE_GCM),
+                    CanalAES.SENS_CLIENT);
 
-            System.out.println("Clé AES reçue : " + Base64.getEncoder().encodeToString(keyBytes));
+            System.out.println("Clé AES reçue : " + Base64.getEncoder().encodeToString(keyBytes)
+                    + (canal.isGcm() ? " (AES-GCM)" : " (AES-ECB)"));
 
             Scanner scanner = new Scanner(System.in);
 
@@ -62,8 +66,8 @@ public class Client {
             new Thread(() -> {
                 try {
                     while (true) {
-                        String messageChiffre = (String) in.readObject();
-                        String message = AES.decrypteAES(messageChiffre, cleAESClient);
+                        byte[] messageChiffre = flux.lire(ProtocoleBinaire.TYPE_MESSAGE);
+                        String message = canal.dechiffrer(ByteBuffer.wrap(messageChiffre));
                         System.out.println("\n[Message reçu] : " + message);
                         System.out.print("Votre message > ");
                     }
@@ -79,9 +83,7 @@ public class Client {
 
                 System.out.print("Votre message > ");
                 String msg = scanner.nextLine();
-                String msgChiffre = AES.crypteAES(msg, cleAESClient);
-                out.writeObject(msgChiffre);
-                out.flush();
+                flux.ecrire(ProtocoleBinaire.TYPE_MESSAGE, canal.chiffrer(msg));
 
                 connexionFerme = msg.equalsIgnoreCase("bye");
             }
@@ -0,0 +1,388 @@
+package Client;
+
+import Cryptage.CanalAES;
+import Protocole.FluxBinaire;
+import Protocole.ProtocoleBinaire;
+import Server.Histogramme;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Générateur de charge sans interface : des milliers d'utilisateurs simulés sur
+ * un ServerGUI local, avec le vrai protocole d'un client.
+ *
+ * Chaque utilisateur négocie le protocole binaire, reçoit sa clé personnelle et la
+ * clé du salon Général (ROOM_KEY:), envoie SET_USERNAME: puis CHANGE_ROOM: et attend
+ * la clé de son salon. Il publie ensuite des messages de salon chiffrés comme
+ * ChatClientGUI ("[salon]pseudo: contenu"), et déchiffre tous ceux qu'il reçoit.
+ *
+ * Chaque message porte l'instant prévu de son envoi (même JVM, même horloge
+ * monotone) : à la réception, la latence de bout en bout est enregistrée dans un
+ * histogramme. L'instant prévu, et non l'instant réel, évite de masquer les
+ * retards quand l'émetteur lui-même prend du retard (omission coordonnée).
+ *
+ * Options :
+ * --hote=H             Serveur (par défaut : interface locale)
+ * --port=P             Port (par défaut : 4444)
+ * --utilisateurs=N     Utilisateurs simulés (par défaut : 1000)
+ * --salons=N           Salons utilisés (par défaut : 20)
+ * --zipf=S             Répartition des utilisateurs dans les salons : 0 uniforme (par défaut),
+ *                      S &gt; 0 loi de Zipf (quelques salons très peuplés)
+ * --debit=R            Messages par seconde et par utilisateur (par défaut : 0.2)
+ * --loi=L              Intervalles entre messages : poisson (par défaut) ou constante
+ * --emetteurs=PCT      Part des utilisateurs qui écrivent (par défaut : 100)
+ * --taille=O           Taille du texte d'un message en octets (par défaut : 100)
+ * --duree=S            Durée de la phase d'envoi en secondes (par défaut : 30)
+ * --montee=S           Durée de la phase de connexion en secondes (par défaut : 5)
+ *
+ * Usage : java Client.GenerateurCharge [options]
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class GenerateurCharge {
+
+    private String hote = InetAddress.getLoopbackAddress().getHostAddress();
+    private int port = 4444;
+    private int utilisateurs = 1000;
+    private int salons = 20;
+    private double zipf = 0;
+    private double debit = 0.2;
+    private boolean poisson = true;
+    private double emetteurs = 100;
+    private int taille = 100;
+    private double duree = 30;
+    private double montee = 5;
+
+    // Préfixe des pseudos : deux exécutions simultanées ne se gênent pas
+    private final String session = Long.toString(System.currentTimeMillis() % 100_000, 36);
+
+    private final Histogramme latences = new Histogramme();
+    private final LongAdder envoyes = new LongAdder();
+    private final LongAdder recus = new LongAdder();
+    private final LongAdder erreurs = new LongAdder();
+    private AtomicLongArray envoyesParSalon;
+    private int[] membresParSalon;
+
+    public static void main(String[] args) throws Exception {
+        GenerateurCharge generateur = new GenerateurCharge();
+        for (String arg : args) {
+            generateur.option(arg);
+        }
+        generateur.lancer();
+    }
+
+    private void option(String arg) {
+        String valeur = arg.substring(arg.indexOf('=') + 1);
+        if (arg.startsWith("--hote=")) {
+            hote = valeur;
+        } else if (arg.startsWith("--port=")) {
+            port = Integer.parseInt(valeur);
+        } else if (arg.startsWith("--utilisateurs=")) {
+            utilisateurs = Integer.parseInt(valeur);
+        } else if (arg.startsWith("--salons=")) {
+            salons = Math.max(1, Integer.parseInt(valeur));
+        } else if (arg.startsWith("--zipf=")) {
+            zipf = Double.parseDouble(valeur);
+        } else if (arg.startsWith("--debit=")) {
+            debit = Double.parseDouble(valeur);
+        } else if (arg.startsWith("--loi=")) {
+            if (!valeur.equals("poisson") && !valeur.equals("constante")) {
+                throw new IllegalArgumentException("Loi inconnue : " + valeur);
+            }
+            poisson = valeur.equals("poisson");
+        } else if (arg.startsWith("--emetteurs=")) {
+            emetteurs = Double.parseDouble(valeur);
+        } else if (arg.startsWith("--taille=")) {
+            taille = Integer.parseInt(valeur);
+        } else if (arg.startsWith("--duree=")) {
+            duree = Double.parseDouble(valeur);
+        } else if (arg.startsWith("--montee=")) {
+            montee = Double.parseDouble(valeur);
+        } else {
+            throw new IllegalArgumentException("Option inconnue : " + arg);
+        }
+    }
+
+    /**
+     * Connexion de tous les utilisateurs, phase d'envoi, vidange, puis rapport.
+     */
+    private void lancer() throws Exception {
+        System.out.println("Générateur de charge : " + utilisateurs + " utilisateurs, " + salons + " salons"
+                + (zipf > 0 ? " (Zipf " + zipf + ")" : "") + ", " + debit + " msg/s/utilisateur ("
+                + (poisson ? "poisson" : "constante") + "), " + hote + ":" + port);
+
+        envoyesParSalon = new AtomicLongArray(salons);
+        membresParSalon = new int[salons];
+        SplittableRandom aleatoire = new SplittableRandom(42);
+        double[] cumul = repartition();
+
+        // Phase 1 : connexions étalées sur la montée
+        List<Utilisateur> connectes = new ArrayList<>();
+        CountDownLatch prets = new CountDownLatch(utilisateurs);
+        long debutMontee = System.nanoTime();
+        long pas = utilisateurs > 1 ? (long) (montee * 1e9 / utilisateurs) : 0;
+        for (int i = 0; i < utilisateurs; i++) {
+            int salon = tirerSalon(cumul, aleatoire.nextDouble());
+            boolean emetteur = aleatoire.nextDouble() * 100 < emetteurs;
+            Utilisateur u = new Utilisateur(i, salon, emetteur, aleatoire.split());
+            LockSupport.parkNanos(debutMontee + i * pas - System.nanoTime());
+            Thread.ofVirtual().name("connexion-" + i).start(() -> {
+                try {
+                    u.connecter();
+                    synchronized (connectes) {
+                        connectes.add(u);
+                        membresParSalon[u.salon]++;
+                    }
+                } catch (Exception e) {
+                    erreurs.increment();
+                    System.err.println("Connexion " + u.pseudo + " impossible : " + e.getMessage());
+                } finally {
+                    prets.countDown();
+                }
+            });
+        }
+        prets.await();
+        System.out.printf(Locale.ROOT, "%d/%d connectés en %.1f s%n",
+                connectes.size(), utilisateurs, (System.nanoTime() - debutMontee) / 1e9);
+
+        // Phase 2 : envoi pendant la durée demandée
+        for (Utilisateur u : connectes) {
+            u.demarrerLecture();
+        }
+        long debut = System.nanoTime();
+        long fin = debut + (long) (duree * 1e9);
+        List<Thread> ecrivains = new ArrayList<>();
+        for (Utilisateur u : connectes) {
+            if (u.emetteur) {
+                ecrivains.add(Thread.ofVirtual().name("envoi-" + u.pseudo).start(() -> u.envoyer(debut, fin)));
+            }
+        }
+        long secondes = 0;
+        while (System.nanoTime() < fin) {
+            LockSupport.parkNanos(debut + (++secondes) * 1_000_000_000L - System.nanoTime());
+            System.out.printf(Locale.ROOT, "[%3ds] envoyés: %d | reçus: %d | p50: %.2f ms | p99: %.2f ms%n",
+                    secondes, envoyes.sum(), recus.sum(), latences.quantile(0.5) / 1e6, latences.quantile(0.99) / 1e6);
+        }
+        for (Thread t : ecrivains) {
+            t.join();
+        }
+        double envoi = (System.nanoTime() - debut) / 1e9;
+
+        // Phase 3 : laisser arriver les derniers messages, puis rapport
+        long attendus = 0;
+        for (int s = 0; s < salons; s++) {
+            attendus += envoyesParSalon.get(s) * Math.max(0, membresParSalon[s] - 1);
+        }
+        long limite = System.nanoTime() + 5_000_000_000L;
+        while (recus.sum() < attendus && System.nanoTime() < limite) {
+            LockSupport.parkNanos(50_000_000L);
+        }
+        for (Utilisateur u : connectes) {
+            u.fermer();
+        }
+        rapport(envoi, attendus);
+    }
+
+    private void rapport(double secondes, long attendus) {
+        long n = envoyes.sum();
+        long r = recus.sum();
+        System.out.println();
+        System.out.println("===== RÉSULTATS =====");
+        System.out.printf(Locale.ROOT, "Messages envoyés  : %d (%.0f msg/s)%n", n, n / secondes);
+        System.out.printf(Locale.ROOT, "Messages livrés   : %d / %d attendus (%.0f livraisons/s)%n",
+                r, attendus, r / secondes);
+        System.out.println("Erreurs           : " + erreurs.sum());
+        System.out.printf(Locale.ROOT, "Latence (ms)      : p50 %.2f | p99 %.2f | p999 %.2f | max %.2f | moyenne %.2f%n",
+                latences.quantile(0.5) / 1e6, latences.quantile(0.99) / 1e6, latences.quantile(0.999) / 1e6,
+                latences.quantile(1.0) / 1e6,
+                latences.getNombre() == 0 ? 0 : latences.getSomme() / 1e6 / latences.getNombre());
+    }
+
+    /**
+     * @return Probabilités cumulées des salons (uniforme, ou Zipf d'exposant zipf)
+     */
+    private double[] repartition() {
+        double[] cumul = new double[salons];
+        double total = 0;
+        for (int s = 0; s < salons; s++) {
+            total += 1 / Math.pow(s + 1, zipf);
+            cumul[s] = total;
+        }
+        for (int s = 0; s < salons; s++) {
+            cumul[s] /= total;
+        }
+        return cumul;
+    }
+
+    private static int tirerSalon(double[] cumul, double u) {
+        for (int s = 0; s < cumul.length; s++) {
+            if (u < cumul[s]) return s;
+        }
+        return cumul.length - 1;
+    }
+
+    private static String nomSalon(int salon) {
+        return "charge-" + (salon + 1);
+    }
+
+    /**
+     * Un utilisateur simulé : une connexion, un lecteur et, s'il écrit, un émetteur.
+     */
+    private final class Utilisateur {
+        final String pseudo;
+        final int salon;
+        final String nomSalon;
+        final boolean emetteur;
+        final SplittableRandom aleatoire;
+        Socket socket;
+        FluxBinaire flux;
+        CanalAES canal;
+        SecretKey cleSalon;
+        // Format du contenu annoncé par le serveur (ROOM_MODE) ; historique en attendant
+        volatile boolean contenuGcm;
+
+        Utilisateur(int numero, int salon, boolean emetteur, SplittableRandom aleatoire) {
+            this.pseudo = "u" + session + "-" + numero;
+            this.salon = salon;
+            this.nomSalon = nomSalon(salon);
+            this.emetteur = emetteur;
+            this.aleatoire = aleatoire;
+        }
+
+        /**
+         * Poignée de main du client réel : clé personnelle, clé du Général,
+         * SET_USERNAME, CHANGE_ROOM, puis clé du salon.
+         */
+        void connecter() throws Exception {
+            socket = new Socket(hote, port);
+            socket.setTcpNoDelay(true);
+            // Un seul salon par utilisateur : pas d'abonnement au Général après CHANGE_ROOM,
+            // et le salon est servi par ce serveur (pas de redirection)
+            flux = FluxBinaire.connecter(socket, ProtocoleBinaire.CAPACITES
+                    & ~(ProtocoleBinaire.CAPACITE_ABONNEMENTS | ProtocoleBinaire.CAPACITE_REDIRECTION));
+            SecretKey cle = new SecretKeySpec(flux.lire(ProtocoleBinaire.TYPE_CLE), "AES");
+            canal = CanalAES.pour(cle, flux.supporte(ProtocoleBinaire.CAPACITE_GCM), CanalAES.SENS_CLIENT);
+            attendreCleSalon();
+            envoyer("SET_USERNAME:" + pseudo);
+            envoyer("CHANGE_ROOM:" + nomSalon);
+            cleSalon = attendreCleSalon();
+        }
+
+        /**
+         * Ignore les trames de service jusqu'à la prochaine clé de salon.
+         */
+        private SecretKey attendreCleSalon() throws Exception {
+            while (true) {
+                String message = recevoir();
+                if (message.startsWith("ROOM_KEY:")) {
+                    // "ROOM_KEY:clé" ou "ROOM_KEY:salon:clé" (CAPACITE_CLE_NOMMEE)
+                    return new SecretKeySpec(Base64.getDecoder().decode(
+                            message.substring(message.lastIndexOf(':') + 1)), "AES");
+                }
+            }
+        }
+
+        void demarrerLecture() {
+            Thread.ofVirtual().name("lecture-" + pseudo).start(() -> {
+                try {
+                    while (true) {
+                        traiter(recevoir());
+                    }
+                } catch (Exception e) {
+                    // Connexion fermée en fin de test
+                }
+            });
+        }
+
+        /**
+         * Déchiffre un message de salon et enregistre sa latence (ou note le
+         * format du contenu du salon, ROOM_MODE).
+         */
+        private void traiter(String message) {
+            if (message.startsWith("ROOM_MODE:")) {
+                String[] parties = message.substring(10).split(":", 2);
+                if (parties[1].equals(nomSalon)) {
+                    contenuGcm = parties[0].equals("gcm");
+                }
+                return;
+            }
+            int finSalon = message.indexOf(']');
+            int finPseudo = message.indexOf(": ", finSalon);
+            // Seuls les messages de son salon (pas les notices "[SYSTÈME] ...")
+            if (finSalon < 0 || finPseudo < 0 || !message.startsWith(nomSalon, 1) || finSalon != nomSalon.length() + 1) {
+                return;
+            }
+            try {
+                String texte = CanalAES.dechiffrerSalon(message.substring(finPseudo + 2),
+                        message.substring(1, finSalon), message.substring(finSalon + 1, finPseudo), cleSalon);
+                long prevu = Long.parseLong(texte.substring(0, texte.indexOf('|')));
+                latences.enregistrer(System.nanoTime() - prevu);
+                recus.increment();
+            } catch (Exception e) {
+                erreurs.increment();
+            }
+        }
+
+        /**
+         * Envoie des messages du début à la fin de la phase, selon la loi choisie.
+         */
+        void envoyer(long debut, long fin) {
+            StringBuilder bourrage = new StringBuilder();
+            while (bourrage.length() < taille) {
+                bourrage.append('x');
+            }
+            long prevu = debut + (long) (aleatoire.nextDouble() * intervalle());
+            try {
+                while (prevu < fin) {
+                    LockSupport.parkNanos(prevu - System.nanoTime());
+                    String texte = prevu + "|" + bourrage;
+                    String contenu = CanalAES.chiffrerSalon(texte, nomSalon, pseudo, cleSalon, contenuGcm);
+                    envoyer("[" + nomSalon + "]" + pseudo + ": " + contenu);
+                    envoyes.increment();
+                    envoyesParSalon.incrementAndGet(salon);
+                    prevu += (long) intervalle();
+                }
+            } catch (Exception e) {
+                erreurs.increment();
+            }
+        }
+
+        /**
+         * @return Intervalle jusqu'au message suivant, en nanosecondes
+         */
+        private double intervalle() {
+            double moyen = 1e9 / debit;
+            return poisson ? -Math.log(1 - aleatoire.nextDouble()) * moyen : moyen;
+        }
+
+        private void envoyer(String message) throws Exception {
+            flux.ecrire(ProtocoleBinaire.TYPE_MESSAGE, canal.chiffrer(message));
+        }
+
+        private String recevoir() throws Exception {
+            return canal.dechiffrer(ByteBuffer.wrap(flux.lire(ProtocoleBinaire.TYPE_MESSAGE)));
+        }
+
+        void fermer() {
+            try {
+                socket.close();
+            } catch (Exception e) {
+                // Déjà fermée
+            }
+        }
+    }
+}
@@ -2,18 +2,159 @@ package Cryptage;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.util.Base64;
 
 /**
  * Classe de chiffrement et dechiffrement AES-128.
  * Fournit des methodes statiques pour generer des cles et chiffrer/dechiffrer des messages.
  *
+ * Performance :
+ * Chaque thread garde son propre contexte (Cipher de chiffrement et de dechiffrement,
+ * encodeur UTF-8, tampon de travail). Cipher.getInstance n'est plus appele a chaque
+ * message et le Cipher n'est reinitialise que si la cle change. Les methodes sur
+ * byte[] et ByteBuffer (directs ou non) n'allouent que le resultat.
+ * L'API String historique reste disponible et s'appuie sur ces methodes.
+ *
+ * Mode authentifie AES-GCM :
+ * "AES" seul correspond a AES/ECB/PKCS5Padding, sans aucune protection d'integrite.
+ * Les methodes *GCM chiffrent en AES/GCM/NoPadding avec un nonce de 96 bits par message
+ * et des donnees associees (authentifiees mais non chiffrees). Le chiffre est suivi
+ * d'un tag de 128 bits ; toute modification du chiffre ou des donnees associees fait
+ * echouer le dechiffrement. FluxGCM permet de chiffrer de gros contenus par morceaux.
+ *
  * @author Chris - Angel
- * @version 2.0
+ * @version 3.0
  */
 public class AES {
 
+    private static final String TRANSFORMATION = "AES/ECB/PKCS5Padding";
+    private static final String TRANSFORMATION_GCM = "AES/GCM/NoPadding";
+
+    /**
+     * Taille d'un bloc AES en octets.
+     */
+    public static final int TAILLE_BLOC = 16;
+
+    /**
+     * Taille du nonce GCM en octets (96 bits, taille recommandee).
+     */
+    public static final int TAILLE_NONCE = 12;
+
+    /**
+     * Taille du tag d'authentification GCM en octets (128 bits).
+     */
+    public static final int TAILLE_TAG = 16;
+
+    private static final byte[] AUCUNE_DONNEE = new byte[0];
+
+    /**
+     * Contexte de chiffrement propre a chaque thread (un Cipher n'est pas thread-safe).
+     */
+    private static final ThreadLocal<Contexte> CONTEXTES = ThreadLocal.withInitial(Contexte::new);
+
+    private static final class Contexte {
+        private Cipher chiffreur;
+        private Cipher dechiffreur;
+        private Cipher gcm;
+        private SecureRandom aleatoire;
+        private SecretKey cleChiffreur;
+        private SecretKey cleDechiffreur;
+        private final CharsetEncoder encodeurUtf8 = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private ByteBuffer tampon = ByteBuffer.allocate(1024);
+
+        Cipher chiffreur(SecretKey key) throws Exception {
+            if (chiffreur == null) {
+                chiffreur = Cipher.getInstance(TRANSFORMATION);
+            }
+            if (key != cleChiffreur) {
+                chiffreur.init(Cipher.ENCRYPT_MODE, key);
+                cleChiffreur = key;
+            }
+            return chiffreur;
+        }
+
+        Cipher dechiffreur(SecretKey key) throws Exception {
+            if (dechiffreur == null) {
+                dechiffreur = Cipher.getInstance(TRANSFORMATION);
+            }
+            if (key != cleDechiffreur) {
+                dechiffreur.init(Cipher.DECRYPT_MODE, key);
+                cleDechiffreur = key;
+            }
+            return dechiffreur;
+        }
+
+        /**
+         * Cipher GCM initialise pour ce message (un nonce neuf impose un init a chaque fois).
+         */
+        Cipher gcm(int mode, SecretKey key, byte[] nonce, byte[] aad) throws Exception {
+            if (gcm == null) {
+                gcm = Cipher.getInstance(TRANSFORMATION_GCM);
+            }
+            gcm.init(mode, key, new GCMParameterSpec(TAILLE_TAG * 8, nonce));
+            if (aad.length > 0) {
+                gcm.updateAAD(aad);
+            }
+            return gcm;
+        }
+
+        byte[] nonceAleatoire() {
+            if (aleatoire == null) {
+                aleatoire = new SecureRandom();
+            }
+            byte[] nonce = new byte[TAILLE_NONCE];
+            aleatoire.nextBytes(nonce);
+            return nonce;
+        }
+
+        /**
+         * Oublie les cles : le prochain appel reinitialise les Cipher
+         * (apres une erreur, l'etat interne du Cipher n'est plus garanti).
+         */
+        void invalider() {
+            cleChiffreur = null;
+            cleDechiffreur = null;
+        }
+
+        /**
+         * Tampon de travail vide d'au moins la taille demandee.
+         */
+        ByteBuffer tampon(int taille) {
+            if (tampon.capacity() < taille) {
+                tampon = ByteBuffer.allocate(Math.max(taille, tampon.capacity() * 2));
+            }
+            tampon.clear();
+            return tampon;
+        }
+
+        /**
+         * Encode un texte en UTF-8 dans le tampon de travail (sans tableau intermediaire).
+         */
+        ByteBuffer encoder(String message) {
+            ByteBuffer sortie = tampon((int) (message.length() * encodeurUtf8.maxBytesPerChar()));
+            encodeurUtf8.reset();
+            CharBuffer entree = CharBuffer.wrap(message);
+            CoderResult resultat = encodeurUtf8.encode(entree, sortie, true);
+            if (resultat.isUnderflow()) {
+                encodeurUtf8.flush(sortie);
+            }
+            return sortie.flip();
+        }
+    }
+
     /**
      * Genere une cle AES de taille specifiee.
      *
@@ -27,6 +168,136 @@ public class AES {
         return kg.generateKey();
     }
 
+    /**
+     * Derive une cle AES-128 d'un secret partage : HMAC-SHA256(secret, contexte),
+     * tronque a 128 bits. Le meme secret et le meme contexte donnent toujours la
+     * meme cle ; deux contextes differents donnent des cles independantes.
+     *
+     * @param secret Le secret partage
+     * @param contexte Usage de la cle (par exemple "salon:" + nom)
+     * @return La cle derivee
+     * @throws Exception Si HMAC-SHA256 n'est pas disponible
+     */
+    public static SecretKey deriverCle(byte[] secret, String contexte) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+        byte[] empreinte = mac.doFinal(contexte.getBytes(StandardCharsets.UTF_8));
+        return new SecretKeySpec(empreinte, 0, 16, "AES");
+    }
+
+    /**
+     * Taille du chiffre pour un clair de taille donnee (padding PKCS5).
+     *
+     * @param tailleClair Taille du message en clair
+     * @return Taille du message chiffre
+     */
+    public static int tailleChiffre(int tailleClair) {
+        return (tailleClair / TAILLE_BLOC + 1) * TAILLE_BLOC;
+    }
+
+    /**
+     * Chiffre des octets.
+     *
+     * @param clair Tableau contenant le message en clair
+     * @param offset Debut du message dans le tableau
+     * @param longueur Longueur du message
+     * @param key La cle AES
+     * @return Les octets chiffres (seule allocation)
+     * @throws Exception Si le chiffrement echoue
+     */
+    public static byte[] crypte(byte[] clair, int offset, int longueur, SecretKey key) throws Exception {
+        Contexte ctx = CONTEXTES.get();
+        try {
+            return ctx.chiffreur(key).doFinal(clair, offset, longueur);
+        } catch (Exception e) {
+            ctx.invalider();
+            throw e;
+        }
+    }
+
+    /**
+     * Dechiffre des octets.
+     *
+     * @param chiffre Tableau contenant le message chiffre
+     * @param offset Debut du message dans le tableau
+     * @param longueur Longueur du message
+     * @param key La cle AES
+     * @return Les octets en clair (seule allocation)
+     * @throws Exception Si le dechiffrement echoue (mauvaise cle ou message corrompu)
+     */
+    public static byte[] decrypte(byte[] chiffre, int offset, int longueur, SecretKey key) throws Exception {
+        Contexte ctx = CONTEXTES.get();
+        try {
+            return ctx.dechiffreur(key).doFinal(chiffre, offset, longueur);
+        } catch (Exception e) {
+            ctx.invalider();
+            throw e;
+        }
+    }
+
+    /**
+     * Chiffre le contenu restant de clair dans chiffre (tampons directs acceptes).
+     * Les positions des deux tampons avancent. N'alloue rien.
+     *
+     * @param clair Tampon source
+     * @param chiffre Tampon destination (au moins tailleChiffre(clair.remaining()) octets libres)
+     * @param key La cle AES
+     * @return Nombre d'octets ecrits dans chiffre
+     * @throws Exception Si le chiffrement echoue ou si la destination est trop petite
+     */
+    public static int crypte(ByteBuffer clair, ByteBuffer chiffre, SecretKey key) throws Exception {
+        Contexte ctx = CONTEXTES.get();
+        try {
+            return ctx.chiffreur(key).doFinal(clair, chiffre);
+        } catch (Exception e) {
+            ctx.invalider();
+            throw e;
+        }
+    }
+
+    /**
+     * Chiffre un en-tete suivi d'un corps comme un seul message.
+     * Les deux parties sont rassemblees dans le tampon du thread (corps direct ou
+     * projete en memoire accepte) : seul le resultat est alloue.
+     *
+     * @param entete Debut du message en clair (sa position avance)
+     * @param corps Suite du message en clair (sa position avance)
+     * @param key La cle AES
+     * @return Les octets chiffres
+     * @throws Exception Si le chiffrement echoue
+     */
+    public static byte[] crypteAESOctets(ByteBuffer entete, ByteBuffer corps, SecretKey key) throws Exception {
+        Contexte ctx = CONTEXTES.get();
+        ByteBuffer clair = ctx.tampon(entete.remaining() + corps.remaining());
+        clair.put(entete).put(corps).flip();
+        try {
+            return ctx.chiffreur(key).doFinal(clair.array(), clair.arrayOffset(), clair.limit());
+        } catch (Exception e) {
+            ctx.invalider();
+            throw e;
+        }
+    }
+
+    /**
+     * Dechiffre le contenu restant de chiffre dans clair (tampons directs acceptes).
+     * Les positions des deux tampons avancent. N'alloue rien.
+     *
+     * @param chiffre Tampon source
+     * @param clair Tampon destination (au moins chiffre.remaining() octets libres)
+     * @param key La cle AES
+     * @return Nombre d'octets ecrits dans clair
+     * @throws Exception Si le dechiffrement echoue (mauvaise cle ou message corrompu)
+     */
+    public static int decrypte(ByteBuffer chiffre, ByteBuffer clair, SecretKey key) throws Exception {
+        Contexte ctx = CONTEXTES.get();
+        try {
+            return ctx.dechiffreur(key).doFinal(chiffre, clair);
+        } catch (Exception e) {
+            ctx.invalider();
+            throw e;
+        }
+    }
+
     /**
      * Chiffre un message avec AES.
      * Le message chiffre est encode en Base64 pour faciliter la transmission.
@@ -37,10 +308,7 @@ public class AES {
      * @throws Exception Si le chiffrement echoue
      */
     public static String crypteAES(String message, SecretKey key) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.ENCRYPT_MODE, key);
-        byte[] cryptageByte = cipher.doFinal(message.getBytes("UTF-8"));
-        return Base64.getEncoder().encodeToString(cryptageByte);
+        return Base64.getEncoder().encodeToString(crypteAESOctets(message, key));
     }
 
     /**
@@ -52,9 +320,261 @@ public class AES {
      * @throws Exception Si le dechiffrement echoue (mauvaise cle ou message corrompu)
      */
     public static String decrypteAES(String message, SecretKey key) throws Exception {
-        Cipher cipher = Cipher.getInstance("AES");
-        cipher.init(Cipher.DECRYPT_MODE, key);
-        byte[] decryptByte = cipher.doFinal(Base64.getDecoder().decode(message));
-        return new String(decryptByte, "UTF-8");
+        return decrypteAES(Base64.getDecoder().decode(message), key);
+    }
+
+    /**
+     * Chiffre un message avec AES sans encodage Base64.
+     * Utilisé par le protocole binaire, qui transporte directement les octets chiffrés.
+     * Le texte est encode en UTF-8 dans le tampon du thread : seul le resultat est alloue.
+     *
+     * @param message Le message en clair
+     * @param key La cle AES
+     * @return Les octets chiffrés
+     * @throws Exception Si le chiffrement echoue
+     */
+    public static byte[] crypteAESOctets(String message, SecretKey key) throws Exception {
+        Contexte ctx = CONTEXTES.get();
+        ByteBuffer utf8 = ctx.encoder(message);
+        try {
+            return ctx.chiffreur(key).doFinal(utf8.array(), utf8.arrayOffset(), utf8.limit());
+        } catch (Exception e) {
+            ctx.invalider();
+            throw e;
+        }
+    }
+
+    /**
+     * Dechiffre des octets AES (sans Base64).
+     *
+     * @param message Les octets chiffrés
+     * @param key La cle AES
+     * @return Le message en clair
+     * @throws Exception Si le dechiffrement echoue (mauvaise cle ou message corrompu)
+     */
+    public static String decrypteAES(byte[] message, SecretKey key) throws Exception {
+        return decrypteAES(ByteBuffer.wrap(message), key);
+    }
+
+    /**
+     * Dechiffre le contenu restant d'un tampon (direct ou non) en texte.
+     * Le clair passe par le tampon du thread : seule la String est allouee.
+     *
+     * @param message Tampon contenant les octets chiffrés (sa position avance)
+     * @param key La cle AES
+     * @return Le message en clair
+     * @throws Exception Si le dechiffrement echoue (mauvaise cle ou message corrompu)
+     */
+    public static String decrypteAES(ByteBuffer message, SecretKey key) throws Exception {
+        Contexte ctx = CONTEXTES.get();
+        ByteBuffer clair = ctx.tampon(message.remaining());
+        try {
+            int n = ctx.dechiffreur(key).doFinal(message, clair);
+            return new String(clair.array(), clair.arrayOffset(), n, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            ctx.invalider();
+            throw e;
+        }
+    }
+
+    /**
+     * Chiffre en AES-GCM avec un nonce fourni par l'appelant.
+     * Le nonce ne doit jamais etre reutilise avec la meme cle.
+     *
+     * @param clair Tampon source (direct ou non)
+     * @param chiffre Tampon destination (au moins clair.remaining() + TAILLE_TAG octets libres)
+     * @param nonce Nonce de TAILLE_NONCE octets
+     * @param aad Donnees associees authentifiees (peut etre vide)
+     * @param key La cle AES
+     * @return Nombre d'octets ecrits (chiffre + tag)
+     * @throws Exception Si le chiffrement echoue
+     */
+    public static int crypteGCM(ByteBuffer clair, ByteBuffer chiffre, byte[] nonce, byte[] aad,
+                                SecretKey key) throws Exception {
+        return doFinalGCM(CONTEXTES.get().gcm(Cipher.ENCRYPT_MODE, key, nonce, aad), clair, chiffre);
+    }
+
+    /**
+     * Chiffre en AES-GCM un en-tete suivi d'un corps comme un seul message.
+     * Les deux parties sont rassemblees dans le tampon du thread puis chiffrees par
+     * l'API byte[] : sur un corps projete en memoire, c'est plus rapide que le chemin
+     * ByteBuffer du fournisseur JDK, et rien n'est alloue (mesure avec BenchmarkHistorique).
+     *
+     * @param entete Debut du message en clair (sa position avance)
+     * @param corps Suite du message en clair (sa position avance)
+     * @param chiffre Tampon destination (au moins entete + corps + TAILLE_TAG octets libres)
+     * @param nonce Nonce de TAILLE_NONCE octets, jamais reutilise avec cette cle
+     * @param aad Donnees associees authentifiees (peut etre vide)
+     * @param key La cle AES
+     * @return Nombre d'octets ecrits (chiffre + tag)
+     * @throws Exception Si le chiffrement echoue
+     */
+    public static int crypteGCM(ByteBuffer entete, ByteBuffer corps, ByteBuffer chiffre, byte[] nonce, byte[] aad,
+                                SecretKey key) throws Exception {
+        Contexte ctx = CONTEXTES.get();
+        ByteBuffer clair = ctx.tampon(entete.remaining() + corps.remaining());
+        clair.put(entete).put(corps).flip();
+        return doFinalGCM(ctx.gcm(Cipher.ENCRYPT_MODE, key, nonce, aad), clair, chiffre);
+    }
+
+    /**
+     * Dechiffre et verifie un contenu AES-GCM.
+     *
+     * @param chiffre Tampon source (chiffre + tag)
+     * @param clair Tampon destination (au moins chiffre.remaining() - TAILLE_TAG octets libres)
+     * @param nonce Nonce utilise au chiffrement
+     * @param aad Donnees associees utilisees au chiffrement
+     * @param key La cle AES
+     * @return Nombre d'octets ecrits dans clair
+     * @throws Exception Si le tag est invalide (contenu, nonce ou donnees associees modifies)
+     */
+    public static int decrypteGCM(ByteBuffer chiffre, ByteBuffer clair, byte[] nonce, byte[] aad,
+                                  SecretKey key) throws Exception {
+        return doFinalGCM(CONTEXTES.get().gcm(Cipher.DECRYPT_MODE, key, nonce, aad), chiffre, clair);
+    }
+
+    /**
+     * Pour les tampons sur tableau, passe par l'API byte[] du Cipher : le fournisseur
+     * JDK y est nettement plus rapide en GCM que sur son chemin ByteBuffer
+     * (mesure avec BenchmarkAES).
+     */
+    private static int doFinalGCM(Cipher cipher, ByteBuffer entree, ByteBuffer sortie) throws Exception {
+        if (!entree.hasArray() || !sortie.hasArray() || sortie.isReadOnly()) {
+            return cipher.doFinal(entree, sortie);
+        }
+        int n = cipher.doFinal(entree.array(), entree.arrayOffset() + entree.position(), entree.remaining(),
+                sortie.array(), sortie.arrayOffset() + sortie.position());
+        entree.position(entree.limit());
+        sortie.position(sortie.position() + n);
+        return n;
+    }
+
+    /**
+     * Chiffre en AES-GCM avec un nonce aleatoire, place devant le chiffre.
+     * Adapte aux cles partagees par plusieurs emetteurs (cles de salon).
+     *
+     * @param clair Le message en clair
+     * @param aad Donnees associees authentifiees (salon, expediteur...)
+     * @param key La cle AES
+     * @return nonce + chiffre + tag
+     * @throws Exception Si le chiffrement echoue
+     */
+    public static byte[] crypteGCM(byte[] clair, byte[] aad, SecretKey key) throws Exception {
+        Contexte ctx = CONTEXTES.get();
+        byte[] nonce = ctx.nonceAleatoire();
+        byte[] resultat = new byte[TAILLE_NONCE + clair.length + TAILLE_TAG];
+        System.arraycopy(nonce, 0, resultat, 0, TAILLE_NONCE);
+        ctx.gcm(Cipher.ENCRYPT_MODE, key, nonce, aad == null ? AUCUNE_DONNEE : aad)
+                .doFinal(clair, 0, clair.length, resultat, TAILLE_NONCE);
+        return resultat;
+    }
+
+    /**
+     * Dechiffre un resultat de crypteGCM(byte[], byte[], SecretKey).
+     *
+     * @param nonceEtChiffre nonce + chiffre + tag
+     * @param aad Donnees associees utilisees au chiffrement
+     * @param key La cle AES
+     * @return Le message en clair
+     * @throws Exception Si le tag est invalide ou le contenu trop court
+     */
+    public static byte[] decrypteGCM(byte[] nonceEtChiffre, byte[] aad, SecretKey key) throws Exception {
+        if (nonceEtChiffre.length < TAILLE_NONCE + TAILLE_TAG) {
+            throw new IllegalArgumentException("Contenu GCM trop court");
+        }
+        byte[] nonce = new byte[TAILLE_NONCE];
+        System.arraycopy(nonceEtChiffre, 0, nonce, 0, TAILLE_NONCE);
+        return CONTEXTES.get().gcm(Cipher.DECRYPT_MODE, key, nonce, aad == null ? AUCUNE_DONNEE : aad)
+                .doFinal(nonceEtChiffre, TAILLE_NONCE, nonceEtChiffre.length - TAILLE_NONCE);
+    }
+
+    /**
+     * Ouvre un chiffrement GCM incremental (gros contenus envoyes par morceaux).
+     *
+     * @param key La cle AES
+     * @param nonce Nonce unique pour cette cle
+     * @param aad Donnees associees authentifiees
+     * @return Le flux de chiffrement
+     * @throws Exception Si l'initialisation echoue
+     */
+    public static FluxGCM chiffrementGCM(SecretKey key, byte[] nonce, byte[] aad) throws Exception {
+        return new FluxGCM(Cipher.ENCRYPT_MODE, key, nonce, aad);
+    }
+
+    /**
+     * Ouvre un dechiffrement GCM incremental.
+     * Attention : le clair n'est rendu qu'au doFinal, une fois le tag verifie
+     * (comportement du fournisseur JDK, qui ne libere rien de non authentifie).
+     *
+     * @param key La cle AES
+     * @param nonce Nonce utilise au chiffrement
+     * @param aad Donnees associees utilisees au chiffrement
+     * @return Le flux de dechiffrement
+     * @throws Exception Si l'initialisation echoue
+     */
+    public static FluxGCM dechiffrementGCM(SecretKey key, byte[] nonce, byte[] aad) throws Exception {
+        return new FluxGCM(Cipher.DECRYPT_MODE, key, nonce, aad);
+    }
+
+    /**
+     * Chiffrement ou dechiffrement GCM par morceaux, avec son propre Cipher
+     * (independant du contexte du thread, il peut donc vivre entre plusieurs appels).
+     */
+    public static final class FluxGCM {
+        private final Cipher cipher;
+
+        private FluxGCM(int mode, SecretKey key, byte[] nonce, byte[] aad) throws Exception {
+            cipher = Cipher.getInstance(TRANSFORMATION_GCM);
+            cipher.init(mode, key, new GCMParameterSpec(TAILLE_TAG * 8, nonce));
+            if (aad != null && aad.length > 0) {
+                cipher.updateAAD(aad);
+            }
+        }
+
+        /**
+         * Traite un morceau.
+         *
+         * @param entree Tampon source
+         * @param sortie Tampon destination
+         * @return Nombre d'octets ecrits
+         * @throws Exception Si la destination est trop petite
+         */
+        public int update(ByteBuffer entree, ByteBuffer sortie) throws Exception {
+            return cipher.update(entree, sortie);
+        }
+
+        /**
+         * Traite un morceau.
+         *
+         * @param entree Tableau source
+         * @param offset Debut du morceau
+         * @param longueur Longueur du morceau
+         * @return Les octets produits (peut etre vide)
+         */
+        public byte[] update(byte[] entree, int offset, int longueur) {
+            byte[] sortie = cipher.update(entree, offset, longueur);
+            return sortie == null ? AUCUNE_DONNEE : sortie;
+        }
+
+        /**
+         * Termine : ajoute le tag (chiffrement) ou le verifie (dechiffrement).
+         *
+         * @param sortie Tampon destination
+         * @return Nombre d'octets ecrits
+         * @throws Exception Si le tag est invalide
+         */
+        public int doFinal(ByteBuffer sortie) throws Exception {
+            return cipher.doFinal(ByteBuffer.allocate(0), sortie);
+        }
+
+        /**
+         * Termine : ajoute le tag (chiffrement) ou le verifie (dechiffrement).
+         *
+         * @return Les derniers octets produits
+         * @throws Exception Si le tag est invalide
+         */
+        public byte[] doFinal() throws Exception {
+            return cipher.doFinal();
+        }
     }
-}
\ No newline at end of file
+}
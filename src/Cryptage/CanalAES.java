@@ -0,0 +1,249 @@
+package Cryptage;
+
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+
+/**
+ * Chiffrement de la couche client-serveur (cle personnelle) pour une connexion.
+ *
+ * Deux modes, choisis a la negociation du protocole :
+ * - ECB : format historique (AES/ECB/PKCS5Padding), sans integrite
+ * - GCM : chaque message porte un nonce de 12 octets puis le chiffre et son tag
+ *
+ * Nonce GCM = sens (4 octets) + numero de sequence (8 octets).
+ * La cle personnelle est neuve a chaque connexion et chaque sens a son propre
+ * compteur : un nonce n'est donc jamais reutilise. Le numero de sequence sert aussi
+ * de donnee associee et permet de refuser les messages rejoues (fenetre de 64 messages,
+ * les envois concurrents pouvant arriver legerement desordonnes).
+ *
+ * Couche salon : chiffrerSalon / dechiffrerSalon utilisent la cle partagee du salon,
+ * avec un nonce aleatoire (plusieurs emetteurs) et le nom du salon et de l'expediteur
+ * en donnees associees : un message ne peut pas etre deplace d'un salon a l'autre
+ * ni reattribue a un autre pseudo sans que le dechiffrement echoue.
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class CanalAES {
+
+    /**
+     * Sens client vers serveur.
+     */
+    public static final int SENS_CLIENT = 1;
+
+    /**
+     * Sens serveur vers client.
+     */
+    public static final int SENS_SERVEUR = 2;
+
+    private static final int TAILLE_FENETRE = 64;
+
+    /**
+     * Prefixe des contenus de salon chiffres en AES-GCM (les autres sont en AES-ECB).
+     */
+    public static final String PREFIXE_GCM = "gcm:";
+
+    private final SecretKey cle;
+    private final boolean gcm;
+    private final int sensEmission;
+    private final int sensReception;
+    private long sequenceEmission = 0;
+    // Anti-rejeu : plus haute sequence recue et masque des 64 precedentes
+    private long plusHauteRecue = -1;
+    private long fenetreRecue = 0;
+
+    private CanalAES(SecretKey cle, boolean gcm, int sensEmission) {
+        this.cle = cle;
+        this.gcm = gcm;
+        this.sensEmission = sensEmission;
+        this.sensReception = sensEmission == SENS_CLIENT ? SENS_SERVEUR : SENS_CLIENT;
+    }
+
+    /**
+     * @param cle La cle personnelle
+     * @return Un canal au format historique (AES-ECB)
+     */
+    public static CanalAES ecb(SecretKey cle) {
+        return new CanalAES(cle, false, SENS_CLIENT);
+    }
+
+    /**
+     * @param cle La cle personnelle (neuve pour cette connexion)
+     * @param sensEmission SENS_CLIENT cote client, SENS_SERVEUR cote serveur
+     * @return Un canal authentifie (AES-GCM)
+     */
+    public static CanalAES gcm(SecretKey cle, int sensEmission) {
+        return new CanalAES(cle, true, sensEmission);
+    }
+
+    /**
+     * @param cle La cle personnelle
+     * @param gcm true si AES-GCM a ete negocie
+     * @param sensEmission SENS_CLIENT ou SENS_SERVEUR (ignore en ECB)
+     * @return Le canal correspondant au mode negocie
+     */
+    public static CanalAES pour(SecretKey cle, boolean gcm, int sensEmission) {
+        return gcm ? gcm(cle, sensEmission) : ecb(cle);
+    }
+
+    /**
+     * @return true si le canal est authentifie (AES-GCM)
+     */
+    public boolean isGcm() {
+        return gcm;
+    }
+
+    /**
+     * @return La cle personnelle
+     */
+    public SecretKey getCle() {
+        return cle;
+    }
+
+    /**
+     * Chiffre un message sortant.
+     *
+     * @param message Le message en clair
+     * @return Les octets a envoyer
+     * @throws Exception Si le chiffrement echoue
+     */
+    public byte[] chiffrer(String message) throws Exception {
+        if (!gcm) {
+            return AES.crypteAESOctets(message, cle);
+        }
+        byte[] clair = message.getBytes(StandardCharsets.UTF_8);
+        byte[] resultat = new byte[AES.TAILLE_NONCE + clair.length + AES.TAILLE_TAG];
+        byte[] nonce = nonce(sensEmission, prochaineSequence());
+        System.arraycopy(nonce, 0, resultat, 0, AES.TAILLE_NONCE);
+        AES.crypteGCM(ByteBuffer.wrap(clair), ByteBuffer.wrap(resultat, AES.TAILLE_NONCE, clair.length + AES.TAILLE_TAG),
+                nonce, sequenceEnOctets(nonce), cle);
+        return resultat;
+    }
+
+    /**
+     * Chiffre un message sortant forme d'un en-tete et d'un corps sans construire de
+     * String ni de tableau intermediaire : le corps (par exemple un message de l'archive
+     * projetee en memoire) passe directement dans le tampon du thread.
+     * Le destinataire dechiffre un message ordinaire (en-tete + corps).
+     *
+     * @param entete Debut du message en clair, en UTF-8
+     * @param corps Suite du message en clair, en UTF-8
+     * @return Les octets a envoyer
+     * @throws Exception Si le chiffrement echoue
+     */
+    public byte[] chiffrer(ByteBuffer entete, ByteBuffer corps) throws Exception {
+        if (!gcm) {
+            return AES.crypteAESOctets(entete, corps, cle);
+        }
+        int taille = entete.remaining() + corps.remaining();
+        byte[] resultat = new byte[AES.TAILLE_NONCE + taille + AES.TAILLE_TAG];
+        byte[] nonce = nonce(sensEmission, prochaineSequence());
+        System.arraycopy(nonce, 0, resultat, 0, AES.TAILLE_NONCE);
+        AES.crypteGCM(entete, corps, ByteBuffer.wrap(resultat, AES.TAILLE_NONCE, taille + AES.TAILLE_TAG),
+                nonce, sequenceEnOctets(nonce), cle);
+        return resultat;
+    }
+
+    /**
+     * Dechiffre un message entrant (et verifie son integrite en GCM).
+     *
+     * @param chiffre Les octets recus
+     * @return Le message en clair
+     * @throws Exception Si le message est altere, rejoue ou chiffre avec une autre cle
+     */
+    public String dechiffrer(ByteBuffer chiffre) throws Exception {
+        if (!gcm) {
+            return AES.decrypteAES(chiffre, cle);
+        }
+        if (chiffre.remaining() < AES.TAILLE_NONCE + AES.TAILLE_TAG) {
+            throw new GeneralSecurityException("Message GCM trop court");
+        }
+        byte[] nonce = new byte[AES.TAILLE_NONCE];
+        chiffre.get(nonce);
+        if (ByteBuffer.wrap(nonce).getInt() != sensReception) {
+            throw new GeneralSecurityException("Sens de message invalide");
+        }
+        long sequence = ByteBuffer.wrap(nonce).getLong(4);
+        byte[] clair = new byte[chiffre.remaining() - AES.TAILLE_TAG];
+        AES.decrypteGCM(chiffre, ByteBuffer.wrap(clair), nonce, sequenceEnOctets(nonce), cle);
+        // Seulement apres verification du tag : un message forge ne fait pas avancer la fenetre
+        accepterSequence(sequence);
+        return new String(clair, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Chiffre le contenu d'un message de salon avec la cle du salon.
+     *
+     * @param message Le contenu en clair
+     * @param salon Le nom du salon
+     * @param expediteur Le pseudo de l'expediteur
+     * @param cleSalon La cle du salon
+     * @param gcm true pour AES-GCM, false pour le format historique
+     * @return Le contenu chiffre, en texte (Base64)
+     * @throws Exception Si le chiffrement echoue
+     */
+    public static String chiffrerSalon(String message, String salon, String expediteur, SecretKey cleSalon,
+                                       boolean gcm) throws Exception {
+        if (!gcm) {
+            return AES.crypteAES(message, cleSalon);
+        }
+        byte[] chiffre = AES.crypteGCM(message.getBytes(StandardCharsets.UTF_8),
+                donneesSalon(salon, expediteur), cleSalon);
+        return PREFIXE_GCM + Base64.getEncoder().encodeToString(chiffre);
+    }
+
+    /**
+     * Dechiffre le contenu d'un message de salon (AES-GCM ou format historique).
+     *
+     * @param contenu Le contenu chiffre recu
+     * @param salon Le salon annonce par le message
+     * @param expediteur Le pseudo annonce par le message
+     * @param cleSalon La cle du salon
+     * @return Le contenu en clair
+     * @throws Exception Si la cle est mauvaise ou si le contenu, le salon ou l'expediteur a ete modifie
+     */
+    public static String dechiffrerSalon(String contenu, String salon, String expediteur, SecretKey cleSalon)
+            throws Exception {
+        if (!contenu.startsWith(PREFIXE_GCM)) {
+            return AES.decrypteAES(contenu, cleSalon);
+        }
+        byte[] chiffre = Base64.getDecoder().decode(contenu.substring(PREFIXE_GCM.length()));
+        return new String(AES.decrypteGCM(chiffre, donneesSalon(salon, expediteur), cleSalon), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] donneesSalon(String salon, String expediteur) {
+        return (salon + '\n' + expediteur).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private synchronized long prochaineSequence() {
+        return sequenceEmission++;
+    }
+
+    private synchronized void accepterSequence(long sequence) throws GeneralSecurityException {
+        if (sequence > plusHauteRecue) {
+            long decalage = sequence - plusHauteRecue;
+            fenetreRecue = decalage >= TAILLE_FENETRE ? 0 : fenetreRecue << decalage;
+            fenetreRecue |= 1L;
+            plusHauteRecue = sequence;
+            return;
+        }
+        long ecart = plusHauteRecue - sequence;
+        if (ecart >= TAILLE_FENETRE || (fenetreRecue & (1L << ecart)) != 0) {
+            throw new GeneralSecurityException("Message rejoue ou trop ancien : " + sequence);
+        }
+        fenetreRecue |= 1L << ecart;
+    }
+
+    private static byte[] nonce(int sens, long sequence) {
+        return ByteBuffer.allocate(AES.TAILLE_NONCE).putInt(sens).putLong(sequence).array();
+    }
+
+    private static byte[] sequenceEnOctets(byte[] nonce) {
+        byte[] sequence = new byte[8];
+        System.arraycopy(nonce, 4, sequence, 0, 8);
+        return sequence;
+    }
+}
@@ -1,6 +1,8 @@
 package GUI;
 
-import Cryptage.AES;
+import Cryptage.CanalAES;
+import Protocole.FluxBinaire;
+import Protocole.ProtocoleBinaire;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 import javax.swing.*;
@@ -9,11 +11,22 @@ import java.awt.*;
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Interface graphique du client avec support des salons par onglets.
@@ -26,9 +39,34 @@ import java.util.Map;
  * - Création dynamique de salons
  * - Double chiffrement : cle client + cle salon
  *
- * Choix Base64 :
- * Les messages chiffres sont en bytes, on utilise Base64 pour les transmettre
- * en tant que String via ObjectOutputStream.
+ * Protocole binaire :
+ * Les messages chiffrés avec la clé personnelle circulent en octets bruts dans des
+ * trames avec longueur (FluxBinaire), sans Base64 ni sérialisation Java.
+ * Seul le contenu chiffré avec la clé du salon reste en Base64 dans le texte du message.
+ *
+ * Si le serveur accepte la capacité GCM, les deux couches passent en AES-GCM
+ * (messages authentifiés, voir CanalAES). Les contenus de salon chiffrés en GCM
+ * ne sont pas lisibles par les anciens clients du même salon.
+ *
+ * Historique (serveur avec CAPACITE_HISTORIQUE) : à la première entrée dans un
+ * salon, l'onglet est rempli avec ses derniers messages archivés (HISTORY) ; le
+ * bouton "Messages précédents" charge la page d'avant.
+ *
+ * Affichage : le thread de réception dépose les messages dans une file que l'EDT
+ * vide par lots, au plus FRAME_MS fois par seconde (un seul ajout au document par
+ * lot). Chaque onglet garde au plus SCROLLBACK_LINES lignes et le bip est limité à
+ * un par BEEP_INTERVAL_MS : le client reste fluide dans un salon très actif.
+ *
+ * Onglets inactifs (serveur avec CAPACITE_ABONNEMENTS) : le client reste abonné aux
+ * salons visités. Leurs messages sont gardés encore chiffrés avec la clé du salon,
+ * au plus SCROLLBACK_LINES par onglet, et comptés dans le titre de l'onglet ; ils ne
+ * sont déchiffrés et affichés, en un seul lot, qu'à l'ouverture de l'onglet.
+ *
+ * Redirection (serveur avec CAPACITE_REDIRECTION) : un salon possédé par un autre
+ * serveur répond "REDIRECT:hote:port:salon". Le client ouvre alors une seconde
+ * connexion vers ce serveur (RoomConnection), qui ne sert qu'à ce salon : clé,
+ * historique, messages envoyés et reçus. La connexion principale garde la présence,
+ * le catalogue et les messages privés.
  *
  * @author Chris - Angel
  * @version 2.0
@@ -46,17 +84,45 @@ public class ChatClientGUI extends JFrame {
 
     // Réseau
     private Socket serveur;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    private FluxBinaire flux;
     private SecretKey cleAESClient;
-    private Map<String, SecretKey> roomKeys = new HashMap<>();
+    private CanalAES canal;
+    // Chiffrement et écriture d'une trame en une seule étape : l'EDT et le thread de
+    // réception (HISTORY) envoient tous deux (séquences GCM dans l'ordre, trames entières)
+    private final Object sendLock = new Object();
+    private Map<String, SecretKey> roomKeys = new ConcurrentHashMap<>();
+    // Format du contenu de chaque salon (ROOM_MODE) : AES-GCM seulement si tous ses membres le lisent
+    private final Map<String, Boolean> roomGcm = new ConcurrentHashMap<>();
+    // Salons servis par un autre serveur (REDIRECT) : leur connexion
+    private final Map<String, RoomConnection> roomConnections = new ConcurrentHashMap<>();
     private Thread receptionThread;
     private boolean isConnected = false;
 
+    // Catalogue des salons (CAPACITE_CATALOGUE) : révision connue, gardée d'une connexion à l'autre
+    private String roomCatalogEpoch = "";
+    private long roomCatalogRevision = 0;
+    private final TreeSet<Long> pendingRoomRevisions = new TreeSet<>();
+
+    // Historique (CAPACITE_HISTORIQUE) : salons déjà remplis et page en cours de réception
+    private static final int HISTORY_PAGE = 100;
+    private final Set<String> historyRequested = ConcurrentHashMap.newKeySet();
+    private final Map<String, List<String>> pendingHistory = new ConcurrentHashMap<>();
+
+    // Affichage par lots : messages reçus en attente de l'EDT (les plus anciens sont
+    // perdus si l'EDT prend du retard, ils sortiraient de toute façon de l'onglet)
+    private static final int SCROLLBACK_LINES = 5000;
+    private static final int FRAME_MS = 33;
+    private static final long BEEP_INTERVAL_MS = 1000;
+    private final ArrayBlockingQueue<Incoming> incoming = new ArrayBlockingQueue<>(SCROLLBACK_LINES);
+    private final Timer drainTimer = new Timer(FRAME_MS, e -> drainIncoming());
+    private long lastBeep = 0;
+    private long clockSecond = -1;
+    private String clockText = "";
+
     private static final String DEFAULT_SERVER = "localhost";
     private static final int DEFAULT_PORT = 4444;
     private String username = "User";
-    private String currentRoom = "Général";
+    private volatile String currentRoom = "Général";
 
     private static final Color CONNECTED_COLOR = Color.WHITE;
     private static final Color CONNECTED_BG = new Color(0, 128, 0);
@@ -66,6 +132,32 @@ public class ChatClientGUI extends JFrame {
     private static final Color SUCCESS_COLOR = new Color(40, 167, 69);
     private static final Color DANGER_COLOR = new Color(220, 53, 69);
     private static final Color BG_COLOR = new Color(248, 249, 250);
+    private static final DateTimeFormatter HISTORY_TIME =
+            DateTimeFormatter.ofPattern("dd/MM HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter CLOCK = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    /**
+     * Message reçu en attente d'affichage : lisible, ou encore chiffré avec la clé
+     * de son salon (salon inactif à la réception).
+     */
+    private static final class Incoming {
+        final String room;
+        final String text;
+        final boolean encrypted;
+        // Heure de réception, relevée par l'EDT quand le message est mis de côté
+        String time;
+
+        /**
+         * @param room Salon du message (null : salon courant à l'affichage)
+         * @param text Le texte à afficher, ou le message tel que diffusé s'il est chiffré
+         * @param encrypted true si le contenu est encore chiffré avec la clé du salon
+         */
+        Incoming(String room, String text, boolean encrypted) {
+            this.room = room;
+            this.text = text;
+            this.encrypted = encrypted;
+        }
+    }
 
     /**
      * Classe interne représentant un panneau de salon.
@@ -76,7 +168,14 @@ public class ChatClientGUI extends JFrame {
         private JTextArea chatArea;
         private JTextField messageField;
         private JButton sendButton;
+        private JButton historyButton;
         private String roomName;
+        // Séquence à demander pour la page d'historique précédente (-1 : aucune)
+        private long historyBefore = -1;
+        private boolean historyLoaded = false;
+        // Messages reçus pendant que l'onglet est inactif, et leur nombre total
+        private final ArrayDeque<Incoming> pending = new ArrayDeque<>();
+        private int unread = 0;
 
         /**
          * Constructeur du panneau de salon.
@@ -98,6 +197,13 @@ public class ChatClientGUI extends JFrame {
             JScrollPane scrollPane = new JScrollPane(chatArea);
             add(scrollPane, BorderLayout.CENTER);
 
+            // Page d'historique précédente
+            historyButton = new JButton("Messages précédents");
+            historyButton.setFont(new Font("SansSerif", Font.PLAIN, 11));
+            historyButton.setVisible(false);
+            historyButton.addActionListener(e -> requestOlderHistory());
+            add(historyButton, BorderLayout.NORTH);
+
             // Panel du bas pour écrire
             JPanel bottomPanel = new JPanel(new BorderLayout(5, 5));
             bottomPanel.setBorder(BorderFactory.createCompoundBorder(
@@ -151,14 +257,15 @@ public class ChatClientGUI extends JFrame {
                     return;
                 }
 
-                // Chiffrement du message avec la clé du salon
-                String msgChiffreAvecCleSalon = AES.crypteAES(msg, roomKey);
+                // Chiffrement du message avec la clé du salon, au format de ses membres (ROOM_MODE)
+                String msgChiffreAvecCleSalon = CanalAES.chiffrerSalon(msg, roomName, username, roomKey,
+                        roomGcm.getOrDefault(roomName, false));
 
                 // Formatage du message
                 String formattedMsg = "[" + roomName + "]" + username + ": " + msgChiffreAvecCleSalon;
 
-                // Envoie au serveur (chiffré avec la clé client pour la transmission)
-                sendEncryptedMessage(formattedMsg);
+                // Envoie au serveur du salon (chiffré avec la clé client pour la transmission)
+                sendToRoom(roomName, formattedMsg);
 
                 // Affichage dans le salon
                 appendMessage("[Vous] " + msg);
@@ -169,17 +276,128 @@ public class ChatClientGUI extends JFrame {
             }
         }
 
+        /**
+         * Demande la page d'historique précédente (salon courant uniquement).
+         */
+        private void requestOlderHistory() {
+            if (historyBefore < 0 || !isConnected || !roomName.equals(currentRoom)) return;
+            try {
+                sendToRoom(roomName, "HISTORY:" + HISTORY_PAGE + ":" + historyBefore);
+                historyButton.setEnabled(false);
+            } catch (Exception e) {
+                appendMessage("[ERREUR] " + e.getMessage());
+            }
+        }
+
+        /**
+         * Insère une page d'historique au début de la zone de chat, avant les
+         * messages déjà affichés.
+         *
+         * @param lines Les messages de la page, du plus ancien au plus récent
+         * @param before Séquence de la page précédente (-1 : début de l'historique)
+         */
+        public void prependHistory(List<String> lines, long before) {
+            StringBuilder sb = new StringBuilder();
+            for (String line : lines) {
+                sb.append(line).append("\n");
+            }
+            if (!lines.isEmpty() && !historyLoaded) {
+                sb.append("═══ Fin de l'historique ═══\n");
+            }
+            historyLoaded = true;
+            chatArea.insert(sb.toString(), 0);
+            historyBefore = before;
+            historyButton.setVisible(before >= 0);
+            historyButton.setEnabled(true);
+        }
+
         /**
          * Ajoute un message dans la zone de chat de ce salon.
          *
          * @param message Le message à afficher
          */
         public void appendMessage(String message) {
-            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-            chatArea.append("[" + timestamp + "] " + message + "\n");
+            appendMessages(List.of(message));
+        }
+
+        /**
+         * Ajoute un lot de messages en une seule modification du document, puis
+         * retire les lignes les plus anciennes au-delà de SCROLLBACK_LINES.
+         *
+         * @param messages Les messages à afficher, dans l'ordre de réception
+         */
+        public void appendMessages(List<String> messages) {
+            String timestamp = "[" + clock() + "] ";
+            StringBuilder sb = new StringBuilder();
+            for (String message : messages) {
+                sb.append(timestamp).append(message).append("\n");
+            }
+            appendText(sb);
+        }
+
+        private void appendText(StringBuilder sb) {
+            chatArea.append(sb.toString());
+            trimScrollback();
             chatArea.setCaretPosition(chatArea.getDocument().getLength());
         }
 
+        /**
+         * Met de côté un message reçu pendant que l'onglet est inactif, sans le
+         * déchiffrer ni l'afficher. Au-delà de SCROLLBACK_LINES, les plus anciens
+         * sont oubliés (ils sortiraient de toute façon de l'onglet).
+         *
+         * @param message Le message reçu
+         */
+        public void bufferIncoming(Incoming message) {
+            message.time = clock();
+            if (pending.size() >= SCROLLBACK_LINES) {
+                pending.pollFirst();
+            }
+            pending.addLast(message);
+            unread++;
+        }
+
+        /**
+         * Déchiffre et affiche en un seul lot les messages mis de côté (ouverture de l'onglet).
+         */
+        public void showPending() {
+            if (pending.isEmpty()) return;
+            StringBuilder sb = new StringBuilder();
+            for (Incoming message : pending) {
+                sb.append("[").append(message.time).append("] ")
+                        .append(message.encrypted ? formatRoomMessage(message.text) : message.text)
+                        .append("\n");
+            }
+            pending.clear();
+            unread = 0;
+            updateTitle();
+            appendText(sb);
+        }
+
+        /**
+         * Affiche le nombre de messages non lus dans le titre de l'onglet.
+         */
+        public void updateTitle() {
+            int index = roomTabs.indexOfComponent(this);
+            if (index >= 0) {
+                roomTabs.setTitleAt(index, unread > 0 ? roomName + " (" + unread + ")" : roomName);
+            }
+        }
+
+        /**
+         * Retire les lignes les plus anciennes par blocs (10 % de marge) : retirer le
+         * début du document déplace tout son contenu, pas question de le faire à chaque lot.
+         */
+        private void trimScrollback() {
+            int lines = chatArea.getLineCount();
+            if (lines <= SCROLLBACK_LINES + SCROLLBACK_LINES / 10) return;
+            try {
+                chatArea.replaceRange("", 0, chatArea.getLineStartOffset(lines - SCROLLBACK_LINES));
+            } catch (javax.swing.text.BadLocationException e) {
+                e.printStackTrace();
+            }
+        }
+
         /**
          * Active ou désactive le champ de saisie et le bouton.
          * Utilise lors de la connexion/deconnexion.
@@ -200,6 +418,53 @@ public class ChatClientGUI extends JFrame {
         initializeGUI();
     }
 
+    /**
+     * Heure affichée devant les messages, formatée au plus une fois par seconde (EDT).
+     */
+    private String clock() {
+        long second = System.currentTimeMillis() / 1000;
+        if (second != clockSecond) {
+            clockSecond = second;
+            clockText = LocalDateTime.now().format(CLOCK);
+        }
+        return clockText;
+    }
+
+    /**
+     * Vide la file des messages reçus (EDT, à chaque image) : ceux du salon courant
+     * sont affichés en un lot, ceux des autres salons mis de côté dans leur onglet.
+     */
+    private void drainIncoming() {
+        if (incoming.isEmpty()) return;
+        List<Incoming> batch = new ArrayList<>(incoming.size());
+        incoming.drainTo(batch);
+        RoomPanel current = getRoomPanel(currentRoom);
+        List<String> lines = new ArrayList<>(batch.size());
+        Set<RoomPanel> buffered = new HashSet<>();
+        for (Incoming message : batch) {
+            RoomPanel target = message.room == null ? current : getRoomPanel(message.room);
+            if (target == null) {
+                continue;
+            }
+            if (target != current) {
+                target.bufferIncoming(message);
+                buffered.add(target);
+            } else {
+                lines.add(message.encrypted ? formatRoomMessage(message.text) : message.text);
+            }
+        }
+        for (RoomPanel roomPanel : buffered) {
+            roomPanel.updateTitle();
+        }
+        if (lines.isEmpty()) return;
+        current.appendMessages(lines);
+        long now = System.currentTimeMillis();
+        if (now - lastBeep >= BEEP_INTERVAL_MS) {
+            lastBeep = now;
+            Toolkit.getDefaultToolkit().beep();
+        }
+    }
+
     private void initializeGUI() {
         setTitle("Chat Sécurisé AES-128 - Style TeamSpeak");
         setSize(1100, 750);
@@ -261,8 +526,8 @@ public class ChatClientGUI extends JFrame {
         roomTabs.addChangeListener(e -> {
             int selectedIndex = roomTabs.getSelectedIndex();
             if (selectedIndex >= 0) {
-                String roomName = roomTabs.getTitleAt(selectedIndex);
-                onRoomTabChanged(roomName);
+                // Le titre peut porter le nombre de messages non lus : le salon vient du panneau
+                onRoomTabChanged(((RoomPanel) roomTabs.getSelectedComponent()).roomName);
             }
         });
 
@@ -358,12 +623,16 @@ public class ChatClientGUI extends JFrame {
             String oldRoom = currentRoom;
             currentRoom = newRoom;
 
-            // TOUJOURS dire au serveur qu'on change de salon
-            sendEncryptedMessage("CHANGE_ROOM:" + currentRoom);
+            // TOUJOURS dire au serveur qu'on change de salon (sauf salon servi ailleurs :
+            // sa connexion y est déjà)
+            if (!roomConnections.containsKey(newRoom)) {
+                sendEncryptedMessage("CHANGE_ROOM:" + currentRoom);
+            }
 
-            // Message dans le nouveau salon
+            // Messages reçus pendant l'absence, puis message dans le nouveau salon
             RoomPanel roomPanel = roomPanels.get(newRoom);
             if (roomPanel != null) {
+                roomPanel.showPending();
                 roomPanel.appendMessage("═══ Vous êtes dans le salon: " + newRoom + " ═══");
             }
 
@@ -394,7 +663,7 @@ public class ChatClientGUI extends JFrame {
                 addRoomTab(trimmedName);
 
                 // Basculer vers le nouveau salon automatiquement
-                int tabIndex = roomTabs.indexOfTab(trimmedName);
+                int tabIndex = roomTabs.indexOfComponent(getRoomPanel(trimmedName));
                 if (tabIndex >= 0) {
                     roomTabs.setSelectedIndex(tabIndex);
                 }
@@ -456,18 +725,17 @@ public class ChatClientGUI extends JFrame {
         try {
             serveur = new Socket();
             serveur.connect(new InetSocketAddress(server, port), 5000);
-            out = new ObjectOutputStream(serveur.getOutputStream());
-            out.flush();
-            in = new ObjectInputStream(serveur.getInputStream());
+            flux = FluxBinaire.connecter(serveur);
 
             // Réception de la clé AES
-            Object kobj = in.readObject();
-            byte[] keyBytes = (byte[]) kobj;
+            byte[] keyBytes = flux.lire(ProtocoleBinaire.TYPE_CLE);
             cleAESClient = new SecretKeySpec(keyBytes, "AES");
+            canal = CanalAES.pour(cleAESClient, flux.supporte(ProtocoleBinaire.CAPACITE_GCM), CanalAES.SENS_CLIENT);
 
             isConnected = true;
             setStatusConnected(true);
-            encryptionLabel.setText("Chiffrement: AES-128 (" + keyBytes.length * 8 + " bits)");
+            encryptionLabel.setText("Chiffrement: AES-128" + (canal.isGcm() ? "-GCM" : "")
+                    + " (" + keyBytes.length * 8 + " bits)");
             encryptionLabel.setForeground(new Color(0, 150, 0));
 
             // Activer les champs de saisie
@@ -476,6 +744,12 @@ public class ChatClientGUI extends JFrame {
             // Envoyer le username
             sendEncryptedMessage("SET_USERNAME:" + username);
 
+            // Ne demander que les salons créés ou supprimés depuis la dernière connexion
+            if (flux.supporte(ProtocoleBinaire.CAPACITE_CATALOGUE)) {
+                pendingRoomRevisions.clear();
+                sendEncryptedMessage("SYNC_ROOMS:" + roomCatalogEpoch + ":" + roomCatalogRevision);
+            }
+
             getRoomPanel("Général").appendMessage("=== Connecté au serveur ===");
             getRoomPanel("Général").appendMessage("Bienvenue " + username + " !");
 
@@ -497,7 +771,7 @@ public class ChatClientGUI extends JFrame {
 
     /**
      * Déconnecte proprement du serveur.
-     * Ferme les flux ObjectInputStream et ObjectOutputStream avant le socket.
+     * Ferme le flux binaire avant le socket.
      */
     private void disconnectFromServer() {
         try {
@@ -510,11 +784,13 @@ public class ChatClientGUI extends JFrame {
                 isConnected = false;
             }
 
-            if (out != null) {
-                try { out.close(); } catch (Exception e) {}
+            for (RoomConnection connection : roomConnections.values()) {
+                connection.close();
             }
-            if (in != null) {
-                try { in.close(); } catch (Exception e) {}
+            roomConnections.clear();
+
+            if (flux != null) {
+                try { flux.close(); } catch (Exception e) {}
             }
             if (serveur != null && !serveur.isClosed()) {
                 serveur.close();
@@ -522,6 +798,8 @@ public class ChatClientGUI extends JFrame {
             if (receptionThread != null) {
                 receptionThread.interrupt();
             }
+            drainTimer.stop();
+            drainIncoming();
 
             setStatusConnected(false);
             encryptionLabel.setText("Chiffrement: Inactif");
@@ -550,23 +828,15 @@ public class ChatClientGUI extends JFrame {
         receptionThread = new Thread(() -> {
             try {
                 while (isConnected) {
-                    String messageChiffre = (String) in.readObject();
-                    String message = AES.decrypteAES(messageChiffre, cleAESClient);
+                    byte[] messageChiffre = flux.lire(ProtocoleBinaire.TYPE_MESSAGE);
+                    String message = canal.dechiffrer(ByteBuffer.wrap(messageChiffre));
 
                     if (handleSystemMessage(message)) {
                         continue;
                     }
 
-                    final String displayMsg = parseMessage(message);
-                    if (displayMsg != null) {
-                        SwingUtilities.invokeLater(() -> {
-                            RoomPanel roomPanel = getRoomPanel(currentRoom);
-                            if (roomPanel != null) {
-                                roomPanel.appendMessage(displayMsg);
-                                Toolkit.getDefaultToolkit().beep();
-                            }
-                        });
-                    }
+                    // Affiché ou mis de côté par drainIncoming() à la prochaine image
+                    offerIncoming(parseMessage(message));
                 }
             } catch (Exception e) {
                 if (isConnected) {
@@ -580,25 +850,38 @@ public class ChatClientGUI extends JFrame {
             }
         });
         receptionThread.start();
+        drainTimer.start();
+    }
+
+    /**
+     * Dépose un message reçu pour la prochaine image (le plus ancien est perdu si la file est pleine).
+     *
+     * @param incomingMsg Le message préparé par parseMessage()
+     */
+    private void offerIncoming(Incoming incomingMsg) {
+        while (!incoming.offer(incomingMsg)) {
+            incoming.poll();
+        }
     }
 
     private boolean handleSystemMessage(String message) {
         try {
             // Gestion de la clé AES du salon
             if (message.startsWith("ROOM_KEY:")) {
-                String keyBase64 = message.substring(9);
-                byte[] keyBytes = Base64.getDecoder().decode(keyBase64);
-                SecretKey roomKey = new SecretKeySpec(keyBytes, "AES");
-                roomKeys.put(currentRoom, roomKey);
+                receiveRoomKey(message.substring(9), null, flux.supporte(ProtocoleBinaire.CAPACITE_HISTORIQUE));
+                return true;
+            }
 
-                System.out.println("Clé AES reçue pour le salon: " + currentRoom);
-                SwingUtilities.invokeLater(() -> {
-                    RoomPanel roomPanel = getRoomPanel(currentRoom);
-                    if (roomPanel != null) {
-                        roomPanel.appendMessage("[SYSTÈME] Clé de chiffrement reçue");
-                        roomPanel.setInputEnabled(true); // Activer le champ !
-                    }
-                });
+            // Format du contenu d'un salon (serveur avec CAPACITE_GCM)
+            if (message.startsWith("ROOM_MODE:")) {
+                receiveRoomMode(message.substring(10), null);
+                return true;
+            }
+
+            // Salon possédé par un autre serveur : le rejoindre par une seconde connexion
+            if (message.startsWith("REDIRECT:")) {
+                String[] parts = message.substring(9).split(":", 3);
+                openRoomConnection(parts[2], parts[0], Integer.parseInt(parts[1]));
                 return true;
             }
 
@@ -608,6 +891,19 @@ public class ChatClientGUI extends JFrame {
                 return true;
             }
 
+            // Deltas de présence (serveur avec CAPACITE_PRESENCE)
+            if (message.startsWith("USER_JOINED:")) {
+                String users = message.substring(12);
+                SwingUtilities.invokeLater(() -> applyUserDelta(users, true));
+                return true;
+            }
+
+            if (message.startsWith("USER_LEFT:")) {
+                String users = message.substring(10);
+                SwingUtilities.invokeLater(() -> applyUserDelta(users, false));
+                return true;
+            }
+
             if (message.startsWith("NEW_ROOM:")) {
                 String roomName = message.substring(9);
                 SwingUtilities.invokeLater(() -> {
@@ -623,6 +919,58 @@ public class ChatClientGUI extends JFrame {
                 return true;
             }
 
+            // Catalogue versionné (serveur avec CAPACITE_CATALOGUE)
+            if (message.startsWith("ROOM_ADDED:")) {
+                String[] parts = message.substring(11).split(":", 2);
+                long revision = Long.parseLong(parts[0]);
+                String roomName = parts[1];
+                SwingUtilities.invokeLater(() -> {
+                    if (!roomPanels.containsKey(roomName)) {
+                        addRoomTab(roomName);
+                        getRoomPanel("Général").appendMessage("[SYSTÈME] Nouveau salon disponible: " + roomName + " (cliquez sur l'onglet pour y accéder)");
+                    }
+                    advanceRoomRevision(revision, false);
+                });
+                return true;
+            }
+
+            if (message.startsWith("ROOM_REV:")) {
+                long revision = Long.parseLong(message.substring(9));
+                SwingUtilities.invokeLater(() -> advanceRoomRevision(revision, true));
+                return true;
+            }
+
+            // Historique : messages d'une page, puis fin de page
+            if (message.startsWith("HISTORY_MSG:")) {
+                String[] parts = message.substring(12).split(":", 3);
+                String record = parts[2];
+                String salon = record.startsWith("[") && record.indexOf(']') > 0
+                        ? record.substring(1, record.indexOf(']')) : currentRoom;
+                String time = HISTORY_TIME.format(Instant.ofEpochMilli(Long.parseLong(parts[1])));
+                pendingHistory.computeIfAbsent(salon, k -> new ArrayList<>())
+                        .add("[" + time + "] " + formatRoomMessage(record));
+                return true;
+            }
+
+            if (message.startsWith("HISTORY_END:")) {
+                String[] parts = message.substring(12).split(":", 2);
+                long before = Long.parseLong(parts[0]);
+                List<String> lines = pendingHistory.remove(parts[1]);
+                SwingUtilities.invokeLater(() -> {
+                    RoomPanel roomPanel = getRoomPanel(parts[1]);
+                    if (roomPanel != null) {
+                        roomPanel.prependHistory(lines == null ? List.of() : lines, before);
+                    }
+                });
+                return true;
+            }
+
+            if (message.startsWith("ROOM_SNAPSHOT:")) {
+                String[] parts = message.substring(14).split(":", 3);
+                SwingUtilities.invokeLater(() -> applyRoomSnapshot(parts[0], Long.parseLong(parts[1]), parts[2]));
+                return true;
+            }
+
             return false;
         } catch (Exception e) {
             e.printStackTrace();
@@ -630,9 +978,96 @@ public class ChatClientGUI extends JFrame {
         }
     }
 
-    private String parseMessage(String message) {
+    /**
+     * Enregistre le format du contenu d'un salon. Sans annonce (serveur sans
+     * CAPACITE_GCM), le salon reste au format historique.
+     *
+     * @param mode "gcm|ecb:salon" (ROOM_MODE)
+     * @param room Seul salon accepté (connexion de salon), ou null
+     */
+    private void receiveRoomMode(String mode, String room) {
+        String[] parts = mode.split(":", 2);
+        if (room == null || parts[1].equals(room)) {
+            roomGcm.put(parts[1], parts[0].equals("gcm"));
+        }
+    }
+
+    /**
+     * Enregistre la clé d'un salon et active sa saisie ; à la première entrée dans
+     * le salon, demande ses derniers messages.
+     *
+     * La clé nommée ("salon:clé", CAPACITE_CLE_NOMMEE) va au salon qu'elle nomme.
+     * Sans nom (ancien serveur), elle va au salon attendu, ou à défaut au salon
+     * courant.
+     *
+     * @param key "salon:clé" ou "clé" (ROOM_KEY, clé en Base64)
+     * @param expectedRoom Seul salon accepté (connexion de salon), ou null
+     * @param historySupported true si le serveur du salon a CAPACITE_HISTORIQUE
+     * @throws Exception Si la demande d'historique échoue
+     */
+    private void receiveRoomKey(String key, String expectedRoom, boolean historySupported) throws Exception {
+        // Le Base64 ne contient jamais ':' ; un nom de salon peut en contenir
+        int separator = key.lastIndexOf(':');
+        String named = separator < 0 ? null : key.substring(0, separator);
+        if (named != null && expectedRoom != null && !named.equals(expectedRoom)) {
+            return;
+        }
+        String keyBase64 = key.substring(separator + 1);
+        String room = named != null ? named : expectedRoom != null ? expectedRoom : currentRoom;
+        byte[] keyBytes = Base64.getDecoder().decode(keyBase64);
+        roomKeys.put(room, new SecretKeySpec(keyBytes, "AES"));
+
+        // Première entrée dans ce salon : le remplir avec ses derniers messages
+        if (historySupported && historyRequested.add(room)) {
+            sendToRoom(room, "HISTORY:" + HISTORY_PAGE);
+        }
+
+        System.out.println("Clé AES reçue pour le salon: " + room);
+        SwingUtilities.invokeLater(() -> {
+            RoomPanel roomPanel = getRoomPanel(room);
+            if (roomPanel != null) {
+                roomPanel.appendMessage("[SYSTÈME] Clé de chiffrement reçue");
+                roomPanel.setInputEnabled(true); // Activer le champ !
+            }
+        });
+    }
+
+    /**
+     * Ouvre la connexion d'un salon redirigé (une seule par salon).
+     *
+     * @param room Le salon
+     * @param host Serveur propriétaire du salon
+     * @param port Son port
+     */
+    private void openRoomConnection(String room, String host, int port) {
+        if (roomConnections.containsKey(room)) {
+            return;
+        }
+        try {
+            RoomConnection connection = new RoomConnection(room, host, port);
+            roomConnections.put(room, connection);
+            connection.start();
+        } catch (Exception e) {
+            SwingUtilities.invokeLater(() -> {
+                RoomPanel roomPanel = getRoomPanel(room);
+                if (roomPanel != null) {
+                    roomPanel.appendMessage("[SYSTÈME] Serveur du salon injoignable (" + host + ":" + port + ")");
+                }
+            });
+        }
+    }
+
+    /**
+     * Prépare un message reçu pour l'affichage. Seuls les messages du salon courant
+     * sont déchiffrés ici ; ceux des autres salons restent chiffrés jusqu'à
+     * l'ouverture de leur onglet.
+     *
+     * @param message Le message déchiffré avec la clé personnelle
+     * @return Le message à afficher ou à mettre de côté
+     */
+    private Incoming parseMessage(String message) {
         if (message.startsWith("[SYSTÈME]") || message.startsWith("[MP")) {
-            return message;
+            return new Incoming(null, message, false);
         }
 
         if (message.startsWith("[") && message.contains("]") && message.contains(":")) {
@@ -646,41 +1081,172 @@ public class ChatClientGUI extends JFrame {
                 String encryptedContent = rest.substring(usernameEnd + 1).trim();
 
                 if (!salon.equals(currentRoom)) {
-                    System.out.println("Message ignoré - Salon: " + salon + " (actuel: " + currentRoom + ")");
-                    return null;
+                    return new Incoming(salon, message, true);
                 }
 
-                // Déchiffre le contenu à l'aide de la clé du salon
-                SecretKey roomKey = roomKeys.get(salon);
-                if (roomKey != null) {
-                    try {
-                        String decryptedContent = AES.decrypteAES(encryptedContent, roomKey);
-                        return "[" + senderUsername + "] " + decryptedContent;
-                    } catch (Exception e) {
-                        return "[" + senderUsername + "] [Message chiffré - clé invalide]";
-                    }
-                } else {
-                    return "[" + senderUsername + "] [Message chiffré - clé manquante]";
-                }
+                return new Incoming(salon, decryptRoomMessage(salon, senderUsername, encryptedContent), false);
             } catch (Exception e) {
-                return message;
+                return new Incoming(null, message, false);
             }
         }
 
-        return message;
+        return new Incoming(null, message, false);
+    }
+
+    /**
+     * Met en forme un message de salon archivé ("[salon]pseudo: contenu chiffré"),
+     * quel que soit le salon courant.
+     *
+     * @param message Le message tel que diffusé
+     * @return "[pseudo] contenu" en clair, ou le message tel quel s'il est mal formé
+     */
+    private String formatRoomMessage(String message) {
+        int salonEnd = message.indexOf("]");
+        int usernameEnd = message.indexOf(":", salonEnd + 1);
+        if (!message.startsWith("[") || salonEnd < 0 || usernameEnd < 0) {
+            return message;
+        }
+        return decryptRoomMessage(message.substring(1, salonEnd),
+                message.substring(salonEnd + 1, usernameEnd).trim(), message.substring(usernameEnd + 1).trim());
+    }
+
+    /**
+     * Déchiffre le contenu d'un message de salon à l'aide de la clé du salon.
+     *
+     * @return "[pseudo] contenu", ou une mention si la clé manque ou ne convient pas.
+     *         Les clés survivent aux redémarrages (elles dérivent du secret de l'archive
+     *         ou de --secret) : une clé invalide vient d'un message archivé sous un autre
+     *         secret (--secret ajouté ou changé depuis, archive recréée) ou d'un contenu
+     *         altéré (le contenu AES-GCM est lié à son salon et à son auteur)
+     */
+    private String decryptRoomMessage(String salon, String senderUsername, String encryptedContent) {
+        SecretKey roomKey = roomKeys.get(salon);
+        if (roomKey != null) {
+            try {
+                String decryptedContent = CanalAES.dechiffrerSalon(encryptedContent, salon, senderUsername, roomKey);
+                return "[" + senderUsername + "] " + decryptedContent;
+            } catch (Exception e) {
+                return "[" + senderUsername + "] [Message chiffré - clé invalide]";
+            }
+        } else {
+            return "[" + senderUsername + "] [Message chiffré - clé manquante]";
+        }
     }
 
     /**
      * Envoie un message chiffré au serveur.
      * Le message est chiffré avec la clé personnelle du client.
+     * Appelé depuis l'EDT et depuis le thread de réception : un envoi à la fois.
      *
      * @param message Le message en clair
      * @throws Exception Si le chiffrement ou l'envoi echoue
      */
     private void sendEncryptedMessage(String message) throws Exception {
-        String msgChiffre = AES.crypteAES(message, cleAESClient);
-        out.writeObject(msgChiffre);
-        out.flush();
+        synchronized (sendLock) {
+            flux.ecrire(ProtocoleBinaire.TYPE_MESSAGE, canal.chiffrer(message));
+        }
+    }
+
+    /**
+     * Envoie un message au serveur qui sert le salon : sa connexion s'il a été
+     * redirigé, la connexion principale sinon.
+     *
+     * @param room Le salon concerné
+     * @param message Le message en clair
+     * @throws Exception Si le chiffrement ou l'envoi echoue
+     */
+    private void sendToRoom(String room, String message) throws Exception {
+        RoomConnection connection = roomConnections.get(room);
+        if (connection != null) {
+            connection.send(message);
+        } else {
+            sendEncryptedMessage(message);
+        }
+    }
+
+    /**
+     * Connexion au serveur propriétaire d'un salon, ouverte sur REDIRECT. Elle
+     * n'entre que dans ce salon et n'en garde que la clé, l'historique et les
+     * messages ; présence et catalogue arrivent déjà par la connexion principale.
+     */
+    private class RoomConnection {
+        private final String room;
+        private final Socket socket = new Socket();
+        private final FluxBinaire roomFlux;
+        private final CanalAES roomCanal;
+
+        RoomConnection(String room, String host, int port) throws Exception {
+            this.room = room;
+            socket.connect(new InetSocketAddress(host, port), 5000);
+            // Un seul salon par connexion : ni abonnements ni nouvelle redirection
+            roomFlux = FluxBinaire.connecter(socket, ProtocoleBinaire.CAPACITES
+                    & ~(ProtocoleBinaire.CAPACITE_ABONNEMENTS | ProtocoleBinaire.CAPACITE_REDIRECTION));
+            byte[] keyBytes = roomFlux.lire(ProtocoleBinaire.TYPE_CLE);
+            roomCanal = CanalAES.pour(new SecretKeySpec(keyBytes, "AES"),
+                    roomFlux.supporte(ProtocoleBinaire.CAPACITE_GCM), CanalAES.SENS_CLIENT);
+
+            // Clé du Général de ce serveur, envoyée à l'ouverture : inutile ici
+            while (!receive().startsWith("ROOM_KEY:")) {
+                // Présence et catalogue initiaux ignorés
+            }
+            send("SET_USERNAME:" + username);
+            send("CHANGE_ROOM:" + room);
+        }
+
+        private String receive() throws Exception {
+            return roomCanal.dechiffrer(ByteBuffer.wrap(roomFlux.lire(ProtocoleBinaire.TYPE_MESSAGE)));
+        }
+
+        // EDT et thread de réception de la connexion : un envoi à la fois (voir sendLock)
+        synchronized void send(String message) throws Exception {
+            roomFlux.ecrire(ProtocoleBinaire.TYPE_MESSAGE, roomCanal.chiffrer(message));
+        }
+
+        /**
+         * Démarre la réception : clé du salon, pages d'historique et messages du salon.
+         */
+        void start() {
+            Thread thread = new Thread(() -> {
+                try {
+                    while (isConnected) {
+                        String message = receive();
+                        if (message.startsWith("ROOM_KEY:")) {
+                            // Seulement la clé de ce salon (pas celle du Général de ce serveur)
+                            receiveRoomKey(message.substring(9), room,
+                                    roomFlux.supporte(ProtocoleBinaire.CAPACITE_HISTORIQUE));
+                        } else if (message.startsWith("ROOM_MODE:")) {
+                            // Le Général de ce serveur n'est pas celui de la connexion principale
+                            receiveRoomMode(message.substring(10), room);
+                        } else if (message.startsWith("HISTORY_MSG:") || message.startsWith("HISTORY_END:")) {
+                            handleSystemMessage(message);
+                        } else if (message.startsWith("[" + room + "]")) {
+                            offerIncoming(parseMessage(message));
+                        }
+                    }
+                } catch (Exception e) {
+                    if (isConnected && roomConnections.remove(room, this)) {
+                        SwingUtilities.invokeLater(() -> {
+                            RoomPanel roomPanel = getRoomPanel(room);
+                            if (roomPanel != null) {
+                                roomPanel.appendMessage("[SYSTÈME] Connexion au serveur du salon perdue");
+                            }
+                        });
+                    }
+                }
+            }, "salon-" + room);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void close() {
+            try {
+                send("bye");
+            } catch (Exception e) {
+                System.err.println("Erreur envoi bye: " + e.getMessage());
+            }
+            try { roomFlux.close(); } catch (Exception e) {}
+            try { socket.close(); } catch (Exception e) {}
+        }
     }
 
     private void updateUserList(String userListString) {
@@ -696,6 +1262,93 @@ public class ChatClientGUI extends JFrame {
         }
     }
 
+    /**
+     * Applique un delta de présence à la liste des utilisateurs, sans la reconstruire.
+     *
+     * @param users Pseudos séparés par des virgules
+     * @param joined true pour des arrivées, false pour des départs
+     */
+    private void applyUserDelta(String users, boolean joined) {
+        for (String user : users.split(",")) {
+            String trimmed = user.trim();
+            if (trimmed.isEmpty() || trimmed.equals(username)) {
+                continue;
+            }
+            if (joined) {
+                if (!userListModel.contains(trimmed)) {
+                    userListModel.addElement(trimmed);
+                    getRoomPanel("Général").appendMessage("[SYSTÈME] " + trimmed + " vient de se connecter");
+                }
+            } else if (userListModel.removeElement(trimmed)) {
+                getRoomPanel("Général").appendMessage("[SYSTÈME] " + trimmed + " s'est déconnecté");
+            }
+        }
+    }
+
+    /**
+     * Avance la révision connue du catalogue. Les annonces peuvent arriver dans le
+     * désordre (plusieurs threads du serveur) : une révision en avance attend que
+     * le trou soit comblé, la révision connue ne saute jamais un changement manqué.
+     *
+     * @param revision Révision reçue
+     * @param reached true si toutes les révisions jusqu'à celle-ci sont appliquées (ROOM_REV, instantané)
+     */
+    private void advanceRoomRevision(long revision, boolean reached) {
+        if (reached) {
+            roomCatalogRevision = Math.max(roomCatalogRevision, revision);
+        } else if (revision > roomCatalogRevision) {
+            pendingRoomRevisions.add(revision);
+        }
+        while (!pendingRoomRevisions.isEmpty() && pendingRoomRevisions.first() <= roomCatalogRevision + 1) {
+            roomCatalogRevision = Math.max(roomCatalogRevision, pendingRoomRevisions.pollFirst());
+        }
+    }
+
+    /**
+     * Remplace le catalogue par un instantané complet.
+     *
+     * @param epoch Époque du serveur
+     * @param revision Révision de l'instantané
+     * @param roomListString Salons séparés par des virgules
+     */
+    private void applyRoomSnapshot(String epoch, long revision, String roomListString) {
+        Set<String> rooms = new HashSet<>();
+        for (String room : roomListString.split(",")) {
+            if (!room.trim().isEmpty()) {
+                rooms.add(room.trim());
+                addRoomTab(room.trim());
+            }
+        }
+        for (String room : new ArrayList<>(roomPanels.keySet())) {
+            if (!rooms.contains(room)) {
+                removeRoomTab(room);
+            }
+        }
+        roomCatalogEpoch = epoch;
+        roomCatalogRevision = revision;
+        advanceRoomRevision(revision, true);
+    }
+
+    /**
+     * Retire l'onglet d'un salon absent de l'instantané du catalogue, par exemple
+     * après un redémarrage du serveur (jamais Général).
+     * Si c'était le salon courant, revient dans Général.
+     *
+     * @param roomName Le salon disparu
+     */
+    private void removeRoomTab(String roomName) {
+        if (roomName.equals("Général") || !roomPanels.containsKey(roomName)) {
+            return;
+        }
+        if (roomName.equals(currentRoom)) {
+            roomTabs.setSelectedComponent(getRoomPanel("Général"));
+        }
+        roomTabs.remove(roomPanels.remove(roomName));
+        roomKeys.remove(roomName);
+        roomGcm.remove(roomName);
+        getRoomPanel("Général").appendMessage("[SYSTÈME] Le salon " + roomName + " n'existe plus sur le serveur");
+    }
+
     private void updateRoomList(String roomListString) {
         if (!roomListString.isEmpty()) {
             String[] rooms = roomListString.split(",");
@@ -0,0 +1,205 @@
+package Protocole;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * Flux bloquant de trames du protocole binaire.
+ * Utilisé par les clients et par les serveurs à thread dédié.
+ *
+ * @author Chris - Angel
+ * @version 2.0
+ */
+public class FluxBinaire implements Closeable {
+
+    private final DataInputStream in;
+    // BufferedOutputStream directement, sans DataOutputStream : ses write() sont
+    // synchronized et épingleraient un thread virtuel bloqué sur un client lent
+    private final BufferedOutputStream out;
+    private final byte[] entete = new byte[ProtocoleBinaire.TAILLE_ENTETE];
+    private int version = ProtocoleBinaire.VERSION;
+    private int capacites = 0;
+    // Tampon de réception réutilisé par lireTampon()
+    private byte[] reception = new byte[1024];
+
+    private FluxBinaire(InputStream in, OutputStream out) {
+        this.in = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+        this.out = new BufferedOutputStream(out);
+    }
+
+    /**
+     * Côté client : envoie l'offre de protocole (avec toutes les capacités supportées)
+     * et attend la réponse du serveur.
+     *
+     * @param socket Socket connectée au serveur
+     * @return Le flux prêt à l'emploi
+     * @throws IOException Si le serveur refuse ou ne parle pas le protocole binaire
+     */
+    public static FluxBinaire connecter(Socket socket) throws IOException {
+        return connecter(socket, ProtocoleBinaire.CAPACITES);
+    }
+
+    /**
+     * Côté client : envoie l'offre de protocole et attend la réponse du serveur.
+     *
+     * @param socket Socket connectée au serveur
+     * @param capacites Capacités proposées (CAPACITE_*)
+     * @return Le flux prêt à l'emploi
+     * @throws IOException Si le serveur refuse ou ne parle pas le protocole binaire
+     */
+    public static FluxBinaire connecter(Socket socket, int capacites) throws IOException {
+        FluxBinaire flux = new FluxBinaire(socket.getInputStream(), socket.getOutputStream());
+        flux.ecrireNegociation(new ProtocoleBinaire.Negociation(ProtocoleBinaire.VERSION, capacites));
+        ProtocoleBinaire.Negociation reponse = flux.lireNegociation();
+        flux.version = ProtocoleBinaire.choisirVersion(reponse.version);
+        // Le serveur ne peut retenir qu'une partie de ce qui a été proposé
+        flux.capacites = reponse.capacites & capacites;
+        return flux;
+    }
+
+    /**
+     * Côté serveur : lit l'offre du client et répond avec la version retenue.
+     *
+     * @param in Flux entrant (positionné au début de l'offre)
+     * @param out Flux sortant
+     * @return Le flux prêt à l'emploi
+     * @throws IOException Si l'offre est invalide
+     */
+    public static FluxBinaire accepter(InputStream in, OutputStream out) throws IOException {
+        FluxBinaire flux = new FluxBinaire(in, out);
+        ProtocoleBinaire.Negociation retenue = ProtocoleBinaire.choisir(flux.lireNegociation());
+        flux.version = retenue.version;
+        flux.capacites = retenue.capacites;
+        flux.ecrireNegociation(retenue);
+        return flux;
+    }
+
+    private void ecrireNegociation(ProtocoleBinaire.Negociation negociation) throws IOException {
+        ByteBuffer offre = ProtocoleBinaire.encoderNegociation(negociation.version, negociation.capacites);
+        out.write(offre.array(), 0, offre.remaining());
+        out.flush();
+    }
+
+    private ProtocoleBinaire.Negociation lireNegociation() throws IOException {
+        byte[] magic = new byte[ProtocoleBinaire.MAGIC.length];
+        in.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != ProtocoleBinaire.MAGIC[i]) {
+                throw new ProtocolException("Protocole inconnu");
+            }
+        }
+        int versionLue = in.readUnsignedByte();
+        int capacitesLues = versionLue >= 2 ? in.readUnsignedByte() : 0;
+        return new ProtocoleBinaire.Negociation(versionLue, capacitesLues);
+    }
+
+    /**
+     * Écrit une trame et la pousse sur le réseau.
+     * Un seul thread à la fois : les écrivains concurrents doivent se synchroniser.
+     *
+     * @param type Type de trame
+     * @param donnees Données brutes
+     * @throws IOException Si l'écriture échoue
+     */
+    public void ecrire(byte type, byte[] donnees) throws IOException {
+        ajouter(type, donnees);
+        out.flush();
+    }
+
+    /**
+     * Ajoute une trame au tampon d'envoi sans la pousser sur le réseau
+     * (le tampon part de lui-même s'il est plein). Voir pousser().
+     *
+     * @param type Type de trame
+     * @param donnees Données brutes
+     * @throws IOException Si l'écriture échoue
+     */
+    public void ajouter(byte type, byte[] donnees) throws IOException {
+        ByteBuffer.wrap(entete).put(type).putInt(donnees.length);
+        out.write(entete, 0, entete.length);
+        out.write(donnees, 0, donnees.length);
+    }
+
+    /**
+     * Pousse sur le réseau les trames ajoutées par ajouter().
+     *
+     * @throws IOException Si l'écriture échoue
+     */
+    public void pousser() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Lit la prochaine trame (bloquant).
+     *
+     * @param typeAttendu Type de trame attendu
+     * @return Les données de la trame
+     * @throws IOException Si la lecture échoue ou si la trame est invalide
+     */
+    public byte[] lire(byte typeAttendu) throws IOException {
+        byte type = in.readByte();
+        int longueur = in.readInt();
+        ProtocoleBinaire.verifierEntete(type, longueur, typeAttendu);
+        byte[] donnees = new byte[longueur];
+        in.readFully(donnees);
+        return donnees;
+    }
+
+    /**
+     * Lit la prochaine trame dans un tampon interne réutilisé (sans allocation
+     * en régime établi). La vue rendue n'est valable que jusqu'au prochain appel.
+     *
+     * @param typeAttendu Type de trame attendu
+     * @return Vue sur les données de la trame
+     * @throws IOException Si la lecture échoue ou si la trame est invalide
+     */
+    public ByteBuffer lireTampon(byte typeAttendu) throws IOException {
+        byte type = in.readByte();
+        int longueur = in.readInt();
+        ProtocoleBinaire.verifierEntete(type, longueur, typeAttendu);
+        if (reception.length < longueur) {
+            reception = new byte[Math.max(longueur, reception.length * 2)];
+        }
+        in.readFully(reception, 0, longueur);
+        return ByteBuffer.wrap(reception, 0, longueur);
+    }
+
+    /**
+     * @return La version de protocole négociée
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Les capacités négociées (CAPACITE_*)
+     */
+    public int getCapacites() {
+        return capacites;
+    }
+
+    /**
+     * @param capacite Capacité à tester (CAPACITE_*)
+     * @return true si la capacité a été négociée
+     */
+    public boolean supporte(int capacite) {
+        return (capacites & capacite) != 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            out.close();
+        } finally {
+            in.close();
+        }
+    }
+}
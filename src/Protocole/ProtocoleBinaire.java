@@ -0,0 +1,289 @@
+package Protocole;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Protocole binaire versionné entre clients et serveurs.
+ *
+ * Remplace le format historique (String Base64 sérialisées par ObjectOutputStream) :
+ * - pas d'inflation Base64 (+33%) sur les octets chiffrés
+ * - pas d'en-têtes de sérialisation ni de table de poignées
+ *
+ * Négociation (le client parle en premier) :
+ *   client  -> serveur : MAGIC (4 octets) + version max supportée (1 octet)
+ *                        [+ capacités proposées (1 octet) à partir de la version 2]
+ *   serveur -> client  : MAGIC (4 octets) + version retenue (1 octet)
+ *                        [+ capacités retenues (1 octet) si la version retenue est >= 2]
+ * Un ancien client commence par l'en-tête ObjectOutputStream (AC ED), ce qui
+ * permet au serveur de basculer sur le format historique.
+ *
+ * Trame : type (1 octet) + longueur (4 octets, big-endian) + données
+ *
+ * @author Chris - Angel
+ * @version 2.0
+ */
+public final class ProtocoleBinaire {
+
+    /**
+     * Identifiant du protocole binaire ("MSGB").
+     */
+    public static final byte[] MAGIC = {'M', 'S', 'G', 'B'};
+
+    /**
+     * Version la plus récente supportée.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Capacité : messages chiffrés en AES-GCM (nonce + chiffre + tag) au lieu d'AES-ECB.
+     */
+    public static final int CAPACITE_GCM = 0x01;
+
+    /**
+     * Capacité : présence incrémentale (USER_JOINED / USER_LEFT après une seule
+     * liste USER_LIST) au lieu d'une liste complète à chaque arrivée ou départ.
+     */
+    public static final int CAPACITE_PRESENCE = 0x02;
+
+    /**
+     * Capacité : catalogue des salons versionné (SYNC_ROOMS, ROOM_SNAPSHOT,
+     * ROOM_ADDED) au lieu de ROOM_LIST et NEW_ROOM.
+     */
+    public static final int CAPACITE_CATALOGUE = 0x04;
+
+    /**
+     * Capacité : historique des salons (HISTORY, HISTORY_MSG, HISTORY_END).
+     */
+    public static final int CAPACITE_HISTORIQUE = 0x08;
+
+    /**
+     * Capacité : abonnements multiples. Le client reste membre des salons qu'il
+     * quitte par CHANGE_ROOM et continue d'en recevoir les messages ("[salon]...").
+     */
+    public static final int CAPACITE_ABONNEMENTS = 0x10;
+
+    /**
+     * Capacité : redirection. Un salon possédé par un autre serveur est refusé par
+     * "REDIRECT:hote:port:salon" ; le client le rejoint par une seconde connexion.
+     */
+    public static final int CAPACITE_REDIRECTION = 0x20;
+
+    /**
+     * Capacité : clé de salon nommée. "ROOM_KEY:salon:clé" au lieu de "ROOM_KEY:clé",
+     * que le client rattache au salon courant au moment où la trame arrive.
+     */
+    public static final int CAPACITE_CLE_NOMMEE = 0x40;
+
+    /**
+     * Capacités supportées par cette implémentation.
+     */
+    public static final int CAPACITES = CAPACITE_GCM | CAPACITE_PRESENCE | CAPACITE_CATALOGUE
+            | CAPACITE_HISTORIQUE | CAPACITE_ABONNEMENTS | CAPACITE_REDIRECTION | CAPACITE_CLE_NOMMEE;
+
+    /**
+     * Trame contenant la clé AES personnelle du client.
+     */
+    public static final byte TYPE_CLE = 1;
+
+    /**
+     * Trame contenant un message chiffré avec la clé personnelle.
+     */
+    public static final byte TYPE_MESSAGE = 2;
+
+    /**
+     * Taille de l'en-tête d'une trame (type + longueur).
+     */
+    public static final int TAILLE_ENTETE = 5;
+
+    /**
+     * Taille maximale des données d'une trame (protection mémoire).
+     */
+    public static final int TAILLE_MAX = 16 * 1024 * 1024;
+
+    /**
+     * Taille minimale de l'offre / de la réponse de négociation (version 1).
+     */
+    public static final int TAILLE_NEGOCIATION = MAGIC.length + 1;
+
+    private ProtocoleBinaire() {
+    }
+
+    /**
+     * Résultat d'une négociation : version et capacités.
+     */
+    public static final class Negociation {
+        public final int version;
+        public final int capacites;
+
+        public Negociation(int version, int capacites) {
+            this.version = version;
+            this.capacites = capacites;
+        }
+
+        /**
+         * @param capacite Capacité à tester (CAPACITE_*)
+         * @return true si la capacité est présente
+         */
+        public boolean supporte(int capacite) {
+            return (capacites & capacite) != 0;
+        }
+    }
+
+    /**
+     * Encode l'offre du client ou la réponse du serveur, sans capacités.
+     *
+     * @param version Version proposée (client) ou retenue (serveur)
+     * @return Le tampon prêt à écrire
+     */
+    public static ByteBuffer encoderNegociation(int version) {
+        return encoderNegociation(version, 0);
+    }
+
+    /**
+     * Encode l'offre du client ou la réponse du serveur.
+     * L'octet de capacités n'est écrit qu'à partir de la version 2.
+     *
+     * @param version Version proposée (client) ou retenue (serveur)
+     * @param capacites Capacités proposées (client) ou retenues (serveur)
+     * @return Le tampon prêt à écrire
+     */
+    public static ByteBuffer encoderNegociation(int version, int capacites) {
+        ByteBuffer buf = ByteBuffer.allocate(TAILLE_NEGOCIATION + (version >= 2 ? 1 : 0));
+        buf.put(MAGIC).put((byte) version);
+        if (version >= 2) {
+            buf.put((byte) capacites);
+        }
+        return buf.flip();
+    }
+
+    /**
+     * Lit une offre ou une réponse de négociation.
+     *
+     * @param buf Tampon en mode lecture
+     * @return La négociation lue, ou null s'il manque des octets (position inchangée)
+     * @throws ProtocolException Si le MAGIC est incorrect
+     */
+    public static Negociation lireNegociation(ByteBuffer buf) throws ProtocolException {
+        if (buf.remaining() < TAILLE_NEGOCIATION) return null;
+        int debut = buf.position();
+        for (byte b : MAGIC) {
+            if (buf.get() != b) {
+                throw new ProtocolException("Protocole inconnu");
+            }
+        }
+        int version = buf.get() & 0xFF;
+        int capacites = 0;
+        if (version >= 2) {
+            if (!buf.hasRemaining()) {
+                buf.position(debut);
+                return null;
+            }
+            capacites = buf.get() & 0xFF;
+        }
+        return new Negociation(version, capacites);
+    }
+
+    /**
+     * Choisit la version et les capacités communes avec un pair.
+     *
+     * @param offre Offre reçue du pair
+     * @return La négociation retenue
+     * @throws ProtocolException Si aucune version commune n'existe
+     */
+    public static Negociation choisir(Negociation offre) throws ProtocolException {
+        int version = choisirVersion(offre.version);
+        return new Negociation(version, version >= 2 ? offre.capacites & CAPACITES : 0);
+    }
+
+    /**
+     * Choisit la version commune avec un pair.
+     *
+     * @param versionPair Version max annoncée par le pair
+     * @return La version retenue
+     * @throws ProtocolException Si aucune version commune n'existe
+     */
+    public static int choisirVersion(int versionPair) throws ProtocolException {
+        if (versionPair < 1) {
+            throw new ProtocolException("Version de protocole non supportée : " + versionPair);
+        }
+        return Math.min(versionPair, VERSION);
+    }
+
+    /**
+     * Encode une trame complète.
+     *
+     * @param type Type de trame
+     * @param donnees Données brutes
+     * @return Le tampon prêt à écrire
+     */
+    public static ByteBuffer encoderTrame(byte type, byte[] donnees) {
+        ByteBuffer buf = ByteBuffer.allocate(TAILLE_ENTETE + donnees.length);
+        buf.put(type).putInt(donnees.length).put(donnees);
+        return buf.flip();
+    }
+
+    /**
+     * Décode la prochaine trame complète d'un tampon (moteur NIO).
+     *
+     * @param buf Tampon en mode lecture
+     * @param typeAttendu Type de trame attendu
+     * @return Les données, ou null s'il manque des octets (position inchangée)
+     * @throws ProtocolException Si le type ou la longueur est invalide
+     */
+    public static byte[] decoderTrame(ByteBuffer buf, byte typeAttendu) throws ProtocolException {
+        if (buf.remaining() < TAILLE_ENTETE) return null;
+        int debut = buf.position();
+        byte type = buf.get();
+        int longueur = buf.getInt();
+        verifierEntete(type, longueur, typeAttendu);
+        if (buf.remaining() < longueur) {
+            buf.position(debut);
+            return null;
+        }
+        byte[] donnees = new byte[longueur];
+        buf.get(donnees);
+        return donnees;
+    }
+
+    /**
+     * Comme decoderTrame, mais sans copie : rend une vue sur les données de la trame
+     * dans le tampon de réception (valable jusqu'à la réutilisation de ce tampon).
+     *
+     * @param buf Tampon en mode lecture
+     * @param typeAttendu Type de trame attendu
+     * @return Vue sur les données, ou null s'il manque des octets (position inchangée)
+     * @throws ProtocolException Si le type ou la longueur est invalide
+     */
+    public static ByteBuffer trancheTrame(ByteBuffer buf, byte typeAttendu) throws ProtocolException {
+        if (buf.remaining() < TAILLE_ENTETE) return null;
+        int debut = buf.position();
+        byte type = buf.get();
+        int longueur = buf.getInt();
+        verifierEntete(type, longueur, typeAttendu);
+        if (buf.remaining() < longueur) {
+            buf.position(debut);
+            return null;
+        }
+        ByteBuffer donnees = buf.slice(buf.position(), longueur);
+        buf.position(buf.position() + longueur);
+        return donnees;
+    }
+
+    /**
+     * Vérifie l'en-tête d'une trame reçue.
+     *
+     * @param type Type lu
+     * @param longueur Longueur lue
+     * @param typeAttendu Type attendu
+     * @throws ProtocolException Si la trame est invalide
+     */
+    static void verifierEntete(byte type, int longueur, byte typeAttendu) throws ProtocolException {
+        if (type != typeAttendu) {
+            throw new ProtocolException("Type de trame inattendu : " + type);
+        }
+        if (longueur < 0 || longueur > TAILLE_MAX) {
+            throw new ProtocolException("Longueur de trame invalide : " + longueur);
+        }
+    }
+}
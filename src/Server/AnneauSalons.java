@@ -0,0 +1,138 @@
+package Server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Anneau de hachage cohérent : chaque salon a un seul serveur propriétaire,
+ * choisi dans une liste statique de nœuds.
+ *
+ * Chaque nœud occupe POINTS_PAR_NOEUD points de l'anneau (hachés depuis son nom) ;
+ * un salon appartient au nœud du premier point qui suit le hachage de son nom. Ajouter
+ * un nœud ne déplace que les salons qui tombent sur ses points (environ 1/N des
+ * salons), les autres gardent leur propriétaire. Le salon Général, où commence chaque
+ * session, est présent sur tous les nœuds.
+ *
+ * Option du serveur : --anneau=NOM=HOTE:PORT,... (avec --noeud=NOM pour ce serveur)
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+final class AnneauSalons {
+
+    /**
+     * Points par nœud : plus il y en a, plus les salons sont répartis également.
+     */
+    static final int POINTS_PAR_NOEUD = 160;
+
+    /**
+     * Un nœud de l'anneau et l'adresse où ses clients se connectent.
+     */
+    static final class Noeud {
+        final String nom;
+        final String hote;
+        final int port;
+
+        Noeud(String nom, String hote, int port) {
+            this.nom = nom;
+            this.hote = hote;
+            this.port = port;
+        }
+    }
+
+    private final String local;
+    // Points triés et nœud de chaque point
+    private final long[] points;
+    private final Noeud[] proprietaires;
+
+    /**
+     * @param noeuds Les nœuds de l'anneau (même liste, dans n'importe quel ordre, sur chaque nœud)
+     * @param local Nom de ce serveur
+     */
+    AnneauSalons(List<Noeud> noeuds, String local) {
+        this.local = local;
+        int n = noeuds.size() * POINTS_PAR_NOEUD;
+        long[][] paires = new long[n][];
+        int i = 0;
+        for (int k = 0; k < noeuds.size(); k++) {
+            for (int p = 0; p < POINTS_PAR_NOEUD; p++) {
+                paires[i++] = new long[]{hacher(noeuds.get(k).nom + "#" + p), k};
+            }
+        }
+        // Égalité (improbable) départagée par le nom : même anneau quel que soit l'ordre de la liste
+        Arrays.sort(paires, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0])
+                : noeuds.get((int) a[1]).nom.compareTo(noeuds.get((int) b[1]).nom));
+        points = new long[n];
+        proprietaires = new Noeud[n];
+        for (i = 0; i < n; i++) {
+            points[i] = paires[i][0];
+            proprietaires[i] = noeuds.get((int) paires[i][1]);
+        }
+    }
+
+    /**
+     * @param description "NOM=HOTE:PORT,NOM=HOTE:PORT,..."
+     * @param local Nom de ce serveur
+     * @return L'anneau décrit
+     * @throws IllegalArgumentException Si la description est invalide ou ne contient pas ce serveur
+     */
+    static AnneauSalons depuis(String description, String local) {
+        List<Noeud> noeuds = new ArrayList<>();
+        boolean present = false;
+        for (String entree : description.split(",")) {
+            int egal = entree.indexOf('=');
+            int deuxPoints = entree.lastIndexOf(':');
+            if (egal <= 0 || deuxPoints < egal) {
+                throw new IllegalArgumentException("Nœud invalide : " + entree);
+            }
+            String nom = entree.substring(0, egal);
+            noeuds.add(new Noeud(nom, entree.substring(egal + 1, deuxPoints),
+                    Integer.parseInt(entree.substring(deuxPoints + 1))));
+            present |= nom.equals(local);
+        }
+        if (!present) {
+            throw new IllegalArgumentException("Le nœud " + local + " n'est pas dans l'anneau");
+        }
+        return new AnneauSalons(noeuds, local);
+    }
+
+    /**
+     * @param salon Nom du salon
+     * @return Le nœud propriétaire du salon
+     */
+    Noeud proprietaire(String salon) {
+        int i = Arrays.binarySearch(points, hacher(salon));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return proprietaires[i == points.length ? 0 : i];
+    }
+
+    /**
+     * @param salon Nom du salon
+     * @return true si ce serveur possède le salon (toujours vrai pour Général)
+     */
+    boolean estLocal(String salon) {
+        return salon.equals("Général") || proprietaire(salon).nom.equals(local);
+    }
+
+    /**
+     * @return Les 64 premiers bits du SHA-256 du texte (même valeur sur toute JVM)
+     */
+    static long hacher(String texte) {
+        try {
+            byte[] h = MessageDigest.getInstance("SHA-256").digest(texte.getBytes(StandardCharsets.UTF_8));
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = (v << 8) | (h[i] & 0xFF);
+            }
+            return v;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+}
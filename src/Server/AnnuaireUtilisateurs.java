@@ -0,0 +1,67 @@
+package Server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Annuaire concurrent des pseudos : pseudo -> client.
+ *
+ * Remplace le parcours de la liste des clients pour chaque message privé :
+ * la recherche d'un destinataire coûte une lecture de ConcurrentHashMap, quel
+ * que soit le nombre de connectés. L'annuaire garantit aussi l'unicité des
+ * pseudos : un pseudo déjà réservé par un autre client est refusé.
+ *
+ * @param <T> Type des clients
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class AnnuaireUtilisateurs<T> {
+
+    private final ConcurrentHashMap<String, T> utilisateurs = new ConcurrentHashMap<>();
+
+    /**
+     * Réserve un pseudo pour un client.
+     *
+     * @param pseudo Le pseudo demandé
+     * @param client Le client qui le demande
+     * @return true si le pseudo est libre ou déjà à ce client
+     */
+    public boolean reserver(String pseudo, T client) {
+        T titulaire = utilisateurs.putIfAbsent(pseudo, client);
+        return titulaire == null || titulaire == client;
+    }
+
+    /**
+     * Libère un pseudo, seulement s'il appartient encore à ce client.
+     *
+     * @param pseudo Le pseudo à libérer
+     * @param client Le client qui le détient
+     * @return true si le pseudo a été libéré (une seule fois par réservation)
+     */
+    public boolean liberer(String pseudo, T client) {
+        return utilisateurs.remove(pseudo, client);
+    }
+
+    /**
+     * @param pseudo Le pseudo recherché
+     * @return Le client qui porte ce pseudo, ou null
+     */
+    public T get(String pseudo) {
+        return utilisateurs.get(pseudo);
+    }
+
+    /**
+     * @return Les pseudos réservés
+     */
+    public List<String> noms() {
+        return new ArrayList<>(utilisateurs.keySet());
+    }
+
+    /**
+     * @return Nombre de pseudos réservés
+     */
+    public int taille() {
+        return utilisateurs.size();
+    }
+}
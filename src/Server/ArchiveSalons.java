@@ -0,0 +1,340 @@
+package Server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Archive persistante des messages de salon : un HistoriqueSalon par salon,
+ * dans un sous-répertoire de la racine.
+ *
+ * Les messages de salon sont déjà chiffrés avec la clé du salon : le serveur les
+ * stocke tels quels, sans pouvoir les lire.
+ *
+ * Le broadcast ne fait que déposer le message dans une file bornée. Le thread
+ * "archive" les copie dans les segments projetés en mémoire, puis écrit les pages
+ * modifiées sur le disque toutes les syncMs millisecondes, pour tous les ajouts de
+ * la période à la fois (group commit). Les défauts de page d'un segment neuf et
+ * l'écriture sur le disque ne retardent donc jamais une diffusion. Un arrêt brutal
+ * de la machine perd au plus une période ; si la file est pleine (disque trop lent),
+ * le message n'est pas archivé et il est compté.
+ *
+ * Lecture (commande HISTORY) : depuis le thread du client, sans passer par la file.
+ * Un message encore dans la file n'est pas encore lisible. Une fois archivé, un
+ * message est aussi confié à l'anneau des messages récents de son salon, avec sa
+ * séquence : les pages récentes sont servies depuis la mémoire.
+ *
+ * Clés : sans --secret, les clés des salons sont dérivées d'un secret aléatoire
+ * gardé à la racine de l'archive (FICHIER_SECRET), créé au premier démarrage. Un
+ * salon garde ainsi sa clé d'un redémarrage à l'autre et son historique reste
+ * lisible par les clients.
+ *
+ * Options du serveur : --archive=REPERTOIRE, --archive-segment=MO,
+ * --archive-retention-mo=MO, --archive-retention-h=H, --archive-sync=MS
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class ArchiveSalons implements Closeable {
+
+    /**
+     * Messages en attente d'archivage, au plus.
+     */
+    public static final int CAPACITE = 65536;
+
+    /**
+     * Fichier du secret des clés de salon, à la racine de l'archive.
+     */
+    public static final String FICHIER_SECRET = "cles-salons.secret";
+
+    // Taille du secret créé au premier démarrage
+    private static final int TAILLE_SECRET = 32;
+
+    // Fréquence de la rétention (en nombre de synchronisations)
+    private static final int SYNCHRONISATIONS_PAR_RETENTION = 50;
+
+    private final Path racine;
+    private final int tailleSegment;
+    private final long retentionOctets;
+    private final long retentionMs;
+    private final long syncNs;
+    private final ConcurrentHashMap<String, HistoriqueSalon> historiques = new ConcurrentHashMap<>();
+    private final ArrayBlockingQueue<Ajout> file = new ArrayBlockingQueue<>(CAPACITE);
+    private final LongAdder pertes = new LongAdder();
+    private final Thread archiveur;
+    private volatile boolean ferme = false;
+
+    /**
+     * Reçoit les messages d'une page d'historique.
+     */
+    public interface Lecteur {
+        /**
+         * @param sequence Séquence du message dans son salon
+         * @param horodatage Instant de réception (ms)
+         * @param message Le message tel que diffusé, en UTF-8 : vue en lecture seule
+         *                sur les pages projetées, valable pendant l'appel seulement
+         * @throws Exception Si le traitement du message échoue
+         */
+        void lire(long sequence, long horodatage, ByteBuffer message) throws Exception;
+    }
+
+    /**
+     * Un message en attente d'archivage.
+     */
+    private static final class Ajout {
+        final String salon;
+        final String message;
+        final long horodatage;
+        final MessagesRecents recents;
+
+        Ajout(String salon, String message, long horodatage, MessagesRecents recents) {
+            this.salon = salon;
+            this.message = message;
+            this.horodatage = horodatage;
+            this.recents = recents;
+        }
+    }
+
+    /**
+     * @param racine Répertoire de l'archive (créé s'il n'existe pas)
+     * @param tailleSegment Taille d'un segment en octets
+     * @param retentionOctets Taille maximale de l'historique d'un salon (0 : pas de limite)
+     * @param retentionMs Âge maximal d'un message (0 : pas de limite)
+     * @param syncMs Période d'écriture sur le disque
+     */
+    public ArchiveSalons(Path racine, int tailleSegment, long retentionOctets, long retentionMs, long syncMs) {
+        if (tailleSegment < 4096) {
+            throw new IllegalArgumentException("Segment trop petit : " + tailleSegment);
+        }
+        this.racine = racine;
+        this.tailleSegment = tailleSegment;
+        this.retentionOctets = retentionOctets;
+        this.retentionMs = retentionMs;
+        this.syncNs = TimeUnit.MILLISECONDS.toNanos(syncMs);
+        this.archiveur = new Thread(this::archiver, "archive");
+        archiveur.setDaemon(true);
+        archiveur.start();
+    }
+
+    /**
+     * Confie un message à l'archive de son salon (sans attendre).
+     *
+     * @param salon Nom du salon
+     * @param message Le message tel que diffusé ("[salon]pseudo: contenu chiffré")
+     * @return false si la file était pleine et que le message ne sera pas archivé
+     */
+    public boolean ajouter(String salon, String message) {
+        return ajouter(salon, message, null);
+    }
+
+    /**
+     * Confie un message à l'archive de son salon (sans attendre) ; une fois archivé,
+     * il est ajouté avec sa séquence aux messages récents du salon.
+     *
+     * @param salon Nom du salon
+     * @param message Le message tel que diffusé ("[salon]pseudo: contenu chiffré")
+     * @param recents Messages récents du salon (ou null)
+     * @return false si la file était pleine et que le message ne sera pas archivé
+     */
+    public boolean ajouter(String salon, String message, MessagesRecents recents) {
+        if (file.offer(new Ajout(salon, message, System.currentTimeMillis(), recents))) {
+            return true;
+        }
+        pertes.increment();
+        return false;
+    }
+
+    /**
+     * Lit une page de l'historique d'un salon, du plus ancien au plus récent message.
+     *
+     * @param salon Nom du salon
+     * @param avant Séquence à partir de laquelle remonter, exclue (Long.MAX_VALUE : les plus récents)
+     * @param nombre Nombre maximal de messages
+     * @param lecteur Reçoit chaque message
+     * @return Séquence à passer comme avant pour la page précédente,
+     *         ou -1 si la page atteint le début de l'historique
+     * @throws Exception Si l'historique ne peut être ouvert ou si le lecteur échoue
+     */
+    public long lire(String salon, long avant, int nombre, Lecteur lecteur) throws Exception {
+        if (nombre <= 0) {
+            return -1;
+        }
+        // Salon jamais archivé : pas de répertoire créé par une simple lecture
+        if (!historiques.containsKey(salon) && !Files.isDirectory(racine.resolve(repertoire(salon)))) {
+            return -1;
+        }
+        return historique(salon).lire(avant, nombre, lecteur);
+    }
+
+    /**
+     * Secret dont sont dérivées les clés des salons d'un serveur sans --secret :
+     * lu à la racine de l'archive, ou créé au premier démarrage (fichier lisible
+     * par son seul propriétaire, écrit puis renommé).
+     *
+     * @param racine Répertoire de l'archive (créé s'il n'existe pas)
+     * @return Le secret
+     * @throws IOException Si le secret ne peut être lu ou créé, ou s'il est trop court
+     */
+    public static byte[] secretCles(Path racine) throws IOException {
+        Path fichier = racine.resolve(FICHIER_SECRET);
+        if (!Files.exists(fichier)) {
+            Files.createDirectories(racine);
+            byte[] secret = new byte[TAILLE_SECRET];
+            new SecureRandom().nextBytes(secret);
+            // Fichier temporaire : droits du seul propriétaire sur les systèmes POSIX
+            Path temporaire = Files.createTempFile(racine, "secret", ".tmp");
+            Files.write(temporaire, secret);
+            Files.move(temporaire, fichier, StandardCopyOption.ATOMIC_MOVE);
+            return secret;
+        }
+        byte[] secret = Files.readAllBytes(fichier);
+        if (secret.length < 16) {
+            throw new IOException("Secret des salons invalide : " + fichier);
+        }
+        return secret;
+    }
+
+    /**
+     * @return Nombre de messages non archivés parce que la file était pleine
+     */
+    public long getPertes() {
+        return pertes.sum();
+    }
+
+    /**
+     * Boucle du thread d'archive : ajouts par lots, écriture sur le disque à chaque période.
+     */
+    private void archiver() {
+        List<Ajout> lot = new ArrayList<>(1024);
+        long prochaineSync = System.nanoTime() + syncNs;
+        int synchronisations = 0;
+        while (!ferme || !file.isEmpty()) {
+            try {
+                Ajout premier = file.poll(Math.max(0, prochaineSync - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (premier != null) {
+                    lot.add(premier);
+                    file.drainTo(lot, 1023);
+                    for (Ajout a : lot) {
+                        ecrire(a);
+                    }
+                    lot.clear();
+                }
+                if (System.nanoTime() >= prochaineSync) {
+                    synchroniser();
+                    prochaineSync = System.nanoTime() + syncNs;
+                    if (++synchronisations % SYNCHRONISATIONS_PAR_RETENTION == 0) {
+                        appliquerRetention();
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+        synchroniser();
+    }
+
+    private void ecrire(Ajout a) {
+        try {
+            byte[] donnees = a.message.getBytes(StandardCharsets.UTF_8);
+            long sequence = historique(a.salon).ajouter(donnees, a.horodatage);
+            if (a.recents != null) {
+                a.recents.ajouter(sequence, a.horodatage, donnees);
+            }
+        } catch (IOException | RuntimeException e) {
+            Journal.erreur("Archive du salon {} impossible : {}", a.salon, e.getMessage());
+        }
+    }
+
+    /**
+     * Historique d'un salon, ouvert au premier ajout ou à la première lecture
+     * (un salon archivé avant le redémarrage est relu à ce moment-là).
+     */
+    private HistoriqueSalon historique(String salon) throws IOException {
+        HistoriqueSalon h = historiques.get(salon);
+        if (h != null) {
+            return h;
+        }
+        try {
+            return historiques.computeIfAbsent(salon, s -> {
+                try {
+                    return new HistoriqueSalon(racine.resolve(repertoire(s)), tailleSegment);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param salon Nom du salon
+     * @return Nom de son répertoire (Base64 URL : tout nom de salon est un nom de fichier valide)
+     */
+    static String repertoire(String salon) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(salon.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Écrit sur le disque les ajouts de la période, tous salons confondus.
+     */
+    private void synchroniser() {
+        long debut = System.nanoTime();
+        long octets = 0;
+        for (HistoriqueSalon h : historiques.values()) {
+            try {
+                octets += h.forcer();
+            } catch (IOException | RuntimeException e) {
+                Journal.erreur("Écriture de l'archive impossible : {}", e.getMessage());
+            }
+        }
+        if (octets > 0) {
+            Metriques.synchronisationArchive.enregistrer(System.nanoTime() - debut);
+            Metriques.octetsArchives.add(octets);
+        }
+    }
+
+    private void appliquerRetention() {
+        if (retentionOctets <= 0 && retentionMs <= 0) {
+            return;
+        }
+        long maintenant = System.currentTimeMillis();
+        for (HistoriqueSalon h : historiques.values()) {
+            try {
+                int supprimes = h.appliquerRetention(retentionOctets, retentionMs, maintenant);
+                if (supprimes > 0) {
+                    Journal.info("Archive : {} segment(s) supprimé(s) par la rétention", supprimes);
+                }
+            } catch (IOException e) {
+                Journal.erreur("Rétention de l'archive impossible : {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Archive les messages en attente, les écrit sur le disque et arrête le thread d'archive.
+     */
+    @Override
+    public void close() {
+        // Pas d'interruption : elle fermerait le canal d'un segment en cours de création
+        ferme = true;
+        try {
+            archiveur.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
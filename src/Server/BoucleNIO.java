@@ -0,0 +1,125 @@
+package Server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Boucle d'événements du moteur NIO : un thread, un Selector, plusieurs milliers de connexions.
+ * Les autres threads (acceptation, autres boucles) ne touchent jamais au Selector directement :
+ * ils déposent leurs demandes dans des files puis réveillent la boucle.
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+class BoucleNIO implements Runnable {
+
+    private final Selector selector;
+    private final Queue<SocketChannel> aEnregistrer = new ConcurrentLinkedQueue<>();
+    private final Queue<ConnexionNIO> aEcrire = new ConcurrentLinkedQueue<>();
+    private final Queue<ConnexionNIO> aDeconnecter = new ConcurrentLinkedQueue<>();
+    private volatile Thread thread;
+
+    /**
+     * @throws IOException Si le Selector ne peut pas être ouvert
+     */
+    BoucleNIO() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Confie une nouvelle connexion acceptée à cette boucle.
+     *
+     * @param canal Le canal du client (déjà en mode non bloquant)
+     */
+    void enregistrer(SocketChannel canal) {
+        aEnregistrer.add(canal);
+        selector.wakeup();
+    }
+
+    /**
+     * Demande à la boucle de surveiller l'écriture d'une connexion
+     * qui vient de recevoir des trames à envoyer.
+     *
+     * @param connexion La connexion concernée
+     */
+    void demanderEcriture(ConnexionNIO connexion) {
+        if (Thread.currentThread() == thread) {
+            connexion.activerEcriture();
+        } else {
+            aEcrire.add(connexion);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Demande à la boucle de déconnecter un client dont la file de sortie a débordé.
+     * Toujours différé, même depuis le thread de la boucle : l'appelant est souvent
+     * en plein broadcast sur le salon dont le client doit être retiré.
+     *
+     * @param connexion La connexion concernée
+     */
+    void demanderDeconnexion(ConnexionNIO connexion) {
+        aDeconnecter.add(connexion);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        while (!thread.isInterrupted()) {
+            try {
+                selector.select();
+                traiterDemandes();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey cle = it.next();
+                    it.remove();
+                    ConnexionNIO connexion = (ConnexionNIO) cle.attachment();
+                    if (!cle.isValid()) {
+                        continue;
+                    }
+                    if (cle.isReadable()) {
+                        connexion.lire();
+                    }
+                    if (cle.isValid() && cle.isWritable()) {
+                        connexion.ecrire();
+                    }
+                }
+            } catch (IOException e) {
+                Journal.erreur("Erreur boucle NIO: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void traiterDemandes() {
+        SocketChannel canal;
+        while ((canal = aEnregistrer.poll()) != null) {
+            try {
+                SelectionKey cle = canal.register(selector, SelectionKey.OP_READ);
+                ConnexionNIO connexion = new ConnexionNIO(this, canal, cle);
+                cle.attach(connexion);
+                connexion.ouvrir();
+            } catch (Exception e) {
+                Journal.erreur("Erreur enregistrement client NIO: {}", e.getMessage());
+                try {
+                    canal.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        ConnexionNIO connexion;
+        while ((connexion = aEcrire.poll()) != null) {
+            connexion.activerEcriture();
+        }
+        while ((connexion = aDeconnecter.poll()) != null) {
+            connexion.deconnecterDebordement();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package Server;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Catalogue versionné des salons.
+ *
+ * Chaque création de salon incrémente une révision et est gardée dans un journal
+ * borné (les salons ne sont jamais supprimés). Un client qui connaît la révision
+ * N ne reçoit que les créations postérieures ; s'il est trop en retard (ou s'il vient d'un autre
+ * démarrage du serveur, reconnu à son époque), il reçoit un instantané complet.
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+class CatalogueSalons {
+
+    /**
+     * Nombre de changements conservés dans le journal.
+     */
+    static final int HISTORIQUE = 1024;
+
+    /**
+     * Un changement du catalogue : la création d'un salon.
+     */
+    private static final class Changement {
+        final long revision;
+        final String nom;
+
+        Changement(long revision, String nom) {
+            this.revision = revision;
+            this.nom = nom;
+        }
+
+        /**
+         * @return Le message à envoyer au client (ROOM_ADDED)
+         */
+        String message() {
+            return "ROOM_ADDED:" + revision + ":" + nom;
+        }
+    }
+
+    // Identifie ce démarrage du serveur : les révisions d'un autre démarrage ne valent rien ici
+    private final String epoque = Long.toHexString(new SecureRandom().nextLong() & Long.MAX_VALUE);
+    private final ReentrantLock verrou = new ReentrantLock();
+    private final Set<String> noms = new LinkedHashSet<>();
+    private final ArrayDeque<Changement> journal = new ArrayDeque<>();
+    private long revision = 0;
+
+    /**
+     * Enregistre la création d'un salon.
+     *
+     * @param nom Nom du salon
+     * @return La révision de ce changement
+     */
+    long ajouter(String nom) {
+        verrou.lock();
+        try {
+            noms.add(nom);
+            Changement c = new Changement(++revision, nom);
+            journal.addLast(c);
+            if (journal.size() > HISTORIQUE) {
+                journal.pollFirst();
+            }
+            return c.revision;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Réponse à SYNC_ROOMS : les créations depuis la révision connue du client
+     * suivies de ROOM_REV avec la révision atteinte, ou un
+     * instantané complet si le client est trop en retard ou vient d'un autre
+     * démarrage du serveur.
+     *
+     * @param epoqueClient Époque connue du client (vide au premier contact)
+     * @param revisionClient Révision connue du client
+     * @return Les messages à envoyer, dans l'ordre
+     */
+    List<String> synchroniser(String epoqueClient, long revisionClient) {
+        verrou.lock();
+        try {
+            Changement premier = journal.peekFirst();
+            if (!epoque.equals(epoqueClient) || revisionClient < 0 || revisionClient > revision
+                    || (premier != null && revisionClient < premier.revision - 1)) {
+                List<String> reponse = new ArrayList<>(1);
+                reponse.add(instantane());
+                return reponse;
+            }
+            List<String> reponse = new ArrayList<>();
+            for (Changement c : journal) {
+                if (c.revision > revisionClient) {
+                    reponse.add(c.message());
+                }
+            }
+            reponse.add("ROOM_REV:" + revision);
+            return reponse;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * @return L'instantané complet : ROOM_SNAPSHOT:époque:révision:noms séparés par des virgules
+     */
+    String instantane() {
+        verrou.lock();
+        try {
+            return "ROOM_SNAPSHOT:" + epoque + ":" + revision + ":" + String.join(",", noms);
+        } finally {
+            verrou.unlock();
+        }
+    }
+}
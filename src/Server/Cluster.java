@@ -0,0 +1,464 @@
+package Server;
+
+import Cryptage.AES;
+import Cryptage.CanalAES;
+import Protocole.FluxBinaire;
+import Protocole.ProtocoleBinaire;
+
+import javax.crypto.SecretKey;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cluster de serveurs : plusieurs processus ServerGUI, chacun sur son port, reliés
+ * par des liens persistants (un par paire de nœuds).
+ *
+ * Relais : un message de salon est envoyé une seule fois à chaque nœud qui a des
+ * membres dans ce salon, jamais une fois par utilisateur distant ; le nœud qui le
+ * reçoit le diffuse à ses propres membres (et le garde dans son historique). Chaque
+ * nœud annonce les salons où il a des membres (JOIN / LEAVE), ses utilisateurs
+ * (USER+ / USER-) et les salons créés (ROOM) : présence et catalogue sont
+ * répliqués. Les messages privés suivent le nœud du destinataire.
+ *
+ * Clés : les clés des salons sont dérivées du secret du cluster (RegistreSalons),
+ * tous les nœuds ont donc les mêmes sans les échanger. Chaque lien est chiffré en
+ * AES-GCM avec une clé de session dérivée du secret et de deux aléas échangés à
+ * l'ouverture : un nœud sans le secret ne passe pas la présentation.
+ *
+ * Topologie : chaque nœud se connecte aux pairs donnés (--pairs) et accepte les
+ * autres sur son port de cluster. Un lien sortant coupé est rétabli. Si deux nœuds
+ * se déclarent l'un l'autre, les deux côtés gardent le même lien : celui ouvert par
+ * le nœud de plus petit nom, qui remplace l'autre s'il arrive après lui. Le nœud
+ * de plus grand nom ne retente pas tant que ce lien est établi.
+ *
+ * Les annonces (JOIN, LEAVE, USER, ROOM et l'état envoyé à l'ouverture d'un lien)
+ * partent toutes du thread "cluster", dans l'ordre : un pair ne voit jamais un
+ * état plus ancien après un plus récent. Les pseudos ne sont uniques que par nœud.
+ *
+ * Aucune annonce n'est jamais perdue : un lien dont la file de sortie déborde est
+ * coupé (politique DECONNECTER) plutôt que de supprimer des trames. Le nœud distant
+ * oublie alors les utilisateurs et salons de ce lien, et l'état complet est renvoyé
+ * à la reconnexion.
+ *
+ * Options du serveur : --noeud=NOM, --cluster=PORT, --pairs=HOTE:PORT,...,
+ * --secret=TEXTE
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+final class Cluster implements Closeable {
+
+    // Délai avant de rétablir un lien sortant
+    private static final long RECONNEXION_MS = 1000;
+    // Durée maximale de la présentation d'un lien
+    private static final int PRESENTATION_MS = 5000;
+    // Trames en attente au plus par lien (un lien porte le trafic de tout un nœud)
+    private static final int CAPACITE_LIEN = 65536;
+    private static final int TAILLE_ALEA = 16;
+
+    private final String noeud;
+    private final byte[] secret;
+    private final int port;
+    private final List<InetSocketAddress> pairs;
+    // Liens établis : nom du nœud distant -> lien
+    private final ConcurrentHashMap<String, Lien> liens = new ConcurrentHashMap<>();
+    // Nom du nœud joint à chaque adresse de --pairs, une fois présenté
+    private final ConcurrentHashMap<InetSocketAddress, String> nomsPairs = new ConcurrentHashMap<>();
+    // Salons annoncés comme ayant des membres ici (thread "cluster" seulement)
+    private final Set<String> salonsOccupes = ConcurrentHashMap.newKeySet();
+    private final ExecutorService annonces;
+    private final SecureRandom alea = new SecureRandom();
+    private volatile ServerSocket serveur;
+    private volatile boolean ferme = false;
+
+    /**
+     * Un lien établi avec un autre nœud.
+     */
+    private final class Lien {
+        final String pair;
+        // true si le lien a été ouvert par le nœud de plus petit nom (celui que l'on garde)
+        final boolean prioritaire;
+        final TransportBinaire transport;
+        final CanalAES canal;
+        final SortieAsynchrone sortie;
+        // Salons où le nœud distant a des membres, et ses utilisateurs
+        final Set<String> salons = ConcurrentHashMap.newKeySet();
+        final Set<String> pseudos = ConcurrentHashMap.newKeySet();
+        private final ReentrantLock verrouEnvoi = new ReentrantLock();
+
+        Lien(String pair, boolean prioritaire, Socket socket, FluxBinaire flux, CanalAES canal) {
+            this.pair = pair;
+            this.prioritaire = prioritaire;
+            this.transport = new TransportBinaire(flux);
+            this.canal = canal;
+            // File pleine : le lien est coupé puis resynchronisé, jamais une annonce perdue
+            this.sortie = new SortieAsynchrone(transport, socket, "noeud-" + pair, this::fermer,
+                    new FileSortie<>(CAPACITE_LIEN, FileSortie.Debordement.DECONNECTER, 0));
+        }
+
+        void envoyer(String message) {
+            // Tous les threads du nœud partagent ce canal : séquence GCM et dépôt dans
+            // la file en une seule étape, pour que les trames partent dans l'ordre
+            verrouEnvoi.lock();
+            try {
+                sortie.envoyer(canal.chiffrer(message));
+            } catch (Exception e) {
+                Journal.erreur("Erreur envoi au nœud {}: {}", pair, e.getMessage());
+            } finally {
+                verrouEnvoi.unlock();
+            }
+        }
+
+        /**
+         * Traite les messages du nœud distant jusqu'à la coupure du lien.
+         */
+        void lire() throws Exception {
+            while (!ferme) {
+                traiter(this, canal.dechiffrer(transport.lire()));
+            }
+        }
+
+        void fermer() {
+            sortie.fermer();
+            transport.fermer();
+        }
+    }
+
+    /**
+     * @param noeud Nom de ce nœud (unique dans le cluster)
+     * @param secret Secret partagé par tous les nœuds
+     * @param port Port des liens entrants (0 : aucun)
+     * @param pairs Nœuds à joindre
+     */
+    Cluster(String noeud, byte[] secret, int port, List<InetSocketAddress> pairs) {
+        this.noeud = noeud;
+        this.secret = secret;
+        this.port = port;
+        this.pairs = pairs;
+        this.annonces = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "cluster");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Ouvre le port de cluster et lance la connexion à chaque pair.
+     *
+     * @throws IOException Si le port de cluster ne peut être ouvert
+     */
+    void demarrer() throws IOException {
+        if (port > 0) {
+            serveur = new ServerSocket(port);
+            Thread.ofPlatform().daemon().name("cluster-accueil").start(this::accueillir);
+            Journal.info("Cluster : nœud {} en écoute sur le port {}", noeud, port);
+        }
+        for (InetSocketAddress adresse : pairs) {
+            Thread.ofVirtual().name("cluster-" + adresse).start(() -> relier(adresse));
+        }
+    }
+
+    private void accueillir() {
+        while (!ferme) {
+            try {
+                Socket socket = serveur.accept();
+                Thread.ofVirtual().name("cluster-entrant").start(() -> {
+                    try (socket) {
+                        servir(socket, null);
+                    } catch (Exception e) {
+                        if (!ferme) {
+                            Journal.avertissement("Lien entrant refusé ({}) : {}",
+                                    socket.getInetAddress(), e.getMessage());
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                if (!ferme) {
+                    Journal.erreur("Erreur du port de cluster : {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Maintient le lien sortant vers un pair : connexion, puis reconnexion après chaque coupure.
+     * Tant qu'un lien avec ce pair existe (ouvert par lui), aucune connexion n'est tentée.
+     */
+    private void relier(InetSocketAddress adresse) {
+        while (!ferme) {
+            String connu = nomsPairs.get(adresse);
+            if (connu == null || !liens.containsKey(connu)) {
+                relierUneFois(adresse);
+            }
+            try {
+                Thread.sleep(RECONNEXION_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void relierUneFois(InetSocketAddress adresse) {
+        try (Socket socket = new Socket()) {
+            socket.connect(adresse, PRESENTATION_MS);
+            servir(socket, adresse);
+        } catch (Exception e) {
+            if (!ferme) {
+                Journal.debug("Nœud {} injoignable : {}", adresse, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Présente les deux nœuds l'un à l'autre, puis traite le lien jusqu'à sa coupure.
+     *
+     * @param socket Connexion au nœud distant
+     * @param adresse Adresse du pair si ce nœud a ouvert la connexion, null sinon
+     * @throws Exception Si la présentation échoue (secret différent, autre protocole)
+     */
+    private void servir(Socket socket, InetSocketAddress adresse) throws Exception {
+        boolean sortant = adresse != null;
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(PRESENTATION_MS);
+        FluxBinaire flux = sortant
+                ? FluxBinaire.connecter(socket, ProtocoleBinaire.CAPACITE_GCM)
+                : FluxBinaire.accepter(new BufferedInputStream(socket.getInputStream()), socket.getOutputStream());
+
+        // Clé de session : secret du cluster et aléas des deux côtés (jamais deux fois la même)
+        byte[] local = new byte[TAILLE_ALEA];
+        alea.nextBytes(local);
+        flux.ecrire(ProtocoleBinaire.TYPE_CLE, local);
+        byte[] distant = flux.lire(ProtocoleBinaire.TYPE_CLE);
+        Base64.Encoder base64 = Base64.getEncoder();
+        SecretKey cle = AES.deriverCle(secret, "lien:" + base64.encodeToString(sortant ? local : distant)
+                + ":" + base64.encodeToString(sortant ? distant : local));
+        CanalAES canal = CanalAES.gcm(cle, sortant ? CanalAES.SENS_CLIENT : CanalAES.SENS_SERVEUR);
+
+        // Présentation chiffrée : elle ne se déchiffre qu'avec le même secret
+        flux.ecrire(ProtocoleBinaire.TYPE_MESSAGE, canal.chiffrer("NOEUD:" + noeud));
+        String presentation = canal.dechiffrer(ByteBuffer.wrap(flux.lire(ProtocoleBinaire.TYPE_MESSAGE)));
+        if (!presentation.startsWith("NOEUD:")) {
+            throw new IOException("Présentation invalide");
+        }
+        String pair = presentation.substring(6);
+        socket.setSoTimeout(0);
+        if (sortant) {
+            nomsPairs.put(adresse, pair);
+        }
+
+        // Lien en double (les deux nœuds se déclarent) : les deux côtés gardent celui
+        // ouvert par le plus petit nom, le même vu de chaque bout
+        boolean prioritaire = sortant ? noeud.compareTo(pair) < 0 : pair.compareTo(noeud) < 0;
+        Lien lien = new Lien(pair, prioritaire, socket, flux, canal);
+        Lien[] remplace = new Lien[1];
+        if (pair.equals(noeud) || liens.compute(pair, (nom, existant) -> {
+            if (existant == null) {
+                return lien;
+            }
+            if (prioritaire && !existant.prioritaire) {
+                remplace[0] = existant;
+                return lien;
+            }
+            return existant;
+        }) != lien) {
+            lien.fermer();
+            throw new IOException("Lien en double avec le nœud " + pair);
+        }
+        if (remplace[0] != null) {
+            remplace[0].fermer();
+        }
+        Journal.info("Cluster : lien établi avec le nœud {}", pair);
+        annonces.execute(() -> envoyerEtat(lien));
+        try {
+            lien.lire();
+        } catch (Exception e) {
+            if (!ferme && liens.get(pair) == lien) {
+                Journal.avertissement("Cluster : lien perdu avec le nœud {} ({})", pair, e.getMessage());
+            }
+        } finally {
+            liens.remove(pair, lien);
+            lien.fermer();
+            for (String pseudo : lien.pseudos) {
+                gestionnaireClientGUI.presenceDistante(pseudo, false);
+            }
+        }
+    }
+
+    /**
+     * Envoie à un nouveau lien l'état de ce nœud : salons, salons occupés, utilisateurs
+     * (thread "cluster").
+     */
+    private void envoyerEtat(Lien lien) {
+        for (String salon : gestionnaireClientGUI.getSalons().noms()) {
+            lien.envoyer("ROOM:" + salon);
+        }
+        for (String salon : salonsOccupes) {
+            lien.envoyer("JOIN:" + salon);
+        }
+        for (String pseudo : gestionnaireClientGUI.pseudosLocaux()) {
+            lien.envoyer("USER+:" + pseudo);
+        }
+    }
+
+    /**
+     * Traite un message d'un nœud distant (thread de lecture du lien).
+     */
+    private void traiter(Lien lien, String message) {
+        if (message.startsWith("MSG:") || message.startsWith("TXT:")) {
+            int fin = message.indexOf('\n');
+            if (fin < 0) {
+                Journal.avertissement("Cluster : relais sans salon ignoré du nœud {}", lien.pair);
+                return;
+            }
+            Metriques.relaisRecus.increment();
+            gestionnaireClientGUI.recevoirRelais(message.substring(4, fin), message.substring(fin + 1),
+                    message.startsWith("MSG:"));
+        } else if (message.startsWith("MP:")) {
+            int fin = message.indexOf('\n');
+            if (fin < 0) {
+                Journal.avertissement("Cluster : message privé sans destinataire ignoré du nœud {}", lien.pair);
+                return;
+            }
+            gestionnaireClientGUI.recevoirPrive(message.substring(3, fin), message.substring(fin + 1));
+        } else if (message.startsWith("JOIN:")) {
+            lien.salons.add(message.substring(5));
+        } else if (message.startsWith("LEAVE:")) {
+            lien.salons.remove(message.substring(6));
+        } else if (message.startsWith("USER+:")) {
+            if (lien.pseudos.add(message.substring(6))) {
+                gestionnaireClientGUI.presenceDistante(message.substring(6), true);
+            }
+        } else if (message.startsWith("USER-:")) {
+            if (lien.pseudos.remove(message.substring(6))) {
+                gestionnaireClientGUI.presenceDistante(message.substring(6), false);
+            }
+        } else if (message.startsWith("ROOM:")) {
+            gestionnaireClientGUI.salonDistant(message.substring(5));
+        } else {
+            Journal.avertissement("Cluster : message inconnu du nœud {}", lien.pair);
+        }
+    }
+
+    /**
+     * Relaie un message diffusé ici aux nœuds qui ont des membres dans son salon,
+     * une fois par nœud.
+     *
+     * @param salon Salon du message
+     * @param message Le message tel que diffusé
+     * @param conserve true pour un message de salon (gardé dans l'historique du nœud distant)
+     */
+    void relayer(String salon, String message, boolean conserve) {
+        String relais = null;
+        for (Lien lien : liens.values()) {
+            if (lien.salons.contains(salon)) {
+                if (relais == null) {
+                    relais = (conserve ? "MSG:" : "TXT:") + salon + "\n" + message;
+                }
+                lien.envoyer(relais);
+                Metriques.relaisEnvoyes.increment();
+            }
+        }
+    }
+
+    /**
+     * Envoie un message privé au nœud de son destinataire.
+     *
+     * @param pseudo Destinataire
+     * @param message Le message à lui remettre
+     * @return false si aucun nœud ne connaît ce pseudo
+     */
+    boolean envoyerPrive(String pseudo, String message) {
+        for (Lien lien : liens.values()) {
+            if (lien.pseudos.contains(pseudo)) {
+                lien.envoyer("MP:" + pseudo + "\n" + message);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Signale que les membres locaux d'un salon ont changé : JOIN ou LEAVE est
+     * annoncé si le salon passe d'occupé à vide ou l'inverse.
+     *
+     * @param salon Nom du salon
+     */
+    void membresChanges(String salon) {
+        annonces.execute(() -> {
+            Salon<gestionnaireClientGUI> s = gestionnaireClientGUI.getSalons().get(salon);
+            boolean occupe = s != null && s.taille() > 0;
+            if (occupe ? salonsOccupes.add(salon) : salonsOccupes.remove(salon)) {
+                diffuser((occupe ? "JOIN:" : "LEAVE:") + salon);
+            }
+        });
+    }
+
+    /**
+     * @param pseudo Pseudo d'un utilisateur de ce nœud
+     * @param present true pour une arrivée, false pour un départ
+     */
+    void signalerPresence(String pseudo, boolean present) {
+        annonces.execute(() -> diffuser((present ? "USER+:" : "USER-:") + pseudo));
+    }
+
+    /**
+     * @param salon Salon créé sur ce nœud
+     */
+    void annoncerSalon(String salon) {
+        annonces.execute(() -> diffuser("ROOM:" + salon));
+    }
+
+    private void diffuser(String message) {
+        for (Lien lien : liens.values()) {
+            lien.envoyer(message);
+        }
+    }
+
+    /**
+     * @return Utilisateurs connectés aux autres nœuds
+     */
+    List<String> pseudosDistants() {
+        List<String> pseudos = new ArrayList<>();
+        for (Lien lien : liens.values()) {
+            pseudos.addAll(lien.pseudos);
+        }
+        return pseudos;
+    }
+
+    /**
+     * @return Nombre de liens établis
+     */
+    int getNombreLiens() {
+        return liens.size();
+    }
+
+    @Override
+    public void close() {
+        ferme = true;
+        try {
+            if (serveur != null) {
+                serveur.close();
+            }
+        } catch (IOException e) {
+            Journal.erreur("Erreur fermeture du port de cluster : {}", e.getMessage());
+        }
+        for (Lien lien : liens.values()) {
+            lien.fermer();
+        }
+        annonces.shutdownNow();
+    }
+}
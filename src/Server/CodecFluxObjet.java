@@ -0,0 +1,264 @@
+package Server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import Protocole.ProtocoleBinaire;
+
+/**
+ * Encodage/décodage du format ObjectOutputStream utilisé par les anciens clients,
+ * pour le moteur NIO et pour TransportFluxObjet.
+ *
+ * Seul le sous-ensemble réellement échangé est supporté :
+ * - l'en-tête du flux (AC ED 00 05)
+ * - les String (TC_STRING, TC_LONGSTRING)
+ * - TC_RESET
+ * - côté écriture, le byte[] de la clé personnelle
+ *
+ * Mémoire bornée par connexion :
+ * Un ObjectOutputStream/ObjectInputStream garde dans sa table de poignées chaque
+ * objet écrit ou lu jusqu'au prochain reset(). Sur une session d'une semaine,
+ * tout le trafic resterait en mémoire des deux côtés. Ici :
+ * - le décodeur ne garde aucune String (les clients n'envoient jamais deux fois
+ *   le même objet, une TC_REFERENCE est donc refusée)
+ * - l'encodeur insère un TC_RESET toutes les INTERVALLE_RESET trames, ce qui vide
+ *   la table de l'ObjectInputStream de l'ancien client
+ * - une String annoncée plus longue que LONGUEUR_MAX est refusée avant toute
+ *   allocation, et le tampon de lecture ne dépasse jamais TAMPON_MAX
+ *
+ * @author Chris - Angel
+ * @version 1.1
+ */
+final class CodecFluxObjet implements ObjectStreamConstants {
+
+    /**
+     * En-tête d'un flux objet (magic + version).
+     */
+    static final byte[] ENTETE = {(byte) 0xAC, (byte) 0xED, 0x00, 0x05};
+
+    /**
+     * Préfixe d'un byte[] sérialisé (TC_ARRAY + descripteur de classe "[B"),
+     * calculé une fois avec un vrai ObjectOutputStream.
+     */
+    private static final byte[] PREFIXE_TABLEAU = calculerPrefixeTableau();
+
+    /**
+     * Nombre de trames envoyées entre deux TC_RESET (taille max de la table
+     * de poignées côté ancien client).
+     */
+    static final int INTERVALLE_RESET = 64;
+
+    /**
+     * Longueur maximale d'une String reçue (la taille maximale d'une trame binaire).
+     */
+    static final int LONGUEUR_MAX = ProtocoleBinaire.TAILLE_MAX;
+
+    /**
+     * Taille maximale du tampon de lecture d'une connexion : la plus grande trame
+     * acceptée, binaire ou flux objet, avec son en-tête.
+     */
+    static final int TAMPON_MAX = ProtocoleBinaire.TAILLE_MAX + 16;
+
+    private CodecFluxObjet() {
+    }
+
+    private static byte[] calculerPrefixeTableau() {
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                oos.writeObject(new byte[0]);
+            }
+            byte[] complet = baos.toByteArray();
+            // On retire l'en-tête (4 octets) et la longueur du tableau vide (4 octets)
+            byte[] prefixe = new byte[complet.length - ENTETE.length - 4];
+            System.arraycopy(complet, ENTETE.length, prefixe, 0, prefixe.length);
+            return prefixe;
+        } catch (IOException e) {
+            throw new IllegalStateException("Impossible de calculer le préfixe byte[]", e);
+        }
+    }
+
+    /**
+     * Encode l'en-tête du flux suivi de la clé personnelle (byte[]).
+     *
+     * @param cle La clé encodée
+     * @return Le tampon prêt à écrire
+     */
+    static ByteBuffer encoderEnteteEtCle(byte[] cle) {
+        ByteBuffer buf = ByteBuffer.allocate(ENTETE.length + PREFIXE_TABLEAU.length + 4 + cle.length);
+        buf.put(ENTETE).put(PREFIXE_TABLEAU).putInt(cle.length).put(cle);
+        return buf.flip();
+    }
+
+    /**
+     * Encode une String comme le ferait ObjectOutputStream.writeObject,
+     * précédée si demandé d'un TC_RESET.
+     *
+     * @param s La chaîne à encoder
+     * @param reset true pour vider la table de poignées du lecteur avant la chaîne
+     * @return Le tampon prêt à écrire
+     */
+    static ByteBuffer encoderChaine(String s, boolean reset) {
+        int longueurUtf = longueurUtfModifie(s);
+        int prefixe = reset ? 1 : 0;
+        ByteBuffer buf;
+        if (longueurUtf <= 0xFFFF) {
+            buf = ByteBuffer.allocate(prefixe + 3 + longueurUtf);
+            if (reset) buf.put(TC_RESET);
+            buf.put(TC_STRING).putShort((short) longueurUtf);
+        } else {
+            buf = ByteBuffer.allocate(prefixe + 9 + longueurUtf);
+            if (reset) buf.put(TC_RESET);
+            buf.put(TC_LONGSTRING).putLong(longueurUtf);
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                buf.put((byte) c);
+            } else if (c <= 0x07FF) {
+                buf.put((byte) (0xC0 | ((c >> 6) & 0x1F)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            } else {
+                buf.put((byte) (0xE0 | ((c >> 12) & 0x0F)));
+                buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return buf.flip();
+    }
+
+    private static int longueurUtfModifie(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                n += 1;
+            } else if (c <= 0x07FF) {
+                n += 2;
+            } else {
+                n += 3;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Encodeur d'un flux objet sortant (un par connexion).
+     * Insère régulièrement un TC_RESET. Utilisable depuis plusieurs threads.
+     */
+    static final class Encodeur {
+        private final AtomicInteger ecrites = new AtomicInteger();
+
+        /**
+         * @param s La chaîne à encoder
+         * @return Le tampon prêt à écrire
+         */
+        ByteBuffer encoderChaine(String s) {
+            boolean reset = ecrites.incrementAndGet() % INTERVALLE_RESET == 0;
+            return CodecFluxObjet.encoderChaine(s, reset);
+        }
+    }
+
+    /**
+     * Décodeur incrémental d'un flux objet entrant (un par connexion).
+     * Les octets arrivent par morceaux : lire() rend null tant qu'une String
+     * complète n'est pas disponible.
+     */
+    static final class Decodeur {
+        private boolean enteteLu = false;
+
+        /**
+         * Lit la prochaine String complète du tampon (en mode lecture).
+         * Si la trame est incomplète, la position du tampon est laissée intacte.
+         *
+         * @param buf Tampon contenant les octets reçus
+         * @return La chaîne lue, ou null s'il manque des octets
+         * @throws StreamCorruptedException Si le flux contient autre chose qu'une String
+         *                                  (y compris une référence à une String déjà lue)
+         */
+        String lire(ByteBuffer buf) throws StreamCorruptedException {
+            while (true) {
+                int debut = buf.position();
+
+                if (!enteteLu) {
+                    if (buf.remaining() < ENTETE.length) return null;
+                    if (buf.getShort() != STREAM_MAGIC || buf.getShort() != STREAM_VERSION) {
+                        throw new StreamCorruptedException("En-tête de flux invalide");
+                    }
+                    enteteLu = true;
+                    continue;
+                }
+
+                if (!buf.hasRemaining()) return null;
+                byte tc = buf.get();
+                switch (tc) {
+                    case TC_RESET:
+                        // Aucune poignée conservée : rien à vider
+                        continue;
+                    case TC_STRING: {
+                        if (buf.remaining() < 2) { buf.position(debut); return null; }
+                        int longueur = buf.getShort() & 0xFFFF;
+                        return lireUtf(buf, longueur, debut);
+                    }
+                    case TC_LONGSTRING: {
+                        if (buf.remaining() < 8) { buf.position(debut); return null; }
+                        long longueur = buf.getLong();
+                        if (longueur < 0 || longueur > LONGUEUR_MAX) {
+                            throw new StreamCorruptedException("Chaîne trop longue : " + longueur);
+                        }
+                        return lireUtf(buf, (int) longueur, debut);
+                    }
+                    default:
+                        throw new StreamCorruptedException(
+                                String.format("Type inattendu dans le flux : 0x%02X", tc));
+                }
+            }
+        }
+
+        /**
+         * Agrandit un tampon de lecture plein (en mode écriture), sans dépasser TAMPON_MAX.
+         *
+         * @param lecture Le tampon plein
+         * @return Un tampon deux fois plus grand contenant les mêmes octets
+         * @throws StreamCorruptedException Si le tampon a déjà sa taille maximale : la
+         *                                  trame en cours ne peut pas être valide
+         */
+        static ByteBuffer agrandir(ByteBuffer lecture) throws StreamCorruptedException {
+            if (lecture.capacity() >= TAMPON_MAX) {
+                throw new StreamCorruptedException("Trame trop grande (plus de " + TAMPON_MAX + " octets)");
+            }
+            ByteBuffer plusGrand = ByteBuffer.allocate((int) Math.min((long) lecture.capacity() * 2, TAMPON_MAX));
+            lecture.flip();
+            plusGrand.put(lecture);
+            return plusGrand;
+        }
+
+        private String lireUtf(ByteBuffer buf, int longueur, int debut) throws StreamCorruptedException {
+            if (buf.remaining() < longueur) {
+                buf.position(debut);
+                return null;
+            }
+            char[] chars = new char[longueur];
+            int n = 0;
+            int fin = buf.position() + longueur;
+            while (buf.position() < fin) {
+                int b = buf.get() & 0xFF;
+                if (b < 0x80) {
+                    chars[n++] = (char) b;
+                } else if ((b & 0xE0) == 0xC0 && buf.position() < fin) {
+                    chars[n++] = (char) (((b & 0x1F) << 6) | (buf.get() & 0x3F));
+                } else if ((b & 0xF0) == 0xE0 && buf.position() + 1 < fin) {
+                    chars[n++] = (char) (((b & 0x0F) << 12) | ((buf.get() & 0x3F) << 6) | (buf.get() & 0x3F));
+                } else {
+                    throw new StreamCorruptedException("UTF modifié invalide");
+                }
+            }
+            return new String(chars, 0, n);
+        }
+    }
+}
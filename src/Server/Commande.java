@@ -0,0 +1,229 @@
+package Server;
+
+/**
+ * Commande décodée d'un message client, en une seule passe.
+ *
+ * Le décodeur ne découpe pas le message : il repère le code de la commande
+ * (table des mots-clés indexée par longueur) et note les bornes de ses arguments,
+ * déjà débarrassés des espaces. Les arguments ne deviennent des String que si
+ * on les demande, et peuvent être comparés sans copie (argumentEgal) : dans le
+ * cas courant, un message de salon dont le salon et le pseudo n'ont pas changé
+ * est traité sans aucune allocation.
+ *
+ * Une instance est réutilisée pour tous les messages d'une connexion.
+ *
+ * Formats reconnus :
+ *   SET_USERNAME:pseudo         CHANGE_ROOM:salon       CREATE_ROOM:salon
+ *   PRIVATE_MSG:pseudo:message  SYNC_ROOMS:époque:révision
+ *   HISTORY:nombre[:avant]      (historique du salon courant)
+ *   [salon]pseudo: contenu      (message de salon)
+ *   tout le reste               (texte libre, diffusé dans le salon courant)
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public final class Commande {
+
+    // Codes de commande (index de la table de traitement du gestionnaire)
+    public static final int TEXTE = 0;
+    public static final int MESSAGE_SALON = 1;
+    public static final int SET_USERNAME = 2;
+    public static final int CHANGE_ROOM = 3;
+    public static final int CREATE_ROOM = 4;
+    public static final int PRIVATE_MSG = 5;
+    public static final int SYNC_ROOMS = 6;
+    public static final int HISTORY = 7;
+    public static final int NOMBRE_CODES = 8;
+
+    // Mots-clés rangés par longueur (position du ':' qui les termine)
+    private static final String[][] MOTS_CLES = new String[13][];
+    private static final int[][] CODES = new int[13][];
+
+    static {
+        MOTS_CLES[7] = new String[]{"HISTORY"};
+        CODES[7] = new int[]{HISTORY};
+        MOTS_CLES[10] = new String[]{"SYNC_ROOMS"};
+        CODES[10] = new int[]{SYNC_ROOMS};
+        MOTS_CLES[11] = new String[]{"CHANGE_ROOM", "CREATE_ROOM", "PRIVATE_MSG"};
+        CODES[11] = new int[]{CHANGE_ROOM, CREATE_ROOM, PRIVATE_MSG};
+        MOTS_CLES[12] = new String[]{"SET_USERNAME"};
+        CODES[12] = new int[]{SET_USERNAME};
+    }
+
+    private String message;
+    private int code;
+    // Bornes [début, fin[ des arguments, -1 si absents
+    private final int[] debuts = new int[2];
+    private final int[] fins = new int[2];
+
+    /**
+     * Décode un message (en remplaçant la commande précédente).
+     *
+     * @param message Le message en clair
+     * @return Cette commande
+     */
+    public Commande decoder(String message) {
+        this.message = message;
+        debuts[0] = debuts[1] = fins[0] = fins[1] = -1;
+        int longueur = message.length();
+
+        if (longueur > 0 && message.charAt(0) == '[') {
+            decoderMessageSalon(longueur);
+            return this;
+        }
+
+        // Le ':' qui termine un mot-clé est au plus à la position 12
+        int deuxPoints = -1;
+        for (int i = 0; i < longueur && i < MOTS_CLES.length; i++) {
+            if (message.charAt(i) == ':') {
+                deuxPoints = i;
+                break;
+            }
+        }
+        code = deuxPoints < 0 ? TEXTE : chercherCode(deuxPoints);
+
+        switch (code) {
+            case SET_USERNAME:
+            case CHANGE_ROOM:
+            case CREATE_ROOM:
+                borner(0, deuxPoints + 1, longueur);
+                break;
+            case PRIVATE_MSG:
+            case SYNC_ROOMS:
+            case HISTORY: {
+                int separateur = message.indexOf(':', deuxPoints + 1);
+                if (separateur >= 0) {
+                    borner(0, deuxPoints + 1, separateur);
+                    borner(1, separateur + 1, longueur);
+                } else {
+                    borner(0, deuxPoints + 1, longueur);
+                }
+                break;
+            }
+            default:
+                break;
+        }
+        return this;
+    }
+
+    /**
+     * "[salon]pseudo: contenu" : le salon sert au routage ; le pseudo n'est
+     * retenu que s'il est suivi d'un ':' et d'au moins un caractère.
+     */
+    private void decoderMessageSalon(int longueur) {
+        int finSalon = message.indexOf(']', 1);
+        if (finSalon < 0) {
+            code = TEXTE;
+            return;
+        }
+        code = MESSAGE_SALON;
+        debuts[0] = 1;
+        fins[0] = finSalon;
+        int deuxPoints = message.indexOf(':', finSalon + 1);
+        if (deuxPoints > finSalon + 1 && deuxPoints < longueur - 1) {
+            borner(1, finSalon + 1, deuxPoints);
+        }
+    }
+
+    private int chercherCode(int longueurMotCle) {
+        String[] candidats = MOTS_CLES[longueurMotCle];
+        if (candidats == null) {
+            return TEXTE;
+        }
+        for (int i = 0; i < candidats.length; i++) {
+            if (message.regionMatches(0, candidats[i], 0, longueurMotCle)) {
+                return CODES[longueurMotCle][i];
+            }
+        }
+        return TEXTE;
+    }
+
+    /**
+     * Note les bornes d'un argument, sans les espaces de début et de fin.
+     */
+    private void borner(int argument, int debut, int fin) {
+        while (debut < fin && message.charAt(debut) <= ' ') debut++;
+        while (fin > debut && message.charAt(fin - 1) <= ' ') fin--;
+        debuts[argument] = debut;
+        fins[argument] = fin;
+    }
+
+    /**
+     * @return Le code de la commande (TEXTE, MESSAGE_SALON, SET_USERNAME...)
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return Le message d'origine
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @param argument 0 ou 1
+     * @return true si l'argument est présent et non vide
+     */
+    public boolean aArgument(int argument) {
+        return debuts[argument] >= 0 && fins[argument] > debuts[argument];
+    }
+
+    /**
+     * @param argument 0 ou 1
+     * @return L'argument (copié), ou null s'il est absent
+     */
+    public String argument(int argument) {
+        return debuts[argument] < 0 ? null : message.substring(debuts[argument], fins[argument]);
+    }
+
+    /**
+     * Compare un argument à une chaîne sans le copier.
+     *
+     * @param argument 0 ou 1
+     * @param valeur La chaîne à comparer
+     * @return true si l'argument est présent et égal à valeur
+     */
+    public boolean argumentEgal(int argument, String valeur) {
+        int debut = debuts[argument];
+        int longueur = fins[argument] - debut;
+        return debut >= 0 && valeur != null && valeur.length() == longueur
+                && message.regionMatches(debut, valeur, 0, longueur);
+    }
+
+    /**
+     * L'argument s'il est égal à valeur (sans copie), sinon sa copie.
+     *
+     * @param argument 0 ou 1
+     * @param valeur Valeur probable (salon courant, pseudo actuel...)
+     * @return valeur elle-même si l'argument lui est égal, sinon l'argument copié
+     */
+    public String argumentOu(int argument, String valeur) {
+        return argumentEgal(argument, valeur) ? valeur : argument(argument);
+    }
+
+    /**
+     * Lit un argument numérique sans le copier.
+     *
+     * @param argument 0 ou 1
+     * @param defaut Valeur si l'argument est absent ou n'est pas un entier positif
+     * @return La valeur de l'argument
+     */
+    public long argumentLong(int argument, long defaut) {
+        int debut = debuts[argument];
+        int fin = fins[argument];
+        if (debut < 0 || fin == debut || fin - debut > 18) {
+            return defaut;
+        }
+        long valeur = 0;
+        for (int i = debut; i < fin; i++) {
+            char c = message.charAt(i);
+            if (c < '0' || c > '9') {
+                return defaut;
+            }
+            valeur = valeur * 10 + (c - '0');
+        }
+        return valeur;
+    }
+}
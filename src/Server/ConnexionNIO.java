@@ -0,0 +1,286 @@
+package Server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Base64;
+
+import Protocole.ProtocoleBinaire;
+
+/**
+ * Connexion d'un client dans le moteur NIO.
+ * Fait le lien entre le canal non bloquant et la session gestionnaireClientGUI :
+ * - négociation : les premiers octets du client choisissent le format
+ *   (protocole binaire, ou flux objet des anciens clients)
+ * - en lecture : accumule les octets et décode les trames complètes
+ * - en écriture : file bornée de trames encodées (FileSortie), vidée quand le canal
+ *   est prêt. Une boucle ne bloque jamais : si la file déborde, la politique
+ *   BLOQUER se comporte comme DECONNECTER.
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+class ConnexionNIO implements SortieClient {
+
+    private static final int TAILLE_LECTURE = 4096;
+
+    // Format parlé par le client, connu après ses premiers octets
+    private static final int FORMAT_INCONNU = 0;
+    private static final int FORMAT_OBJET = 1;
+    private static final int FORMAT_BINAIRE = 2;
+
+    private final BoucleNIO boucle;
+    private final SocketChannel canal;
+    private final SelectionKey cle;
+    private final gestionnaireClientGUI session;
+    private final CodecFluxObjet.Decodeur decodeur = new CodecFluxObjet.Decodeur();
+    private final CodecFluxObjet.Encodeur encodeur = new CodecFluxObjet.Encodeur();
+    private final FileSortie<ByteBuffer> fileSortie = new FileSortie<>();
+    // Trames en cours d'écriture, de debutLot à finLot (uniquement manipulé par le thread
+    // de la boucle) : le tableau sert à chaque écriture groupée et ne grandit qu'au besoin
+    private ByteBuffer[] lot = new ByteBuffer[16];
+    private int debutLot = 0;
+    private int finLot = 0;
+    private ByteBuffer lecture = ByteBuffer.allocate(TAILLE_LECTURE);
+    private volatile int format = FORMAT_INCONNU;
+    private volatile int capacites = 0;
+    private volatile boolean ferme = false;
+
+    /**
+     * @param boucle La boucle propriétaire de cette connexion
+     * @param canal Le canal du client
+     * @param cle La clé de sélection du canal dans la boucle
+     */
+    ConnexionNIO(BoucleNIO boucle, SocketChannel canal, SelectionKey cle) {
+        this.boucle = boucle;
+        this.canal = canal;
+        this.cle = cle;
+        this.session = new gestionnaireClientGUI(this, adresseDistante(canal));
+    }
+
+    private static String adresseDistante(SocketChannel canal) {
+        try {
+            return String.valueOf(canal.getRemoteAddress());
+        } catch (IOException e) {
+            return "inconnue";
+        }
+    }
+
+    /**
+     * Signale la nouvelle connexion. La session ne s'ouvre qu'une fois le format
+     * du client connu (premiers octets reçus).
+     */
+    void ouvrir() {
+        Journal.info("Nouveau client connecté (NIO): {}", adresseDistante(canal));
+    }
+
+    /**
+     * Détermine le format du client à partir des premiers octets reçus,
+     * répond à la négociation binaire si besoin puis ouvre la session.
+     *
+     * @return true si le format est connu, false s'il manque des octets
+     */
+    private boolean negocier() throws Exception {
+        if (lecture.remaining() < 2) return false;
+        if (lecture.get(lecture.position()) == (byte) 0xAC && lecture.get(lecture.position() + 1) == (byte) 0xED) {
+            format = FORMAT_OBJET;
+        } else {
+            ProtocoleBinaire.Negociation offre = ProtocoleBinaire.lireNegociation(lecture);
+            if (offre == null) return false;
+            ProtocoleBinaire.Negociation retenue = ProtocoleBinaire.choisir(offre);
+            format = FORMAT_BINAIRE;
+            capacites = retenue.capacites;
+            mettreEnFile(ProtocoleBinaire.encoderNegociation(retenue.version, retenue.capacites));
+        }
+        session.ouvrirSession();
+        return true;
+    }
+
+    /**
+     * Décode le prochain message chiffré complet selon le format négocié.
+     * En binaire, c'est une vue sur le tampon de lecture (aucune copie).
+     *
+     * @return Les octets chiffrés, ou null s'il manque des octets
+     */
+    private ByteBuffer decoderMessage() throws Exception {
+        if (format == FORMAT_BINAIRE) {
+            return ProtocoleBinaire.trancheTrame(lecture, ProtocoleBinaire.TYPE_MESSAGE);
+        }
+        String messageChiffre = decodeur.lire(lecture);
+        return messageChiffre == null ? null : ByteBuffer.wrap(Base64.getDecoder().decode(messageChiffre));
+    }
+
+    /**
+     * Lit les octets disponibles et transmet chaque message complet à la session.
+     * Appelé par la boucle quand le canal est lisible.
+     */
+    void lire() {
+        try {
+            int n = canal.read(lecture);
+            if (n < 0) {
+                session.deconnexion();
+                return;
+            }
+
+            lecture.flip();
+            ByteBuffer messageChiffre;
+            boolean bye = false;
+            if (format != FORMAT_INCONNU || negocier()) {
+                while (!bye && (messageChiffre = decoderMessage()) != null) {
+                    bye = session.traiterMessage(messageChiffre);
+                }
+            }
+            lecture.compact();
+
+            if (bye) {
+                session.deconnexion();
+            } else if (!lecture.hasRemaining()) {
+                // Trame plus grande que le tampon : on l'agrandit (jusqu'à la taille maximale d'une trame)
+                lecture = CodecFluxObjet.Decodeur.agrandir(lecture);
+            }
+        } catch (Exception e) {
+            Journal.erreur("Erreur avec client : {}", e.getMessage());
+            session.deconnexion();
+        }
+    }
+
+    /**
+     * Écrit autant de trames que le canal l'accepte.
+     * Appelé par la boucle quand le canal est prêt en écriture.
+     */
+    void ecrire() {
+        try {
+            // On ne reprend des trames dans la file que lorsque le lot précédent est parti :
+            // la mémoire d'un client lent reste bornée par la capacité de sa file
+            while (remplirLot()) {
+                canal.write(lot, debutLot, finLot - debutLot);
+                while (debutLot < finLot && !lot[debutLot].hasRemaining()) {
+                    lot[debutLot++] = null;
+                }
+                if (debutLot < finLot) {
+                    // Tampon d'envoi TCP plein : on attend le prochain OP_WRITE
+                    return;
+                }
+            }
+            // Une trame ajoutée entre-temps par un autre thread redemandera OP_WRITE
+            cle.interestOps(SelectionKey.OP_READ);
+        } catch (Exception e) {
+            Journal.erreur("Erreur écriture client : {}", e.getMessage());
+            session.deconnexion();
+        }
+    }
+
+    /**
+     * Prend dans la file les trames de la prochaine écriture groupée (au plus --lot-max).
+     * Tout ce qui s'est accumulé depuis le réveil de la boucle part en un seul appel système.
+     */
+    private boolean remplirLot() {
+        if (debutLot < finLot) {
+            return true;
+        }
+        debutLot = 0;
+        finLot = 0;
+        int lotMax = FileSortie.lotMaxParDefaut;
+        ByteBuffer trame;
+        while (finLot < lotMax && (trame = fileSortie.retirer()) != null) {
+            if (finLot == lot.length) {
+                lot = Arrays.copyOf(lot, Math.min(lotMax, lot.length * 2));
+            }
+            lot[finLot++] = trame;
+        }
+        if (finLot > 0) {
+            FileSortie.compterEcriture(finLot);
+        }
+        return finLot > 0;
+    }
+
+    /**
+     * Active la surveillance en écriture (thread de la boucle uniquement).
+     */
+    void activerEcriture() {
+        if (cle.isValid()) {
+            cle.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Déconnecte le client dont la file a débordé (thread de la boucle uniquement).
+     */
+    void deconnecterDebordement() {
+        Journal.avertissement("File de sortie pleine, client déconnecté");
+        session.deconnexion();
+    }
+
+    @Override
+    public void envoyerCle(byte[] cleClient) throws IOException {
+        if (format == FORMAT_BINAIRE) {
+            mettreEnFile(ProtocoleBinaire.encoderTrame(ProtocoleBinaire.TYPE_CLE, cleClient));
+        } else {
+            mettreEnFile(CodecFluxObjet.encoderEnteteEtCle(cleClient));
+        }
+    }
+
+    @Override
+    public void envoyer(byte[] chiffre) throws IOException {
+        envoyer(chiffre, false);
+    }
+
+    @Override
+    public void envoyerJetable(byte[] chiffre) throws IOException {
+        envoyer(chiffre, true);
+    }
+
+    private void envoyer(byte[] chiffre, boolean jetable) throws IOException {
+        if (ferme) {
+            throw new IOException("Connexion fermée");
+        }
+        if (format == FORMAT_BINAIRE) {
+            mettreEnFile(ProtocoleBinaire.encoderTrame(ProtocoleBinaire.TYPE_MESSAGE, chiffre), jetable);
+        } else {
+            mettreEnFile(encodeur.encoderChaine(Base64.getEncoder().encodeToString(chiffre)), jetable);
+        }
+    }
+
+    @Override
+    public int getCapacites() {
+        return capacites;
+    }
+
+    @Override
+    public int getProfondeur() {
+        return fileSortie.getProfondeur();
+    }
+
+    @Override
+    public long getPertes() {
+        return fileSortie.getPertes();
+    }
+
+    private void mettreEnFile(ByteBuffer trame) throws IOException {
+        mettreEnFile(trame, false);
+    }
+
+    private void mettreEnFile(ByteBuffer trame, boolean jetable) throws IOException {
+        if (!fileSortie.ajouter(trame, false, jetable)) {
+            // Le canal d'un client bloqué ne redevient jamais prêt en écriture :
+            // la boucle le déconnecte sans attendre OP_WRITE
+            boucle.demanderDeconnexion(this);
+            throw new IOException("File de sortie pleine");
+        }
+        boucle.demanderEcriture(this);
+    }
+
+    @Override
+    public void fermer() {
+        ferme = true;
+        fileSortie.fermer();
+        cle.cancel();
+        try {
+            canal.close();
+        } catch (IOException e) {
+            Journal.erreur("Erreur fermeture canal: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package Server;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * File de sortie bornée d'une connexion.
+ * Un émetteur (broadcast, autre client) ne fait qu'ajouter une trame ; la file est
+ * vidée par l'écrivain de la connexion (thread dédié ou boucle NIO). Un client lent
+ * ne bloque donc plus les autres : quand sa file est pleine, la politique de
+ * débordement s'applique.
+ *
+ * Seules les trames jetables (messages des salons) peuvent être supprimées. Une
+ * trame de contrôle (clé de salon, présence, catalogue, fin d'historique...) n'est
+ * jamais perdue : le client ne pourrait pas retrouver son état. Une file pleine
+ * sans trame jetable déconnecte le client, quelle que soit la politique.
+ *
+ * @param <T> Type des trames en attente
+ * @author Chris - Angel
+ * @version 1.0
+ */
+class FileSortie<T> {
+
+    /**
+     * Politique appliquée quand la file est pleine.
+     */
+    enum Debordement {
+        /** Retire la trame jetable la plus ancienne pour faire de la place (le client perd des messages). */
+        SUPPRIMER_ANCIEN,
+        /** Déconnecte le client. */
+        DECONNECTER,
+        /** Attend qu'une place se libère, au plus le délai configuré, puis déconnecte. */
+        BLOQUER;
+
+        /**
+         * @param nom "ancien", "deconnecter" ou "bloquer"
+         * @return La politique correspondante
+         */
+        static Debordement depuis(String nom) {
+            switch (nom) {
+                case "ancien": return SUPPRIMER_ANCIEN;
+                case "deconnecter": return DECONNECTER;
+                case "bloquer": return BLOQUER;
+                default: throw new IllegalArgumentException("Politique de débordement inconnue : " + nom);
+            }
+        }
+    }
+
+    // Configuration par défaut (options --file-sortie, --debordement, --attente du serveur)
+    static volatile int capaciteParDefaut = 1024;
+    static volatile Debordement politiqueParDefaut = Debordement.SUPPRIMER_ANCIEN;
+    static volatile long attenteParDefautMs = 500;
+
+    // Vidage par lots (options --lot-max, --delai-max du serveur)
+    static volatile int lotMaxParDefaut = 64;
+    static volatile long delaiMaxParDefautUs = 200;
+
+    // Compteurs globaux, toutes connexions confondues
+    private static final AtomicLong pertesTotales = new AtomicLong();
+    private static final AtomicLong deconnexionsTotales = new AtomicLong();
+    private static final LongAdder tramesEcrites = new LongAdder();
+    private static final LongAdder ecritures = new LongAdder();
+
+    private final ArrayDeque<T> file = new ArrayDeque<>();
+    // Trame par trame, dans le même ordre que file : true si elle peut être supprimée
+    private final ArrayDeque<Boolean> jetables = new ArrayDeque<>();
+    private int nombreJetables = 0;
+    private final ReentrantLock verrou = new ReentrantLock();
+    private final Condition nonVide = verrou.newCondition();
+    private final Condition nonPleine = verrou.newCondition();
+    private final int capacite;
+    private final Debordement politique;
+    private final long attenteNs;
+    private long pertes = 0;
+    private int profondeurMax = 0;
+    private boolean debordee = false;
+    private boolean fermee = false;
+
+    /**
+     * Crée une file avec la configuration par défaut du serveur.
+     */
+    FileSortie() {
+        this(capaciteParDefaut, politiqueParDefaut, attenteParDefautMs);
+    }
+
+    /**
+     * @param capacite Nombre maximal de trames en attente
+     * @param politique Politique de débordement
+     * @param attenteMs Attente maximale en millisecondes (politique BLOQUER)
+     */
+    FileSortie(int capacite, Debordement politique, long attenteMs) {
+        if (capacite < 1) {
+            throw new IllegalArgumentException("Capacité invalide : " + capacite);
+        }
+        this.capacite = capacite;
+        this.politique = politique;
+        this.attenteNs = TimeUnit.MILLISECONDS.toNanos(attenteMs);
+    }
+
+    /**
+     * Ajoute une trame de contrôle en fin de file (jamais supprimée au débordement).
+     *
+     * @param trame La trame à envoyer
+     * @param peutBloquer false si l'appelant ne doit jamais attendre (boucle NIO) :
+     *                    BLOQUER se comporte alors comme DECONNECTER
+     * @return false si la file a débordé et que le client doit être déconnecté
+     */
+    boolean ajouter(T trame, boolean peutBloquer) {
+        return ajouter(trame, peutBloquer, false);
+    }
+
+    /**
+     * Ajoute une trame en fin de file.
+     *
+     * @param trame La trame à envoyer
+     * @param peutBloquer false si l'appelant ne doit jamais attendre (boucle NIO) :
+     *                    BLOQUER se comporte alors comme DECONNECTER
+     * @param jetable true pour un message de salon, que SUPPRIMER_ANCIEN peut sacrifier
+     * @return false si la file a débordé et que le client doit être déconnecté
+     */
+    boolean ajouter(T trame, boolean peutBloquer, boolean jetable) {
+        verrou.lock();
+        try {
+            if (fermee || debordee) {
+                return !debordee;
+            }
+            if (file.size() >= capacite) {
+                if (politique == Debordement.SUPPRIMER_ANCIEN && supprimerJetable()) {
+                    pertes++;
+                    pertesTotales.incrementAndGet();
+                } else if (politique == Debordement.BLOQUER && peutBloquer && attendrePlace()) {
+                    // Une place s'est libérée à temps
+                } else {
+                    debordee = true;
+                    deconnexionsTotales.incrementAndGet();
+                    nonVide.signalAll();
+                    return false;
+                }
+            }
+            file.addLast(trame);
+            jetables.addLast(jetable);
+            if (jetable) {
+                nombreJetables++;
+            }
+            profondeurMax = Math.max(profondeurMax, file.size());
+            nonVide.signal();
+            return true;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Supprime la trame jetable la plus ancienne (verrou tenu).
+     *
+     * @return false si la file ne contient que des trames de contrôle
+     */
+    private boolean supprimerJetable() {
+        if (nombreJetables == 0) {
+            return false;
+        }
+        Iterator<T> trames = file.iterator();
+        Iterator<Boolean> marques = jetables.iterator();
+        while (marques.hasNext()) {
+            trames.next();
+            if (marques.next()) {
+                trames.remove();
+                marques.remove();
+                nombreJetables--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retire la tête de la file (verrou tenu, file non vide).
+     */
+    private T retirerTete() {
+        if (jetables.pollFirst()) {
+            nombreJetables--;
+        }
+        nonPleine.signal();
+        return file.pollFirst();
+    }
+
+    /**
+     * Attend une place libre (verrou tenu).
+     *
+     * @return true si une place s'est libérée avant la fin du délai
+     */
+    private boolean attendrePlace() {
+        long restant = attenteNs;
+        try {
+            while (file.size() >= capacite && !fermee) {
+                if (restant <= 0) return false;
+                restant = nonPleine.awaitNanos(restant);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !fermee;
+    }
+
+    /**
+     * Retire la prochaine trame en attendant qu'il y en ait une (écrivain dédié).
+     *
+     * @return La trame, ou null si la file est fermée ou a débordé
+     * @throws InterruptedException Si l'écrivain est interrompu
+     */
+    T prendre() throws InterruptedException {
+        verrou.lock();
+        try {
+            while (file.isEmpty() && !fermee && !debordee) {
+                nonVide.await();
+            }
+            if (fermee || debordee) {
+                return null;
+            }
+            return retirerTete();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Retire la prochaine trame en attendant au plus le délai donné.
+     *
+     * @param delaiNs Attente maximale en nanosecondes
+     * @return La trame, ou null si rien n'est arrivé à temps (ou si la file est fermée)
+     * @throws InterruptedException Si l'écrivain est interrompu
+     */
+    T prendre(long delaiNs) throws InterruptedException {
+        verrou.lock();
+        try {
+            long restant = delaiNs;
+            while (file.isEmpty() && !fermee && !debordee) {
+                if (restant <= 0) return null;
+                restant = nonVide.awaitNanos(restant);
+            }
+            if (fermee || debordee) {
+                return null;
+            }
+            return retirerTete();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Retire la prochaine trame sans attendre (boucle NIO).
+     *
+     * @return La trame, ou null si la file est vide
+     */
+    T retirer() {
+        verrou.lock();
+        try {
+            return file.isEmpty() ? null : retirerTete();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Ferme la file : réveille l'écrivain et les émetteurs en attente.
+     */
+    void fermer() {
+        verrou.lock();
+        try {
+            fermee = true;
+            file.clear();
+            jetables.clear();
+            nombreJetables = 0;
+            nonVide.signalAll();
+            nonPleine.signalAll();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * @return true si la file a débordé (DECONNECTER, BLOQUER, ou plus aucune trame jetable)
+     */
+    boolean isDebordee() {
+        verrou.lock();
+        try {
+            return debordee;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * @return Nombre de trames en attente
+     */
+    int getProfondeur() {
+        verrou.lock();
+        try {
+            return file.size();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * @return Profondeur maximale atteinte depuis l'ouverture
+     */
+    int getProfondeurMax() {
+        verrou.lock();
+        try {
+            return profondeurMax;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * @return Nombre de messages de salon supprimés (politique SUPPRIMER_ANCIEN)
+     */
+    long getPertes() {
+        verrou.lock();
+        try {
+            return pertes;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * @return Nombre de trames supprimées sur toutes les connexions
+     */
+    static long getPertesTotales() {
+        return pertesTotales.get();
+    }
+
+    /**
+     * Compte une écriture réseau (un appel système pour un lot de trames).
+     *
+     * @param trames Nombre de trames du lot
+     */
+    static void compterEcriture(int trames) {
+        tramesEcrites.add(trames);
+        ecritures.increment();
+    }
+
+    /**
+     * @return Nombre moyen de trames par écriture réseau, toutes connexions confondues
+     */
+    static double getTramesParEcriture() {
+        long n = ecritures.sum();
+        return n == 0 ? 0 : (double) tramesEcrites.sum() / n;
+    }
+
+    /**
+     * @return Nombre de clients déconnectés pour débordement de file
+     */
+    static long getDeconnexionsTotales() {
+        return deconnexionsTotales.get();
+    }
+}
@@ -0,0 +1,105 @@
+package Server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme de durées à précision relative constante (à la manière de HdrHistogram).
+ *
+ * Les valeurs 0 à 15 ont chacune leur case ; au-delà, chaque puissance de deux est
+ * découpée en 8 cases égales, soit une erreur relative d'au plus 12,5 % sur toute
+ * la plage d'un long. L'enregistrement ne fait qu'incrémenter une case et deux
+ * compteurs : aucune allocation, aucun verrou, il peut rester actif en production.
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public final class Histogramme {
+
+    private static final int BITS_SOUS_CASES = 3;
+    private static final int SOUS_CASES = 1 << BITS_SOUS_CASES;
+    private static final int CASES = (63 - BITS_SOUS_CASES + 1) * SOUS_CASES;
+
+    private final AtomicLongArray cases = new AtomicLongArray(CASES);
+    private final LongAdder nombre = new LongAdder();
+    private final LongAdder somme = new LongAdder();
+
+    /**
+     * @param valeur Valeur à enregistrer (les valeurs négatives comptent pour 0)
+     */
+    public void enregistrer(long valeur) {
+        long v = Math.max(0, valeur);
+        cases.incrementAndGet(indice(v));
+        nombre.increment();
+        somme.add(v);
+    }
+
+    /**
+     * @return Nombre de valeurs enregistrées
+     */
+    public long getNombre() {
+        return nombre.sum();
+    }
+
+    /**
+     * @return Somme des valeurs enregistrées
+     */
+    public long getSomme() {
+        return somme.sum();
+    }
+
+    /**
+     * Quantile approché : borne haute de la case qui contient le rang demandé.
+     * Les enregistrements concurrents peuvent décaler légèrement le résultat.
+     *
+     * @param q Quantile entre 0 et 1
+     * @return La valeur du quantile, ou 0 si l'histogramme est vide
+     */
+    public long quantile(double q) {
+        long[] instantane = new long[CASES];
+        long total = 0;
+        for (int i = 0; i < CASES; i++) {
+            instantane[i] = cases.get(i);
+            total += instantane[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rang = Math.max(1, (long) Math.ceil(q * total));
+        long cumul = 0;
+        for (int i = 0; i < CASES; i++) {
+            cumul += instantane[i];
+            if (cumul >= rang) {
+                return borneHaute(i);
+            }
+        }
+        return borneHaute(CASES - 1);
+    }
+
+    /**
+     * @param v Valeur positive ou nulle
+     * @return Indice de la case de v
+     */
+    static int indice(long v) {
+        if (v < 2 * SOUS_CASES) {
+            return (int) v;
+        }
+        int puissance = 63 - Long.numberOfLeadingZeros(v);
+        int sousCase = (int) (v >>> (puissance - BITS_SOUS_CASES)) & (SOUS_CASES - 1);
+        return (puissance - BITS_SOUS_CASES + 1) * SOUS_CASES + sousCase;
+    }
+
+    /**
+     * @param indice Indice d'une case
+     * @return Plus grande valeur rangée dans cette case
+     */
+    static long borneHaute(int indice) {
+        if (indice < 2 * SOUS_CASES) {
+            return indice;
+        }
+        int puissance = indice / SOUS_CASES + BITS_SOUS_CASES - 1;
+        int decalage = puissance - BITS_SOUS_CASES;
+        long basse = (long) (SOUS_CASES + indice % SOUS_CASES) << decalage;
+        return basse + (1L << decalage) - 1;
+    }
+}
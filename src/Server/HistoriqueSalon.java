@@ -0,0 +1,213 @@
+package Server;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Historique persistant d'un salon : une suite de segments en ajout seul,
+ * le dernier recevant les nouveaux messages.
+ *
+ * Chaque message reçoit un numéro de séquence croissant. Quand le segment actif
+ * est plein, il est scellé et un nouveau segment commence à la séquence suivante.
+ * La rétention supprime les segments scellés les plus anciens (jamais le segment actif).
+ *
+ * Lecture d'une page : recherche dichotomique du segment par sa séquence de base,
+ * puis index clairsemé du segment. Le premier message est trouvé en O(log n) ; les
+ * messages sont ensuite lus directement dans les pages projetées.
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+final class HistoriqueSalon {
+
+    private final Path repertoire;
+    private final int tailleSegment;
+    private final ReentrantLock verrou = new ReentrantLock();
+    private final CRC32C crc = new CRC32C();
+    // Du plus ancien au segment actif ; modifiée sous le verrou
+    private final List<Segment> segments = new ArrayList<>();
+
+    /**
+     * Ouvre l'historique d'un salon, en reprenant les segments déjà présents.
+     *
+     * @param repertoire Répertoire du salon (créé s'il n'existe pas)
+     * @param tailleSegment Taille des nouveaux segments en octets
+     * @throws IOException Si le répertoire ou un segment ne peut être ouvert
+     */
+    HistoriqueSalon(Path repertoire, int tailleSegment) throws IOException {
+        this.repertoire = repertoire;
+        this.tailleSegment = tailleSegment;
+        Files.createDirectories(repertoire);
+        List<Path> fichiers;
+        try (Stream<Path> contenu = Files.list(repertoire)) {
+            fichiers = contenu.filter(Segment::estSegment).sorted().toList();
+        }
+        for (int i = 0; i < fichiers.size(); i++) {
+            segments.add(Segment.ouvrir(fichiers.get(i), i == fichiers.size() - 1));
+        }
+        if (segments.isEmpty()) {
+            segments.add(Segment.creer(repertoire, 0, tailleSegment));
+        }
+    }
+
+    /**
+     * Ajoute un message à la fin de l'historique.
+     *
+     * @param donnees Le message (opaque pour le serveur)
+     * @param horodatage Instant de réception (ms)
+     * @return La séquence du message
+     * @throws IOException Si un nouveau segment ne peut être créé
+     */
+    long ajouter(byte[] donnees, long horodatage) throws IOException {
+        verrou.lock();
+        try {
+            Segment actif = segments.get(segments.size() - 1);
+            if (!actif.ajouter(donnees, horodatage, crc)) {
+                actif.sceller();
+                long base = actif.getBase() + actif.getNombre();
+                // Un message plus grand qu'un segment a un segment à sa taille
+                actif = Segment.creer(repertoire, base, Math.max(tailleSegment, donnees.length + Segment.ENTETE));
+                segments.add(actif);
+                actif.ajouter(donnees, horodatage, crc);
+            }
+            return actif.getBase() + actif.getNombre() - 1;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Lit une page de l'historique, du plus ancien au plus récent message.
+     *
+     * @param avant Séquence à partir de laquelle remonter, exclue (Long.MAX_VALUE : les plus récents)
+     * @param nombre Nombre maximal de messages
+     * @param lecteur Reçoit chaque message
+     * @return Séquence à passer comme avant pour la page précédente,
+     *         ou -1 si la page atteint le début de l'historique
+     * @throws Exception Si le lecteur échoue
+     */
+    long lire(long avant, int nombre, ArchiveSalons.Lecteur lecteur) throws Exception {
+        List<Segment> page;
+        long premiere;
+        long debut;
+        long fin;
+        verrou.lock();
+        try {
+            Segment actif = segments.get(segments.size() - 1);
+            premiere = segments.get(0).getBase();
+            fin = Math.min(avant, actif.getBase() + actif.getNombre());
+            debut = Math.max(premiere, fin - nombre);
+            if (debut >= fin) {
+                return -1;
+            }
+            page = new ArrayList<>(segments.subList(chercher(debut), chercher(fin - 1) + 1));
+        } finally {
+            verrou.unlock();
+        }
+        // Hors du verrou : les ajouts continuent après fin, la rétention ne fait que
+        // supprimer des fichiers dont la projection reste lisible
+        for (Segment s : page) {
+            long d = Math.max(debut, s.getBase());
+            long f = Math.min(fin, s.getBase() + s.getNombre());
+            if (d < f) {
+                s.lire(d - s.getBase(), f - d, lecteur);
+            }
+        }
+        return debut > premiere ? debut : -1;
+    }
+
+    /**
+     * @return Indice du segment qui contient la séquence (verrou tenu)
+     */
+    private int chercher(long sequence) {
+        int bas = 0;
+        int haut = segments.size() - 1;
+        while (bas < haut) {
+            int milieu = (bas + haut + 1) >>> 1;
+            if (segments.get(milieu).getBase() <= sequence) {
+                bas = milieu;
+            } else {
+                haut = milieu - 1;
+            }
+        }
+        return bas;
+    }
+
+    /**
+     * Écrit sur le disque les ajouts en attente de tous les segments (thread d'archive).
+     *
+     * @return Nombre d'octets écrits sur le disque
+     * @throws IOException Si l'écriture échoue
+     */
+    long forcer() throws IOException {
+        long octets = 0;
+        for (Segment s : instantane()) {
+            octets += s.forcer();
+        }
+        return octets;
+    }
+
+    /**
+     * Supprime les segments scellés les plus anciens tant que l'historique dépasse
+     * la taille maximale, ou qu'ils ne contiennent que des messages trop vieux.
+     *
+     * @param octetsMax Taille maximale de l'historique (0 : pas de limite)
+     * @param ageMaxMs Âge maximal d'un message (0 : pas de limite)
+     * @param maintenant Instant présent (ms)
+     * @return Nombre de segments supprimés
+     * @throws IOException Si un fichier ne peut être supprimé
+     */
+    int appliquerRetention(long octetsMax, long ageMaxMs, long maintenant) throws IOException {
+        List<Segment> supprimes = new ArrayList<>();
+        verrou.lock();
+        try {
+            long total = 0;
+            for (Segment s : segments) {
+                total += s.getPosition();
+            }
+            while (segments.size() > 1) {
+                Segment ancien = segments.get(0);
+                boolean tropGros = octetsMax > 0 && total > octetsMax;
+                boolean tropVieux = ageMaxMs > 0 && ancien.getDernierHorodatage() < maintenant - ageMaxMs;
+                if (!tropGros && !tropVieux) {
+                    break;
+                }
+                total -= ancien.getPosition();
+                supprimes.add(segments.remove(0));
+            }
+        } finally {
+            verrou.unlock();
+        }
+        for (Segment s : supprimes) {
+            s.supprimer();
+        }
+        return supprimes.size();
+    }
+
+    private List<Segment> instantane() {
+        verrou.lock();
+        try {
+            return new ArrayList<>(segments);
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * @return Nombre de segments sur le disque
+     */
+    int getNombreSegments() {
+        verrou.lock();
+        try {
+            return segments.size();
+        } finally {
+            verrou.unlock();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package Server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Journal asynchrone du serveur, par niveaux.
+ *
+ * Les threads des clients ne touchent plus à System.out (synchronisé) : un appel
+ * au journal ne fait que déposer le modèle du message et ses arguments dans un
+ * anneau borné (ArrayBlockingQueue). Un thread démon les met en forme et les
+ * écrit. Si l'anneau est plein, le message est perdu et compté : un pic de trafic
+ * ne ralentit jamais les envois.
+ *
+ * Un appel dont le niveau est désactivé ne construit aucune chaîne : les
+ * arguments sont substitués aux "{}" du modèle par le thread d'écriture. Pour
+ * des arguments coûteux à calculer, tester debugActif() avant l'appel.
+ *
+ * Niveau par défaut : INFO (options --journal=debug|info|avertissement|erreur).
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public final class Journal {
+
+    /**
+     * Niveaux, du plus bavard au plus grave.
+     */
+    public enum Niveau {
+        DEBUG, INFO, AVERTISSEMENT, ERREUR;
+
+        /**
+         * @param nom "debug", "info", "avertissement" ou "erreur"
+         * @return Le niveau correspondant
+         */
+        public static Niveau depuis(String nom) {
+            return valueOf(nom.toUpperCase());
+        }
+    }
+
+    /**
+     * Nombre de messages en attente au plus.
+     */
+    public static final int CAPACITE = 8192;
+
+    private static volatile Niveau niveau = Niveau.INFO;
+    private static final ArrayBlockingQueue<Evenement> anneau = new ArrayBlockingQueue<>(CAPACITE);
+    private static final LongAdder pertes = new LongAdder();
+
+    static {
+        Thread ecrivain = new Thread(Journal::ecrire, "journal");
+        ecrivain.setDaemon(true);
+        ecrivain.start();
+        // Écrire ce qui reste à l'arrêt de la JVM
+        Runtime.getRuntime().addShutdownHook(new Thread(Journal::vider, "journal-arret"));
+    }
+
+    private Journal() {
+    }
+
+    /**
+     * Un message en attente : modèle et arguments, pas encore mis en forme.
+     */
+    private static final class Evenement {
+        final Niveau niveau;
+        final String modele;
+        final Object a, b, c;
+
+        Evenement(Niveau niveau, String modele, Object a, Object b, Object c) {
+            this.niveau = niveau;
+            this.modele = modele;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+        }
+
+        String formater() {
+            StringBuilder sb = new StringBuilder(modele.length() + 32);
+            Object[] arguments = {a, b, c};
+            int suivant = 0;
+            int debut = 0;
+            int i;
+            while ((i = modele.indexOf("{}", debut)) >= 0 && suivant < 3) {
+                sb.append(modele, debut, i).append(arguments[suivant++]);
+                debut = i + 2;
+            }
+            return sb.append(modele, debut, modele.length()).toString();
+        }
+    }
+
+    /**
+     * @param nouveau Niveau minimal des messages écrits
+     */
+    public static void setNiveau(Niveau nouveau) {
+        niveau = nouveau;
+    }
+
+    /**
+     * @return Le niveau minimal des messages écrits
+     */
+    public static Niveau getNiveau() {
+        return niveau;
+    }
+
+    /**
+     * @param n Niveau à tester
+     * @return true si les messages de ce niveau sont écrits
+     */
+    public static boolean actif(Niveau n) {
+        return n.ordinal() >= niveau.ordinal();
+    }
+
+    /**
+     * @return true si les messages DEBUG sont écrits
+     */
+    public static boolean debugActif() {
+        return niveau == Niveau.DEBUG;
+    }
+
+    /**
+     * @return Nombre de messages perdus parce que l'anneau était plein
+     */
+    public static long getPertes() {
+        return pertes.sum();
+    }
+
+    // Un appel par niveau et par nombre d'arguments (pas de varargs : aucun tableau alloué)
+
+    public static void debug(String modele) {
+        journaliser(Niveau.DEBUG, modele, null, null, null);
+    }
+
+    public static void debug(String modele, Object a) {
+        journaliser(Niveau.DEBUG, modele, a, null, null);
+    }
+
+    public static void debug(String modele, Object a, Object b) {
+        journaliser(Niveau.DEBUG, modele, a, b, null);
+    }
+
+    public static void debug(String modele, Object a, Object b, Object c) {
+        journaliser(Niveau.DEBUG, modele, a, b, c);
+    }
+
+    public static void info(String modele) {
+        journaliser(Niveau.INFO, modele, null, null, null);
+    }
+
+    public static void info(String modele, Object a) {
+        journaliser(Niveau.INFO, modele, a, null, null);
+    }
+
+    public static void info(String modele, Object a, Object b) {
+        journaliser(Niveau.INFO, modele, a, b, null);
+    }
+
+    public static void info(String modele, Object a, Object b, Object c) {
+        journaliser(Niveau.INFO, modele, a, b, c);
+    }
+
+    public static void avertissement(String modele) {
+        journaliser(Niveau.AVERTISSEMENT, modele, null, null, null);
+    }
+
+    public static void avertissement(String modele, Object a) {
+        journaliser(Niveau.AVERTISSEMENT, modele, a, null, null);
+    }
+
+    public static void avertissement(String modele, Object a, Object b) {
+        journaliser(Niveau.AVERTISSEMENT, modele, a, b, null);
+    }
+
+    public static void erreur(String modele) {
+        journaliser(Niveau.ERREUR, modele, null, null, null);
+    }
+
+    public static void erreur(String modele, Object a) {
+        journaliser(Niveau.ERREUR, modele, a, null, null);
+    }
+
+    public static void erreur(String modele, Object a, Object b) {
+        journaliser(Niveau.ERREUR, modele, a, b, null);
+    }
+
+    private static void journaliser(Niveau n, String modele, Object a, Object b, Object c) {
+        if (n.ordinal() < niveau.ordinal()) {
+            return;
+        }
+        if (!anneau.offer(new Evenement(n, modele, a, b, c))) {
+            pertes.increment();
+        }
+    }
+
+    /**
+     * Boucle du thread d'écriture : vide l'anneau par lots.
+     */
+    private static void ecrire() {
+        List<Evenement> lot = new ArrayList<>(256);
+        long pertesSignalees = 0;
+        while (true) {
+            try {
+                Evenement premier = anneau.poll(1, TimeUnit.SECONDS);
+                if (premier != null) {
+                    lot.add(premier);
+                    anneau.drainTo(lot, 255);
+                    afficher(lot);
+                    lot.clear();
+                }
+                long p = pertes.sum();
+                if (p != pertesSignalees) {
+                    System.err.println("[JOURNAL] " + (p - pertesSignalees) + " message(s) perdu(s), anneau plein");
+                    pertesSignalees = p;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                // Un argument dont toString() échoue ne doit pas arrêter le journal
+                System.err.println("[JOURNAL] Erreur de mise en forme : " + e.getMessage());
+            }
+        }
+    }
+
+    private static void afficher(List<Evenement> lot) {
+        for (Evenement e : lot) {
+            if (e.niveau.ordinal() >= Niveau.AVERTISSEMENT.ordinal()) {
+                System.err.println(e.formater());
+            } else {
+                System.out.println(e.formater());
+            }
+        }
+    }
+
+    /**
+     * Écrit immédiatement les messages en attente (arrêt du serveur, tests).
+     */
+    public static void vider() {
+        List<Evenement> lot = new ArrayList<>();
+        anneau.drainTo(lot);
+        afficher(lot);
+        System.out.flush();
+    }
+}
@@ -0,0 +1,311 @@
+package Server;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Derniers messages d'un salon, en mémoire : un anneau sans verrou de taille fixe.
+ *
+ * Le message de séquence s occupe la case s modulo la capacité. Un ajout remplace
+ * la case (getAndSet) puis avance la fin de l'anneau par compare-and-set ; une
+ * lecture part de la fin et remonte tant que chaque case contient bien la séquence
+ * attendue (une case écrasée par un tour suivant, ou pas encore publiée, arrête la
+ * lecture). Ni les ajouts ni les lectures ne prennent de verrou.
+ *
+ * Les messages sont ceux du salon, déjà chiffrés avec sa clé ("[salon]pseudo:
+ * contenu chiffré", en UTF-8) : la page est ensuite chiffrée pour chaque client
+ * comme une page de l'archive. Avec l'archive, les séquences sont celles de
+ * l'archive (ajout par le thread d'archive) ; sans archive, l'anneau numérote
+ * lui-même les messages depuis le démarrage.
+ *
+ * Budget global : les anneaux se partagent un budget en octets (estimé sur la taille
+ * des messages). Au-delà, les anneaux des salons les moins récemment utilisés (ajout
+ * ou lecture) sont vidés ; leur mémoire n'est réallouée qu'au prochain message.
+ *
+ * Options du serveur : --recents=N (messages par salon, 0 : désactivé), --recents-mo=MO
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public final class MessagesRecents {
+
+    /**
+     * Retour de lire() : l'anneau ne contient pas toute la page demandée.
+     */
+    public static final long ABSENT = -2;
+
+    // Configuration par défaut (options --recents, --recents-mo du serveur)
+    static volatile int capaciteParDefaut = 512;
+    static volatile long budgetOctets = 64L * 1024 * 1024;
+
+    // Coût estimé d'une entrée en plus du message (objet, tableau, référence)
+    private static final int SURCOUT_ENTREE = 48;
+
+    // Anneaux alloués, octets estimés, évictions : tous salons confondus
+    private static final Set<MessagesRecents> alloues = ConcurrentHashMap.newKeySet();
+    private static final LongAdder octetsTotaux = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+    private static final AtomicBoolean evictionEnCours = new AtomicBoolean();
+
+    /**
+     * Un message de l'anneau (immuable).
+     */
+    private static final class Entree {
+        final long sequence;
+        final long horodatage;
+        final byte[] message;
+
+        Entree(long sequence, long horodatage, byte[] message) {
+            this.sequence = sequence;
+            this.horodatage = horodatage;
+            this.message = message;
+        }
+
+        int taille() {
+            return message.length + SURCOUT_ENTREE;
+        }
+    }
+
+    /**
+     * Un anneau candidat à l'éviction, avec son dernier accès relevé une fois
+     * (le tri ne doit pas voir les dates changer).
+     */
+    private static final class Candidat {
+        final MessagesRecents anneau;
+        final long acces;
+
+        Candidat(MessagesRecents anneau) {
+            this.anneau = anneau;
+            this.acces = anneau.dernierAcces;
+        }
+    }
+
+    /**
+     * Les cases d'un anneau et les octets qu'elles retiennent.
+     *
+     * L'éviction relève les octets et marque les cases vidées en une seule
+     * opération (getAndSet) : un ajout compté avant est retiré du budget par
+     * l'éviction, un ajout compté après voit la marque et ne touche pas au budget.
+     * Le budget ne dérive pas, quel que soit l'entrelacement.
+     */
+    private static final class Cases {
+        // Octets des cases vidées : assez loin de 0 et de Long.MIN_VALUE pour que
+        // les ajouts suivants (positifs ou négatifs) ne le ramènent ni l'un ni l'autre
+        private static final long VIDEES = Long.MIN_VALUE / 2;
+
+        final AtomicReferenceArray<Entree> entrees;
+        private final AtomicLong octets = new AtomicLong();
+
+        Cases(int capacite) {
+            entrees = new AtomicReferenceArray<>(capacite);
+        }
+
+        /**
+         * @param delta Octets ajoutés (négatif si l'entrée remplacée était plus grande)
+         * @return true si les cases n'ont pas été vidées : le delta compte dans le budget
+         */
+        boolean compter(long delta) {
+            return octets.getAndAdd(delta) > VIDEES / 2;
+        }
+
+        /**
+         * @return Octets retenus au moment de l'éviction
+         */
+        long vider() {
+            return octets.getAndSet(VIDEES);
+        }
+    }
+
+    private final int capacite;
+    private final int masque;
+    // null tant que le salon n'a pas de message, et après une éviction
+    private final AtomicReference<Cases> cases = new AtomicReference<>();
+    // Séquence qui suit la plus haute publiée
+    private final AtomicLong fin = new AtomicLong();
+    // Numérotation propre de l'anneau (serveur sans archive)
+    private final AtomicLong prochaine = new AtomicLong();
+    private volatile long dernierAcces;
+
+    /**
+     * Crée un anneau avec la capacité par défaut du serveur.
+     */
+    MessagesRecents() {
+        this(capaciteParDefaut);
+    }
+
+    /**
+     * @param capacite Nombre de messages gardés (arrondi à la puissance de 2 supérieure, 0 : aucun)
+     */
+    public MessagesRecents(int capacite) {
+        this.capacite = capacite <= 0 ? 0 : Integer.highestOneBit(Math.max(1, capacite - 1)) << 1;
+        this.masque = this.capacite - 1;
+    }
+
+    /**
+     * Ajoute un message en le numérotant (serveur sans archive).
+     *
+     * @param horodatage Instant de réception (ms)
+     * @param message Le message en UTF-8 (n'est plus modifié ensuite)
+     */
+    public void publier(long horodatage, byte[] message) {
+        if (capacite > 0) {
+            ajouter(prochaine.getAndIncrement(), horodatage, message);
+        }
+    }
+
+    /**
+     * Ajoute un message de séquence connue (thread d'archive, après son ajout au segment).
+     *
+     * @param sequence Séquence du message dans l'archive
+     * @param horodatage Instant de réception (ms)
+     * @param message Le message en UTF-8 (n'est plus modifié ensuite)
+     */
+    public void ajouter(long sequence, long horodatage, byte[] message) {
+        if (capacite == 0) {
+            return;
+        }
+        Cases c = cases.get();
+        if (c == null) {
+            c = allouer();
+        }
+        Entree entree = new Entree(sequence, horodatage, message);
+        Entree ancienne = c.entrees.getAndSet((int) (sequence & masque), entree);
+        long delta = entree.taille() - (ancienne == null ? 0 : ancienne.taille());
+        if (c.compter(delta)) {
+            octetsTotaux.add(delta);
+        }
+
+        long f;
+        while ((f = fin.get()) <= sequence && !fin.compareAndSet(f, sequence + 1)) {
+            // Un autre ajout a avancé la fin : recommencer avec la nouvelle valeur
+        }
+        dernierAcces = System.nanoTime();
+
+        // Contrôle du budget tous les 64 messages du salon (somme de LongAdder)
+        if ((sequence & 63) == 0 && octetsTotaux.sum() > budgetOctets) {
+            evincer();
+        }
+    }
+
+    private Cases allouer() {
+        while (true) {
+            Cases nouvelles = new Cases(capacite);
+            if (cases.compareAndSet(null, nouvelles)) {
+                alloues.add(this);
+                // Un anneau de plus : un salon froid devra peut-être céder le sien
+                if (octetsTotaux.sum() > budgetOctets) {
+                    evincer();
+                }
+                return nouvelles;
+            }
+            // Seules des cases publiées peuvent être vidées (et décomptées) par une éviction
+            Cases gagnantes = cases.get();
+            if (gagnantes != null) {
+                return gagnantes;
+            }
+        }
+    }
+
+    /**
+     * Lit les derniers messages avant une séquence, du plus ancien au plus récent.
+     *
+     * @param avant Séquence à partir de laquelle remonter, exclue (Long.MAX_VALUE : les plus récents)
+     * @param nombre Nombre maximal de messages
+     * @param partielle true pour se contenter des messages présents (pas d'archive
+     *                  derrière l'anneau), false pour ne rien lire si la page est incomplète
+     * @param lecteur Reçoit chaque message (vue en lecture seule sur le message gardé)
+     * @return Séquence à passer comme avant pour la page précédente, -1 s'il n'y a rien
+     *         avant la page, ou ABSENT si la page est incomplète (partielle = false)
+     * @throws Exception Si le lecteur échoue
+     */
+    public long lire(long avant, int nombre, boolean partielle, ArchiveSalons.Lecteur lecteur) throws Exception {
+        Cases c = cases.get();
+        if (c == null || nombre <= 0) {
+            return partielle ? -1 : ABSENT;
+        }
+        dernierAcces = System.nanoTime();
+        long derniere = Math.min(avant, fin.get());
+        Entree[] page = new Entree[(int) Math.min(Math.min(nombre, capacite), Math.max(derniere, 0))];
+        int n = 0;
+        for (long s = derniere - 1; n < page.length; s--) {
+            Entree e = c.entrees.get((int) (s & masque));
+            if (e == null || e.sequence != s) {
+                break;
+            }
+            page[n++] = e;
+        }
+        long premiere = derniere - n;
+        if (n < page.length && !partielle) {
+            return ABSENT;
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            lecteur.lire(page[i].sequence, page[i].horodatage, ByteBuffer.wrap(page[i].message).asReadOnlyBuffer());
+        }
+        if (premiere <= 0) {
+            return -1;
+        }
+        if (partielle) {
+            // Sans archive, il n'y a de page précédente que si l'anneau la contient
+            Entree e = c.entrees.get((int) ((premiere - 1) & masque));
+            return e != null && e.sequence == premiere - 1 ? premiere : -1;
+        }
+        return premiere;
+    }
+
+    /**
+     * Libère l'anneau (éviction) : ses messages restent lisibles dans l'archive.
+     */
+    void vider() {
+        Cases c = cases.getAndSet(null);
+        if (c != null) {
+            alloues.remove(this);
+            octetsTotaux.add(-c.vider());
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Vide les anneaux les moins récemment utilisés jusqu'à repasser sous 90 % du
+     * budget. Un seul thread évince à la fois ; les autres continuent sans attendre.
+     */
+    private static void evincer() {
+        if (!evictionEnCours.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long cible = budgetOctets / 10 * 9;
+            Candidat[] candidats = alloues.stream().map(Candidat::new).toArray(Candidat[]::new);
+            Arrays.sort(candidats, Comparator.comparingLong(c -> c.acces));
+            for (Candidat c : candidats) {
+                if (octetsTotaux.sum() <= cible) {
+                    break;
+                }
+                c.anneau.vider();
+            }
+        } finally {
+            evictionEnCours.set(false);
+        }
+    }
+
+    /**
+     * @return Octets retenus par tous les anneaux (estimation)
+     */
+    static long getOctetsTotaux() {
+        return octetsTotaux.sum();
+    }
+
+    /**
+     * @return Nombre d'anneaux vidés par le budget, depuis le démarrage
+     */
+    static long getEvictions() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,200 @@
+package Server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métriques du serveur, exposées au format texte de Prometheus.
+ *
+ * Les compteurs (LongAdder) et les histogrammes de durées (Histogramme) sont
+ * alimentés par le chemin des messages sans allocation ni verrou ; les jauges
+ * (clients, salons, files de sortie) sont lues seulement au moment de l'export.
+ * Le débit par salon est le compteur de chaque Salon.
+ *
+ * Le point d'accès HTTP (serveur HTTP du JDK) n'écoute que sur l'interface
+ * locale : option --metriques=PORT du serveur, puis GET http://127.0.0.1:PORT/metrics
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public final class Metriques {
+
+    // Quantiles exportés pour chaque histogramme
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // Compteurs
+    static final LongAdder octetsRecus = new LongAdder();
+    static final LongAdder octetsEnvoyes = new LongAdder();
+    static final LongAdder messagesRecus = new LongAdder();
+    static final LongAdder sessionsOuvertes = new LongAdder();
+    static final LongAdder octetsArchives = new LongAdder();
+    static final LongAdder archivesPerdues = new LongAdder();
+    static final LongAdder historiqueMemoire = new LongAdder();
+    static final LongAdder historiqueArchive = new LongAdder();
+    static final LongAdder relaisEnvoyes = new LongAdder();
+    static final LongAdder relaisRecus = new LongAdder();
+    static final LongAdder redirections = new LongAdder();
+
+    // Durées en nanosecondes
+    static final Histogramme chiffrement = new Histogramme();
+    static final Histogramme dechiffrement = new Histogramme();
+    static final Histogramme diffusion = new Histogramme();
+    static final Histogramme archivage = new Histogramme();
+    static final Histogramme synchronisationArchive = new Histogramme();
+    static final Histogramme historique = new Histogramme();
+
+    private Metriques() {
+    }
+
+    /**
+     * Démarre le point d'accès HTTP, sur l'interface locale uniquement.
+     *
+     * @param port Port d'écoute
+     * @return Le serveur HTTP démarré
+     * @throws IOException Si le port n'est pas disponible
+     */
+    public static HttpServer demarrer(int port) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        http.createContext("/metrics", Metriques::repondre);
+        http.start();
+        Journal.info("Métriques disponibles sur http://{}:{}/metrics",
+                InetAddress.getLoopbackAddress().getHostAddress(), http.getAddress().getPort());
+        return http;
+    }
+
+    private static void repondre(HttpExchange echange) throws IOException {
+        try (echange) {
+            if (!echange.getRequestMethod().equals("GET")) {
+                echange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] corps = exporter().getBytes(StandardCharsets.UTF_8);
+            echange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            echange.sendResponseHeaders(200, corps.length);
+            try (OutputStream sortie = echange.getResponseBody()) {
+                sortie.write(corps);
+            }
+        }
+    }
+
+    /**
+     * @return Toutes les métriques au format texte de Prometheus
+     */
+    public static String exporter() {
+        StringBuilder sb = new StringBuilder(4096);
+
+        jauge(sb, "chat_clients_connectes", "Clients connectés", gestionnaireClientGUI.getNombreClients());
+        jauge(sb, "chat_salons", "Salons existants", gestionnaireClientGUI.getSalons().taille());
+        jauge(sb, "chat_file_sortie_trames", "Trames en attente dans les files de sortie",
+                gestionnaireClientGUI.getProfondeurTotale());
+        jauge(sb, "chat_trames_par_ecriture", "Trames par écriture réseau (moyenne)",
+                FileSortie.getTramesParEcriture());
+        Cluster cluster = gestionnaireClientGUI.getCluster();
+        jauge(sb, "chat_cluster_liens", "Liens établis avec les autres nœuds du cluster",
+                cluster == null ? 0 : cluster.getNombreLiens());
+        RepartiteurSalons repartiteur = gestionnaireClientGUI.getRepartiteur();
+        jauge(sb, "chat_partitions_attente", "Diffusions en attente dans les files des partitions",
+                repartiteur == null ? 0 : repartiteur.getEnAttente());
+        jauge(sb, "chat_recents_octets", "Octets retenus par les messages récents des salons (estimation)",
+                MessagesRecents.getOctetsTotaux());
+
+        compteur(sb, "chat_sessions_ouvertes_total", "Sessions ouvertes (clé personnelle envoyée)",
+                sessionsOuvertes.sum());
+        compteur(sb, "chat_messages_recus_total", "Messages reçus des clients", messagesRecus.sum());
+        compteur(sb, "chat_octets_recus_total", "Octets chiffrés reçus", octetsRecus.sum());
+        compteur(sb, "chat_octets_envoyes_total", "Octets chiffrés envoyés", octetsEnvoyes.sum());
+        compteur(sb, "chat_file_sortie_pertes_total", "Trames supprimées (file de sortie pleine)",
+                FileSortie.getPertesTotales());
+        compteur(sb, "chat_file_sortie_deconnexions_total", "Clients déconnectés (file de sortie pleine)",
+                FileSortie.getDeconnexionsTotales());
+        compteur(sb, "chat_journal_pertes_total", "Messages du journal perdus", Journal.getPertes());
+        compteur(sb, "chat_archive_octets_total", "Octets de l'archive écrits sur le disque", octetsArchives.sum());
+        compteur(sb, "chat_archive_pertes_total", "Messages non archivés (file de l'archive pleine)",
+                archivesPerdues.sum());
+        compteur(sb, "chat_historique_memoire_total", "Pages d'historique servies par les messages récents",
+                historiqueMemoire.sum());
+        compteur(sb, "chat_historique_archive_total", "Pages d'historique lues dans l'archive",
+                historiqueArchive.sum());
+        compteur(sb, "chat_cluster_relais_envoyes_total", "Messages relayés aux autres nœuds (un par nœud)",
+                relaisEnvoyes.sum());
+        compteur(sb, "chat_cluster_relais_recus_total", "Messages reçus des autres nœuds",
+                relaisRecus.sum());
+        compteur(sb, "chat_redirections_total", "Clients renvoyés vers le propriétaire d'un salon",
+                redirections.sum());
+        compteur(sb, "chat_recents_evictions_total", "Messages récents de salons libérés (budget dépassé)",
+                MessagesRecents.getEvictions());
+
+        entete(sb, "chat_messages_salon_total", "Messages diffusés par salon", "counter");
+        for (Salon<gestionnaireClientGUI> salon : gestionnaireClientGUI.getSalons().salons()) {
+            sb.append("chat_messages_salon_total{salon=\"");
+            echapper(sb, salon.getNom());
+            sb.append("\"} ").append(salon.getMessages()).append('\n');
+        }
+
+        resume(sb, "chat_chiffrement_secondes", "Durée de chiffrement d'un message", chiffrement);
+        resume(sb, "chat_dechiffrement_secondes", "Durée de déchiffrement d'un message", dechiffrement);
+        resume(sb, "chat_diffusion_secondes", "Durée de diffusion d'un message à un salon", diffusion);
+        resume(sb, "chat_archive_ajout_secondes", "Durée d'ajout d'un message à l'archive", archivage);
+        resume(sb, "chat_archive_synchronisation_secondes", "Durée d'une écriture groupée de l'archive",
+                synchronisationArchive);
+        resume(sb, "chat_historique_page_secondes", "Durée de lecture et d'envoi d'une page d'historique",
+                historique);
+        return sb.toString();
+    }
+
+    private static void entete(StringBuilder sb, String nom, String aide, String type) {
+        sb.append("# HELP ").append(nom).append(' ').append(aide).append('\n');
+        sb.append("# TYPE ").append(nom).append(' ').append(type).append('\n');
+    }
+
+    private static void jauge(StringBuilder sb, String nom, String aide, long valeur) {
+        entete(sb, nom, aide, "gauge");
+        sb.append(nom).append(' ').append(valeur).append('\n');
+    }
+
+    private static void jauge(StringBuilder sb, String nom, String aide, double valeur) {
+        entete(sb, nom, aide, "gauge");
+        sb.append(nom).append(' ').append(valeur).append('\n');
+    }
+
+    private static void compteur(StringBuilder sb, String nom, String aide, long valeur) {
+        entete(sb, nom, aide, "counter");
+        sb.append(nom).append(' ').append(valeur).append('\n');
+    }
+
+    /**
+     * Un histogramme de durées, exporté comme un "summary" (quantiles, somme, nombre).
+     */
+    private static void resume(StringBuilder sb, String nom, String aide, Histogramme h) {
+        entete(sb, nom, aide, "summary");
+        for (double q : QUANTILES) {
+            sb.append(nom).append("{quantile=\"").append(q).append("\"} ")
+                    .append(h.quantile(q) / 1e9).append('\n');
+        }
+        sb.append(nom).append("_sum ").append(h.getSomme() / 1e9).append('\n');
+        sb.append(nom).append("_count ").append(h.getNombre()).append('\n');
+    }
+
+    /**
+     * Échappe une valeur d'étiquette (barre oblique inverse, guillemet, fin de ligne).
+     */
+    private static void echapper(StringBuilder sb, String valeur) {
+        for (int i = 0; i < valeur.length(); i++) {
+            char c = valeur.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package Server;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Présence des utilisateurs : arrivées et départs regroupés par fenêtre.
+ *
+ * Avant, chaque connexion ou déconnexion reconstruisait la liste complète et la
+ * renvoyait à tous les clients (O(N²) pendant une vague de connexions). Ici les
+ * évènements sont accumulés pendant une courte fenêtre puis diffusés en une fois,
+ * par un seul thread :
+ * - Un nouveau client reçoit une seule liste complète (USER_LIST), puis des deltas
+ * - Un client qui a négocié CAPACITE_PRESENCE reçoit USER_JOINED / USER_LEFT
+ *   (pseudos séparés par des virgules), au plus une trame de chaque par fenêtre
+ * - Les anciens clients reçoivent toujours la liste complète et les messages
+ *   d'arrivée/départ, mais une seule fois par fenêtre
+ * Une arrivée suivie d'un départ dans la même fenêtre (ou l'inverse) s'annule.
+ *
+ * Les deltas ne valent que si le client les a tous reçus. Un client dont la file
+ * de sortie a perdu des trames depuis son dernier envoi de présence reçoit donc
+ * une liste complète à la place des deltas : sa liste est recalée quoi qu'il ait
+ * manqué.
+ *
+ * Tout envoi se fait depuis le thread de présence : un nouveau client reçoit
+ * donc sa liste complète avant tout delta, et aucun delta ne la précède.
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+class Presence {
+
+    // Fenêtre de regroupement (option --presence du serveur)
+    static volatile long fenetreParDefautMs = 50;
+
+    private final Supplier<List<String>> pseudos;
+    private final ReentrantLock verrou = new ReentrantLock();
+    // Évènements en attente : pseudo -> présent à la fin de la fenêtre
+    private final Map<String, Boolean> evenements = new LinkedHashMap<>();
+    // Pseudos présents au début de la fenêtre (pour annuler arrivée + départ)
+    private final Map<String, Boolean> etatsInitiaux = new LinkedHashMap<>();
+    private final List<gestionnaireClientGUI> nouveaux = new ArrayList<>();
+    // Destinataires des deltas -> trames perdues par leur file au dernier envoi de présence
+    private final Map<gestionnaireClientGUI, Long> abonnes = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService planificateur;
+    private boolean planifie = false;
+
+    /**
+     * @param pseudos Fournit les pseudos présents (liste complète envoyée aux nouveaux clients)
+     */
+    Presence(Supplier<List<String>> pseudos) {
+        this.pseudos = pseudos;
+        this.planificateur = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "presence");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Inscrit un client qui vient d'ouvrir sa session : il recevra la liste
+     * complète à la prochaine diffusion, puis les deltas.
+     *
+     * @param client Le client
+     */
+    void inscrire(gestionnaireClientGUI client) {
+        verrou.lock();
+        try {
+            nouveaux.add(client);
+            planifier();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Retire un client déconnecté des destinataires.
+     *
+     * @param client Le client
+     */
+    void desinscrire(gestionnaireClientGUI client) {
+        abonnes.remove(client);
+        verrou.lock();
+        try {
+            nouveaux.remove(client);
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Signale l'arrivée ou le départ d'un pseudo.
+     *
+     * @param pseudo Le pseudo
+     * @param present true pour une arrivée, false pour un départ
+     */
+    void signaler(String pseudo, boolean present) {
+        verrou.lock();
+        try {
+            etatsInitiaux.putIfAbsent(pseudo, !present);
+            evenements.put(pseudo, present);
+            planifier();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Planifie une diffusion à la fin de la fenêtre, si aucune ne l'est déjà (verrou tenu).
+     */
+    private void planifier() {
+        if (!planifie) {
+            planifie = true;
+            planificateur.schedule(this::diffuser, fenetreParDefautMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Diffuse les évènements de la fenêtre écoulée (thread de présence).
+     */
+    private void diffuser() {
+        List<String> arrivees = new ArrayList<>();
+        List<String> departs = new ArrayList<>();
+        List<gestionnaireClientGUI> inscrits;
+        verrou.lock();
+        try {
+            for (Map.Entry<String, Boolean> e : evenements.entrySet()) {
+                if (!e.getValue().equals(etatsInitiaux.get(e.getKey()))) {
+                    (e.getValue() ? arrivees : departs).add(e.getKey());
+                }
+            }
+            evenements.clear();
+            etatsInitiaux.clear();
+            inscrits = new ArrayList<>(nouveaux);
+            nouveaux.clear();
+            planifie = false;
+        } finally {
+            verrou.unlock();
+        }
+
+        try {
+            if (!arrivees.isEmpty() || !departs.isEmpty()) {
+                diffuserDeltas(arrivees, departs);
+            }
+            if (!inscrits.isEmpty()) {
+                // Une seule liste pour tous les nouveaux, construite après les deltas
+                String liste = "USER_LIST:" + String.join(",", pseudos.get());
+                for (gestionnaireClientGUI c : inscrits) {
+                    // Pertes relevées avant la liste : une perte qui la suit sera rattrapée
+                    long pertes = c.getPertesFile();
+                    envoyer(c, liste);
+                    abonnes.put(c, pertes);
+                    // Déconnecté entre-temps : desinscrire() est peut-être déjà passé
+                    if (c.isDeconnecte()) {
+                        abonnes.remove(c);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Journal.erreur("Erreur diffusion présence: {}", e.getMessage());
+        }
+    }
+
+    private void diffuserDeltas(List<String> arrivees, List<String> departs) {
+        String joined = arrivees.isEmpty() ? null : "USER_JOINED:" + String.join(",", arrivees);
+        String left = departs.isEmpty() ? null : "USER_LEFT:" + String.join(",", departs);
+        String liste = null;
+        List<String> annonces = null;
+
+        for (Map.Entry<gestionnaireClientGUI, Long> abonne : abonnes.entrySet()) {
+            gestionnaireClientGUI c = abonne.getKey();
+            long pertes = c.getPertesFile();
+            if (c.presenceIncrementale()) {
+                if (pertes == abonne.getValue()) {
+                    if (left != null) envoyer(c, left);
+                    if (joined != null) envoyer(c, joined);
+                } else {
+                    // Des trames perdues depuis le dernier envoi : liste complète à la place
+                    if (liste == null) {
+                        liste = "USER_LIST:" + String.join(",", pseudos.get());
+                    }
+                    envoyer(c, liste);
+                    abonnes.replace(c, abonne.getValue(), pertes);
+                }
+            } else {
+                // Ancien client : liste complète et annonces, construites une seule fois
+                if (liste == null) {
+                    liste = "USER_LIST:" + String.join(",", pseudos.get());
+                }
+                if (annonces == null) {
+                    annonces = new ArrayList<>();
+                    for (String p : departs) annonces.add("[SYSTÈME] " + p + " s'est déconnecté");
+                    for (String p : arrivees) annonces.add("[SYSTÈME] " + p + " vient de se connecter");
+                }
+                envoyer(c, liste);
+                for (String annonce : annonces) envoyer(c, annonce);
+            }
+        }
+    }
+
+    private void envoyer(gestionnaireClientGUI c, String message) {
+        try {
+            c.sendToClient(message);
+        } catch (Exception e) {
+            Journal.erreur("Erreur envoi présence à {}: {}", c.getUsername(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package Server;
+
+import Cryptage.AES;
+
+import javax.crypto.SecretKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Registre concurrent des salons.
+ *
+ * Remplace la Map synchronisée et le verrou global des salons : la table est une
+ * ConcurrentHashMap (recherche sans verrou, création atomique) et chaque Salon
+ * protège ses membres avec son propre verrou. Le trafic d'un salon ne croise
+ * jamais une entrée ou une création dans un autre salon.
+ *
+ * Toute création (explicite ou implicite) est enregistrée dans un catalogue
+ * versionné (CatalogueSalons) puis signalée à l'écouteur du registre.
+ *
+ * Clés : aléatoires, ou dérivées du secret du cluster et du nom du salon (option
+ * --secret du serveur). Tous les nœuds d'un cluster donnent ainsi la même clé au
+ * même salon sans jamais l'échanger. Avec l'archive et sans --secret, le secret
+ * est celui de l'archive (ArchiveSalons.secretCles) : les clés survivent à un
+ * redémarrage.
+ *
+ * @param <T> Type des membres
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class RegistreSalons<T> {
+
+    // Secret du cluster (option --secret) ou de l'archive, ou null : clés aléatoires
+    static volatile byte[] secretCles;
+
+    private final ConcurrentHashMap<String, Salon<T>> salons = new ConcurrentHashMap<>();
+    private final CatalogueSalons catalogue = new CatalogueSalons();
+    private final Consumer<Salon<T>> surCreation;
+
+    /**
+     * Crée un registre sans écouteur de création.
+     */
+    public RegistreSalons() {
+        this(salon -> { });
+    }
+
+    /**
+     * @param surCreation Appelé une fois par salon créé, après son enregistrement au catalogue
+     */
+    public RegistreSalons(Consumer<Salon<T>> surCreation) {
+        this.surCreation = surCreation;
+    }
+
+    /**
+     * @param nom Nom du salon
+     * @return Le salon, ou null s'il n'existe pas
+     */
+    public Salon<T> get(String nom) {
+        return salons.get(nom);
+    }
+
+    /**
+     * Renvoie le salon, en le créant (avec sa clé AES) s'il n'existe pas.
+     *
+     * @param nom Nom du salon
+     * @return Le salon existant ou créé
+     */
+    public Salon<T> obtenir(String nom) {
+        Salon<T> salon = salons.get(nom);
+        if (salon != null) {
+            return salon;
+        }
+        Salon<T> cree = creer(nom);
+        return cree != null ? cree : salons.get(nom);
+    }
+
+    /**
+     * Crée un salon s'il n'existe pas encore.
+     *
+     * @param nom Nom du salon
+     * @return Le salon créé, ou null s'il existait déjà
+     */
+    public Salon<T> creer(String nom) {
+        if (salons.containsKey(nom)) {
+            return null;
+        }
+        Salon<T> nouveau = new Salon<>(nom, nouvelleCle(nom));
+        if (salons.putIfAbsent(nom, nouveau) != null) {
+            return null;
+        }
+        nouveau.setRevision(catalogue.ajouter(nom));
+        surCreation.accept(nouveau);
+        return nouveau;
+    }
+
+    /**
+     * @return Les noms des salons existants
+     */
+    public List<String> noms() {
+        return new ArrayList<>(salons.keySet());
+    }
+
+    /**
+     * @return Vue des salons existants (parcours faiblement cohérent, sans verrou)
+     */
+    public Collection<Salon<T>> salons() {
+        return salons.values();
+    }
+
+    /**
+     * @return Le catalogue versionné des salons
+     */
+    CatalogueSalons getCatalogue() {
+        return catalogue;
+    }
+
+    /**
+     * @return Nombre de salons
+     */
+    public int taille() {
+        return salons.size();
+    }
+
+    private static SecretKey nouvelleCle(String nom) {
+        try {
+            byte[] secret = secretCles;
+            return secret != null ? AES.deriverCle(secret, "salon:" + nom) : AES.genererCle(128);
+        } catch (Exception e) {
+            throw new IllegalStateException("Génération de clé de salon impossible", e);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package Server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Partitions de diffusion : chaque salon est confié à un seul thread (sa partition,
+ * choisie par le hachage de son nom), qui fait toutes ses diffusions.
+ *
+ * Le thread de l'expéditeur ne fait que déposer la diffusion dans la file de la
+ * partition et revient lire le client suivant. Les membres, l'anneau des messages
+ * récents et les files de sortie d'un salon ne sont parcourus que par un cœur :
+ * ils restent dans son cache, et les messages d'un salon sont diffusés dans l'ordre
+ * de leur dépôt. Deux salons de partitions différentes ne partagent rien.
+ *
+ * Chaque partition a une file MPSC sans verrou (plusieurs producteurs, un seul
+ * consommateur, algorithme de Vyukov) : un dépôt est un getAndSet sur la tête de
+ * la file. Une partition sans travail s'endort (park) ; le dépôt qui la trouve
+ * endormie la réveille. Une file bornée ralentit les producteurs (attente
+ * brève) plutôt que de grossir sans limite. Avec --debordement=bloquer, un client
+ * lent retarde toute sa partition, plus seulement l'expéditeur.
+ *
+ * Option du serveur : --partitions=N (une par cœur ; 0 : diffusion par le thread
+ * de l'expéditeur, par défaut)
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public final class RepartiteurSalons implements AutoCloseable {
+
+    /**
+     * Diffusions en attente par partition, au plus.
+     */
+    public static final int CAPACITE = 65536;
+
+    // Tours d'attente active avant qu'une partition vide s'endorme
+    private static final int TOURS_AVANT_SOMMEIL = 64;
+
+    private final Partition[] partitions;
+
+    /**
+     * Un élément de file : la tâche et le suivant (posé par son producteur).
+     */
+    private static final class Noeud {
+        final Runnable tache;
+        volatile Noeud suivant;
+
+        Noeud(Runnable tache) {
+            this.tache = tache;
+        }
+    }
+
+    /**
+     * Une partition : sa file MPSC et son thread.
+     */
+    private static final class Partition implements Runnable {
+        // Producteurs : dernier nœud déposé
+        private final AtomicReference<Noeud> tete;
+        // Consommateur seul : nœud déjà traité qui précède le prochain
+        private Noeud queue;
+        private final AtomicInteger enAttente = new AtomicInteger();
+        private final AtomicBoolean endormie = new AtomicBoolean();
+        private final Thread thread;
+        private volatile boolean arretee = false;
+
+        Partition(int numero) {
+            Noeud sentinelle = new Noeud(null);
+            tete = new AtomicReference<>(sentinelle);
+            queue = sentinelle;
+            thread = new Thread(this, "partition-" + numero);
+            thread.setDaemon(true);
+        }
+
+        void deposer(Runnable tache) {
+            // File pleine : le producteur attend que la partition rattrape son retard
+            while (enAttente.get() >= CAPACITE && !arretee) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+            }
+            enAttente.incrementAndGet();
+            Noeud noeud = new Noeud(tache);
+            Noeud precedent = tete.getAndSet(noeud);
+            // Entre ces deux lignes, le nœud est déposé mais pas encore relié (voir retirer)
+            precedent.suivant = noeud;
+            if (endormie.get() && endormie.compareAndSet(true, false)) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /**
+         * @return La tâche suivante, ou null si la file est vide (consommateur seul)
+         */
+        private Runnable retirer() {
+            Noeud suivant = queue.suivant;
+            if (suivant == null) {
+                if (tete.get() == queue) {
+                    return null;
+                }
+                // Un producteur a déposé son nœud sans l'avoir encore relié
+                while ((suivant = queue.suivant) == null) {
+                    Thread.onSpinWait();
+                }
+            }
+            queue = suivant;
+            enAttente.decrementAndGet();
+            return suivant.tache;
+        }
+
+        @Override
+        public void run() {
+            int tours = 0;
+            while (!arretee) {
+                Runnable tache = retirer();
+                if (tache != null) {
+                    tours = 0;
+                    try {
+                        tache.run();
+                    } catch (RuntimeException e) {
+                        Journal.erreur("Erreur de diffusion ({}): {}", thread.getName(), e.getMessage());
+                    }
+                } else if (++tours < TOURS_AVANT_SOMMEIL) {
+                    Thread.onSpinWait();
+                } else {
+                    // S'annoncer endormie, puis revérifier : un dépôt juste avant serait manqué
+                    endormie.set(true);
+                    if (tete.get() == queue) {
+                        LockSupport.park(this);
+                    }
+                    endormie.set(false);
+                    tours = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Démarre les threads des partitions.
+     *
+     * @param nombre Nombre de partitions (une par cœur)
+     */
+    public RepartiteurSalons(int nombre) {
+        if (nombre <= 0) {
+            throw new IllegalArgumentException("Nombre de partitions invalide : " + nombre);
+        }
+        partitions = new Partition[nombre];
+        for (int i = 0; i < nombre; i++) {
+            partitions[i] = new Partition(i);
+            partitions[i].thread.start();
+        }
+    }
+
+    /**
+     * Confie une tâche à la partition du salon : les tâches d'un même salon
+     * s'exécutent une à une, dans l'ordre de leur dépôt.
+     *
+     * @param salon Nom du salon
+     * @param tache La diffusion (ne doit pas bloquer)
+     */
+    public void soumettre(String salon, Runnable tache) {
+        partitions[partition(salon)].deposer(tache);
+    }
+
+    /**
+     * @param salon Nom du salon
+     * @return Numéro de la partition du salon
+     */
+    public int partition(String salon) {
+        // Mélange des bits de poids fort : les noms proches ("salon-1", "salon-2") s'étalent
+        int h = salon.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), partitions.length);
+    }
+
+    /**
+     * @return Nombre de partitions
+     */
+    public int getNombre() {
+        return partitions.length;
+    }
+
+    /**
+     * @return Diffusions en attente, toutes partitions confondues
+     */
+    public int getEnAttente() {
+        int total = 0;
+        for (Partition p : partitions) {
+            total += p.enAttente.get();
+        }
+        return total;
+    }
+
+    /**
+     * Arrête les partitions (les tâches encore en file ne sont pas exécutées).
+     */
+    @Override
+    public void close() {
+        for (Partition p : partitions) {
+            p.arretee = true;
+            LockSupport.unpark(p.thread);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package Server;
+
+import javax.crypto.SecretKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Un salon : son nom, sa clé AES et ses membres.
+ *
+ * Les membres sont publiés sous forme d'instantané immuable (tableau recopié à
+ * chaque entrée/sortie, sous le verrou propre au salon). Un broadcast parcourt
+ * l'instantané sans aucun verrou : il ne gêne ni les entrées dans ce salon,
+ * ni quoi que ce soit dans les autres salons.
+ *
+ * Ses derniers messages sont gardés en mémoire (MessagesRecents) pour remplir
+ * l'onglet d'un client qui y entre.
+ *
+ * Le contenu des messages (chiffré par les clients avec la clé du salon) est en
+ * AES-GCM seulement si tous les membres savent le lire ; un seul membre sans
+ * CAPACITE_GCM ramène tout le salon au format historique.
+ *
+ * @param <T> Type des membres
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class Salon<T> {
+
+    private final String nom;
+    private final SecretKey cle;
+    private final ReentrantLock verrou = new ReentrantLock();
+    private volatile Object[] membres = new Object[0];
+    private volatile long revision;
+    private volatile boolean contenuGcm = true;
+    private final LongAdder messages = new LongAdder();
+    private final MessagesRecents recents = new MessagesRecents();
+
+    /**
+     * @param nom Nom du salon
+     * @param cle Clé AES du salon
+     */
+    Salon(String nom, SecretKey cle) {
+        this.nom = nom;
+        this.cle = cle;
+    }
+
+    /**
+     * @return Le nom du salon
+     */
+    public String getNom() {
+        return nom;
+    }
+
+    /**
+     * @return La clé AES du salon
+     */
+    public SecretKey getCle() {
+        return cle;
+    }
+
+    /**
+     * @return Révision du catalogue à laquelle le salon a été créé
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    /**
+     * Compte un message diffusé dans le salon (métriques).
+     */
+    void compterMessage() {
+        messages.increment();
+    }
+
+    /**
+     * @return Nombre de messages diffusés dans le salon depuis sa création
+     */
+    public long getMessages() {
+        return messages.sum();
+    }
+
+    /**
+     * @return Les derniers messages du salon
+     */
+    public MessagesRecents getRecents() {
+        return recents;
+    }
+
+    /**
+     * Ajoute un membre (sans effet s'il est déjà présent).
+     *
+     * @param membre Le membre à ajouter
+     * @return true si le membre a été ajouté
+     */
+    public boolean ajouter(T membre) {
+        verrou.lock();
+        try {
+            Object[] actuels = membres;
+            for (Object m : actuels) {
+                if (m == membre) return false;
+            }
+            Object[] nouveaux = Arrays.copyOf(actuels, actuels.length + 1);
+            nouveaux[actuels.length] = membre;
+            membres = nouveaux;
+            return true;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Retire un membre.
+     *
+     * @param membre Le membre à retirer
+     * @return true si le membre était présent
+     */
+    public boolean retirer(T membre) {
+        verrou.lock();
+        try {
+            Object[] actuels = membres;
+            for (int i = 0; i < actuels.length; i++) {
+                if (actuels[i] == membre) {
+                    Object[] nouveaux = new Object[actuels.length - 1];
+                    System.arraycopy(actuels, 0, nouveaux, 0, i);
+                    System.arraycopy(actuels, i + 1, nouveaux, i, actuels.length - i - 1);
+                    membres = nouveaux;
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * @return true si le contenu des messages du salon est chiffré en AES-GCM
+     */
+    public boolean isContenuGcm() {
+        return contenuGcm;
+    }
+
+    /**
+     * Recalcule le format du contenu d'après les membres actuels (AES-GCM si tous
+     * le supportent, format historique sinon) et l'annonce : à tous les membres
+     * qui lisent l'AES-GCM s'il a changé, sinon au seul membre entrant. Les membres
+     * à prévenir sont relevés sous le verrou du salon, l'annonce part après : un
+     * membre lent (--debordement=bloquer) ne bloque ni les entrées ni les sorties.
+     * Chaque annonce relit le format courant et repart s'il a changé entre-temps :
+     * la dernière annonce reçue par un membre donne toujours le format en vigueur.
+     *
+     * @param gcm Vrai pour un membre qui sait lire le contenu en AES-GCM
+     * @param entrant Le membre qui vient d'entrer, ou null après une sortie
+     * @param annoncer Reçoit chaque membre à prévenir et le format (true : AES-GCM)
+     * @return true si le format a changé
+     */
+    @SuppressWarnings("unchecked")
+    public boolean recalculerFormat(Predicate<? super T> gcm, T entrant, BiConsumer<? super T, Boolean> annoncer) {
+        List<T> aPrevenir = new ArrayList<>();
+        boolean change;
+        verrou.lock();
+        try {
+            boolean tous = true;
+            for (Object m : membres) {
+                if (!gcm.test((T) m)) {
+                    tous = false;
+                    break;
+                }
+            }
+            change = tous != contenuGcm;
+            contenuGcm = tous;
+            if (change) {
+                for (Object m : membres) {
+                    if (gcm.test((T) m)) {
+                        aPrevenir.add((T) m);
+                    }
+                }
+            } else if (entrant != null && gcm.test(entrant)) {
+                aPrevenir.add(entrant);
+            }
+        } finally {
+            verrou.unlock();
+        }
+        for (T m : aPrevenir) {
+            boolean format;
+            do {
+                format = contenuGcm;
+                annoncer.accept(m, format);
+            } while (format != contenuGcm);
+        }
+        return change;
+    }
+
+    /**
+     * Instantané des membres, sans verrou. Il ne change plus une fois obtenu :
+     * les entrées et sorties suivantes publient un nouvel instantané.
+     *
+     * @return Les membres au moment de l'appel (liste non modifiable)
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> membres() {
+        // Le tableau publié n'est jamais modifié : une simple vue suffit, sans copie
+        return (List<T>) Collections.unmodifiableList(Arrays.asList(membres));
+    }
+
+    /**
+     * @return Nombre de membres
+     */
+    public int taille() {
+        return membres.length;
+    }
+}
@@ -0,0 +1,301 @@
+package Server;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Un segment de l'historique d'un salon : un fichier de taille fixe projeté en
+ * mémoire (mmap), rempli par ajouts successifs.
+ *
+ * Format d'un enregistrement :
+ * [longueur : int][crc32c : int][horodatage ms : long][données : longueur octets]
+ * Le CRC couvre les données puis l'horodatage. La longueur est écrite en dernier :
+ * au redémarrage, la lecture s'arrête au premier enregistrement de longueur nulle
+ * (fin du fichier jamais écrite) ou dont le CRC est faux (écriture interrompue).
+ *
+ * Le nom du fichier est le numéro de séquence de son premier enregistrement.
+ * Le canal du fichier est fermé dès la projection : un salon ne garde aucun
+ * descripteur ouvert.
+ *
+ * Index clairsemé : la position d'un enregistrement sur INTERVALLE_INDEX, en
+ * mémoire. Trouver une séquence coûte une lecture de l'index puis au plus
+ * INTERVALLE_INDEX - 1 sauts d'enregistrement. L'index d'un segment scellé rouvert
+ * au démarrage n'est construit qu'à sa première lecture.
+ *
+ * Ajouts : sous le verrou de HistoriqueSalon. forcer() : thread d'archive seul.
+ * Lectures : sans verrou, jusqu'au nombre d'enregistrements lu avant (les octets
+ * d'un enregistrement compté ne changent plus).
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+final class Segment {
+
+    /**
+     * Taille de l'en-tête d'un enregistrement.
+     */
+    static final int ENTETE = 16;
+
+    /**
+     * Enregistrements entre deux entrées de l'index.
+     */
+    static final int INTERVALLE_INDEX = 64;
+
+    private static final String EXTENSION = ".seg";
+
+    private final Path fichier;
+    private final long base;
+    private final MappedByteBuffer tampon;
+    // Écrits sous le verrou du salon, lus sans verrou par le thread d'archive
+    private volatile int position;
+    private volatile long nombre;
+    private volatile long dernierHorodatage;
+    private volatile boolean scelle;
+    // Position des enregistrements 0, INTERVALLE_INDEX, 2 * INTERVALLE_INDEX...
+    // Remplacé en entier quand il grandit : une lecture garde un tableau cohérent
+    private volatile int[] index = new int[16];
+    private volatile boolean indexe = true;
+    // Thread d'archive seulement
+    private int positionForcee;
+    private boolean horodate;
+
+    private Segment(Path fichier, long base, MappedByteBuffer tampon) {
+        this.fichier = fichier;
+        this.base = base;
+        this.tampon = tampon;
+    }
+
+    /**
+     * Crée un segment vide.
+     *
+     * @param repertoire Répertoire du salon
+     * @param base Séquence du premier enregistrement
+     * @param taille Taille du fichier en octets
+     * @return Le segment, prêt à recevoir des ajouts
+     * @throws IOException Si le fichier ne peut être créé ou projeté
+     */
+    static Segment creer(Path repertoire, long base, int taille) throws IOException {
+        Path fichier = repertoire.resolve(nomFichier(base));
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Segment(fichier, base, canal.map(FileChannel.MapMode.READ_WRITE, 0, taille));
+        }
+    }
+
+    /**
+     * Rouvre un segment existant.
+     *
+     * @param fichier Fichier du segment
+     * @param dernier true pour le segment actif : ses enregistrements sont relus
+     *                (et vérifiés) pour retrouver la position d'ajout
+     * @return Le segment
+     * @throws IOException Si le fichier ne peut être projeté
+     */
+    static Segment ouvrir(Path fichier, boolean dernier) throws IOException {
+        long base = Long.parseLong(fichier.getFileName().toString().replace(EXTENSION, ""));
+        Segment segment;
+        try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = new Segment(fichier, base, canal.map(FileChannel.MapMode.READ_WRITE, 0, canal.size()));
+        }
+        if (dernier) {
+            segment.relire();
+            segment.positionForcee = segment.position;
+        } else {
+            segment.scelle = true;
+            segment.horodate = true;
+            segment.indexe = false;
+            segment.dernierHorodatage = Files.getLastModifiedTime(fichier).toMillis();
+            segment.position = segment.positionForcee = segment.tampon.capacity();
+        }
+        return segment;
+    }
+
+    /**
+     * @param fichier Un fichier du répertoire d'un salon
+     * @return true si c'est un segment
+     */
+    static boolean estSegment(Path fichier) {
+        return fichier.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    static String nomFichier(long base) {
+        return String.format("%020d%s", base, EXTENSION);
+    }
+
+    private void relire() {
+        CRC32C crc = new CRC32C();
+        int pos = 0;
+        long n = 0;
+        while (pos + ENTETE <= tampon.capacity()) {
+            int longueur = tampon.getInt(pos);
+            if (longueur <= 0 || longueur > tampon.capacity() - pos - ENTETE) {
+                break;
+            }
+            long horodatage = tampon.getLong(pos + 8);
+            crc.reset();
+            crc.update(tampon.slice(pos + ENTETE, longueur));
+            miseAJour(crc, horodatage);
+            if ((int) crc.getValue() != tampon.getInt(pos + 4)) {
+                break;
+            }
+            indexer(n, pos);
+            dernierHorodatage = horodatage;
+            pos += ENTETE + longueur;
+            n++;
+        }
+        position = pos;
+        nombre = n;
+    }
+
+    /**
+     * Construit l'index d'un segment scellé rouvert au démarrage (une seule fois).
+     * Le segment ne reçoit plus d'ajouts : relire() ne concurrence aucun écrivain.
+     */
+    private synchronized void construireIndex() {
+        if (!indexe) {
+            relire();
+            indexe = true;
+        }
+    }
+
+    /**
+     * Note la position de l'enregistrement n s'il tombe sur une entrée de l'index.
+     */
+    private void indexer(long n, int pos) {
+        if (n % INTERVALLE_INDEX != 0) {
+            return;
+        }
+        int entree = (int) (n / INTERVALLE_INDEX);
+        int[] i = index;
+        if (entree == i.length) {
+            i = Arrays.copyOf(i, i.length * 2);
+        }
+        i[entree] = pos;
+        index = i;
+    }
+
+    /**
+     * Ajoute un enregistrement (verrou du salon tenu). Ne fait aucun appel système :
+     * une simple copie dans les pages projetées.
+     *
+     * @param donnees Les données
+     * @param horodatage Instant de l'ajout (ms)
+     * @param crc CRC32C réutilisé par le salon
+     * @return false si le segment est plein
+     */
+    boolean ajouter(byte[] donnees, long horodatage, CRC32C crc) {
+        int pos = position;
+        if (donnees.length > tampon.capacity() - pos - ENTETE) {
+            return false;
+        }
+        tampon.putLong(pos + 8, horodatage);
+        tampon.put(pos + ENTETE, donnees);
+        crc.reset();
+        crc.update(donnees, 0, donnees.length);
+        miseAJour(crc, horodatage);
+        tampon.putInt(pos + 4, (int) crc.getValue());
+        tampon.putInt(pos, donnees.length);
+        indexer(nombre, pos);
+        dernierHorodatage = horodatage;
+        nombre = nombre + 1;
+        position = pos + ENTETE + donnees.length;
+        return true;
+    }
+
+    /**
+     * Lit des enregistrements consécutifs, directement dans les pages projetées.
+     *
+     * @param premier Rang du premier enregistrement dans le segment
+     * @param nombre Nombre d'enregistrements (tous déjà comptés par getNombre())
+     * @param lecteur Reçoit chaque enregistrement
+     * @throws Exception Si le lecteur échoue
+     */
+    void lire(long premier, long nombre, ArchiveSalons.Lecteur lecteur) throws Exception {
+        int pos = index[(int) (premier / INTERVALLE_INDEX)];
+        for (long n = premier - premier % INTERVALLE_INDEX; n < premier; n++) {
+            pos += ENTETE + tampon.getInt(pos);
+        }
+        for (long n = 0; n < nombre; n++) {
+            int longueur = tampon.getInt(pos);
+            lecteur.lire(base + premier + n, tampon.getLong(pos + 8),
+                    tampon.slice(pos + ENTETE, longueur).asReadOnlyBuffer());
+            pos += ENTETE + longueur;
+        }
+    }
+
+    private static void miseAJour(CRC32C crc, long horodatage) {
+        for (int i = 56; i >= 0; i -= 8) {
+            crc.update((int) (horodatage >>> i));
+        }
+    }
+
+    /**
+     * Écrit sur le disque ce qui a été ajouté depuis le dernier appel (thread
+     * d'archive seulement). Un segment scellé reçoit ensuite comme date de
+     * modification celle de son dernier enregistrement (rétention par âge).
+     *
+     * @return Nombre d'octets écrits sur le disque
+     * @throws IOException Si la mise à jour de la date échoue
+     */
+    int forcer() throws IOException {
+        int p = position;
+        int octets = p - positionForcee;
+        if (octets > 0) {
+            tampon.force(positionForcee, octets);
+            positionForcee = p;
+        }
+        if (scelle && !horodate) {
+            Files.setLastModifiedTime(fichier, FileTime.fromMillis(dernierHorodatage));
+            horodate = true;
+        }
+        return octets;
+    }
+
+    /**
+     * Plus aucun ajout : le salon passe au segment suivant.
+     */
+    void sceller() {
+        scelle = true;
+    }
+
+    /**
+     * Supprime le fichier. La projection reste valide jusqu'à sa libération par le GC.
+     *
+     * @throws IOException Si la suppression échoue
+     */
+    void supprimer() throws IOException {
+        Files.deleteIfExists(fichier);
+    }
+
+    long getBase() {
+        return base;
+    }
+
+    /**
+     * @return Nombre d'enregistrements (l'index d'un segment rouvert est construit au besoin)
+     */
+    long getNombre() {
+        if (!indexe) {
+            construireIndex();
+        }
+        return nombre;
+    }
+
+    /**
+     * @return Octets occupés par les enregistrements
+     */
+    int getPosition() {
+        return position;
+    }
+
+    long getDernierHorodatage() {
+        return dernierHorodatage;
+    }
+}
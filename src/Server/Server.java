@@ -2,6 +2,7 @@ package Server;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Serveur de chat multi-clients en mode console.
@@ -19,19 +20,34 @@ public class Server {
     /**
      * Point d'entree du serveur.
      * Cree une ServerSocket et attend les connexions dans une boucle infinie.
-     * Pour chaque client, un nouveau thread gestionnaireClient est lance.
+     * Pour chaque client, un gestionnaireClient est lance sur son propre thread.
      *
-     * @param args Arguments de la ligne de commande (non utilises)
+     * Options :
+     * --moteur=threads   Un thread plateforme par client (par défaut)
+     * --moteur=virtuels  Un thread virtuel par client (Java 21)
+     * --journal=NIVEAU   debug, info (par défaut), avertissement ou erreur
+     *
+     * @param args Options de démarrage
      */
     public static void main(String[] args) {
-        try (ServerSocket server = new ServerSocket(PORT)) {
-            System.out.println("Serveur en attente de connexions...");
+        boolean virtuels = false;
+        for (String arg : args) {
+            if (arg.equals("--moteur=virtuels")) {
+                virtuels = true;
+            } else if (arg.startsWith("--journal=")) {
+                Journal.setNiveau(Journal.Niveau.depuis(arg.substring(10)));
+            }
+        }
+
+        try (ServerSocket server = new ServerSocket(PORT);
+             ExecutorService executeur = ServerGUI.creerExecuteur(virtuels)) {
+            Journal.info("Serveur en attente de connexions...");
 
             while (true) {
                 Socket client = server.accept();
-                System.out.println("Nouveau client connecté : " + client.getInetAddress());
+                Journal.info("Nouveau client connecté : {}", client.getInetAddress());
 
-                new Thread(new gestionnaireClient(client)).start();
+                executeur.execute(new gestionnaireClient(client));
             }
 
         } catch (IOException e) {
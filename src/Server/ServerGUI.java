@@ -1,20 +1,37 @@
 package Server;
 
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Serveur de chat avec support des salons privés.
  * Version améliorée supportant plusieurs salons avec clés AES independantes.
  * Chaque salon a sa propre clé pour une meilleure sécurité des messages.
  *
+ * Plusieurs serveurs peuvent former un cluster (voir Cluster), par exemple sur
+ * une seule machine :
+ *   java Server.ServerGUI --port=4444 --noeud=a --cluster=5444 --secret=s
+ *   java Server.ServerGUI --port=4445 --noeud=b --cluster=5445 --pairs=localhost:5444 --secret=s
+ *   java Server.ServerGUI --port=4446 --noeud=c --cluster=5446 --pairs=localhost:5444,localhost:5445 --secret=s
+ *
+ * Ou se partager les salons, chacun possédé par un seul serveur (voir AnneauSalons) :
+ *   java Server.ServerGUI --port=4444 --noeud=a --anneau=a=localhost:4444,b=localhost:4445
+ *   java Server.ServerGUI --port=4445 --noeud=b --anneau=a=localhost:4444,b=localhost:4445
+ *
  * @author Chris - Angel
  * @version 2.0
  */
 public class ServerGUI {
     /**
-     * Port d'écoute du serveur (identique à la version console).
+     * Port d'écoute par défaut du serveur (identique à la version console).
      */
     private static final int PORT = 4444;
 
@@ -23,29 +40,304 @@ public class ServerGUI {
      * Affiche une banniere puis accepte les connexions entrantes.
      * Utilise gestionnaireClientGUI pour gérer les salons et messages privés.
      *
-     * @param args Par défaut
+     * Options :
+     * --port=N           Port d'écoute des clients (par défaut : 4444)
+     * --moteur=threads   Un thread par client (par défaut)
+     * --moteur=virtuels  Un thread virtuel par client (Java 21)
+     * --moteur=nio       Moteur NIO avec un nombre fixe de boucles d'événements
+     * --boucles=N        Nombre de boucles du moteur NIO (par défaut : nombre de coeurs)
+     * --file-sortie=N    Trames en attente au plus par client (par défaut : 1024)
+     * --debordement=P    File pleine : ancien (supprime le plus ancien message de salon,
+     *                    par défaut ; jamais une trame de contrôle), deconnecter, ou
+     *                    bloquer (attend au plus --attente ms puis déconnecte)
+     * --attente=MS       Attente maximale de la politique bloquer (par défaut : 500)
+     * --lot-max=N        Trames au plus par écriture réseau groupée (par défaut : 64)
+     * --delai-max=US     Attente maximale d'une rafale avant de pousser, en µs (par défaut : 200)
+     * --partitions=N     Diffusions confiées à N threads, chaque salon à un seul (un par
+     *                    coeur ; par défaut : 0, diffusion par le thread de l'expéditeur)
+     * --presence=MS      Fenêtre de regroupement des arrivées/départs (par défaut : 50)
+     * --stats=S          Affiche l'état des files de sortie toutes les S secondes
+     * --metriques=PORT   Expose les métriques (format Prometheus) sur http://127.0.0.1:PORT/metrics
+     * --archive=REP      Archive les messages de salon (chiffrés) dans ce répertoire ; sans
+     *                    --secret, les clés des salons dérivent d'un secret gardé dans l'archive
+     * --archive-segment=MO         Taille d'un segment d'archive (par défaut : 16)
+     * --archive-retention-mo=MO    Taille maximale de l'archive d'un salon (par défaut : illimitée)
+     * --archive-retention-h=H      Âge maximal d'un message archivé (par défaut : illimité)
+     * --archive-sync=MS            Période des écritures groupées sur le disque (par défaut : 200)
+     * --recents=N        Derniers messages gardés en mémoire par salon (par défaut : 512, 0 : aucun)
+     * --recents-mo=MO    Mémoire totale des derniers messages ; au-delà, les salons les
+     *                    moins récemment utilisés sont libérés (par défaut : 64)
+     * --noeud=NOM        Nom de ce serveur dans le cluster (par défaut : noeud-PORT)
+     * --cluster=PORT     Port des liens entrants des autres nœuds
+     * --pairs=H:P,...    Nœuds à joindre (deux nœuds peuvent se déclarer l'un l'autre)
+     * --secret=TEXTE     Secret du cluster, identique sur tous les nœuds (obligatoire en
+     *                    cluster) : clés des salons et des liens en sont dérivées
+     * --anneau=N=H:P,... Serveurs qui se partagent les salons (même liste sur chacun, avec
+     *                    --noeud) : les clients sont redirigés vers le propriétaire du salon
+     * --journal=NIVEAU   debug, info (par défaut), avertissement ou erreur ;
+     *                    les traces de chaque message ne sont produites qu'en debug
+     *
+     * Une option ou un moteur inconnu arrête le serveur en rappelant les options.
+     *
+     * @param args Options de démarrage
      */
     public static void main(String[] args) {
+        String moteur = "threads";
+        int boucles = Runtime.getRuntime().availableProcessors();
+        int stats = 0;
+        int metriques = 0;
+        String archive = null;
+        int segmentMo = 16;
+        long retentionMo = 0;
+        long retentionH = 0;
+        long syncMs = 200;
+        int capacite = 1024;
+        String debordement = "ancien";
+        long attente = 500;
+        int port = PORT;
+        String noeud = null;
+        int portCluster = 0;
+        List<InetSocketAddress> pairs = new ArrayList<>();
+        String anneau = null;
+        int partitions = 0;
+        boolean secretCluster = false;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring(7));
+            } else if (arg.startsWith("--noeud=")) {
+                noeud = arg.substring(8);
+            } else if (arg.startsWith("--cluster=")) {
+                portCluster = Integer.parseInt(arg.substring(10));
+            } else if (arg.startsWith("--pairs=")) {
+                for (String pair : arg.substring(8).split(",")) {
+                    int deuxPoints = pair.lastIndexOf(':');
+                    pairs.add(new InetSocketAddress(pair.substring(0, deuxPoints),
+                            Integer.parseInt(pair.substring(deuxPoints + 1))));
+                }
+            } else if (arg.startsWith("--anneau=")) {
+                anneau = arg.substring(9);
+            } else if (arg.startsWith("--secret=")) {
+                // Avant toute création de salon : Général a déjà la clé du cluster
+                RegistreSalons.secretCles = arg.substring(9).getBytes(StandardCharsets.UTF_8);
+                secretCluster = true;
+            } else if (arg.startsWith("--moteur=")) {
+                moteur = arg.substring(9);
+            } else if (arg.startsWith("--boucles=")) {
+                boucles = Integer.parseInt(arg.substring(10));
+            } else if (arg.startsWith("--file-sortie=")) {
+                capacite = Integer.parseInt(arg.substring(14));
+            } else if (arg.startsWith("--debordement=")) {
+                debordement = arg.substring(14);
+            } else if (arg.startsWith("--attente=")) {
+                attente = Long.parseLong(arg.substring(10));
+            } else if (arg.startsWith("--lot-max=")) {
+                FileSortie.lotMaxParDefaut = Math.max(1, Integer.parseInt(arg.substring(10)));
+            } else if (arg.startsWith("--delai-max=")) {
+                FileSortie.delaiMaxParDefautUs = Long.parseLong(arg.substring(12));
+            } else if (arg.startsWith("--partitions=")) {
+                partitions = Integer.parseInt(arg.substring(13));
+            } else if (arg.startsWith("--presence=")) {
+                Presence.fenetreParDefautMs = Long.parseLong(arg.substring(11));
+            } else if (arg.startsWith("--stats=")) {
+                stats = Integer.parseInt(arg.substring(8));
+            } else if (arg.startsWith("--metriques=")) {
+                metriques = Integer.parseInt(arg.substring(12));
+            } else if (arg.startsWith("--archive=")) {
+                archive = arg.substring(10);
+            } else if (arg.startsWith("--archive-segment=")) {
+                segmentMo = Integer.parseInt(arg.substring(18));
+            } else if (arg.startsWith("--archive-retention-mo=")) {
+                retentionMo = Long.parseLong(arg.substring(23));
+            } else if (arg.startsWith("--archive-retention-h=")) {
+                retentionH = Long.parseLong(arg.substring(22));
+            } else if (arg.startsWith("--archive-sync=")) {
+                syncMs = Long.parseLong(arg.substring(15));
+            } else if (arg.startsWith("--recents=")) {
+                MessagesRecents.capaciteParDefaut = Integer.parseInt(arg.substring(10));
+            } else if (arg.startsWith("--recents-mo=")) {
+                MessagesRecents.budgetOctets = Long.parseLong(arg.substring(13)) * 1024 * 1024;
+            } else if (arg.startsWith("--journal=")) {
+                Journal.setNiveau(Journal.Niveau.depuis(arg.substring(10)));
+            } else {
+                usage("Option inconnue : " + arg);
+            }
+        }
+        if (!moteur.equals("threads") && !moteur.equals("virtuels") && !moteur.equals("nio")) {
+            usage("Moteur inconnu : " + moteur);
+        }
+
+        if (archive != null && RegistreSalons.secretCles == null) {
+            // Avant toute création de salon : des clés stables d'un démarrage à l'autre,
+            // sans quoi l'archive ne serait plus lisible après un redémarrage
+            try {
+                RegistreSalons.secretCles = ArchiveSalons.secretCles(Path.of(archive));
+            } catch (IOException e) {
+                Journal.erreur("Secret des clés de salon indisponible : {}", e.getMessage());
+                return;
+            }
+        }
+
         System.out.println("╔════════════════════════════════════════╗");
         System.out.println("║   SERVEUR DE CHAT SÉCURISÉ (GUI)       ║");
-        System.out.println("║   Port: " + PORT + "                           ║");
+        System.out.println("║   Port: " + port + "                           ║");
         System.out.println("║   Chiffrement: AES-128                 ║");
         System.out.println("╚════════════════════════════════════════╝");
         System.out.println();
 
-        try (ServerSocket server = new ServerSocket(PORT)) {
-            System.out.println("Serveur en attente de connexions...\n");
-
-            while (true) {
-                Socket client = server.accept();
-                System.out.println("Nouveau client connecté: " + client.getInetAddress());
+        configurerFilesSortie(capacite, debordement, attente);
+        if (stats > 0) {
+            demarrerStatistiques(stats);
+        }
+        if (archive != null) {
+            ArchiveSalons salons = new ArchiveSalons(Path.of(archive), segmentMo * 1024 * 1024,
+                    retentionMo * 1024 * 1024, retentionH * 3_600_000, syncMs);
+            gestionnaireClientGUI.setArchive(salons);
+            Runtime.getRuntime().addShutdownHook(new Thread(salons::close, "archive-arret"));
+            Journal.info("Archive des salons : {}", Path.of(archive).toAbsolutePath());
+        }
+        if (partitions > 0) {
+            gestionnaireClientGUI.setRepartiteur(new RepartiteurSalons(partitions));
+            Journal.info("Diffusions réparties sur {} partition(s)", partitions);
+        }
+        if (anneau != null) {
+            try {
+                gestionnaireClientGUI.setAnneau(AnneauSalons.depuis(anneau, noeud != null ? noeud : "noeud-" + port));
+            } catch (IllegalArgumentException e) {
+                Journal.erreur("Anneau invalide : {}", e.getMessage());
+                return;
+            }
+        }
+        if (portCluster > 0 || !pairs.isEmpty()) {
+            if (!secretCluster) {
+                Journal.erreur("Cluster : l'option --secret est obligatoire");
+                return;
+            }
+            Cluster cluster = new Cluster(noeud != null ? noeud : "noeud-" + port,
+                    RegistreSalons.secretCles, portCluster, pairs);
+            gestionnaireClientGUI.setCluster(cluster);
+            try {
+                cluster.demarrer();
+            } catch (IOException e) {
+                Journal.erreur("Cluster indisponible sur le port {}: {}", portCluster, e.getMessage());
+                return;
+            }
+        }
+        if (metriques > 0) {
+            try {
+                Metriques.demarrer(metriques);
+            } catch (IOException e) {
+                Journal.erreur("Métriques indisponibles sur le port {}: {}", metriques, e.getMessage());
+            }
+        }
 
-                new Thread(new gestionnaireClientGUI(client)).start();
+        if (moteur.equals("nio")) {
+            try {
+                new ServeurNIO(port, boucles).demarrer();
+            } catch (IOException e) {
+                System.err.println("Erreur serveur: " + e.getMessage());
+                e.printStackTrace();
             }
+            return;
+        }
+
+        try (ServerSocket server = new ServerSocket(port);
+             ExecutorService executeur = creerExecuteur(moteur.equals("virtuels"))) {
+            Journal.info("Serveur en attente de connexions ({})...\n", moteur);
+            accepterClients(server, executeur);
 
         } catch (IOException e) {
             System.err.println("Erreur serveur: " + e.getMessage());
             e.printStackTrace();
         }
     }
+
+    /**
+     * Signale une option invalide, rappelle les options reconnues et arrête le serveur.
+     *
+     * @param erreur L'option en cause
+     */
+    private static void usage(String erreur) {
+        System.err.println(erreur);
+        System.err.println("Usage : java Server.ServerGUI [options]");
+        System.err.println("  --port=N  --moteur=threads|virtuels|nio  --boucles=N");
+        System.err.println("  --file-sortie=N  --debordement=ancien|deconnecter|bloquer  --attente=MS");
+        System.err.println("  --lot-max=N  --delai-max=US  --partitions=N  --presence=MS");
+        System.err.println("  --stats=S  --metriques=PORT  --journal=debug|info|avertissement|erreur");
+        System.err.println("  --archive=REP  --archive-segment=MO  --archive-retention-mo=MO");
+        System.err.println("  --archive-retention-h=H  --archive-sync=MS  --recents=N  --recents-mo=MO");
+        System.err.println("  --noeud=NOM  --cluster=PORT  --pairs=H:P,...  --secret=TEXTE  --anneau=N=H:P,...");
+        System.exit(2);
+    }
+
+    /**
+     * Configure les files de sortie des connexions ouvertes ensuite.
+     *
+     * @param capacite Trames en attente au plus par client
+     * @param debordement "ancien", "deconnecter" ou "bloquer"
+     * @param attenteMs Attente maximale de la politique "bloquer"
+     */
+    public static void configurerFilesSortie(int capacite, String debordement, long attenteMs) {
+        if (capacite < 1) {
+            throw new IllegalArgumentException("Capacité invalide : " + capacite);
+        }
+        FileSortie.capaciteParDefaut = capacite;
+        FileSortie.politiqueParDefaut = FileSortie.Debordement.depuis(debordement);
+        FileSortie.attenteParDefautMs = attenteMs;
+    }
+
+    /**
+     * Affiche périodiquement l'état des files de sortie (thread démon).
+     *
+     * @param secondes Période d'affichage
+     */
+    private static void demarrerStatistiques(int secondes) {
+        Thread t = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(secondes * 1000L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Journal.info("[STATS] clients: " + gestionnaireClientGUI.getNombreClients()
+                        + " | trames en attente: " + gestionnaireClientGUI.getProfondeurTotale()
+                        + " | pertes: " + gestionnaireClientGUI.getPertesTotales()
+                        + " | déconnexions (file pleine): " + gestionnaireClientGUI.getDeconnexionsDebordement()
+                        + String.format(" | trames/écriture: %.1f", FileSortie.getTramesParEcriture())
+                        + " | journal perdu: " + Journal.getPertes());
+            }
+        }, "statistiques");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Crée l'exécuteur qui fait tourner les gestionnaires de clients :
+     * un thread par tâche, virtuel ou plateforme.
+     *
+     * @param virtuels true pour des threads virtuels, false pour des threads plateforme
+     * @return L'exécuteur propre à ce serveur
+     */
+    public static ExecutorService creerExecuteur(boolean virtuels) {
+        if (virtuels) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newThreadPerTaskExecutor(Thread.ofPlatform().factory());
+    }
+
+    /**
+     * Boucle d'acceptation : chaque client est confié à un gestionnaireClientGUI
+     * exécuté par l'exécuteur du serveur.
+     *
+     * @param server La socket serveur déjà ouverte
+     * @param executeur L'exécuteur des gestionnaires
+     * @throws IOException Si l'acceptation échoue
+     */
+    public static void accepterClients(ServerSocket server, ExecutorService executeur) throws IOException {
+        while (!server.isClosed()) {
+            Socket client = server.accept();
+            Journal.info("Nouveau client connecté: {}", client.getInetAddress());
+
+            executeur.execute(new gestionnaireClientGUI(client));
+        }
+    }
 }
\ No newline at end of file
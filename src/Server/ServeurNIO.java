@@ -0,0 +1,66 @@
+package Server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Moteur serveur NIO : un petit nombre fixe de boucles d'événements (Selector)
+ * au lieu d'un thread par client.
+ * Un client inactif ne coûte plus qu'un canal et quelques tampons, ce qui permet
+ * de tenir des dizaines de milliers de connexions sur un seul noeud.
+ *
+ * Les salons, messages privés et la distribution des clés sont ceux de
+ * gestionnaireClientGUI : seule la couche réseau change.
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class ServeurNIO {
+
+    private final int port;
+    private final BoucleNIO[] boucles;
+
+    /**
+     * @param port Port d'écoute
+     * @param nbBoucles Nombre de boucles d'événements (threads)
+     * @throws IOException Si un Selector ne peut pas être ouvert
+     */
+    public ServeurNIO(int port, int nbBoucles) throws IOException {
+        this.port = port;
+        this.boucles = new BoucleNIO[nbBoucles];
+        for (int i = 0; i < nbBoucles; i++) {
+            boucles[i] = new BoucleNIO();
+        }
+    }
+
+    /**
+     * Démarre les boucles puis accepte les connexions dans le thread appelant.
+     * Les clients sont répartis à tour de rôle entre les boucles.
+     *
+     * @throws IOException Si le port ne peut pas être ouvert
+     */
+    public void demarrer() throws IOException {
+        for (int i = 0; i < boucles.length; i++) {
+            Thread t = new Thread(boucles[i], "boucle-nio-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        try (ServerSocketChannel serveur = ServerSocketChannel.open()) {
+            serveur.bind(new InetSocketAddress(port), 1024);
+            Journal.info("Serveur NIO en attente de connexions ({} boucles)...\n", boucles.length);
+
+            int suivante = 0;
+            while (true) {
+                SocketChannel client = serveur.accept();
+                client.configureBlocking(false);
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                boucles[suivante].enregistrer(client);
+                suivante = (suivante + 1) % boucles.length;
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package Server;
+
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Sortie d'un client servie par un écrivain dédié (serveurs à thread par client).
+ * envoyer() ne fait qu'ajouter la trame à une FileSortie bornée ; un thread virtuel
+ * propre à la connexion la vide dans le transport. Une écriture bloquée sur un client
+ * lent n'immobilise donc que son propre écrivain.
+ *
+ * Vidage adaptatif : une trame qui arrive sur une connexion inactive part aussitôt
+ * (latence minimale). Pendant une rafale, les trames déjà en file sont écrites dans
+ * le tampon du transport et poussées en une seule fois ; l'écrivain attend au plus
+ * --delai-max µs les retardataires, et pousse au plus tard toutes les --lot-max trames.
+ *
+ * Les écrivains sont des threads virtuels quel que soit le moteur : ils passent
+ * leur vie bloqués sur l'écriture réseau, ce qui ne coûte presque rien en virtuel.
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+class SortieAsynchrone implements SortieClient {
+
+    private final SortieClient transport;
+    private final Socket socket;
+    private final FileSortie<byte[]> file;
+    private final Runnable surErreur;
+    private volatile boolean ferme = false;
+
+    /**
+     * @param transport Transport réel du client
+     * @param socket Socket du client, coupée si la file déborde pendant que l'écrivain est bloqué
+     * @param nom Nom de l'écrivain (pour les traces)
+     * @param surErreur Action lancée par l'écrivain si la file déborde ou si l'écriture échoue
+     */
+    SortieAsynchrone(SortieClient transport, Socket socket, String nom, Runnable surErreur) {
+        this(transport, socket, nom, surErreur, new FileSortie<>());
+    }
+
+    /**
+     * @param transport Transport réel
+     * @param socket Socket de la connexion
+     * @param nom Nom de l'écrivain (pour les traces)
+     * @param surErreur Action lancée par l'écrivain si la file déborde ou si l'écriture échoue
+     * @param file File de sortie (capacité et politique propres à la connexion)
+     */
+    SortieAsynchrone(SortieClient transport, Socket socket, String nom, Runnable surErreur, FileSortie<byte[]> file) {
+        this.file = file;
+        this.transport = transport;
+        this.socket = socket;
+        this.surErreur = surErreur;
+        Thread.ofVirtual().name("ecrivain-" + nom).start(this::ecrire);
+    }
+
+    private void ecrire() {
+        int lotMax = FileSortie.lotMaxParDefaut;
+        long delaiNs = FileSortie.delaiMaxParDefautUs * 1000;
+        try {
+            byte[] trame;
+            while ((trame = file.prendre()) != null) {
+                long limite = System.nanoTime() + delaiNs;
+                int lot = 0;
+                do {
+                    transport.envoyerSansPousser(trame);
+                    lot++;
+                } while (lot < lotMax && ((trame = file.retirer()) != null || (trame = attendreSuite(lot, limite)) != null));
+                transport.pousser();
+                FileSortie.compterEcriture(lot);
+            }
+        } catch (Exception e) {
+            if (!ferme && !file.isDebordee()) {
+                Journal.erreur("Erreur écriture client : {}", e.getMessage());
+            }
+        }
+        if (file.isDebordee()) {
+            Journal.avertissement("File de sortie pleine, client déconnecté");
+        }
+        if (!ferme) {
+            surErreur.run();
+        }
+    }
+
+    /**
+     * En pleine rafale (plus d'une trame déjà prise), attend brièvement la suivante
+     * pour l'ajouter au même lot. Une trame isolée n'attend jamais.
+     *
+     * @param lot Trames déjà prises dans ce lot
+     * @param limite Instant (System.nanoTime) où le lot doit partir
+     * @return La trame suivante, ou null s'il faut pousser maintenant
+     */
+    private byte[] attendreSuite(int lot, long limite) throws InterruptedException {
+        if (lot < 2) {
+            return null;
+        }
+        long restant = limite - System.nanoTime();
+        return restant > 0 ? file.prendre(restant) : null;
+    }
+
+    /**
+     * Envoie la clé directement : c'est la première trame de la session,
+     * avant que quiconque puisse écrire dans la file.
+     */
+    @Override
+    public void envoyerCle(byte[] cle) throws IOException {
+        transport.envoyerCle(cle);
+    }
+
+    @Override
+    public void envoyer(byte[] chiffre) throws IOException {
+        mettreEnFile(chiffre, false);
+    }
+
+    @Override
+    public void envoyerJetable(byte[] chiffre) throws IOException {
+        mettreEnFile(chiffre, true);
+    }
+
+    private void mettreEnFile(byte[] chiffre, boolean jetable) throws IOException {
+        if (!file.ajouter(chiffre, true, jetable)) {
+            // L'écrivain est sans doute bloqué sur l'écriture : couper la socket
+            // (sans prendre les verrous du flux) le débloque, et il déconnecte le client
+            couper();
+            throw new IOException("File de sortie pleine");
+        }
+    }
+
+    @Override
+    public int getCapacites() {
+        return transport.getCapacites();
+    }
+
+    @Override
+    public int getProfondeur() {
+        return file.getProfondeur();
+    }
+
+    @Override
+    public long getPertes() {
+        return file.getPertes();
+    }
+
+    @Override
+    public void fermer() {
+        // Réveille l'écrivain s'il attend une trame ; s'il est bloqué sur le réseau,
+        // la fermeture du transport fait échouer son écriture
+        ferme = true;
+        file.fermer();
+        couper();
+        transport.fermer();
+    }
+
+    private void couper() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            Journal.erreur("Erreur fermeture socket: {}", e.getMessage());
+        }
+    }
+}
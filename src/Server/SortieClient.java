@@ -0,0 +1,90 @@
+package Server;
+
+import java.io.IOException;
+
+/**
+ * Sortie vers un client connecté, indépendante du moteur réseau.
+ * Permet à gestionnaireClientGUI de fonctionner aussi bien avec un thread
+ * dédié par client (ObjectOutputStream) qu'avec le moteur NIO (ServeurNIO).
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+interface SortieClient {
+
+    /**
+     * Envoie la clé AES personnelle du client (première trame de la session).
+     *
+     * @param cle La clé encodée
+     * @throws IOException Si l'envoi échoue
+     */
+    void envoyerCle(byte[] cle) throws IOException;
+
+    /**
+     * Envoie un message déjà chiffré avec la clé personnelle du client.
+     * Le format sur le réseau (binaire ou String Base64) dépend du transport.
+     *
+     * @param chiffre Les octets chiffrés
+     * @throws IOException Si l'envoi échoue
+     */
+    void envoyer(byte[] chiffre) throws IOException;
+
+    /**
+     * Envoie un message de salon déjà chiffré : sur débordement de la file de
+     * sortie (politique SUPPRIMER_ANCIEN), il peut être supprimé pour faire de la
+     * place, contrairement aux trames de contrôle. Par défaut, comme envoyer().
+     *
+     * @param chiffre Les octets chiffrés
+     * @throws IOException Si l'envoi échoue
+     */
+    default void envoyerJetable(byte[] chiffre) throws IOException {
+        envoyer(chiffre);
+    }
+
+    /**
+     * Ajoute un message chiffré au tampon d'envoi sans le pousser sur le réseau :
+     * l'écrivain regroupe ainsi une rafale de trames en une seule écriture.
+     * Par défaut, envoie directement.
+     *
+     * @param chiffre Les octets chiffrés
+     * @throws IOException Si l'écriture échoue
+     */
+    default void envoyerSansPousser(byte[] chiffre) throws IOException {
+        envoyer(chiffre);
+    }
+
+    /**
+     * Pousse sur le réseau les trames ajoutées par envoyerSansPousser().
+     *
+     * @throws IOException Si l'écriture échoue
+     */
+    default void pousser() throws IOException {
+    }
+
+    /**
+     * Capacités négociées avec le client (ProtocoleBinaire.CAPACITE_*).
+     * Toujours 0 pour les anciens clients (flux objet).
+     *
+     * @return Les capacités retenues
+     */
+    int getCapacites();
+
+    /**
+     * @return Nombre de trames en attente d'envoi (0 si la sortie écrit directement)
+     */
+    default int getProfondeur() {
+        return 0;
+    }
+
+    /**
+     * @return Nombre de trames perdues sur débordement de la file de sortie
+     */
+    default long getPertes() {
+        return 0;
+    }
+
+    /**
+     * Ferme la sortie. Ne lève pas d'exception.
+     */
+    void fermer();
+}
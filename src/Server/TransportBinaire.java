@@ -0,0 +1,85 @@
+package Server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+
+import Protocole.FluxBinaire;
+import Protocole.ProtocoleBinaire;
+
+/**
+ * Transport binaire : trames avec longueur et octets chiffrés bruts.
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+class TransportBinaire implements TransportClient {
+
+    private final FluxBinaire flux;
+    private final ReentrantLock verrou = new ReentrantLock();
+
+    /**
+     * @param flux Flux binaire déjà négocié
+     */
+    TransportBinaire(FluxBinaire flux) {
+        this.flux = flux;
+    }
+
+    @Override
+    public ByteBuffer lire() throws IOException {
+        return flux.lireTampon(ProtocoleBinaire.TYPE_MESSAGE);
+    }
+
+    @Override
+    public void envoyerCle(byte[] cle) throws IOException {
+        ecrire(ProtocoleBinaire.TYPE_CLE, cle);
+    }
+
+    @Override
+    public void envoyer(byte[] chiffre) throws IOException {
+        ecrire(ProtocoleBinaire.TYPE_MESSAGE, chiffre);
+    }
+
+    @Override
+    public void envoyerSansPousser(byte[] chiffre) throws IOException {
+        verrou.lock();
+        try {
+            flux.ajouter(ProtocoleBinaire.TYPE_MESSAGE, chiffre);
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    @Override
+    public void pousser() throws IOException {
+        verrou.lock();
+        try {
+            flux.pousser();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    @Override
+    public int getCapacites() {
+        return flux.getCapacites();
+    }
+
+    private void ecrire(byte type, byte[] donnees) throws IOException {
+        verrou.lock();
+        try {
+            flux.ecrire(type, donnees);
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    @Override
+    public void fermer() {
+        try {
+            flux.close();
+        } catch (Exception e) {
+            Journal.erreur("Erreur fermeture flux: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package Server;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import Protocole.FluxBinaire;
+
+/**
+ * Transport bloquant d'un client (serveurs à thread dédié).
+ * Ajoute la lecture à SortieClient et détecte le format parlé par le client.
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+interface TransportClient extends SortieClient {
+
+    /**
+     * Lit le prochain message chiffré du client (bloquant).
+     * Le tampon rendu peut être réutilisé par le transport au prochain appel.
+     *
+     * @return Les octets chiffrés avec la clé personnelle
+     * @throws Exception Si la lecture échoue ou si la connexion est fermée
+     */
+    ByteBuffer lire() throws Exception;
+
+    /**
+     * Détecte le format du client à partir de ses premiers octets :
+     * - AC ED : en-tête ObjectOutputStream d'un ancien client
+     * - MAGIC du protocole binaire sinon
+     *
+     * @param socket Socket du client
+     * @return Le transport adapté au client
+     * @throws IOException Si la négociation échoue
+     */
+    static TransportClient negocier(Socket socket) throws IOException {
+        InputStream entree = new BufferedInputStream(socket.getInputStream());
+        entree.mark(2);
+        int b0 = entree.read();
+        int b1 = entree.read();
+        entree.reset();
+
+        if (b0 == 0xAC && b1 == 0xED) {
+            return new TransportFluxObjet(socket, entree);
+        }
+        return new TransportBinaire(FluxBinaire.accepter(entree, socket.getOutputStream()));
+    }
+}
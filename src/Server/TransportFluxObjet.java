@@ -0,0 +1,126 @@
+package Server;
+
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Transport historique au format ObjectInputStream/ObjectOutputStream.
+ * Format : la clé est un byte[] sérialisé, les messages des String Base64.
+ * Conservé pour les anciens clients.
+ *
+ * Les flux objet du JDK ne sont plus utilisés : leurs tables de poignées
+ * gardaient chaque String de la session en mémoire. CodecFluxObjet produit
+ * et lit le même format avec une mémoire bornée par connexion.
+ *
+ * @author Chris - Angel
+ * @version 1.2
+ */
+class TransportFluxObjet implements TransportClient {
+
+    private static final int TAILLE_LECTURE = 4096;
+
+    private final OutputStream out;
+    private final InputStream in;
+    private final CodecFluxObjet.Encodeur encodeur = new CodecFluxObjet.Encodeur();
+    private final CodecFluxObjet.Decodeur decodeur = new CodecFluxObjet.Decodeur();
+    // Octets reçus pas encore décodés (mode écriture entre deux appels)
+    private ByteBuffer lecture = ByteBuffer.allocate(TAILLE_LECTURE);
+    // Pas de synchronized : l'écriture bloquante épinglerait le thread virtuel
+    private final ReentrantLock verrou = new ReentrantLock();
+
+    /**
+     * @param socket Socket du client
+     * @param entree Flux entrant de la socket (en-tête du client non consommé)
+     * @throws IOException Si le flux sortant ne peut pas être ouvert
+     */
+    TransportFluxObjet(Socket socket, InputStream entree) throws IOException {
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+        this.in = entree;
+    }
+
+    @Override
+    public ByteBuffer lire() throws IOException {
+        while (true) {
+            lecture.flip();
+            String messageChiffre = decodeur.lire(lecture);
+            lecture.compact();
+            if (messageChiffre != null) {
+                return ByteBuffer.wrap(Base64.getDecoder().decode(messageChiffre));
+            }
+
+            if (!lecture.hasRemaining()) {
+                // Trame plus grande que le tampon : on l'agrandit (jusqu'à la taille maximale d'une trame)
+                lecture = CodecFluxObjet.Decodeur.agrandir(lecture);
+            }
+            int n = in.read(lecture.array(), lecture.arrayOffset() + lecture.position(), lecture.remaining());
+            if (n < 0) {
+                throw new EOFException("Connexion fermée par le client");
+            }
+            lecture.position(lecture.position() + n);
+        }
+    }
+
+    @Override
+    public void envoyerCle(byte[] cle) throws IOException {
+        ecrire(CodecFluxObjet.encoderEnteteEtCle(cle), true);
+    }
+
+    @Override
+    public void envoyer(byte[] chiffre) throws IOException {
+        ecrire(encodeur.encoderChaine(Base64.getEncoder().encodeToString(chiffre)), true);
+    }
+
+    @Override
+    public void envoyerSansPousser(byte[] chiffre) throws IOException {
+        ecrire(encodeur.encoderChaine(Base64.getEncoder().encodeToString(chiffre)), false);
+    }
+
+    @Override
+    public void pousser() throws IOException {
+        verrou.lock();
+        try {
+            out.flush();
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    private void ecrire(ByteBuffer trame, boolean pousser) throws IOException {
+        verrou.lock();
+        try {
+            out.write(trame.array(), trame.arrayOffset() + trame.position(), trame.remaining());
+            if (pousser) {
+                out.flush();
+            }
+        } finally {
+            verrou.unlock();
+        }
+    }
+
+    @Override
+    public int getCapacites() {
+        // Format historique : pas de négociation, donc aucune capacité
+        return 0;
+    }
+
+    @Override
+    public void fermer() {
+        try {
+            out.close();
+        } catch (Exception e) {
+            Journal.erreur("Erreur fermeture out: {}", e.getMessage());
+        }
+        try {
+            in.close();
+        } catch (Exception e) {
+            Journal.erreur("Erreur fermeture in: {}", e.getMessage());
+        }
+    }
+}
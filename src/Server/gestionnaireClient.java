@@ -1,14 +1,17 @@
 package Server;
 
 import javax.crypto.SecretKey;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 
 import Cryptage.AES;
+import Cryptage.CanalAES;
+import Protocole.ProtocoleBinaire;
 
 /**
  * Gestionnaire de client pour la version console.
@@ -25,9 +28,12 @@ import Cryptage.AES;
 public class gestionnaireClient implements Runnable {
 
     private final Socket client;
-    private ObjectInputStream in;
-    private ObjectOutputStream out;
+    private volatile TransportClient transport;
     private SecretKey cleAESClient;
+    private volatile CanalAES canal;
+    // Chiffrement et envoi en une seule étape : plusieurs threads diffusent vers ce
+    // client, ses trames doivent partir dans l'ordre des séquences GCM
+    private final ReentrantLock verrouEnvoi = new ReentrantLock();
 
     /**
      * Liste partagée de tous les clients connectés.
@@ -56,27 +62,36 @@ public class gestionnaireClient implements Runnable {
     @Override
     public void run() {
         try {
-            out = new ObjectOutputStream(client.getOutputStream());
-            out.flush();
-            in = new ObjectInputStream(client.getInputStream());
+            // Protocole binaire, ou ObjectStream pour les anciens clients
+            TransportClient t = TransportClient.negocier(client);
 
             // Generation cle AES-128 unique pour ce client
             cleAESClient = AES.genererCle(128);
-            out.writeObject(cleAESClient.getEncoded());
-            out.flush();
-
-            System.out.println("Clé envoyée au client : " + Base64.getEncoder().encodeToString(cleAESClient.getEncoded()));
+            CanalAES c = CanalAES.pour(cleAESClient,
+                    (t.getCapacites() & ProtocoleBinaire.CAPACITE_GCM) != 0, CanalAES.SENS_SERVEUR);
+            t.envoyerCle(cleAESClient.getEncoded());
+            // Publiés après la clé : aucune diffusion ne part avant elle
+            transport = t;
+            canal = c;
+
+            Journal.info("Clé de session envoyée au client {}", client.getInetAddress());
+            if (Journal.debugActif()) {
+                Journal.debug("Clé envoyée au client : {}", Base64.getEncoder().encodeToString(cleAESClient.getEncoded()));
+            }
 
             boolean connexionFerme = false;
 
             while (!connexionFerme) {
 
-                String messageChiffre = (String) in.readObject();
-                String message = AES.decrypteAES(messageChiffre, cleAESClient);
+                ByteBuffer messageChiffre = transport.lire();
+                // Trace de chaque message uniquement en DEBUG : rien n'est construit sinon
+                String chiffreBase64 = Journal.debugActif() ? StandardCharsets.ISO_8859_1.decode(
+                        Base64.getEncoder().encode(messageChiffre.duplicate())).toString() : null;
+                String message = canal.dechiffrer(messageChiffre);
 
-                System.out.println("\n===== MESSAGE DU CLIENT =====");
-                System.out.println("Chiffré   : " + messageChiffre);
-                System.out.println("Déchiffré : " + message);
+                if (chiffreBase64 != null) {
+                    Journal.debug("===== MESSAGE DU CLIENT =====\nChiffré   : {}\nDéchiffré : {}", chiffreBase64, message);
+                }
 
                 broadcast(message,this);
 
@@ -86,7 +101,7 @@ public class gestionnaireClient implements Runnable {
             deconnexion();
 
         } catch (Exception e) {
-            System.out.println("Erreur avec client : " + e.getMessage());
+            Journal.erreur("Erreur avec client : {}", e.getMessage());
         }
     }
 
@@ -102,27 +117,49 @@ public class gestionnaireClient implements Runnable {
         for (gestionnaireClient c : clients) {
             if (c != expediteur) {
                 try {
-                    String msgChiffre = AES.crypteAES(message, c.cleAESClient);
-                    c.out.writeObject(msgChiffre);
-                    c.out.flush();
+                    c.envoyer(message);
                 } catch (Exception e) {
-                    System.out.println("Erreur broadcast : " + e.getMessage());
+                    Journal.erreur("Erreur broadcast : {}", e.getMessage());
                 }
             }
         }
     }
 
+    /**
+     * Chiffre et envoie un message a ce client, sous son verrou d'envoi.
+     * Rien n'est envoye tant que sa session n'est pas ouverte.
+     *
+     * @param message Le message en clair
+     * @throws Exception Si l'envoi echoue
+     */
+    private void envoyer(String message) throws Exception {
+        TransportClient t = transport;
+        CanalAES c = canal;
+        if (t == null || c == null) {
+            return;
+        }
+        verrouEnvoi.lock();
+        try {
+            t.envoyer(c.chiffrer(message));
+        } finally {
+            verrouEnvoi.unlock();
+        }
+    }
+
     /**
      * Deconnecte proprement le client.
      * Retire le client de la liste et ferme la socket.
      */
     private void deconnexion() {
         clients.remove(this);
+        if (transport != null) {
+            transport.fermer();
+        }
         try {
             client.close();
         } catch (Exception e) {
             e.printStackTrace();
         }
-        System.out.println("Client déconnecté : " + client.getInetAddress());
+        Journal.info("Client déconnecté : {}", client.getInetAddress());
     }
 }
\ No newline at end of file
@@ -1,12 +1,15 @@
 package Server;
 
 import javax.crypto.SecretKey;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import Cryptage.AES;
+import Cryptage.CanalAES;
+import Protocole.ProtocoleBinaire;
 
 /**
  * Gestionnaire de client pour la version graphique avec salons privés.
@@ -16,44 +19,120 @@ import Cryptage.AES;
  * - Couche 1 : Clé personnelle client-serveur (cleAESClient)
  *   Permet au serveur de communiquer avec le client de manière sécurisée
  *
- * - Couche 2 : Clé unique par salon (salonKeys)
+ * - Couche 2 : Clé unique par salon (portée par chaque Salon du registre)
  *   Les messages sont chiffrés avec la clé du salon avant d'être envoyés
  *   Même le serveur ne peut pas lire le contenu des messages des salons
  *
  * Securite finale : 2^128 × 2^128 = 2^256 combinaisons possibles
  *
+ * Si le client a négocié la capacité GCM, la couche 1 est authentifiée (AES-GCM,
+ * nonce par message, rejeu refusé) : voir CanalAES.
+ *
+ * Envois : chaque connexion a sa file de sortie bornée (FileSortie), vidée par son
+ * propre écrivain. Un broadcast ne fait qu'ajouter aux files des destinataires ;
+ * un client lent ne retarde plus l'expéditeur ni les autres salons.
+ *
+ * Salons : registre concurrent (RegistreSalons) sans verrou global. Chaque salon
+ * a son propre verrou pour les entrées/sorties et un broadcast parcourt un
+ * instantané des membres sans verrou.
+ *
+ * Pseudos : annuaire concurrent (AnnuaireUtilisateurs) tenu à jour par
+ * SET_USERNAME, l'extraction du pseudo des messages et la déconnexion. Un message
+ * privé trouve son destinataire sans parcourir les clients ; un pseudo déjà pris
+ * est refusé.
+ *
+ * Présence : les arrivées et départs sont regroupés et diffusés par Presence
+ * (liste complète à l'ouverture de session, puis deltas USER_JOINED / USER_LEFT
+ * pour les clients qui les comprennent).
+ *
+ * Catalogue des salons : versionné (CatalogueSalons). Un client qui a négocié
+ * CAPACITE_CATALOGUE demande SYNC_ROOMS avec la révision qu'il connaît et ne
+ * reçoit que la différence ; chaque création lui est annoncée par un ROOM_ADDED.
+ *
+ * Historique : HISTORY:nombre[:avant] renvoie une page du salon courant
+ * (HISTORY_MSG:séquence:horodatage:message, du plus ancien au plus récent), puis
+ * HISTORY_END:avant:salon avec la séquence de la page précédente (-1 au début de
+ * l'historique). Une page récente vient de l'anneau en mémoire du salon
+ * (MessagesRecents), les autres de l'archive si elle est active.
+ *
+ * Abonnements : un client qui a négocié CAPACITE_ABONNEMENTS reste membre des
+ * salons qu'il quitte ; il reçoit leurs messages (encore chiffrés avec la clé du
+ * salon) et les garde pour ses onglets inactifs. Le salon courant ne sert plus
+ * qu'aux commandes sans salon (texte brut, HISTORY).
+ *
+ * Cluster (option --cluster ou --pairs) : les messages diffusés ici sont relayés
+ * une fois par nœud distant qui a des membres dans le salon ; présence, catalogue
+ * et messages privés traversent aussi les liens (voir Cluster).
+ *
+ * Partitions (option --partitions) : les diffusions d'un salon sont confiées au
+ * thread de sa partition (RepartiteurSalons) au lieu d'être faites par le thread
+ * de l'expéditeur ; relais et historique suivent le même chemin, dans l'ordre.
+ *
+ * Anneau (option --anneau) : chaque salon a un seul serveur propriétaire
+ * (AnneauSalons). CHANGE_ROOM et CREATE_ROOM d'un salon possédé ailleurs répondent
+ * "REDIRECT:hote:port:salon" aux clients qui ont négocié CAPACITE_REDIRECTION ;
+ * les autres sont servis ici.
+ *
  * @author Chris - Angel
  * @version 2.0
  */
 public class gestionnaireClientGUI implements Runnable {
 
     private final Socket client;
-    private ObjectInputStream in;
-    private ObjectOutputStream out;
+    private final String adresse;
+    private TransportClient transport;
+    private SortieClient sortie;
     private SecretKey cleAESClient;
-    private String username = "Anonymous";
-    private String currentRoom = "Général";
+    private volatile CanalAES canal;
+    // Chiffrement et dépôt dans la file de sortie en une seule étape : plusieurs threads
+    // diffusent vers ce client, ses trames doivent entrer dans la file dans l'ordre des
+    // séquences GCM (pas de synchronized : le dépôt peut attendre, thread virtuel)
+    private final ReentrantLock verrouEnvoi = new ReentrantLock();
+    private volatile boolean deconnecte = false;
+    private volatile String username = "Anonymous";
+    private volatile String currentRoom = "Général";
+    // Salons dont le client est membre (le courant, plus ceux quittés avec CAPACITE_ABONNEMENTS)
+    private final Set<String> abonnements = ConcurrentHashMap.newKeySet();
+
+    // Clients connectés (entrées et sorties sans recopie de tableau)
+    private static final Set<gestionnaireClientGUI> clients = ConcurrentHashMap.newKeySet();
 
-    // Liste des clients connectés
-    private static final List<gestionnaireClientGUI> clients = new CopyOnWriteArrayList<>();
+    // Annuaire des pseudos : pseudo -> client
+    private static final AnnuaireUtilisateurs<gestionnaireClientGUI> annuaire = new AnnuaireUtilisateurs<>();
 
-    // Map des salons : nom -> ensemble de clients
-    private static final Map<String, Set<gestionnaireClientGUI>> salons =
-            Collections.synchronizedMap(new HashMap<>());
+    // Diffusion regroupée des arrivées et départs
+    private static final Presence presence = new Presence(gestionnaireClientGUI::pseudosPresents);
 
-    // Map des clés AES par salon : nom du salon -> clé AES
-    private static final Map<String, SecretKey> salonKeys =
-            Collections.synchronizedMap(new HashMap<>());
+    // Instances de chaque pseudo présent : au plus une ici, une par autre nœud (voir compterPresence)
+    private static final ConcurrentHashMap<String, Integer> instancesPseudos = new ConcurrentHashMap<>();
+
+    // Commande décodée, réutilisée pour chaque message de ce client
+    private final Commande commande = new Commande();
+
+    // Registre des salons : nom -> salon (clé AES et membres)
+    private static final RegistreSalons<gestionnaireClientGUI> salons =
+            new RegistreSalons<>(gestionnaireClientGUI::annoncerSalon);
+
+    // Archive persistante des messages de salon (option --archive), ou null
+    private static volatile ArchiveSalons archive;
+
+    // Liens avec les autres nœuds du cluster, ou null (serveur seul)
+    private static volatile Cluster cluster;
+
+    // Partitions de diffusion (option --partitions), ou null (thread de l'expéditeur)
+    private static volatile RepartiteurSalons repartiteur;
+
+    // Propriétaires des salons (option --anneau), ou null (tous les salons sont locaux)
+    private static volatile AnneauSalons anneau;
+
+    // Messages par page d'historique : par défaut, et au plus (voir pageHistoriqueMax)
+    private static final int PAGE_HISTORIQUE = 50;
+    private static final int PAGE_HISTORIQUE_MAX = 500;
 
     static {
         // Initialiser le salon général avec sa clé
-        salons.put("Général", Collections.synchronizedSet(new HashSet<>()));
-        try {
-            salonKeys.put("Général", AES.genererCle(128));
-            System.out.println("Clé AES créée pour le salon : Général");
-        } catch (Exception e) {
-            System.err.println("Erreur création clé salon Général : " + e.getMessage());
-        }
+        salons.obtenir("Général");
+        Journal.info("Clé AES créée pour le salon : Général");
     }
 
     /**
@@ -64,6 +143,22 @@ public class gestionnaireClientGUI implements Runnable {
      */
     public gestionnaireClientGUI(Socket socket) {
         this.client = socket;
+        this.adresse = String.valueOf(socket.getInetAddress());
+        clients.add(this);
+    }
+
+    /**
+     * Constructeur utilisé par le moteur NIO (ServeurNIO).
+     * Le client n'a pas de Socket bloquante : les trames passent par la sortie fournie
+     * et les messages reçus sont injectés via traiterMessage().
+     *
+     * @param sortie Sortie vers le client (file d'écriture de la connexion NIO)
+     * @param adresse Adresse distante du client (pour les logs)
+     */
+    gestionnaireClientGUI(SortieClient sortie, String adresse) {
+        this.client = null;
+        this.sortie = sortie;
+        this.adresse = adresse;
         clients.add(this);
     }
 
@@ -80,209 +175,395 @@ public class gestionnaireClientGUI implements Runnable {
     @Override
     public void run() {
         try {
-            // Initialisation du flux
-            out = new ObjectOutputStream(client.getOutputStream());
-            out.flush();
-            in = new ObjectInputStream(client.getInputStream());
-
-            // Génération et envoi clé AES
-            cleAESClient = AES.genererCle(128);
-            out.writeObject(cleAESClient.getEncoded());
-            out.flush();
-
-            System.out.println("Clé envoyée au client : " +
-                    Base64.getEncoder().encodeToString(cleAESClient.getEncoded()));
-
-            // Ajouter au salon général par défaut
-            synchronized (salons) {
-                Set<gestionnaireClientGUI> salonGeneral = salons.get("Général");
-                if (salonGeneral != null) {
-                    salonGeneral.add(this);
-                }
+            // Initialisation du flux (binaire, ou ObjectStream pour les anciens clients)
+            transport = TransportClient.negocier(client);
+            sortie = new SortieAsynchrone(transport, client, adresse, this::deconnexion);
 
-                // Envoyer la clé du salon Général au client
-                SecretKey generalRoomKey = salonKeys.get("Général");
-                if (generalRoomKey != null) {
-                    String keyMessage = "ROOM_KEY:" + Base64.getEncoder().encodeToString(generalRoomKey.getEncoded());
-                    String encryptedKey = AES.crypteAES(keyMessage, cleAESClient);
-                    out.writeObject(encryptedKey);
-                    out.flush();
-                    System.out.println("Clé du salon Général envoyée au nouveau client");
-                }
-            }
+            ouvrirSession();
 
             boolean connexionFermee = false;
 
             while (!connexionFermee) {
-                String messageChiffre = (String) in.readObject();
-                String message = AES.decrypteAES(messageChiffre, cleAESClient);
-
-                System.out.println("\n===== MESSAGE REÇU =====");
-                System.out.println("De      : " + username + " (Salon: " + currentRoom + ")");
-                System.out.println("Chiffré : " + messageChiffre.substring(0, Math.min(50, messageChiffre.length())) + "...");
-                System.out.println("Clair   : " + message);
-
-                // Traiter les commandes spéciales
-                if (handleSpecialCommands(message)) {
-                    continue;
-                }
-
-                // Broadcaster aux autres clients du même salon
-                broadcast(message, this);
-
-                // Vérifier "bye"
-                connexionFermee = message.equalsIgnoreCase("bye");
+                connexionFermee = traiterMessage(transport.lire());
             }
 
             deconnexion();
 
         } catch (Exception e) {
-            System.err.println("Erreur avec client : " + e.getMessage());
+            Journal.erreur("Erreur avec client : {}", e.getMessage());
             deconnexion();
         }
     }
 
     /**
-     * Traite les commandes spéciales (SET_USERNAME, CHANGE_ROOM, CREATE_ROOM, PRIVATE_MSG)
-     * @param message Message à analyser
-     * @return true si c'était une commande spéciale
+     * Ouvre la session du client, quel que soit le moteur (thread dédié ou NIO).
+     * Génère et envoie la clé personnelle, ajoute le client au salon Général
+     * et lui envoie la clé de ce salon.
+     *
+     * @throws Exception Si la génération de clé ou l'envoi échoue
      */
-    private boolean handleSpecialCommands(String message) {
+    void ouvrirSession() throws Exception {
+        // Génération et envoi clé AES
+        cleAESClient = AES.genererCle(128);
+        boolean gcm = (sortie.getCapacites() & ProtocoleBinaire.CAPACITE_GCM) != 0;
+        sortie.envoyerCle(cleAESClient.getEncoded());
+        // Le canal n'existe qu'après l'envoi de la clé : aucun message ne peut la précéder
+        canal = CanalAES.pour(cleAESClient, gcm, CanalAES.SENS_SERVEUR);
+        Metriques.sessionsOuvertes.increment();
+
+        Journal.info("Session ouverte : {} {}", adresse, gcm ? "(AES-GCM)" : "(AES-ECB)");
+        if (Journal.debugActif()) {
+            Journal.debug("Clé envoyée au client : {}", Base64.getEncoder().encodeToString(cleAESClient.getEncoded()));
+        }
+
+        // Envoyer la clé du salon Général au client, puis l'y ajouter :
+        // dans cet ordre, aucun message du salon ne peut arriver avant sa clé
+        Salon<gestionnaireClientGUI> salonGeneral = salons.obtenir("Général");
+        sendToClient(messageCle(salonGeneral));
+        Journal.debug("Clé du salon Général envoyée au nouveau client");
+        rejoindre(salonGeneral);
+
+        // Liste des utilisateurs à la prochaine diffusion de présence, puis deltas
+        presence.inscrire(this);
+    }
+
+    /**
+     * @return "ROOM_KEY:salon:clé" pour un client qui a négocié CAPACITE_CLE_NOMMEE,
+     *         "ROOM_KEY:clé" sinon (clé en Base64)
+     */
+    private String messageCle(Salon<gestionnaireClientGUI> salon) {
+        String cle = Base64.getEncoder().encodeToString(salon.getCle().getEncoded());
+        SortieClient s = sortie;
+        boolean nommee = s != null && (s.getCapacites() & ProtocoleBinaire.CAPACITE_CLE_NOMMEE) != 0;
+        return nommee ? "ROOM_KEY:" + salon.getNom() + ":" + cle : "ROOM_KEY:" + cle;
+    }
+
+    /**
+     * Entre dans un salon et en fait le salon courant. Si une déconnexion a eu lieu
+     * entre-temps, on en ressort aussitôt : deconnexion() parcourt les abonnements
+     * après avoir levé deconnecte (volatile et ensemble concurrent), donc l'un des
+     * deux côtés retire forcément le client.
+     *
+     * @param salon Le salon à rejoindre
+     */
+    private void rejoindre(Salon<gestionnaireClientGUI> salon) {
+        abonnements.add(salon.getNom());
+        salon.ajouter(this);
+        currentRoom = salon.getNom();
+        if (deconnecte) {
+            salon.retirer(this);
+        }
+        membresChanges(salon);
+        formatChange(salon, this);
+    }
+
+    /**
+     * Recalcule le format du contenu d'un salon après une entrée ou une sortie
+     * (voir Salon.recalculerFormat) et l'annonce par "ROOM_MODE:gcm|ecb:salon" aux
+     * clients qui lisent l'AES-GCM. Les autres n'écrivent que le format historique :
+     * ils ne reçoivent rien.
+     *
+     * @param entrant Le client qui vient d'entrer (reçoit le format après la clé), ou null
+     */
+    private static void formatChange(Salon<gestionnaireClientGUI> salon, gestionnaireClientGUI entrant) {
+        boolean change = salon.recalculerFormat(gestionnaireClientGUI::contenuGcm, entrant,
+                (membre, gcm) -> {
+                    try {
+                        membre.sendToClient("ROOM_MODE:" + (gcm ? "gcm" : "ecb") + ":" + salon.getNom());
+                    } catch (Exception e) {
+                        Journal.erreur("Erreur envoi du format à {}: {}", membre.username, e.getMessage());
+                    }
+                });
+        if (change) {
+            Journal.info("Salon {} : contenu en {}", salon.getNom(), salon.isContenuGcm() ? "AES-GCM" : "AES-ECB");
+        }
+    }
+
+    /**
+     * Signale aux autres nœuds un changement des membres d'un salon.
+     */
+    private static void membresChanges(Salon<gestionnaireClientGUI> salon) {
+        Cluster c = cluster;
+        if (c != null) {
+            c.membresChanges(salon.getNom());
+        }
+    }
+
+    /**
+     * Traite une trame chiffrée reçue du client.
+     *
+     * @param messageChiffre La trame chiffrée avec la clé personnelle
+     * @return true si le client a demandé la fin de la connexion ("bye")
+     * @throws Exception Si le déchiffrement échoue
+     */
+    boolean traiterMessage(ByteBuffer messageChiffre) throws Exception {
+        int taille = messageChiffre.remaining();
+        long debut = System.nanoTime();
+        String message = canal.dechiffrer(messageChiffre);
+        Metriques.dechiffrement.enregistrer(System.nanoTime() - debut);
+        Metriques.messagesRecus.increment();
+        Metriques.octetsRecus.add(taille);
+
+        // Trace détaillée en DEBUG seulement : rien n'est construit au niveau INFO
+        if (Journal.debugActif()) {
+            Journal.debug("\n===== MESSAGE REÇU =====\nDe      : {} (Salon: {})\nChiffré : {} octets",
+                    username, currentRoom, taille);
+            Journal.debug("Clair   : {}", message);
+        }
+
+        // Décodage en une passe, puis traitement selon le code de la commande
+        commande.decoder(message);
         try {
-            // SET_USERNAME: Définir le pseudo
-            if (message.startsWith("SET_USERNAME:")) {
-                String newUsername = message.substring(13).trim();
-                if (!newUsername.isEmpty()) {
-                    System.out.println("Nouveau client: " + newUsername);
-                    this.username = newUsername;
+            TRAITEMENTS[commande.getCode()].traiter(this, commande);
+        } catch (Exception e) {
+            Journal.erreur("Erreur commande: {}", e.getMessage());
+        }
 
-                    // Envoyer la liste des salons au nouveau client
-                    sendRoomList();
+        // Vérifier "bye"
+        return commande.getCode() == Commande.TEXTE && message.equalsIgnoreCase("bye");
+    }
 
-                    // Notifier tout le monde de la liste des utilisateurs
-                    broadcastUserList();
+    /**
+     * Traitement d'un code de commande.
+     */
+    private interface Traitement {
+        void traiter(gestionnaireClientGUI client, Commande commande) throws Exception;
+    }
 
-                    // Message de bienvenue
-                    broadcastToAll("[SYSTÈME] " + username + " vient de se connecter");
-                }
-                return true;
-            }
+    // Table de traitement indexée par code de commande
+    private static final Traitement[] TRAITEMENTS = new Traitement[Commande.NOMBRE_CODES];
 
-            // CHANGE_ROOM: Changer de salon
-            if (message.startsWith("CHANGE_ROOM:")) {
-                String newRoom = message.substring(12).trim();
-                if (!newRoom.isEmpty()) {
-                    changeRoom(newRoom);
-                }
-                return true;
+    static {
+        TRAITEMENTS[Commande.TEXTE] = (g, c) -> g.broadcast(c.getMessage(), g.currentRoom, false);
+        TRAITEMENTS[Commande.MESSAGE_SALON] = gestionnaireClientGUI::messageSalon;
+        TRAITEMENTS[Commande.SET_USERNAME] = gestionnaireClientGUI::setUsername;
+        TRAITEMENTS[Commande.SYNC_ROOMS] = (g, c) -> g.synchroniserSalons(
+                c.aArgument(0) ? c.argument(0) : "", c.argumentLong(1, -1));
+        TRAITEMENTS[Commande.CHANGE_ROOM] = (g, c) -> {
+            if (c.aArgument(0)) g.changeRoom(c.argument(0));
+        };
+        TRAITEMENTS[Commande.CREATE_ROOM] = (g, c) -> {
+            if (c.aArgument(0)) g.createRoom(c.argument(0));
+        };
+        TRAITEMENTS[Commande.PRIVATE_MSG] = (g, c) -> {
+            if (c.argument(1) != null) g.sendPrivateMessage(c.argument(0), c.argument(1));
+        };
+        TRAITEMENTS[Commande.HISTORY] = (g, c) -> g.envoyerHistorique(
+                (int) Math.min(c.argumentLong(0, PAGE_HISTORIQUE), pageHistoriqueMax()),
+                c.argumentLong(1, Long.MAX_VALUE));
+    }
+
+    /**
+     * Une page est déposée d'un coup dans la file de sortie du client : elle n'en
+     * occupe au plus que la moitié (--file-sortie), le reste garde la place de
+     * HISTORY_END et des messages des salons. Le client demande la suite par
+     * HISTORY_END, une page plus courte ne lui fait rien perdre.
+     *
+     * @return Messages par page d'historique, au plus
+     */
+    static int pageHistoriqueMax() {
+        return Math.max(1, Math.min(PAGE_HISTORIQUE_MAX, FileSortie.capaciteParDefaut / 2));
+    }
+
+    /**
+     * SET_USERNAME : définit le pseudo.
+     *
+     * @param commande La commande décodée
+     */
+    private void setUsername(Commande commande) {
+        if (!commande.aArgument(0)) {
+            return;
+        }
+        String newUsername = commande.argument(0);
+        if (changerPseudo(newUsername)) {
+            Journal.info("Nouveau client: {}", newUsername);
+
+            // Envoyer la liste des salons au nouveau client, sauf s'il
+            // synchronise son catalogue (SYNC_ROOMS). L'arrivée est annoncée par Presence
+            if (!catalogueIncremental()) {
+                sendRoomList();
             }
+        }
+    }
 
-            // CREATE_ROOM: Créer un nouveau salon
-            if (message.startsWith("CREATE_ROOM:")) {
-                String roomName = message.substring(12).trim();
-                if (!roomName.isEmpty()) {
-                    createRoom(roomName);
-                }
-                return true;
+    /**
+     * "[salon]pseudo: contenu" : met à jour le pseudo et le salon courant annoncés
+     * par le client, puis diffuse le message dans le salon. Le salon et le pseudo
+     * ne sont copiés que s'ils diffèrent des valeurs actuelles.
+     *
+     * Un pseudo réservé par un autre client est refusé avec tout le message : le
+     * contenu est authentifié avec le pseudo de l'en-tête, le diffuser tel quel
+     * ferait parler le client au nom de l'autre.
+     *
+     * @param commande La commande décodée
+     */
+    private void messageSalon(Commande commande) {
+        String salon = commande.argumentOu(0, currentRoom);
+        if (commande.aArgument(1)) {
+            if (!commande.argumentEgal(1, username) && !changerPseudo(commande.argument(1))) {
+                return;
             }
+            this.currentRoom = salon;
+        }
+        broadcast(commande.getMessage(), salon, true);
+    }
 
-            // PRIVATE_MSG: Message privé
-            if (message.startsWith("PRIVATE_MSG:")) {
-                String[] parts = message.substring(12).split(":", 2);
-                if (parts.length == 2) {
-                    sendPrivateMessage(parts[0].trim(), parts[1].trim());
-                }
-                return true;
+    /**
+     * Garde un message de salon (contenu chiffré avec la clé du salon) pour HISTORY.
+     * L'archive ne fait que déposer le message dans la file de son thread, qui le
+     * confie ensuite à l'anneau du salon avec sa séquence.
+     *
+     * @param room Le salon
+     * @param message Le message tel que diffusé
+     */
+    private static void conserver(Salon<gestionnaireClientGUI> room, String message) {
+        ArchiveSalons a = archive;
+        if (a != null) {
+            long debut = System.nanoTime();
+            if (!a.ajouter(room.getNom(), message, room.getRecents())) {
+                Metriques.archivesPerdues.increment();
             }
+            Metriques.archivage.enregistrer(System.nanoTime() - debut);
+        } else {
+            room.getRecents().publier(System.currentTimeMillis(), message.getBytes(StandardCharsets.UTF_8));
+        }
+    }
 
-            // Extraire le username des messages formatés
-            if (message.startsWith("[") && message.contains("]") && message.contains(":")) {
-                int salonEnd = message.indexOf("]");
-                if (salonEnd > 0 && salonEnd < message.length() - 1) {
-                    String salon = message.substring(1, salonEnd);
-                    String rest = message.substring(salonEnd + 1);
-
-                    int usernameEnd = rest.indexOf(":");
-                    if (usernameEnd > 0 && usernameEnd < rest.length() - 1) {
-                        String extractedUsername = rest.substring(0, usernameEnd).trim();
-                        if (!extractedUsername.isEmpty() && !extractedUsername.equals(this.username)) {
-                            this.username = extractedUsername;
-                            broadcastUserList();
-                        }
-                        this.currentRoom = salon;
-                    }
-                }
+    /**
+     * HISTORY : envoie une page de l'historique du salon courant (le seul dont le
+     * client a la clé), puis HISTORY_END. La page vient de l'anneau du salon s'il la
+     * contient en entier (aucune lecture de segment), sinon de l'archive. Sans
+     * archive, l'anneau seul : la page peut être plus courte.
+     *
+     * @param nombre Nombre maximal de messages
+     * @param avant Séquence à partir de laquelle remonter, exclue (Long.MAX_VALUE : les plus récents)
+     */
+    private void envoyerHistorique(int nombre, long avant) {
+        String salon = currentRoom;
+        Salon<gestionnaireClientGUI> room = salons.get(salon);
+        ArchiveSalons a = archive;
+        try {
+            long debut = System.nanoTime();
+            long precedente = room == null ? MessagesRecents.ABSENT
+                    : room.getRecents().lire(avant, nombre, a == null, this::envoyerArchive);
+            if (precedente != MessagesRecents.ABSENT) {
+                Metriques.historiqueMemoire.increment();
+            } else if (a != null) {
+                precedente = a.lire(salon, avant, nombre, this::envoyerArchive);
+                Metriques.historiqueArchive.increment();
+            } else {
+                precedente = -1;
             }
+            Metriques.historique.enregistrer(System.nanoTime() - debut);
+            sendToClient("HISTORY_END:" + precedente + ":" + salon);
+        } catch (Exception e) {
+            Journal.erreur("Erreur historique du salon {}: {}", salon, e.getMessage());
+        }
+    }
 
-            return false;
+    /**
+     * Envoie un message de l'historique : chiffré avec la clé personnelle directement
+     * depuis l'anneau ou les pages projetées, sans String ni tableau intermédiaire.
+     */
+    private void envoyerArchive(long sequence, long horodatage, ByteBuffer message) throws Exception {
+        ByteBuffer entete = ByteBuffer.wrap(("HISTORY_MSG:" + sequence + ":" + horodatage + ":")
+                .getBytes(StandardCharsets.UTF_8));
+        verrouEnvoi.lock();
+        try {
+            long debut = System.nanoTime();
+            byte[] chiffre = canal.chiffrer(entete, message);
+            Metriques.chiffrement.enregistrer(System.nanoTime() - debut);
+            Metriques.octetsEnvoyes.add(chiffre.length);
+            sortie.envoyer(chiffre);
+        } finally {
+            verrouEnvoi.unlock();
+        }
+    }
 
-        } catch (Exception e) {
-            System.err.println("Erreur commande: " + e.getMessage());
+    /**
+     * Attribue un pseudo au client s'il n'est pas déjà pris par un autre.
+     *
+     * Le nouveau pseudo est réservé avant d'être visible dans username : une
+     * déconnexion concurrente libère soit l'ancien (et la vérification finale
+     * libère le nouveau), soit directement le nouveau.
+     *
+     * @param pseudo Le pseudo demandé
+     * @return true si le pseudo est attribué, false s'il est déjà utilisé
+     */
+    private boolean changerPseudo(String pseudo) {
+        if (pseudo.equals("Anonymous") || !annuaire.reserver(pseudo, this)) {
+            Journal.info("Pseudo refusé (déjà utilisé) : {}", pseudo);
+            try {
+                sendToClient("[SYSTÈME] Le pseudo " + pseudo + " est déjà utilisé");
+            } catch (Exception e) {
+                Journal.erreur("Erreur envoi message: {}", e.getMessage());
+            }
             return false;
         }
+        String ancien = username;
+        username = pseudo;
+        if (!ancien.equals(pseudo)) {
+            // Un départ par pseudo libéré, ici ou par la déconnexion : jamais deux
+            if (annuaire.liberer(ancien, this)) {
+                signalerPresence(ancien, false);
+            }
+            signalerPresence(pseudo, true);
+        }
+        if (deconnecte && annuaire.liberer(pseudo, this)) {
+            signalerPresence(pseudo, false);
+        }
+        return true;
     }
 
     /**
      * Change le client de salon.
      *
      * Processus :
-     * 1. Retire le client de son salon actuel
-     * 2. Crée un nouveau salon s'il n'existe pas
-     * 3. Genere une clé AES pour le nouveau salon si necessaire
-     * 4. Ajoute le client au nouveau salon
-     * 5. Envoie la clé du nouveau salon au client
+     * 1. Crée le nouveau salon (et sa clé AES) s'il n'existe pas
+     * 2. Envoie la clé du nouveau salon au client
+     * 3. Ajoute le client au nouveau salon
+     * 4. Retire le client de son ancien salon, sauf s'il garde ses abonnements
+     * Seuls les verrous des deux salons concernés sont pris, brièvement.
      *
      * @param newRoom Le nom du nouveau salon
      */
     private void changeRoom(String newRoom) {
-        synchronized (salons) {
-            try {
-                // Retirer de l'ancien salon
-                Set<gestionnaireClientGUI> oldRoomSet = salons.get(currentRoom);
-                if (oldRoomSet != null) {
-                    oldRoomSet.remove(this);
-                }
-
-                // S'assurer que le salon existe
-                salons.putIfAbsent(newRoom, Collections.synchronizedSet(new HashSet<>()));
+        if (rediriger(newRoom)) {
+            return;
+        }
+        try {
+            Salon<gestionnaireClientGUI> ancien = salons.get(currentRoom);
 
-                // Si le salon n'a pas de clé, en créer une
-                if (!salonKeys.containsKey(newRoom)) {
-                    SecretKey roomKey = AES.genererCle(128);
-                    salonKeys.put(newRoom, roomKey);
-                    System.out.println("Nouvelle clé AES créée pour le salon : " + newRoom);
-                }
+            // S'assurer que le salon existe (avec sa clé AES)
+            Salon<gestionnaireClientGUI> nouveau = salons.obtenir(newRoom);
 
-                // Ajouter au nouveau salon
-                Set<gestionnaireClientGUI> newRoomSet = salons.get(newRoom);
-                if (newRoomSet != null) {
-                    newRoomSet.add(this);
-                }
+            String oldRoom = currentRoom;
 
-                String oldRoom = currentRoom;
-                currentRoom = newRoom;
+            // Envoyer la clé AES du salon au client avant d'y entrer
+            sendToClient(messageCle(nouveau));
+            Journal.debug("Clé du salon {} envoyée à {}", newRoom, username);
 
-                System.out.println(username + " : " + oldRoom + " → " + newRoom);
+            // Ajouter au nouveau salon, puis retirer de l'ancien
+            rejoindre(nouveau);
+            if (ancien != null && ancien != nouveau && !abonnementsMultiples()) {
+                abonnements.remove(ancien.getNom());
+                ancien.retirer(this);
+                membresChanges(ancien);
+                formatChange(ancien, null);
+            }
 
-                // Envoyer la clé AES du salon au client
-                SecretKey roomKey = salonKeys.get(newRoom);
-                if (roomKey != null) {
-                    String keyMessage = "ROOM_KEY:" + Base64.getEncoder().encodeToString(roomKey.getEncoded());
-                    sendToClient(keyMessage);
-                    System.out.println("Clé du salon " + newRoom + " envoyée à " + username);
-                }
+            Journal.info("{} : {} → {}", username, oldRoom, newRoom);
 
-                // Confirmer au client
-                String confirmation = "[SYSTÈME] Vous êtes dans le salon: " + newRoom;
-                sendToClient(confirmation);
+            // Confirmer au client
+            String confirmation = "[SYSTÈME] Vous êtes dans le salon: " + newRoom;
+            sendToClient(confirmation);
 
-            } catch (Exception e) {
-                System.err.println("Erreur lors du changement de salon: " + e.getMessage());
-                try {
-                    sendToClient("[SYSTÈME] Erreur lors du changement de salon");
-                } catch (Exception ex) {
-                    System.err.println("Impossible d'envoyer le message d'erreur: " + ex.getMessage());
-                }
+        } catch (Exception e) {
+            Journal.erreur("Erreur lors du changement de salon: {}", e.getMessage());
+            try {
+                sendToClient("[SYSTÈME] Erreur lors du changement de salon");
+            } catch (Exception ex) {
+                Journal.erreur("Impossible d'envoyer le message d'erreur: {}", ex.getMessage());
             }
         }
     }
@@ -297,34 +578,47 @@ public class gestionnaireClientGUI implements Runnable {
      * @param roomName Le nom du salon à créer
      */
     private void createRoom(String roomName) {
-        synchronized (salons) {
-            if (!salons.containsKey(roomName)) {
-                salons.put(roomName, Collections.synchronizedSet(new HashSet<>()));
-
-                // Créer une clé AES unique pour ce salon
-                try {
-                    SecretKey roomKey = AES.genererCle(128);
-                    salonKeys.put(roomName, roomKey);
-                    System.out.println("Nouveau salon créé: " + roomName + " avec clé AES unique");
-                } catch (Exception e) {
-                    System.err.println("Erreur création clé pour salon " + roomName + ": " + e.getMessage());
-                }
-
-                // Notifier tous les clients du nouveau salon
-                broadcastNewRoom(roomName);
-
-                // Envoyer la liste complète des salons à tous
-                broadcastRoomListToAll();
-            } else {
-                try {
-                    sendToClient("[SYSTÈME] Le salon " + roomName + " existe déjà");
-                } catch (Exception e) {
-                    System.err.println("Erreur envoi message: " + e.getMessage());
-                }
+        if (rediriger(roomName)) {
+            return;
+        }
+        // Création atomique (avec une clé AES unique) : un seul créateur gagne,
+        // et le registre annonce le salon à tous (annoncerSalon)
+        if (salons.creer(roomName) != null) {
+            Journal.info("Nouveau salon créé: {} avec clé AES unique", roomName);
+        } else {
+            try {
+                sendToClient("[SYSTÈME] Le salon " + roomName + " existe déjà");
+            } catch (Exception e) {
+                Journal.erreur("Erreur envoi message: {}", e.getMessage());
             }
         }
     }
 
+    /**
+     * Renvoie le client vers le propriétaire du salon s'il est possédé ailleurs
+     * (et que le client sait suivre une redirection).
+     *
+     * @param salon Nom du salon demandé
+     * @return true si le client a été redirigé
+     */
+    private boolean rediriger(String salon) {
+        AnneauSalons a = anneau;
+        SortieClient s = sortie;
+        if (a == null || a.estLocal(salon) || s == null
+                || (s.getCapacites() & ProtocoleBinaire.CAPACITE_REDIRECTION) == 0) {
+            return false;
+        }
+        AnneauSalons.Noeud proprietaire = a.proprietaire(salon);
+        try {
+            sendToClient("REDIRECT:" + proprietaire.hote + ":" + proprietaire.port + ":" + salon);
+            Metriques.redirections.increment();
+            Journal.debug("{} redirigé vers {} pour le salon {}", username, proprietaire.nom, salon);
+        } catch (Exception e) {
+            Journal.erreur("Erreur envoi redirection: {}", e.getMessage());
+        }
+        return true;
+    }
+
     /**
      * Envoie un message privé à un utilisateur specifique.
      * Le message est chiffré avec la clé personnelle du destinataire.
@@ -333,132 +627,261 @@ public class gestionnaireClientGUI implements Runnable {
      * @param message Le message à envoyer
      */
     private void sendPrivateMessage(String targetUsername, String message) {
-        for (gestionnaireClientGUI c : clients) {
-            if (c.username.equals(targetUsername)) {
-                try {
-                    String privateMsg = "[MP de " + this.username + "] " + message;
-                    c.sendToClient(privateMsg);
-                    System.out.println("MP: " + this.username + " → " + targetUsername);
-                    return;
-                } catch (Exception e) {
-                    System.err.println("Erreur envoi MP: " + e.getMessage());
-                }
+        gestionnaireClientGUI c = annuaire.get(targetUsername);
+        if (c != null) {
+            try {
+                String privateMsg = "[MP de " + this.username + "] " + message;
+                c.sendToClient(privateMsg);
+                Journal.debug("MP: {} → {}", this.username, targetUsername);
+                return;
+            } catch (Exception e) {
+                Journal.erreur("Erreur envoi MP: {}", e.getMessage());
             }
         }
 
+        // Utilisateur d'un autre nœud
+        Cluster cl = cluster;
+        if (c == null && cl != null && cl.envoyerPrive(targetUsername, "[MP de " + this.username + "] " + message)) {
+            return;
+        }
+
         // Utilisateur non trouvé
         try {
             sendToClient("[SYSTÈME] Utilisateur " + targetUsername + " non trouvé");
         } catch (Exception e) {
-            System.err.println("Erreur envoi message: " + e.getMessage());
+            Journal.erreur("Erreur envoi message: {}", e.getMessage());
         }
     }
 
     /**
-     * Diffuse le message uniquement au membre du salon
+     * Diffuse le message uniquement aux membres du salon (sauf l'expéditeur),
+     * le relaie aux nœuds du cluster qui ont des membres dans ce salon, puis le
+     * garde pour l'historique. Avec les partitions, tout cela est fait par le
+     * thread de la partition du salon.
+     *
      * @param message Message à diffuser
-     * @param expediteur Client expéditeur
+     * @param salonMessage Salon de destination (décodé du message, ou salon courant)
+     * @param conserve true pour un message de salon (gardé dans l'historique)
      */
-    private void broadcast(String message, gestionnaireClientGUI expediteur) {
-        // Extraire le salon du message
-        String salonMessage = expediteur.currentRoom;
-
-        if (message.startsWith("[") && message.contains("]")) {
-            try {
-                int salonEnd = message.indexOf("]");
-                if (salonEnd > 0) {
-                    salonMessage = message.substring(1, salonEnd);
-                }
-            } catch (Exception e) {
-                // Si parsing échoue, utiliser le salon actuel
-            }
+    private void broadcast(String message, String salonMessage, boolean conserve) {
+        Salon<gestionnaireClientGUI> room = salons.get(salonMessage);
+        if (room == null) {
+            Journal.avertissement("Salon introuvable: {}", salonMessage);
+            return;
         }
+        RepartiteurSalons r = repartiteur;
+        if (r == null) {
+            publier(room, message, this, conserve);
+        } else {
+            r.soumettre(room.getNom(), () -> publier(room, message, this, conserve));
+        }
+    }
 
-        System.out.println("Broadcast dans le salon: " + salonMessage);
-
-        synchronized (salons) {
-            Set<gestionnaireClientGUI> room = salons.get(salonMessage);
-            if (room == null) {
-                System.err.println("Salon introuvable: " + salonMessage);
-                return;
-            }
+    /**
+     * Diffusion complète d'un message de salon : membres locaux, cluster, historique.
+     *
+     * @param room Le salon
+     * @param message Message à diffuser
+     * @param expediteur Client local qui l'a envoyé (null : message relayé par un
+     *                   autre nœud, qui n'est pas relayé à nouveau)
+     * @param conserve true pour un message de salon (gardé dans l'historique)
+     */
+    private static void publier(Salon<gestionnaireClientGUI> room, String message,
+                                gestionnaireClientGUI expediteur, boolean conserve) {
+        diffuser(room, message, expediteur);
+        Cluster c = cluster;
+        if (expediteur != null && c != null) {
+            c.relayer(room.getNom(), message, conserve);
+        }
+        if (conserve) {
+            conserver(room, message);
+        }
+    }
 
-            int count = 0;
-            for (gestionnaireClientGUI c : room) {
-                if (c != expediteur) {
-                    try {
-                        c.sendToClient(message);
-                        count++;
-                    } catch (Exception e) {
-                        System.err.println("Erreur broadcast à " + c.username + ": " + e.getMessage());
-                    }
+    /**
+     * Diffuse un message aux membres locaux d'un salon.
+     *
+     * @param room Le salon
+     * @param message Message à diffuser
+     * @param expediteur Membre qui ne le reçoit pas (null : tous)
+     */
+    private static void diffuser(Salon<gestionnaireClientGUI> room, String message, gestionnaireClientGUI expediteur) {
+        // Instantané des membres : aucun verrou pendant les envois
+        long debut = System.nanoTime();
+        int count = 0;
+        for (gestionnaireClientGUI c : room.membres()) {
+            if (c != expediteur) {
+                try {
+                    // Seuls les messages des salons peuvent être perdus par un client lent
+                    c.sendToClient(message, true);
+                    count++;
+                } catch (Exception e) {
+                    Journal.erreur("Erreur broadcast à {}: {}", c.username, e.getMessage());
                 }
             }
+        }
+        Metriques.diffusion.enregistrer(System.nanoTime() - debut);
+        room.compterMessage();
 
-            System.out.println("→ Message envoyé à " + count + " client(s) dans " + salonMessage);
+        if (Journal.debugActif()) {
+            Journal.debug("Broadcast dans le salon {} → envoyé à {} client(s)", room.getNom(), count);
         }
     }
 
     /**
-     * Diffuse un message à tous les clients connectés.
-     * Utilise pour les messages systeme (connexions, deconnexions).
+     * Message relayé par un autre nœud : diffusé aux membres locaux du salon, jamais relayé à nouveau.
      *
-     * @param message Le message a diffuser
+     * @param salon Salon du message
+     * @param message Le message tel que diffusé sur le nœud d'origine
+     * @param conserve true pour un message de salon (gardé dans l'historique)
      */
-    private void broadcastToAll(String message) {
-        for (gestionnaireClientGUI c : clients) {
+    static void recevoirRelais(String salon, String message, boolean conserve) {
+        Salon<gestionnaireClientGUI> room = salons.obtenir(salon);
+        RepartiteurSalons r = repartiteur;
+        if (r == null) {
+            publier(room, message, null, conserve);
+        } else {
+            r.soumettre(room.getNom(), () -> publier(room, message, null, conserve));
+        }
+    }
+
+    /**
+     * Message privé relayé par un autre nœud.
+     *
+     * @param pseudo Destinataire (connecté à ce nœud)
+     * @param message Le message à lui remettre
+     */
+    static void recevoirPrive(String pseudo, String message) {
+        gestionnaireClientGUI c = annuaire.get(pseudo);
+        if (c != null) {
             try {
                 c.sendToClient(message);
             } catch (Exception e) {
-                System.err.println("Erreur broadcast global: " + e.getMessage());
+                Journal.erreur("Erreur envoi MP: {}", e.getMessage());
             }
         }
     }
 
     /**
-     * Notifie tous les clients de la création d'un nouveau salon.
+     * Salon créé sur un autre nœud : créé ici aussi (même clé, dérivée du secret du
+     * cluster) et annoncé aux clients locaux.
      *
-     * @param roomName Le nom du nouveau salon
+     * @param salon Nom du salon
      */
-    private void broadcastNewRoom(String roomName) {
-        for (gestionnaireClientGUI c : clients) {
-            try {
-                String encrypted = AES.crypteAES("NEW_ROOM:" + roomName, c.cleAESClient);
-                c.out.writeObject(encrypted);
-                c.out.flush();
-            } catch (Exception e) {
-                System.err.println("Erreur envoi nouveau salon: " + e.getMessage());
+    static void salonDistant(String salon) {
+        salons.obtenir(salon);
+    }
+
+    /**
+     * Arrivée ou départ d'un utilisateur d'un autre nœud.
+     *
+     * @param pseudo Le pseudo
+     * @param present true pour une arrivée, false pour un départ
+     */
+    static void presenceDistante(String pseudo, boolean present) {
+        compterPresence(pseudo, present);
+    }
+
+    /**
+     * Compte une instance d'un pseudo qui arrive ou part. Les pseudos ne sont
+     * uniques que par nœud : le même peut être présent ici et sur plusieurs autres
+     * nœuds. Presence n'est prévenue qu'à l'arrivée de la première instance et au
+     * départ de la dernière.
+     *
+     * Le compte peut passer par -1 : un départ signalé avant l'arrivée qu'il suit
+     * (threads différents) s'annule alors avec elle, sans rien annoncer.
+     */
+    private static void compterPresence(String pseudo, boolean present) {
+        instancesPseudos.compute(pseudo, (p, n) -> {
+            int avant = n == null ? 0 : n;
+            int apres = avant + (present ? 1 : -1);
+            if (present ? avant == 0 && apres == 1 : avant == 1 && apres == 0) {
+                presence.signaler(p, present);
             }
+            return apres == 0 ? null : apres;
+        });
+    }
+
+    /**
+     * Signale l'arrivée ou le départ d'un utilisateur de ce nœud, ici et aux autres nœuds.
+     */
+    private static void signalerPresence(String pseudo, boolean present) {
+        compterPresence(pseudo, present);
+        Cluster c = cluster;
+        if (c != null) {
+            c.signalerPresence(pseudo, present);
         }
     }
 
     /**
-     * Envoyer la liste des salons à tous les clients
+     * @return Utilisateurs de ce nœud
+     */
+    static List<String> pseudosLocaux() {
+        return annuaire.noms();
+    }
+
+    /**
+     * @return Utilisateurs de ce nœud puis ceux des autres nœuds (liste USER_LIST)
      */
-    private void broadcastRoomListToAll() {
-        String roomList = buildRoomList();
+    private static List<String> pseudosPresents() {
+        Cluster c = cluster;
+        if (c == null) {
+            return annuaire.noms();
+        }
+        Set<String> pseudos = new LinkedHashSet<>(annuaire.noms());
+        pseudos.addAll(c.pseudosDistants());
+        return new ArrayList<>(pseudos);
+    }
+
+    /**
+     * Annonce un salon qui vient d'être créé (explicitement ou par CHANGE_ROOM) :
+     * ROOM_ADDED avec sa révision pour les clients qui synchronisent le catalogue,
+     * NEW_ROOM pour les autres. Plus de liste complète renvoyée à chaque création.
+     *
+     * @param salon Le salon créé
+     */
+    private static void annoncerSalon(Salon<gestionnaireClientGUI> salon) {
+        Cluster cl = cluster;
+        if (cl != null) {
+            cl.annoncerSalon(salon.getNom());
+        }
+        String ajout = "ROOM_ADDED:" + salon.getRevision() + ":" + salon.getNom();
+        String ancien = "NEW_ROOM:" + salon.getNom();
         for (gestionnaireClientGUI c : clients) {
             try {
-                String encrypted = AES.crypteAES("ROOM_LIST:" + roomList, c.cleAESClient);
-                c.out.writeObject(encrypted);
-                c.out.flush();
+                c.sendToClient(c.catalogueIncremental() ? ajout : ancien);
             } catch (Exception e) {
-                System.err.println("Erreur envoi liste salons: " + e.getMessage());
+                Journal.erreur("Erreur envoi nouveau salon: {}", e.getMessage());
             }
         }
     }
 
+    /**
+     * Répond à SYNC_ROOMS : les changements depuis la révision du client, ou un
+     * instantané complet s'il est trop en retard ou vient d'un autre démarrage.
+     *
+     * @param epoque Époque connue du client (vide au premier contact)
+     * @param revision Révision connue du client
+     */
+    private void synchroniserSalons(String epoque, long revision) {
+        try {
+            for (String m : salons.getCatalogue().synchroniser(epoque, revision)) {
+                sendToClient(m);
+            }
+        } catch (Exception e) {
+            Journal.erreur("Erreur synchronisation salons: {}", e.getMessage());
+        }
+    }
+
     /**
      * Envoie la liste des salons à ce client
      */
     private void sendRoomList() {
         try {
             String roomList = buildRoomList();
-            String encrypted = AES.crypteAES("ROOM_LIST:" + roomList, cleAESClient);
-            out.writeObject(encrypted);
-            out.flush();
+            sendToClient("ROOM_LIST:" + roomList);
         } catch (Exception e) {
-            System.err.println("Erreur envoi liste salons: " + e.getMessage());
+            Journal.erreur("Erreur envoi liste salons: {}", e.getMessage());
         }
     }
 
@@ -469,10 +892,8 @@ public class gestionnaireClientGUI implements Runnable {
      */
     private String buildRoomList() {
         StringBuilder sb = new StringBuilder();
-        synchronized (salons) {
-            for (String room : salons.keySet()) {
-                sb.append(room).append(",");
-            }
+        for (String room : salons.noms()) {
+            sb.append(room).append(",");
         }
         if (sb.length() > 0) {
             sb.setLength(sb.length() - 1);
@@ -481,76 +902,159 @@ public class gestionnaireClientGUI implements Runnable {
     }
 
     /**
-     * Diffuse la liste des utilisateurs à tous les clients
+     * Envoie un message chiffre à ce client.
+     * Le chiffrement (séquence GCM) et le dépôt dans la file de sortie se font sous
+     * le même verrou : les trames partent dans l'ordre de leurs séquences, quel que
+     * soit le nombre de threads qui diffusent vers ce client.
+     *
+     * @param message Le message en clair a envoyer
+     * @throws Exception Si l'envoi echoue
      */
-    private void broadcastUserList() {
-        StringBuilder userListBuilder = new StringBuilder();
-        for (gestionnaireClientGUI c : clients) {
-            if (!c.username.equals("Anonymous")) {
-                userListBuilder.append(c.username).append(",");
+    void sendToClient(String message) throws Exception {
+        sendToClient(message, false);
+    }
+
+    /**
+     * Envoie un message au client (voir sendToClient(String)).
+     *
+     * @param message Le message en clair a envoyer
+     * @param jetable true pour un message de salon, que la file de sortie peut
+     *                supprimer au débordement ; false pour une trame de contrôle
+     * @throws Exception Si l'envoi echoue
+     */
+    void sendToClient(String message, boolean jetable) throws Exception {
+        CanalAES c = canal;
+        if (c == null) {
+            // Session pas encore ouverte (clé personnelle non envoyée)
+            return;
+        }
+        verrouEnvoi.lock();
+        try {
+            long debut = System.nanoTime();
+            byte[] chiffre = c.chiffrer(message);
+            Metriques.chiffrement.enregistrer(System.nanoTime() - debut);
+            Metriques.octetsEnvoyes.add(chiffre.length);
+            if (jetable) {
+                sortie.envoyerJetable(chiffre);
+            } else {
+                sortie.envoyer(chiffre);
             }
+        } finally {
+            verrouEnvoi.unlock();
         }
+    }
 
-        String userList = userListBuilder.toString();
-        if (userList.endsWith(",")) {
-            userList = userList.substring(0, userList.length() - 1);
-        }
+    /**
+     * @return true si le client lit le contenu des salons en AES-GCM (CAPACITE_GCM)
+     */
+    boolean contenuGcm() {
+        SortieClient s = sortie;
+        return s != null && (s.getCapacites() & ProtocoleBinaire.CAPACITE_GCM) != 0;
+    }
+
+    /**
+     * @return true si le client a négocié les deltas de présence (USER_JOINED / USER_LEFT)
+     */
+    boolean presenceIncrementale() {
+        SortieClient s = sortie;
+        return s != null && (s.getCapacites() & ProtocoleBinaire.CAPACITE_PRESENCE) != 0;
+    }
+
+    /**
+     * @return true si le client synchronise le catalogue des salons (SYNC_ROOMS, ROOM_ADDED)
+     */
+    boolean catalogueIncremental() {
+        SortieClient s = sortie;
+        return s != null && (s.getCapacites() & ProtocoleBinaire.CAPACITE_CATALOGUE) != 0;
+    }
+
+    /**
+     * @return true si le client reste membre des salons qu'il quitte (CAPACITE_ABONNEMENTS)
+     */
+    boolean abonnementsMultiples() {
+        SortieClient s = sortie;
+        return s != null && (s.getCapacites() & ProtocoleBinaire.CAPACITE_ABONNEMENTS) != 0;
+    }
+
+    /**
+     * @return true si le client est déconnecté
+     */
+    boolean isDeconnecte() {
+        return deconnecte;
+    }
+
+    /**
+     * @return Nombre de trames en attente dans la file de sortie de ce client
+     */
+    public int getProfondeurFile() {
+        SortieClient s = sortie;
+        return s == null ? 0 : s.getProfondeur();
+    }
 
-        // Envoyer à tous les clients
+    /**
+     * @return Nombre de trames perdues par la file de sortie de ce client
+     */
+    long getPertesFile() {
+        SortieClient s = sortie;
+        return s == null ? 0 : s.getPertes();
+    }
+
+    /**
+     * @return Nombre de trames en attente, tous clients confondus
+     */
+    public static int getProfondeurTotale() {
+        int total = 0;
         for (gestionnaireClientGUI c : clients) {
-            try {
-                String encrypted = AES.crypteAES("USER_LIST:" + userList, c.cleAESClient);
-                c.out.writeObject(encrypted);
-                c.out.flush();
-            } catch (Exception e) {
-                System.err.println("Erreur envoi liste utilisateurs: " + e.getMessage());
-            }
+            total += c.getProfondeurFile();
         }
+        return total;
     }
 
     /**
-     * Envoie un message chiffre à ce client.
-     *
-     * @param message Le message en clair a envoyer
-     * @throws Exception Si l'envoi echoue
+     * @return Nombre de messages de salon supprimés par la politique SUPPRIMER_ANCIEN, depuis le démarrage
+     */
+    public static long getPertesTotales() {
+        return FileSortie.getPertesTotales();
+    }
+
+    /**
+     * @return Nombre de clients déconnectés pour débordement de leur file, depuis le démarrage
      */
-    private void sendToClient(String message) throws Exception {
-        String msgChiffre = AES.crypteAES(message, cleAESClient);
-        out.writeObject(msgChiffre);
-        out.flush();
+    public static long getDeconnexionsDebordement() {
+        return FileSortie.getDeconnexionsTotales();
     }
 
     /**
      * Déconnecte proprement le client.
      *
      * Processus :
-     * 1. Retire le client de la liste globale
-     * 2. Retire le client de son salon actuel
-     * 3. Ferme les flux ObjectInputStream et ObjectOutputStream
+     * 1. Retire le client de la liste globale et libère son pseudo
+     * 2. Retire le client de tous ses salons
+     * 3. Ferme le transport (flux binaire, ObjectStream ou connexion NIO)
      * 4. Ferme la socket
-     * 5. Notifie les autres clients
-     * 6. Met à jour la liste des utilisateurs
+     * 5. Signale le départ à Presence (liste des utilisateurs et annonces)
      */
-    private void deconnexion() {
+    void deconnexion() {
+        synchronized (this) {
+            if (deconnecte) return;
+            deconnecte = true;
+        }
         clients.remove(this);
+        presence.desinscrire(this);
+        String pseudo = username;
+        boolean libere = annuaire.liberer(pseudo, this);
 
-        synchronized (salons) {
-            Set<gestionnaireClientGUI> room = salons.get(currentRoom);
+        for (String nom : abonnements) {
+            Salon<gestionnaireClientGUI> room = salons.get(nom);
             if (room != null) {
-                room.remove(this);
+                room.retirer(this);
+                membresChanges(room);
+                formatChange(room, null);
             }
         }
 
-        try {
-            if (out != null) out.close();
-        } catch (Exception e) {
-            System.err.println("Erreur fermeture out: " + e.getMessage());
-        }
-
-        try {
-            if (in != null) in.close();
-        } catch (Exception e) {
-            System.err.println("Erreur fermeture in: " + e.getMessage());
+        if (sortie != null) {
+            sortie.fermer();
         }
 
         try {
@@ -558,21 +1062,94 @@ public class gestionnaireClientGUI implements Runnable {
                 client.close();
             }
         } catch (Exception e) {
-            System.err.println("Erreur fermeture socket: " + e.getMessage());
+            Journal.erreur("Erreur fermeture socket: {}", e.getMessage());
         }
 
-        System.out.println("Client déconnecté: " + client.getInetAddress() + " (" + username + ")");
+        Journal.info("Client déconnecté: {} ({})", adresse, pseudo);
 
-        // Notifier les autres
-        if (!username.equals("Anonymous")) {
-            broadcastToAll("[SYSTÈME] " + username + " s'est déconnecté");
+        // Notifier les autres (regroupé par Presence), si changerPseudo ne l'a pas déjà fait
+        if (libere) {
+            signalerPresence(pseudo, false);
         }
-
-        // Mettre à jour la liste des utilisateurs
-        broadcastUserList();
     }
 
     // Getters
+    /**
+     * Retourne le nombre de clients actuellement connectés.
+     *
+     * @return Le nombre de clients connectés
+     */
+    public static int getNombreClients() {
+        return clients.size();
+    }
+
+    /**
+     * Active l'archive des messages de salon.
+     *
+     * @param nouvelle L'archive (null pour la désactiver)
+     */
+    static void setArchive(ArchiveSalons nouvelle) {
+        archive = nouvelle;
+    }
+
+    /**
+     * Relie ce serveur aux autres nœuds du cluster.
+     *
+     * @param nouveau Le cluster (null : serveur seul)
+     */
+    static void setCluster(Cluster nouveau) {
+        cluster = nouveau;
+    }
+
+    /**
+     * Confie les diffusions aux partitions (un thread par partition).
+     *
+     * @param nouveau Les partitions (null : diffusion par le thread de l'expéditeur)
+     */
+    static void setRepartiteur(RepartiteurSalons nouveau) {
+        repartiteur = nouveau;
+    }
+
+    /**
+     * @return Les partitions de diffusion, ou null (métriques)
+     */
+    static RepartiteurSalons getRepartiteur() {
+        return repartiteur;
+    }
+
+    /**
+     * Répartit les salons entre les serveurs de l'anneau.
+     *
+     * @param nouvel L'anneau (null : tous les salons sont locaux)
+     */
+    static void setAnneau(AnneauSalons nouvel) {
+        anneau = nouvel;
+    }
+
+    /**
+     * @return Le cluster, ou null (métriques)
+     */
+    static Cluster getCluster() {
+        return cluster;
+    }
+
+    /**
+     * @return Le registre des salons (métriques, cluster)
+     */
+    static RegistreSalons<gestionnaireClientGUI> getSalons() {
+        return salons;
+    }
+
+    /**
+     * Recherche un client connecté par son pseudo.
+     *
+     * @param pseudo Le pseudo recherché
+     * @return Le client, ou null si personne ne porte ce pseudo
+     */
+    public static gestionnaireClientGUI trouver(String pseudo) {
+        return annuaire.get(pseudo);
+    }
+
     /**
      * Retourne le nom d'utilisateur.
      *
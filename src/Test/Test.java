@@ -1,7 +1,13 @@
 package Test;
 
 import Cryptage.AES;
+import Cryptage.CanalAES;
+import Protocole.ProtocoleBinaire;
 import javax.crypto.SecretKey;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Base64;
 
 /**
@@ -35,6 +41,11 @@ public class Test {
         testClesDifferentes();
         testMauvaiseCle();
         testMessageVide();
+        testTamponsDirects();
+
+        // Tests protocole
+        testTrameBinaire();
+        testGcmAuthentifie();
 
         // Résultats
         afficherResultats();
@@ -303,6 +314,184 @@ public class Test {
         System.out.println();
     }
 
+    /**
+     * Test 10 : API ByteBuffer (tampons directs) et réutilisation du contexte après erreur
+     */
+    private static void testTamponsDirects() {
+        testsTotal++;
+        System.out.println("Test 10 : Tampons directs");
+
+        try {
+            String message = "Message via ByteBuffer direct";
+            byte[] octets = message.getBytes("UTF-8");
+            SecretKey cle = AES.genererCle(128);
+            SecretKey autreCle = AES.genererCle(128);
+
+            ByteBuffer clair = ByteBuffer.allocateDirect(octets.length);
+            clair.put(octets).flip();
+            ByteBuffer chiffre = ByteBuffer.allocateDirect(AES.tailleChiffre(octets.length));
+            int n = AES.crypte(clair, chiffre, cle);
+            chiffre.flip();
+
+            // Compatible avec l'API String historique
+            byte[] copie = new byte[n];
+            chiffre.duplicate().get(copie);
+            boolean compatible = message.equals(AES.decrypteAES(Base64.getEncoder().encodeToString(copie), cle));
+
+            // Une erreur ne doit pas laisser le contexte du thread dans un état invalide
+            boolean erreur = false;
+            try {
+                AES.decrypteAES(chiffre.duplicate(), autreCle);
+            } catch (Exception e) {
+                erreur = true;
+            }
+
+            ByteBuffer dechiffre = ByteBuffer.allocateDirect(n);
+            AES.decrypte(chiffre, dechiffre, cle);
+            dechiffre.flip();
+            byte[] resultat = new byte[dechiffre.remaining()];
+            dechiffre.get(resultat);
+
+            if (n == AES.tailleChiffre(octets.length) && compatible && erreur
+                    && message.equals(new String(resultat, "UTF-8"))) {
+                System.out.println("✓ Chiffrement/Déchiffrement ByteBuffer direct OK (" + n + " octets)");
+                testsReussis++;
+            } else {
+                System.out.println("✗ ÉCHEC : API ByteBuffer incohérente");
+            }
+        } catch (Exception e) {
+            System.out.println("✗ ÉCHEC : " + e.getMessage());
+        }
+        System.out.println();
+    }
+
+    /**
+     * Test 11 : Trame binaire (encodage, trame incomplète, taille par rapport à Base64)
+     */
+    private static void testTrameBinaire() {
+        testsTotal++;
+        System.out.println("Test 11 : Trame binaire");
+
+        try {
+            String message = "[Général]Alice: Bonjour tout le monde";
+            SecretKey cle = AES.genererCle(128);
+            byte[] chiffre = AES.crypteAESOctets(message, cle);
+
+            ByteBuffer trame = ProtocoleBinaire.encoderTrame(ProtocoleBinaire.TYPE_MESSAGE, chiffre);
+            int tailleBinaire = trame.remaining();
+
+            // Trame tronquée : rien ne doit être consommé
+            ByteBuffer partielle = trame.duplicate();
+            partielle.limit(partielle.limit() - 1);
+            boolean incompleteOk = ProtocoleBinaire.decoderTrame(partielle, ProtocoleBinaire.TYPE_MESSAGE) == null
+                    && partielle.position() == 0;
+
+            byte[] recu = ProtocoleBinaire.decoderTrame(trame, ProtocoleBinaire.TYPE_MESSAGE);
+            String dechiffre = AES.decrypteAES(recu, cle);
+
+            // Taille de la même trame au format historique (String Base64 sérialisée)
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            oos.flush();
+            int entete = baos.size();
+            oos.writeObject(AES.crypteAES(message, cle));
+            oos.flush();
+            int tailleHistorique = baos.size() - entete;
+
+            if (incompleteOk && message.equals(dechiffre) && tailleBinaire < tailleHistorique) {
+                System.out.println("✓ Trame binaire : " + tailleBinaire + " octets (format historique : "
+                        + tailleHistorique + " octets)");
+                testsReussis++;
+            } else {
+                System.out.println("✗ ÉCHEC : Trame binaire invalide");
+            }
+        } catch (Exception e) {
+            System.out.println("✗ ÉCHEC : " + e.getMessage());
+        }
+        System.out.println();
+    }
+
+    /**
+     * Test 12 : AES-GCM (aller-retour, altération, rejeu, données associées du salon)
+     */
+    private static void testGcmAuthentifie() {
+        testsTotal++;
+        System.out.println("Test 12 : AES-GCM authentifié");
+
+        try {
+            SecretKey cle = AES.genererCle(128);
+            CanalAES client = CanalAES.gcm(cle, CanalAES.SENS_CLIENT);
+            CanalAES serveur = CanalAES.gcm(cle, CanalAES.SENS_SERVEUR);
+
+            byte[] chiffre = client.chiffrer("Bonjour éàü");
+            boolean allerRetour = "Bonjour éàü".equals(serveur.dechiffrer(ByteBuffer.wrap(chiffre)));
+
+            // Même message rejoué : refusé
+            boolean rejeuRefuse = false;
+            try {
+                serveur.dechiffrer(ByteBuffer.wrap(chiffre));
+            } catch (Exception e) {
+                rejeuRefuse = true;
+            }
+
+            // Un bit modifié : refusé
+            byte[] altere = client.chiffrer("virement de 10 euros");
+            altere[AES.TAILLE_NONCE] ^= 1;
+            boolean alterationRefusee = false;
+            try {
+                serveur.dechiffrer(ByteBuffer.wrap(altere));
+            } catch (Exception e) {
+                alterationRefusee = true;
+            }
+
+            // Message renvoyé au client qui l'a émis (mauvais sens) : refusé
+            boolean sensRefuse = false;
+            try {
+                client.dechiffrer(ByteBuffer.wrap(client.chiffrer("écho")));
+            } catch (Exception e) {
+                sensRefuse = true;
+            }
+
+            // Couche salon : le contenu est lié au salon et à l'expéditeur
+            SecretKey cleSalon = AES.genererCle(128);
+            String contenu = CanalAES.chiffrerSalon("secret", "Général", "Alice", cleSalon, true);
+            boolean salonOk = "secret".equals(CanalAES.dechiffrerSalon(contenu, "Général", "Alice", cleSalon));
+            boolean usurpationRefusee = false;
+            try {
+                CanalAES.dechiffrerSalon(contenu, "Général", "Bob", cleSalon);
+            } catch (Exception e) {
+                usurpationRefusee = true;
+            }
+
+            // Flux par morceaux : même résultat qu'en une fois
+            byte[] nonce = new byte[AES.TAILLE_NONCE];
+            byte[] gros = new byte[100_000];
+            for (int i = 0; i < gros.length; i++) gros[i] = (byte) i;
+            AES.FluxGCM flux = AES.chiffrementGCM(cleSalon, nonce, null);
+            ByteArrayOutputStream morceaux = new ByteArrayOutputStream();
+            for (int i = 0; i < gros.length; i += 8192) {
+                morceaux.write(flux.update(gros, i, Math.min(8192, gros.length - i)));
+            }
+            morceaux.write(flux.doFinal());
+            ByteBuffer enUneFois = ByteBuffer.allocate(gros.length + AES.TAILLE_TAG);
+            AES.crypteGCM(ByteBuffer.wrap(gros), enUneFois, nonce, new byte[0], cleSalon);
+            boolean fluxOk = Arrays.equals(morceaux.toByteArray(), enUneFois.array());
+
+            if (allerRetour && rejeuRefuse && alterationRefusee && sensRefuse && salonOk && usurpationRefusee
+                    && fluxOk) {
+                System.out.println("✓ GCM : altération, rejeu et usurpation détectés, flux par morceaux identique");
+                testsReussis++;
+            } else {
+                System.out.println("✗ ÉCHEC : allerRetour=" + allerRetour + " rejeu=" + rejeuRefuse
+                        + " alteration=" + alterationRefusee + " sens=" + sensRefuse + " salon=" + salonOk
+                        + " usurpation=" + usurpationRefusee + " flux=" + fluxOk);
+            }
+        } catch (Exception e) {
+            System.out.println("✗ ÉCHEC : " + e.getMessage());
+        }
+        System.out.println();
+    }
+
     /**
      * Affiche les resultats finaux
      */
@@ -0,0 +1,236 @@
+package Test;
+
+import Cryptage.AES;
+import Server.ServerGUI;
+import Server.ServeurNIO;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Test d'endurance mémoire du transport historique (ObjectStream).
+ *
+ * Un ancien client envoie des millions de messages dans le salon Général,
+ * un autre ancien client (vrai ObjectInputStream) les reçoit. Le tas est
+ * mesuré après GC tous les 10% : il doit rester plat. Avant la correction,
+ * chaque String restait dans les tables de poignées des flux objet.
+ *
+ * L'expéditeur garde au plus FENETRE messages d'avance sur le destinataire :
+ * le serveur ne met plus l'expéditeur en attente d'un destinataire lent (files
+ * de sortie bornées) et perdrait sinon des trames, que ce test compte une à une.
+ *
+ * Avant l'endurance, un ancien client malveillant annonce une String de 2 Go
+ * (TC_LONGSTRING) : le serveur doit le déconnecter sans allouer le tampon.
+ *
+ * Usage : java Test.TestEndurance [messages] [--moteur=nio]
+ *
+ * @author Chris - Angel
+ * @version 1.0
+ */
+public class TestEndurance {
+
+    /**
+     * Croissance maximale tolérée du tas entre le début et la fin du test.
+     */
+    private static final long CROISSANCE_MAX = 4L * 1024 * 1024;
+
+    /**
+     * Messages envoyés et pas encore reçus, au plus (reste sous la file de sortie du serveur).
+     */
+    private static final long FENETRE = 512;
+
+    public static void main(String[] args) throws Exception {
+        long messages = 2_000_000;
+        boolean nio = false;
+        for (String arg : args) {
+            if (arg.equals("--moteur=nio")) {
+                nio = true;
+            } else {
+                messages = Long.parseLong(arg);
+            }
+        }
+
+        PrintStream console = System.out;
+        // Les logs du serveur ne nous intéressent pas ici
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+
+        console.println("Test d'endurance : " + messages + " messages (" + (nio ? "nio" : "threads") + ")");
+        int port = demarrerServeur(nio);
+
+        if (!trameGeanteRefusee(port)) {
+            console.println("✗ ÉCHEC : trame de 2 Go acceptée ou connexion gardée");
+            System.exit(1);
+        }
+        console.println("✓ Trame de 2 Go refusée, client déconnecté");
+
+        // Le destinataire : un vrai ObjectInputStream, comme un ancien ChatClientGUI
+        Socket recepteur = new Socket(InetAddress.getLoopbackAddress(), port);
+        ObjectInputStream inRecepteur = ouvrirAncienClient(recepteur);
+        SecretKey cleRecepteur = new SecretKeySpec((byte[]) inRecepteur.readObject(), "AES");
+        inRecepteur.readObject(); // ROOM_KEY du salon Général
+
+        // L'expéditeur : écrit les String à la main pour ne pas mesurer sa propre table
+        Socket expediteur = new Socket(InetAddress.getLoopbackAddress(), port);
+        ObjectInputStream inExpediteur = ouvrirAncienClient(expediteur);
+        SecretKey cleExpediteur = new SecretKeySpec((byte[]) inExpediteur.readObject(), "AES");
+        inExpediteur.readObject();
+        DataOutputStream outExpediteur = new DataOutputStream(new BufferedOutputStream(expediteur.getOutputStream()));
+
+        long total = messages;
+        AtomicLong recus = new AtomicLong();
+        Thread envoi = new Thread(() -> {
+            try {
+                for (long i = 0; i < total; i++) {
+                    if (i - recus.get() >= FENETRE) {
+                        outExpediteur.flush();
+                        while (i - recus.get() >= FENETRE) {
+                            LockSupport.parkNanos(50_000);
+                        }
+                    }
+                    String chiffre = AES.crypteAES("[Général]soak: message " + i, cleExpediteur);
+                    outExpediteur.writeByte(0x74); // TC_STRING
+                    outExpediteur.writeUTF(chiffre);
+                    if (i % 64 == 0) outExpediteur.flush();
+                }
+                outExpediteur.flush();
+            } catch (Exception e) {
+                console.println("Erreur envoi : " + e);
+            }
+        });
+        envoi.start();
+
+        long[] tas = new long[11];
+        long debut = System.nanoTime();
+        for (long i = 1; i <= messages; i++) {
+            String message = AES.decrypteAES((String) inRecepteur.readObject(), cleRecepteur);
+            if (!message.startsWith("[Général]")) {
+                // Trames système (USER_LIST...) : ne comptent pas
+                i--;
+                continue;
+            }
+            recus.set(i);
+            if (i == messages && !message.endsWith("message " + (messages - 1))) {
+                console.println("✗ ÉCHEC : dernier message inattendu : " + message);
+                System.exit(1);
+            }
+            if (i % (messages / 10) == 0) {
+                int palier = (int) (i / (messages / 10));
+                tas[palier] = tasApresGC();
+                console.printf("  %3d%%  %,12d messages  tas=%.1f Mo%n", palier * 10, i, tas[palier] / 1048576.0);
+            }
+        }
+        double secondes = (System.nanoTime() - debut) / 1e9;
+        // Garde les sockets atteignables jusqu'au bout : un GC fermerait sinon celle
+        // de l'expéditeur (devenue inutile côté test) et le serveur perdrait ses dernières trames
+        expediteur.close();
+        recepteur.close();
+
+        // Le trafic continue pendant les mesures : on compare les minimums du début
+        // et de la fin, une fuite les fait monter tous les deux
+        long minDebut = Math.min(tas[1], Math.min(tas[2], tas[3]));
+        long minFin = Math.min(tas[8], Math.min(tas[9], tas[10]));
+        long croissance = minFin - minDebut;
+        console.printf("Débit : %.0f messages/s, croissance du tas : %.2f Mo%n",
+                messages / secondes, croissance / 1048576.0);
+
+        if (croissance > CROISSANCE_MAX) {
+            console.println("✗ ÉCHEC : le tas grossit avec le trafic");
+            System.exit(1);
+        }
+        console.println("✓ Mémoire par connexion bornée");
+        System.exit(0);
+    }
+
+    private static int demarrerServeur(boolean nio) throws Exception {
+        if (nio) {
+            int port;
+            try (ServerSocket libre = new ServerSocket(0)) {
+                port = libre.getLocalPort();
+            }
+            ServeurNIO serveur = new ServeurNIO(port, 2);
+            Thread t = new Thread(() -> {
+                try {
+                    serveur.demarrer();
+                } catch (Exception ignored) {
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+            Thread.sleep(500);
+            return port;
+        }
+
+        ServerSocket serveur = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        ExecutorService executeur = ServerGUI.creerExecuteur(false);
+        Thread t = new Thread(() -> {
+            try {
+                ServerGUI.accepterClients(serveur, executeur);
+            } catch (Exception ignored) {
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+        return serveur.getLocalPort();
+    }
+
+    /**
+     * Un ancien client annonce une String de Integer.MAX_VALUE octets puis envoie
+     * quelques octets : le serveur doit fermer la connexion, sans que le tas grossisse.
+     *
+     * @return true si la connexion est fermée par le serveur et le tas est resté bas
+     */
+    private static boolean trameGeanteRefusee(int port) throws Exception {
+        long avant = tasApresGC();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setSoTimeout(5000);
+            ObjectInputStream in = ouvrirAncienClient(socket);
+            in.readObject(); // clé personnelle
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeByte(0x7C); // TC_LONGSTRING
+            out.writeLong(Integer.MAX_VALUE);
+            out.write(new byte[4096]);
+            out.flush();
+            try {
+                while (true) {
+                    in.readObject(); // trames du serveur jusqu'à la fermeture
+                }
+            } catch (EOFException | SocketException e) {
+                // Connexion fermée par le serveur
+            } catch (SocketTimeoutException e) {
+                return false;
+            }
+        }
+        return tasApresGC() - avant < CROISSANCE_MAX;
+    }
+
+    private static ObjectInputStream ouvrirAncienClient(Socket socket) throws Exception {
+        OutputStream out = socket.getOutputStream();
+        out.write(new byte[]{(byte) 0xAC, (byte) 0xED, 0x00, 0x05});
+        out.flush();
+        return new ObjectInputStream(socket.getInputStream());
+    }
+
+    private static long tasApresGC() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}